@@ -34,6 +34,16 @@ public class AdsConfiguration {
      */
     private Budget budget = new Budget();
     
+    /**
+     * 广告活动快照配置
+     */
+    private Campaign campaign = new Campaign();
+    
+    /**
+     * 竞价请求统计配置
+     */
+    private Metrics metrics = new Metrics();
+    
     @Data
     public static class FraudDetection {
         /**
@@ -57,10 +67,35 @@ public class AdsConfiguration {
         private int maxImpressionsPerHour = 1000;
         
         /**
-         * IP黑名单
+         * IP黑名单，支持单个IPv4/IPv6地址与CIDR网段
          */
         private List<String> ipBlacklist = List.of();
         
+        /**
+         * IP网段黑名单文件，每行一个地址或CIDR网段，# 开头为注释；为空时只使用ipBlacklist
+         */
+        private String ipBlacklistFile = "";
+        
+        /**
+         * 黑名单文件的检查间隔(毫秒)，文件修改后在后台重建并整体替换
+         */
+        private long reputationReloadMs = 60000;
+        
+        /**
+         * 设备指纹黑名单文件，每行一个16位十六进制的64位设备指纹，# 开头为注释；为空时只使用手动添加的设备
+         */
+        private String deviceBlacklistFile = "";
+        
+        /**
+         * 编译后的IP地理位置库文件，按reputationReloadMs周期检查，修改后重新映射；为空时不做地理位置查询
+         */
+        private String geoIpDatabaseFile = "";
+        
+        /**
+         * IP地理位置库CSV源文件，每行 "起始地址,结束地址,国家[,地区]"；比geoIpDatabaseFile新时重新编译
+         */
+        private String geoIpSourceFile = "";
+        
         /**
          * 域名白名单
          */
@@ -75,6 +110,135 @@ public class AdsConfiguration {
             ".*spider.*",
             ".*scraper.*"
         );
+        
+        /**
+         * User Agent判断结果缓存容量
+         */
+        private int userAgentCacheSize = 4096;
+        
+        /**
+         * 点击/展示频率计数器配置
+         */
+        private FrequencyCounter frequencyCounter = new FrequencyCounter();
+        
+        /**
+         * IP/设备/App/网站的高频键检测与自动封禁配置
+         */
+        private HeavyHitters heavyHitters = new HeavyHitters();
+        
+        /**
+         * 按(IP, UA, 域名)缓存的反欺诈判断结果配置
+         */
+        private VerdictCache verdictCache = new VerdictCache();
+    }
+    
+    @Data
+    public static class VerdictCache {
+        /**
+         * 是否使用判断结果缓存，关闭时每个请求都重新执行全部检查
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 缓存条目数量上限
+         */
+        private int capacity = 16384;
+        
+        /**
+         * 缓存条目的有效期(毫秒)，黑名单、UA模式或地理位置库变化时提前失效
+         */
+        private long ttlMillis = 10000;
+    }
+    
+    @Data
+    public static class HeavyHitters {
+        /**
+         * 是否启用高频键检测
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 每个维度每分钟跟踪的计数器数量（Space-Saving），决定固定内存
+         */
+        private int capacity = 4096;
+        
+        /**
+         * 计数器分段数，容量平均分配到各段；新键的加入与替换只锁所在的一段
+         */
+        private int stripes = 16;
+        
+        /**
+         * 统计信息与接口返回的每个维度的Top-K数量
+         */
+        private int topK = 20;
+        
+        /**
+         * 自动封禁时长(秒)
+         */
+        private long blockTtlSeconds = 600;
+        
+        /**
+         * 单个IP每分钟请求数超过该值时自动封禁，0表示不封禁
+         */
+        private long ipThresholdPerMinute = 1200;
+        
+        /**
+         * 单个设备指纹每分钟请求数超过该值时自动封禁，0表示不封禁
+         */
+        private long deviceThresholdPerMinute = 1200;
+        
+        /**
+         * 单个App bundle每分钟请求数超过该值时自动封禁，0表示不封禁
+         */
+        private long appThresholdPerMinute = 0;
+        
+        /**
+         * 单个网站域名每分钟请求数超过该值时自动封禁，0表示不封禁
+         */
+        private long siteThresholdPerMinute = 0;
+    }
+    
+    @Data
+    public static class FrequencyCounter {
+        /**
+         * 滑动窗口长度(秒)
+         */
+        private long windowSeconds = 3600;
+        
+        /**
+         * 窗口分桶粒度(秒)，windowSeconds必须是其整数倍
+         */
+        private long bucketSeconds = 60;
+        
+        /**
+         * 精确计数的最大键数量，决定精确层的固定内存（maxTrackedKeys × 桶数 × 8字节）
+         */
+        private int maxTrackedKeys = 20000;
+        
+        /**
+         * 精确层槽位用尽时，回收超过该时长没有事件的键(秒)
+         */
+        private long idleEvictSeconds = 600;
+        
+        /**
+         * 长尾层估计值达到该次数的键晋升到精确层
+         */
+        private int promoteThreshold = 16;
+        
+        /**
+         * Count-Min Sketch每行的计数器数量，必须是2的幂
+         */
+        private int sketchWidth = 262144;
+        
+        /**
+         * Count-Min Sketch的行数，不超过8
+         */
+        private int sketchDepth = 4;
+        
+        /**
+         * Count-Min Sketch每一代的时长(秒)，估计值覆盖最近两代
+         */
+        private long sketchGenerationSeconds = 300;
     }
     
     @Data
@@ -149,6 +313,73 @@ public class AdsConfiguration {
          * 支持的OpenRTB版本
          */
         private String openRtbVersion = "2.5";
+        
+        /**
+         * 从tmax中扣除的网络与序列化安全余量(毫秒)
+         */
+        private long deadlineSafetyMarginMs = 10;
+        
+        /**
+         * 竞价流水线各阶段时间预算
+         */
+        private StageBudgets stageBudgets = new StageBudgets();
+        
+        /**
+         * 是否在虚拟线程上并行处理多个广告位
+         */
+        private boolean parallelImpressions = true;
+        
+        /**
+         * 单个请求内并行处理广告位的最大并发数
+         */
+        private int maxImpressionFanout = 8;
+        
+        /**
+         * 是否使用流式解析器读取竞价请求
+         */
+        private boolean streamingParser = true;
+        
+        /**
+         * 入口自适应并发限制
+         */
+        private ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit();
+    }
+    
+    @Data
+    public static class ConcurrencyLimit {
+        /**
+         * 是否启用自适应并发限制，上限为maxConcurrentRequests
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 初始并发限制
+         */
+        private int initialLimit = 100;
+        
+        /**
+         * 最小并发限制
+         */
+        private int minLimit = 10;
+        
+        /**
+         * 目标处理延迟(毫秒)，平滑后的实测延迟超过该值时收缩限制
+         */
+        private long targetLatencyMs = 100;
+        
+        /**
+         * 限制调整的平滑系数(0~1)
+         */
+        private double smoothing = 0.2;
+    }
+    
+    @Data
+    public static class StageBudgets {
+        private long fraudMs = 10;
+        private long candidatesMs = 30;
+        private long filterMs = 15;
+        private long budgetMs = 10;
+        private long auctionMs = 5;
     }
     
     @Data
@@ -168,6 +399,11 @@ public class AdsConfiguration {
          */
         private int reservationTtlSeconds = 300;
         
+        /**
+         * 预扣到期时间轮的tick(毫秒)，过期预扣在到期后一个tick内释放
+         */
+        private long reservationTickMs = 200;
+        
         /**
          * 默认日预算
          */
@@ -177,5 +413,169 @@ public class AdsConfiguration {
          * 预算告警阈值
          */
         private double alertThreshold = 0.8;
+        
+        /**
+         * 多节点共享日预算的租约配置
+         */
+        private BudgetLease lease = new BudgetLease();
+        
+        /**
+         * 预算消费日志配置
+         */
+        private BudgetJournal journal = new BudgetJournal();
+        
+        /**
+         * 匀速投放配置
+         */
+        private Pacing pacing = new Pacing();
+    }
+    
+    @Data
+    public static class BudgetLease {
+        /**
+         * 是否启用基于Redis租约的集群日预算控制，关闭时每个节点独立按本地消耗控制
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 节点标识，为空时使用 主机名:进程号
+         */
+        private String nodeId = "";
+        
+        /**
+         * 租约额度按最近消耗速率覆盖的秒数
+         */
+        private double targetLeaseSeconds = 5.0;
+        
+        /**
+         * 单次租约最小额度
+         */
+        private double minChunk = 1.0;
+        
+        /**
+         * 单次租约最大额度占日预算的比例
+         */
+        private double maxChunkFraction = 0.05;
+        
+        /**
+         * 本地余额低于租约额度的该比例时异步补充
+         */
+        private double refillThreshold = 0.25;
+        
+        /**
+         * 租约同步（上报消耗、续期、补充额度）间隔(毫秒)
+         */
+        private long syncIntervalMs = 1000;
+        
+        /**
+         * 租约有效期(毫秒)，超过有效期未续期的租约由其他节点回收
+         */
+        private long ttlMs = 30000;
+        
+        /**
+         * 本地租约比共享存储中的租约提前过期的时间(毫秒)，覆盖申领耗时与节点间的时钟偏差；
+         * 本地租约过期后不再预扣，直到重新申领成功
+         */
+        private long expiryMarginMs = 5000;
+        
+        /**
+         * 消耗速率的平滑系数(0~1)
+         */
+        private double rateSmoothing = 0.3;
+    }
+    
+    @Data
+    public static class Pacing {
+        /**
+         * 是否启用匀速投放，启用后超出目标消费速率的广告活动在候选生成阶段被跳过
+         */
+        private boolean enabled = true;
+        
+        /**
+         * 令牌桶容量，按目标速率下的消费秒数计
+         */
+        private long burstSeconds = 60;
+        
+        /**
+         * 目标消费速率的重新计算间隔(毫秒)
+         */
+        private long rateRefreshMs = 1000;
+        
+        /**
+         * 计算目标速率时当日剩余时间的下限(秒)，避免临近午夜时速率突增
+         */
+        private long minRemainingSeconds = 300;
+    }
+    
+    @Data
+    public static class BudgetJournal {
+        /**
+         * 是否启用内存映射的预算消费日志，启用后重启时回放日志恢复本节点的消费与在途预扣
+         */
+        private boolean enabled = false;
+        
+        /**
+         * 日志与检查点文件目录
+         */
+        private String directory = "data/spend-journal";
+        
+        /**
+         * 单个日志分段的大小(字节)
+         */
+        private int segmentBytes = 64 * 1024 * 1024;
+        
+        /**
+         * 组提交刷盘间隔(毫秒)，操作系统崩溃时最多丢失该间隔内的记录
+         */
+        private long flushIntervalMs = 50;
+        
+        /**
+         * 检查点间隔(毫秒)，到期时切换分段并把旧分段合并进检查点
+         */
+        private long checkpointIntervalMs = 60000;
+    }
+    
+    @Data
+    public static class Campaign {
+        /**
+         * 广告活动快照刷新间隔(毫秒)
+         */
+        private long snapshotRefreshMs = 30000;
+    }
+    
+    @Data
+    public static class Metrics {
+        /**
+         * 内存中聚合的竞价请求统计写入MongoDB的间隔(毫秒)，应用关闭时再写入一次
+         */
+        private long flushIntervalMs = 5000;
+        
+        /**
+         * 竞价阶段耗时分布配置
+         */
+        private Latency latency = new Latency();
+    }
+    
+    @Data
+    public static class Latency {
+        /**
+         * 耗时直方图可记录的最大值(毫秒)，超过的耗时按最大值记录
+         */
+        private long highestTrackableMs = 10000;
+        
+        /**
+         * 耗时直方图的有效位数(1-5)，位数越多精度越高、内存越大
+         */
+        private int significantDigits = 2;
+        
+        /**
+         * 采样各阶段区间直方图的间隔(毫秒)，Actuator指标按采样结果更新
+         */
+        private long sampleIntervalMs = 10000;
+        
+        /**
+         * 耗时直方图合并写入MongoDB的间隔(毫秒)，应用关闭时再写入一次
+         */
+        private long persistIntervalMs = 3600000;
     }
 }
\ No newline at end of file
@@ -0,0 +1,54 @@
+package fei.song.play_spring_boot_api.ads.config;
+
+import fei.song.play_spring_boot_api.ads.controller.BidAdmissionFilter;
+import fei.song.play_spring_boot_api.ads.domain.model.NoBidReason;
+import fei.song.play_spring_boot_api.ads.service.pipeline.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * 竞价入口准入控制配置
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ads.server.concurrency-limit", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class BidAdmissionConfiguration {
+    
+    @Bean
+    public AdaptiveConcurrencyLimiter bidConcurrencyLimiter(AdsConfiguration adsConfiguration,
+                                                            ObjectProvider<MeterRegistry> meterRegistry) {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.from(adsConfiguration);
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("ads.bid.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("竞价入口当前并发限制")
+                .register(registry);
+            Gauge.builder("ads.bid.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInflight)
+                .description("竞价入口处理中的请求数")
+                .register(registry);
+            FunctionCounter.builder("ads.bid.concurrency.shed", limiter, AdaptiveConcurrencyLimiter::getShedCount)
+                .description("因超过并发限制被丢弃的竞价请求数")
+                .tag("nbr", Integer.toString(NoBidReason.OVERLOADED))
+                .register(registry);
+            FunctionCounter.builder("ads.bid.concurrency.dropped", limiter, AdaptiveConcurrencyLimiter::getDroppedCount)
+                .description("超时或失败的竞价请求数")
+                .register(registry);
+        });
+        return limiter;
+    }
+    
+    @Bean
+    public FilterRegistrationBean<BidAdmissionFilter> bidAdmissionFilter(AdaptiveConcurrencyLimiter bidConcurrencyLimiter,
+                                                                        AdsConfiguration adsConfiguration) {
+        FilterRegistrationBean<BidAdmissionFilter> registration = new FilterRegistrationBean<>(
+            new BidAdmissionFilter(bidConcurrencyLimiter, adsConfiguration.getServer().getRequestTimeoutMs()));
+        registration.addUrlPatterns("/api/v1/bid/request");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
\ No newline at end of file
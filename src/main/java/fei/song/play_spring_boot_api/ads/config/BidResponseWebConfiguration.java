@@ -0,0 +1,31 @@
+package fei.song.play_spring_boot_api.ads.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fei.song.play_spring_boot_api.ads.infrastructure.openrtb.BidResponseHttpMessageConverter;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * OpenRTB 响应体输出配置
+ * BidResponse 由记录序列化耗时的转换器输出，序列化配置与通用的 Jackson 转换器一致；
+ * 只加载Web层的测试上下文中没有耗时服务时仍使用通用转换器
+ */
+@Configuration
+@RequiredArgsConstructor
+public class BidResponseWebConfiguration implements WebMvcConfigurer {
+    
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<StageLatencyService> stageLatencyService;
+    
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        stageLatencyService.ifAvailable(service ->
+            converters.add(0, new BidResponseHttpMessageConverter(objectMapper, service)));
+    }
+}
\ No newline at end of file
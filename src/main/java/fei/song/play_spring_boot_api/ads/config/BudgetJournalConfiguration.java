@@ -0,0 +1,22 @@
+package fei.song.play_spring_boot_api.ads.config;
+
+import fei.song.play_spring_boot_api.ads.service.budget.SpendJournal;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * 预算消费日志配置
+ * 启用后预扣、确认与释放事件写入本地内存映射日志，进程重启时回放恢复预算状态
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ads.budget.journal", name = "enabled", havingValue = "true")
+public class BudgetJournalConfiguration {
+    
+    @Bean(destroyMethod = "close")
+    public SpendJournal spendJournal(AdsConfiguration adsConfiguration) throws IOException {
+        return SpendJournal.open(adsConfiguration.getBudget().getJournal());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,28 @@
+package fei.song.play_spring_boot_api.ads.config;
+
+import fei.song.play_spring_boot_api.ads.service.budget.BudgetLeaseManager;
+import fei.song.play_spring_boot_api.ads.service.budget.BudgetLeaseStore;
+import fei.song.play_spring_boot_api.ads.service.budget.RedisBudgetLeaseStore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+/**
+ * 集群预算租约配置
+ * 启用后日预算由所有竞价节点通过Redis共享，节点下线时归还未用完的租约
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ads.budget.lease", name = "enabled", havingValue = "true")
+public class BudgetLeaseConfiguration {
+    
+    @Bean
+    public BudgetLeaseStore budgetLeaseStore(StringRedisTemplate stringRedisTemplate) {
+        return new RedisBudgetLeaseStore(stringRedisTemplate);
+    }
+    
+    @Bean(destroyMethod = "shutdown")
+    public BudgetLeaseManager budgetLeaseManager(BudgetLeaseStore budgetLeaseStore, AdsConfiguration adsConfiguration) {
+        return BudgetLeaseManager.start(budgetLeaseStore, adsConfiguration.getBudget().getLease());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,24 @@
+package fei.song.play_spring_boot_api.ads.config;
+
+import fei.song.play_spring_boot_api.ads.infrastructure.openrtb.BidRequestHttpMessageConverter;
+import fei.song.play_spring_boot_api.ads.infrastructure.openrtb.StreamingBidRequestParser;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * OpenRTB 请求体解析配置
+ * 启用后 @RequestBody BidRequest 由流式解析器读取，不再经过通用的 Jackson databind
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "ads.server", name = "streaming-parser", havingValue = "true", matchIfMissing = true)
+public class OpenRtbWebConfiguration implements WebMvcConfigurer {
+    
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new BidRequestHttpMessageConverter(new StreamingBidRequestParser()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,47 @@
+package fei.song.play_spring_boot_api.ads.controller;
+
+import fei.song.play_spring_boot_api.ads.service.pipeline.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 竞价请求入口准入过滤器
+ * 在请求体解析之前执行并发限制，超过限制时直接返回无内容的无竞价(204)；
+ * 204响应不能携带响应体，过载原因(nbr=501)只记录在限流器的丢弃计数中
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class BidAdmissionFilter extends OncePerRequestFilter {
+    
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final long requestTimeoutMs;
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (!limiter.tryAcquire()) {
+            log.debug("并发超过限制，丢弃竞价请求: limit={}, inflight={}", limiter.getLimit(), limiter.getInflight());
+            response.setStatus(HttpStatus.NO_CONTENT.value());
+            return;
+        }
+        
+        long startNanos = System.nanoTime();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = response.getStatus() >= HttpStatus.INTERNAL_SERVER_ERROR.value();
+        } finally {
+            long latencyNanos = System.nanoTime() - startNanos;
+            boolean timedOut = latencyNanos > requestTimeoutMs * 1_000_000L;
+            limiter.release(latencyNanos, failed || timedOut);
+        }
+    }
+}
\ No newline at end of file
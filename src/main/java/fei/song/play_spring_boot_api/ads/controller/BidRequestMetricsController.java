@@ -4,6 +4,7 @@ import fei.song.play_spring_boot_api.ads.domain.model.AdSlotTypeStats;
 import fei.song.play_spring_boot_api.ads.domain.model.BidRequestStatsDTO;
 import fei.song.play_spring_boot_api.ads.domain.model.DspSourceStats;
 import fei.song.play_spring_boot_api.ads.service.BidRequestMetricsService;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -16,6 +17,8 @@ import org.springframework.web.bind.annotation.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 /**
  * Bid Request 统计指标控制器
@@ -27,7 +30,10 @@ import java.util.List;
 @Tag(name = "Bid Request Metrics", description = "Bid Request 统计指标API")
 public class BidRequestMetricsController {
     
+    private static final Pattern HOUR_PATTERN = Pattern.compile("\\d{4}-\\d{2}-\\d{2}-\\d{2}");
+    
     private final BidRequestMetricsService metricsService;
+    private final StageLatencyService stageLatencyService;
     
     /**
      * 获取实时统计数据
@@ -112,6 +118,29 @@ public class BidRequestMetricsController {
         }
     }
     
+    /**
+     * 获取竞价各阶段耗时分位数
+     */
+    @GetMapping("/latency")
+    @Operation(summary = "获取竞价阶段耗时分位数", description = "按竞价阶段(反欺诈、候选生成、过滤、预算、拍卖、序列化)返回耗时的p50/p90/p99/p999/max，默认当前小时")
+    public ResponseEntity<Map<String, Object>> getStageLatency(
+            @Parameter(description = "小时，格式yyyy-MM-dd-HH，不传则为本实例当前小时", example = "2024-01-15-10")
+            @RequestParam(required = false) String hour) {
+        
+        if (hour != null && !HOUR_PATTERN.matcher(hour).matches()) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            Map<String, Object> latency = hour == null
+                    ? stageLatencyService.getCurrentHourLatency()
+                    : stageLatencyService.getHourLatency(hour);
+            return ResponseEntity.ok(latency);
+        } catch (Exception e) {
+            log.error("获取竞价阶段耗时分位数失败: hour={}", hour, e);
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     /**
      * 手动记录Bid Request（用于测试）
      */
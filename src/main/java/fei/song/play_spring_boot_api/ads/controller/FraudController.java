@@ -0,0 +1,94 @@
+package fei.song.play_spring_boot_api.ads.controller;
+
+import fei.song.play_spring_boot_api.ads.service.FraudDetectionService;
+import fei.song.play_spring_boot_api.ads.service.fraud.HeavyHitterDetector;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 反欺诈统计 API 控制器
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/v1/fraud")
+@RequiredArgsConstructor
+@Tag(name = "Fraud Detection", description = "反欺诈统计与高频键封禁API")
+public class FraudController {
+    
+    private final FraudDetectionService fraudDetectionService;
+    
+    /**
+     * 获取反欺诈统计信息
+     */
+    @GetMapping("/statistics")
+    @Operation(summary = "获取反欺诈统计信息", description = "获取黑名单、频率计数与高频键检测的统计信息")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "成功获取统计信息",
+                content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    public ResponseEntity<Map<String, Object>> getStatistics() {
+        try {
+            return ResponseEntity.ok(fraudDetectionService.getFraudStatistics());
+        } catch (Exception e) {
+            log.error("获取反欺诈统计信息异常", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * 获取各维度每分钟的Top-K高频键
+     */
+    @GetMapping("/heavy-hitters")
+    @Operation(summary = "获取高频键", description = "获取IP、设备、App、网站各维度当前分钟与上一分钟的Top-K高频键")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "成功获取高频键",
+                content = @Content(schema = @Schema(implementation = Map.class))),
+        @ApiResponse(responseCode = "500", description = "服务器内部错误")
+    })
+    public ResponseEntity<Map<String, Object>> getHeavyHitters() {
+        try {
+            return ResponseEntity.ok(fraudDetectionService.getHeavyHitters());
+        } catch (Exception e) {
+            log.error("获取高频键异常", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * 解除高频键的自动封禁
+     */
+    @DeleteMapping("/heavy-hitters/{dimension}/blocks")
+    @Operation(summary = "解除高频键封禁", description = "解除指定维度下某个键的自动封禁")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "204", description = "已解除封禁"),
+        @ApiResponse(responseCode = "400", description = "维度无效"),
+        @ApiResponse(responseCode = "404", description = "该键未被封禁")
+    })
+    public ResponseEntity<Void> unblockHeavyHitter(
+            @Parameter(description = "维度: ip/device/app/site", example = "ip") @PathVariable String dimension,
+            @Parameter(description = "被封禁的键", example = "192.0.2.1") @RequestParam String key) {
+        HeavyHitterDetector.Dimension parsed;
+        try {
+            parsed = HeavyHitterDetector.Dimension.valueOf(dimension.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        return fraudDetectionService.unblockHeavyHitter(parsed, key)
+            ? ResponseEntity.noContent().build()
+            : ResponseEntity.notFound().build();
+    }
+}
\ No newline at end of file
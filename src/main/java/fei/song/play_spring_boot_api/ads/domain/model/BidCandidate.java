@@ -37,9 +37,9 @@ public class BidCandidate {
     private String campaignId;
     
     /**
-     * 竞价价格
+     * 竞价价格（微元），拍卖后为成交价格
      */
-    private Double bidPrice;
+    private long bidPriceMicros;
     
     /**
      * 优先级
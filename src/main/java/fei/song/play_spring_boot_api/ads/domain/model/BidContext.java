@@ -0,0 +1,294 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 竞价请求级特征上下文
+ * 只依赖请求本身的特征（用户价值、时段、设备类别、网站类别、兴趣关键词等）在每个BidRequest上只计算一次，
+ * 反欺诈、候选生成、评分与过滤阶段共享，单个候选上只计算与候选相关的特征。
+ * 构建后不可变，可被同一请求的多个广告位并发读取。
+ */
+@Getter
+public final class BidContext {
+    
+    /**
+     * 时段分桶
+     */
+    public enum HourBucket {
+        /** 19-23点黄金时段 */
+        PRIME_TIME,
+        /** 9-18点工作时段 */
+        DAYTIME,
+        /** 其他时段 */
+        OFF_PEAK;
+        
+        static HourBucket of(int hour) {
+            if (hour >= 19 && hour <= 23) {
+                return PRIME_TIME;
+            }
+            if (hour >= 9 && hour <= 18) {
+                return DAYTIME;
+            }
+            return OFF_PEAK;
+        }
+    }
+    
+    /**
+     * 设备类别（按OpenRTB devicetype归类）
+     */
+    public enum DeviceClass {
+        /** 1=Mobile/Tablet, 4=Phone */
+        MOBILE,
+        /** 5=Tablet */
+        TABLET,
+        /** 2=Personal Computer */
+        DESKTOP,
+        /** 3=Connected TV, 7=Set Top Box */
+        CTV,
+        /** 6=Connected Device 及其他取值 */
+        OTHER,
+        /** 未提供devicetype */
+        UNKNOWN;
+        
+        static DeviceClass of(Integer deviceType) {
+            if (deviceType == null) {
+                return UNKNOWN;
+            }
+            return switch (deviceType) {
+                case 1, 4 -> MOBILE;
+                case 5 -> TABLET;
+                case 2 -> DESKTOP;
+                case 3, 7 -> CTV;
+                default -> OTHER;
+            };
+        }
+    }
+    
+    // IAB类别编码 IAB<n>[-<m>] 映射到位索引 n * IAB_SUBCATEGORY_SLOTS + m
+    private static final int IAB_SUBCATEGORY_SLOTS = 128;
+    private static final int IAB_MAX_TIER1 = 64;
+    
+    private final LocalDateTime now;
+    private final int dayOfWeek;
+    private final int hour;
+    private final HourBucket hourBucket;
+    
+    @Getter(AccessLevel.NONE)
+    private final boolean hasUser;
+    private final Integer age;
+    private final String gender;
+    private final Set<String> keywords;
+    private final double userValue;
+    
+    private final Integer deviceType;
+    private final DeviceClass deviceClass;
+    private final String os;
+    private final String ip;
+    private final String userAgent;
+    
+    private final String siteDomain;
+    @Getter(AccessLevel.NONE)
+    private final boolean hasSiteCategories;
+    
+    // 网站类别位图：标准IAB编码进入位图，非标准编码保留在集合中
+    @Getter(AccessLevel.NONE)
+    private final BitSet siteCategoryBits;
+    @Getter(AccessLevel.NONE)
+    private final Set<String> otherSiteCategories;
+    
+    private BidContext(BidRequest bidRequest, LocalDateTime now) {
+        this.now = now;
+        this.dayOfWeek = now.getDayOfWeek().getValue(); // 1=Monday, 7=Sunday
+        this.hour = now.getHour(); // 0-23
+        this.hourBucket = HourBucket.of(hour);
+        
+        User user = bidRequest.getUser();
+        this.hasUser = user != null;
+        this.age = user != null && user.getYob() != null ? now.getYear() - user.getYob() : null;
+        this.gender = user != null && user.getGender() != null ? user.getGender().toLowerCase(Locale.ROOT) : null;
+        this.keywords = user != null ? parseKeywords(user.getKeywords()) : Set.of();
+        this.userValue = calculateUserValue(user);
+        
+        Device device = bidRequest.getDevice();
+        this.deviceType = device != null ? device.getDevicetype() : null;
+        this.deviceClass = DeviceClass.of(deviceType);
+        this.os = device != null ? device.getOs() : null;
+        this.ip = device != null ? device.getIp() : null;
+        this.userAgent = device != null ? device.getUa() : null;
+        
+        Site site = bidRequest.getSite();
+        this.siteDomain = site != null ? site.getDomain() : null;
+        this.hasSiteCategories = site != null && site.getCat() != null;
+        this.siteCategoryBits = new BitSet();
+        Set<String> others = Set.of();
+        if (hasSiteCategories) {
+            for (String category : site.getCat()) {
+                int index = iabCategoryIndex(category);
+                if (index >= 0) {
+                    siteCategoryBits.set(index);
+                } else if (category != null) {
+                    if (others.isEmpty()) {
+                        others = new HashSet<>();
+                    }
+                    others.add(category);
+                }
+            }
+        }
+        this.otherSiteCategories = others;
+    }
+    
+    /**
+     * 获取请求的特征上下文，首次调用时构建并缓存在请求上
+     * 并发首次调用可能重复构建，结果相同，无需加锁
+     */
+    public static BidContext of(BidRequest bidRequest) {
+        BidContext context = bidRequest.getBidContext();
+        if (context == null) {
+            context = attach(bidRequest);
+        }
+        return context;
+    }
+    
+    /**
+     * 为请求构建特征上下文并挂到请求上，供后续各阶段通过of直接取用
+     * 请求入口处调用一次，避免首个阶段承担构建开销
+     */
+    public static BidContext attach(BidRequest bidRequest) {
+        BidContext context = new BidContext(bidRequest, LocalDateTime.now());
+        bidRequest.setBidContext(context);
+        return context;
+    }
+    
+    /**
+     * 以指定时间构建上下文（不缓存），用于需要固定时间的场景
+     */
+    public static BidContext of(BidRequest bidRequest, LocalDateTime now) {
+        return new BidContext(bidRequest, now);
+    }
+    
+    /**
+     * 候选的任一广告类别是否属于网站类别
+     */
+    public boolean matchesSiteCategory(List<String> categories) {
+        if (!hasSiteCategories || categories == null) {
+            return false;
+        }
+        for (int i = 0, n = categories.size(); i < n; i++) {
+            String category = categories.get(i);
+            int index = iabCategoryIndex(category);
+            if (index >= 0 ? siteCategoryBits.get(index) : otherSiteCategories.contains(category)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public boolean hasUser() {
+        return hasUser;
+    }
+    
+    public boolean isMobile() {
+        return deviceClass == DeviceClass.MOBILE;
+    }
+    
+    /**
+     * 解析逗号或空白分隔的关键词，统一小写
+     */
+    public static Set<String> parseKeywords(String keywords) {
+        if (keywords == null || keywords.isBlank()) {
+            return Set.of();
+        }
+        Set<String> result = new HashSet<>();
+        int start = -1;
+        for (int i = 0; i <= keywords.length(); i++) {
+            boolean separator = i == keywords.length()
+                || keywords.charAt(i) == ',' || Character.isWhitespace(keywords.charAt(i));
+            if (separator) {
+                if (start >= 0) {
+                    result.add(keywords.substring(start, i).toLowerCase(Locale.ROOT));
+                    start = -1;
+                }
+            } else if (start < 0) {
+                start = i;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 用户价值倍数：核心年龄段、性别、兴趣标签加权，最大不超过2倍
+     */
+    private static double calculateUserValue(User user) {
+        double multiplier = 1.0;
+        if (user == null) {
+            return multiplier;
+        }
+        
+        // 基于用户年龄调整
+        if (user.getYob() != null) {
+            int age = 2024 - user.getYob();
+            if (age >= 25 && age <= 45) {
+                multiplier += 0.2; // 核心消费群体
+            }
+        }
+        
+        // 基于用户性别调整
+        if (user.getGender() != null) {
+            multiplier += 0.1; // 有性别信息的用户更有价值
+        }
+        
+        // 基于用户兴趣关键词调整
+        if (user.getKeywords() != null && !user.getKeywords().trim().isEmpty()) {
+            multiplier += 0.15; // 有兴趣标签的用户更有价值
+        }
+        
+        return Math.min(multiplier, 2.0);
+    }
+    
+    /**
+     * 标准IAB类别编码（IAB12、IAB12-3）的位索引，非标准编码返回-1
+     */
+    static int iabCategoryIndex(String category) {
+        if (category == null || category.length() < 4 || !category.startsWith("IAB")) {
+            return -1;
+        }
+        int tier1 = 0;
+        int tier2 = 0;
+        int i = 3;
+        int length = category.length();
+        int digits = 0;
+        while (i < length && isAsciiDigit(category.charAt(i))) {
+            tier1 = tier1 * 10 + (category.charAt(i++) - '0');
+            digits++;
+        }
+        if (digits == 0 || digits > 2 || tier1 >= IAB_MAX_TIER1 || category.charAt(3) == '0') {
+            return -1;
+        }
+        if (i < length) {
+            if (category.charAt(i++) != '-' || i == length || category.charAt(i) == '0') {
+                return -1;
+            }
+            digits = 0;
+            while (i < length && isAsciiDigit(category.charAt(i))) {
+                tier2 = tier2 * 10 + (category.charAt(i++) - '0');
+                digits++;
+            }
+            if (i != length || digits == 0 || digits > 3 || tier2 >= IAB_SUBCATEGORY_SLOTS) {
+                return -1;
+            }
+        }
+        return tier1 * IAB_SUBCATEGORY_SLOTS + tier2;
+    }
+    
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
\ No newline at end of file
@@ -1,10 +1,13 @@
 package fei.song.play_spring_boot_api.ads.domain.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 import lombok.Builder;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
 
 import java.util.List;
 
@@ -127,4 +130,12 @@ public class BidRequest {
      * 扩展字段
      */
     private Object ext;
+    
+    /**
+     * 请求级特征上下文，由BidContext.of首次使用时构建，不参与序列化与相等性比较
+     */
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient BidContext bidContext;
 }
\ No newline at end of file
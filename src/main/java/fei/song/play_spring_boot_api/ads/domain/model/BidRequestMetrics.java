@@ -69,10 +69,15 @@ public class BidRequestMetrics {
     private Long failureCount;
     
     /**
-     * 平均响应时间(ms)
+     * 平均响应时间(ms)，按总响应时间累加之前写入的旧记录使用
      */
     private Double avgResponseTime;
     
+    /**
+     * 总响应时间(ms)，按$inc累加，平均响应时间 = 总响应时间 / 请求数量
+     */
+    private Long totalResponseTime;
+    
     /**
      * 创建时间
      */
@@ -0,0 +1,46 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+
+/**
+ * 国家代码工具
+ * OpenRTB的 device.geo.country 与IP地理位置库使用ISO-3166-1 alpha-3（如"USA"），
+ * 广告活动的国家定向使用alpha-2（如"US"），定向匹配前统一换算为大写的alpha-2。
+ */
+public final class CountryCodes {
+    
+    private static final Map<String, String> ALPHA3_TO_ALPHA2 = buildAlpha3ToAlpha2();
+    
+    private CountryCodes() {
+    }
+    
+    /**
+     * 换算为大写的alpha-2代码；alpha-3代码按ISO-3166换算，无法识别的代码只转为大写，为null时返回null
+     */
+    public static String toAlpha2(String code) {
+        if (code == null) {
+            return null;
+        }
+        String upper = code.trim().toUpperCase(Locale.ROOT);
+        if (upper.length() == 3) {
+            String alpha2 = ALPHA3_TO_ALPHA2.get(upper);
+            return alpha2 != null ? alpha2 : upper;
+        }
+        return upper;
+    }
+    
+    private static Map<String, String> buildAlpha3ToAlpha2() {
+        Map<String, String> mapping = new HashMap<>();
+        for (String alpha2 : Locale.getISOCountries()) {
+            try {
+                mapping.put(Locale.of("", alpha2).getISO3Country(), alpha2);
+            } catch (MissingResourceException e) {
+                // 没有alpha-3代码的地区不参与换算
+            }
+        }
+        return Map.copyOf(mapping);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,60 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 定点金额工具
+ * 竞价与预算内部统一使用long类型的微元(1元 = 1_000_000微元)，
+ * 只在快照构建（BigDecimal）与JSON边界（OpenRTB的double价格）做一次换算，热路径上不产生装箱与BigDecimal分配。
+ */
+public final class Money {
+    
+    public static final long MICROS_PER_UNIT = 1_000_000L;
+    
+    /**
+     * 未设置金额时的占位值，所有有效金额均不为负
+     */
+    public static final long UNSET = -1L;
+    
+    private Money() {
+    }
+    
+    /**
+     * 金额转换为微元，四舍五入到最近的微元
+     */
+    public static long toMicros(double amount) {
+        return Math.round(amount * MICROS_PER_UNIT);
+    }
+    
+    /**
+     * 金额转换为微元，为null时返回defaultMicros
+     */
+    public static long toMicros(Double amount, long defaultMicros) {
+        return amount != null ? toMicros(amount.doubleValue()) : defaultMicros;
+    }
+    
+    /**
+     * BigDecimal金额精确转换为微元，为null时返回defaultMicros
+     */
+    public static long toMicros(BigDecimal amount, long defaultMicros) {
+        if (amount == null) {
+            return defaultMicros;
+        }
+        return amount.movePointRight(6).setScale(0, RoundingMode.HALF_UP).longValueExact();
+    }
+    
+    /**
+     * 微元转换为金额（用于JSON输出与日志）
+     */
+    public static double toDouble(long micros) {
+        return (double) micros / MICROS_PER_UNIT;
+    }
+    
+    /**
+     * 微元转换为BigDecimal（用于持久化）
+     */
+    public static BigDecimal toBigDecimal(long micros) {
+        return BigDecimal.valueOf(micros, 6);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,36 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+/**
+ * 无竞价原因代码 (BidResponse.nbr)
+ * 0~10 为 OpenRTB 2.5 标准代码，500 及以上为自定义代码
+ */
+public final class NoBidReason {
+    
+    /**
+     * 未知原因
+     */
+    public static final int UNKNOWN = 0;
+    
+    /**
+     * 技术错误
+     */
+    public static final int TECHNICAL_ERROR = 1;
+    
+    /**
+     * 无效请求
+     */
+    public static final int INVALID_REQUEST = 2;
+    
+    /**
+     * 请求处理超过截止时间 (tmax)，已放弃竞价
+     */
+    public static final int DEADLINE_EXCEEDED = 500;
+    
+    /**
+     * 服务过载，请求在入口被限流丢弃
+     */
+    public static final int OVERLOADED = 501;
+    
+    private NoBidReason() {
+    }
+}
\ No newline at end of file
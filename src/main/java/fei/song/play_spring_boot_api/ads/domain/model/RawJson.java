@@ -0,0 +1,41 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 未解析的原始JSON片段（如 ext），序列化时原样输出
+ */
+public final class RawJson implements JsonSerializable {
+    
+    private final byte[] bytes;
+    
+    public RawJson(byte[] source, int offset, int length) {
+        this.bytes = new byte[length];
+        System.arraycopy(source, offset, this.bytes, 0, length);
+    }
+    
+    public int length() {
+        return bytes.length;
+    }
+    
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(toString());
+    }
+    
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        serialize(gen, serializers);
+    }
+    
+    @Override
+    public String toString() {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
\ No newline at end of file
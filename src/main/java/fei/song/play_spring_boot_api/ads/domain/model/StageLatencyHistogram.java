@@ -0,0 +1,56 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 竞价阶段耗时直方图实体类
+ * 每个(小时, 阶段)一条记录，各实例每次写入把压缩编码的HdrHistogram追加到列表中，读取时解码合并
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "stage_latency_histograms")
+public class StageLatencyHistogram {
+    
+    @Id
+    private String id;
+    
+    /**
+     * 小时维度 格式: "2024-01-15-10"
+     */
+    private String hour;
+    
+    /**
+     * 日期维度 格式: "2024-01-15"
+     */
+    private String date;
+    
+    /**
+     * 竞价阶段: FRAUD/CANDIDATES/FILTER/BUDGET/AUCTION/SERIALIZATION
+     */
+    private String stage;
+    
+    /**
+     * 记录总数，按$inc累加
+     */
+    private Long totalCount;
+    
+    /**
+     * 压缩编码的耗时直方图(纳秒)，按$push追加
+     */
+    private List<byte[]> histograms;
+    
+    /**
+     * 更新时间
+     */
+    private LocalDateTime updatedAt;
+}
\ No newline at end of file
@@ -29,6 +29,8 @@ public class MongoIndexConfig {
             createBidResponseIndexes();
             createInventoryIndexes();
             createUserProfileIndexes();
+            createBidRequestMetricsIndexes();
+            createStageLatencyHistogramIndexes();
         };
     }
     
@@ -139,4 +141,30 @@ public class MongoIndexConfig {
                 .on("demographics.gender", Sort.Direction.ASC)
                 .on("location.country", Sort.Direction.ASC));
     }
+    
+    /**
+     * 创建竞价请求统计相关索引
+     */
+    private void createBidRequestMetricsIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps("bid_request_metrics");
+        
+        // 创建复合索引（用于按小时、广告位类型、DSP来源的$inc upsert）
+        indexOps.createIndex(new Index()
+                .on("hour", Sort.Direction.ASC)
+                .on("adSlotType", Sort.Direction.ASC)
+                .on("dspSource", Sort.Direction.ASC));
+    }
+    
+    /**
+     * 创建竞价阶段耗时直方图相关索引
+     */
+    private void createStageLatencyHistogramIndexes() {
+        IndexOperations indexOps = mongoTemplate.indexOps("stage_latency_histograms");
+        
+        // 创建唯一复合索引（用于按小时、阶段的$push upsert）
+        indexOps.createIndex(new Index()
+                .on("hour", Sort.Direction.ASC)
+                .on("stage", Sort.Direction.ASC)
+                .unique());
+    }
 }
\ No newline at end of file
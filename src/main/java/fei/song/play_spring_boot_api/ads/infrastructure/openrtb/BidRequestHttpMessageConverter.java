@@ -0,0 +1,49 @@
+package fei.song.play_spring_boot_api.ads.infrastructure.openrtb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+
+/**
+ * 使用流式解析器读取 BidRequest 请求体，只负责读取，响应仍由 Jackson 转换器输出
+ */
+public class BidRequestHttpMessageConverter extends AbstractHttpMessageConverter<BidRequest> {
+    
+    private final StreamingBidRequestParser parser;
+    
+    public BidRequestHttpMessageConverter(StreamingBidRequestParser parser) {
+        super(MediaType.APPLICATION_JSON);
+        this.parser = parser;
+    }
+    
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BidRequest.class == clazz;
+    }
+    
+    @Override
+    protected boolean canWrite(MediaType mediaType) {
+        return false;
+    }
+    
+    @Override
+    protected BidRequest readInternal(Class<? extends BidRequest> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return parser.parse(inputMessage.getBody());
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("竞价请求JSON格式无效: " + e.getOriginalMessage(), e, inputMessage);
+        }
+    }
+    
+    @Override
+    protected void writeInternal(BidRequest bidRequest, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("BidRequestHttpMessageConverter 不支持写出");
+    }
+}
\ No newline at end of file
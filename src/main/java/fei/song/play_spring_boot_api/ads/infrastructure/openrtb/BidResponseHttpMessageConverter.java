@@ -0,0 +1,52 @@
+package fei.song.play_spring_boot_api.ads.infrastructure.openrtb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fei.song.play_spring_boot_api.ads.domain.model.BidResponse;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+
+/**
+ * 输出 BidResponse 响应体并记录序列化耗时，只负责写出
+ * 先用 Jackson 序列化为字节数组再写入响应，记录的耗时只包含序列化，不包含网络写出
+ */
+public class BidResponseHttpMessageConverter extends AbstractHttpMessageConverter<BidResponse> {
+    
+    private final ObjectMapper objectMapper;
+    private final StageLatencyService stageLatencyService;
+    
+    public BidResponseHttpMessageConverter(ObjectMapper objectMapper, StageLatencyService stageLatencyService) {
+        super(MediaType.APPLICATION_JSON);
+        this.objectMapper = objectMapper;
+        this.stageLatencyService = stageLatencyService;
+    }
+    
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return BidResponse.class == clazz;
+    }
+    
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+    
+    @Override
+    protected BidResponse readInternal(Class<? extends BidResponse> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("BidResponseHttpMessageConverter 不支持读取", inputMessage);
+    }
+    
+    @Override
+    protected void writeInternal(BidResponse bidResponse, HttpOutputMessage outputMessage) throws IOException {
+        long start = System.nanoTime();
+        byte[] body = objectMapper.writeValueAsBytes(bidResponse);
+        stageLatencyService.recordSerialization(System.nanoTime() - start);
+        outputMessage.getHeaders().setContentLength(body.length);
+        outputMessage.getBody().write(body);
+    }
+}
\ No newline at end of file
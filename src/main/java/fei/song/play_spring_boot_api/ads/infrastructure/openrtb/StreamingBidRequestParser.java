@@ -0,0 +1,482 @@
+package fei.song.play_spring_boot_api.ads.infrastructure.openrtb;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import fei.song.play_spring_boot_api.ads.domain.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * OpenRTB 2.5 BidRequest 流式解析器
+ * 直接基于 JsonParser 读取竞价流水线用到的字段，ext 保留为原始字节片段，
+ * 其余字段与未知对象直接跳过，不创建中间对象。请求体读取使用线程内复用的缓冲区。
+ */
+public class StreamingBidRequestParser {
+    
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 256 * 1024;
+    
+    private static final ThreadLocal<byte[]> READ_BUFFER = ThreadLocal.withInitial(() -> new byte[INITIAL_BUFFER_SIZE]);
+    
+    private final JsonFactory jsonFactory;
+    
+    public StreamingBidRequestParser() {
+        this(new JsonFactory());
+    }
+    
+    public StreamingBidRequestParser(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+    
+    /**
+     * 从输入流解析竞价请求
+     */
+    public BidRequest parse(InputStream in) throws IOException {
+        byte[] buffer = READ_BUFFER.get();
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+            READ_BUFFER.set(buffer);
+        }
+        return parse(buffer, 0, length);
+    }
+    
+    /**
+     * 从字节数组解析竞价请求
+     */
+    public BidRequest parse(byte[] data, int offset, int length) throws IOException {
+        try (JsonParser p = jsonFactory.createParser(data, offset, length)) {
+            if (p.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(p, "竞价请求必须是JSON对象");
+            }
+            return readBidRequest(p, data, offset);
+        }
+    }
+    
+    private BidRequest readBidRequest(JsonParser p, byte[] data, int base) throws IOException {
+        BidRequest request = new BidRequest();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "id" -> request.setId(text(p, token));
+                case "imp" -> request.setImp(readImpressions(p, token, data, base));
+                case "site" -> request.setSite(token == JsonToken.START_OBJECT ? readSite(p, data, base) : skip(p));
+                case "app" -> request.setApp(token == JsonToken.START_OBJECT ? readApp(p, data, base) : skip(p));
+                case "device" -> request.setDevice(token == JsonToken.START_OBJECT ? readDevice(p, data, base) : skip(p));
+                case "user" -> request.setUser(token == JsonToken.START_OBJECT ? readUser(p, data, base) : skip(p));
+                case "test" -> request.setTest(integer(p, token));
+                case "at" -> request.setAuctionType(integer(p, token));
+                case "tmax" -> request.setTimeoutMs(integer(p, token));
+                case "wseat" -> request.setWhitelistedSeats(stringList(p, token));
+                case "bseat" -> request.setBlacklistedSeats(stringList(p, token));
+                case "cur" -> request.setCurrencies(stringList(p, token));
+                case "bcat" -> request.setBlacklistedCategories(stringList(p, token));
+                case "badv" -> request.setBlacklistedAdvertisers(stringList(p, token));
+                case "bapp" -> request.setBlacklistedApps(stringList(p, token));
+                case "source" -> request.setSource(token == JsonToken.START_OBJECT ? readSource(p, data, base) : skip(p));
+                case "regs" -> request.setRegs(token == JsonToken.START_OBJECT ? readRegs(p, data, base) : skip(p));
+                case "ext" -> request.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return request;
+    }
+    
+    private List<Impression> readImpressions(JsonParser p, JsonToken token, byte[] data, int base) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            return skip(p);
+        }
+        List<Impression> impressions = new ArrayList<>(4);
+        for (JsonToken element = p.nextToken(); element != JsonToken.END_ARRAY; element = p.nextToken()) {
+            if (element == JsonToken.START_OBJECT) {
+                impressions.add(readImpression(p, data, base));
+            } else {
+                p.skipChildren();
+            }
+        }
+        return impressions;
+    }
+    
+    private Impression readImpression(JsonParser p, byte[] data, int base) throws IOException {
+        Impression imp = new Impression();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "id" -> imp.setId(text(p, token));
+                case "banner" -> imp.setBanner(token == JsonToken.START_OBJECT ? readBanner(p, data, base) : skip(p));
+                case "video" -> imp.setVideo(token == JsonToken.START_OBJECT ? readVideo(p, data, base) : skip(p));
+                case "audio" -> imp.setAudio(token == JsonToken.START_OBJECT ? readAudio(p, data, base) : skip(p));
+                case "native" -> imp.setNativeAd(token == JsonToken.START_OBJECT ? readNative(p, data, base) : skip(p));
+                case "instl" -> imp.setInterstitial(integer(p, token));
+                case "tagid" -> imp.setTagId(text(p, token));
+                case "bidfloor" -> imp.setBidfloor(decimal(p, token));
+                case "bidfloorcur" -> imp.setBidfloorCurrency(text(p, token));
+                case "secure" -> imp.setSecure(integer(p, token));
+                case "exp" -> imp.setExpectedExposure(integer(p, token));
+                case "pmp" -> imp.setPmp(token == JsonToken.START_OBJECT ? readPmp(p, data, base) : skip(p));
+                case "ext" -> imp.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return imp;
+    }
+    
+    private Banner readBanner(JsonParser p, byte[] data, int base) throws IOException {
+        Banner banner = new Banner();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "format" -> banner.setFormat(readFormats(p, token));
+                case "w" -> banner.setW(integer(p, token));
+                case "h" -> banner.setH(integer(p, token));
+                case "pos" -> banner.setPos(integer(p, token));
+                case "mimes" -> banner.setMimes(stringList(p, token));
+                case "api" -> banner.setApi(intList(p, token));
+                case "id" -> banner.setId(text(p, token));
+                case "battr" -> banner.setBlockedAttributes(intList(p, token));
+                case "btype" -> banner.setBlockedTypes(intList(p, token));
+                case "ext" -> banner.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return banner;
+    }
+    
+    private List<Banner.Format> readFormats(JsonParser p, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            return skip(p);
+        }
+        List<Banner.Format> formats = new ArrayList<>(4);
+        for (JsonToken element = p.nextToken(); element != JsonToken.END_ARRAY; element = p.nextToken()) {
+            if (element != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            Banner.Format format = new Banner.Format();
+            for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+                JsonToken valueToken = p.nextToken();
+                switch (name) {
+                    case "w" -> format.setW(integer(p, valueToken));
+                    case "h" -> format.setH(integer(p, valueToken));
+                    default -> p.skipChildren();
+                }
+            }
+            formats.add(format);
+        }
+        return formats;
+    }
+    
+    private Video readVideo(JsonParser p, byte[] data, int base) throws IOException {
+        Video video = new Video();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "mimes" -> video.setMimes(stringList(p, token));
+                case "minduration" -> video.setMinDuration(integer(p, token));
+                case "maxduration" -> video.setMaxDuration(integer(p, token));
+                case "protocols" -> video.setProtocols(intList(p, token));
+                case "w" -> video.setW(integer(p, token));
+                case "h" -> video.setH(integer(p, token));
+                case "startdelay" -> video.setStartDelay(integer(p, token));
+                case "linearity" -> video.setLinearity(integer(p, token));
+                case "battr" -> video.setBlockedAttributes(intList(p, token));
+                case "pos" -> video.setPos(integer(p, token));
+                case "api" -> video.setApi(intList(p, token));
+                case "ext" -> video.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return video;
+    }
+    
+    private Audio readAudio(JsonParser p, byte[] data, int base) throws IOException {
+        Audio audio = new Audio();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "mimes" -> audio.setMimes(stringList(p, token));
+                case "minduration" -> audio.setMinDuration(integer(p, token));
+                case "maxduration" -> audio.setMaxDuration(integer(p, token));
+                case "protocols" -> audio.setProtocols(intList(p, token));
+                case "battr" -> audio.setBlockedAttributes(intList(p, token));
+                case "ext" -> audio.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return audio;
+    }
+    
+    private Native readNative(JsonParser p, byte[] data, int base) throws IOException {
+        Native nativeAd = new Native();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "request" -> nativeAd.setRequest(text(p, token));
+                case "ver" -> nativeAd.setVersion(text(p, token));
+                case "api" -> nativeAd.setApi(intList(p, token));
+                case "battr" -> nativeAd.setBlockedAttributes(intList(p, token));
+                case "ext" -> nativeAd.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return nativeAd;
+    }
+    
+    private Pmp readPmp(JsonParser p, byte[] data, int base) throws IOException {
+        Pmp pmp = new Pmp();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "private_auction" -> pmp.setPrivateAuction(integer(p, token));
+                case "deals" -> pmp.setDeals(readDeals(p, token, data, base));
+                case "ext" -> pmp.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return pmp;
+    }
+    
+    private List<Pmp.Deal> readDeals(JsonParser p, JsonToken token, byte[] data, int base) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            return skip(p);
+        }
+        List<Pmp.Deal> deals = new ArrayList<>(4);
+        for (JsonToken element = p.nextToken(); element != JsonToken.END_ARRAY; element = p.nextToken()) {
+            if (element != JsonToken.START_OBJECT) {
+                p.skipChildren();
+                continue;
+            }
+            Pmp.Deal deal = new Pmp.Deal();
+            for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+                JsonToken valueToken = p.nextToken();
+                switch (name) {
+                    case "id" -> deal.setId(text(p, valueToken));
+                    case "bidfloor" -> deal.setBidfloor(decimal(p, valueToken));
+                    case "bidfloorcur" -> deal.setBidfloorCurrency(text(p, valueToken));
+                    case "at" -> deal.setAuctionType(integer(p, valueToken));
+                    case "wseat" -> deal.setWhitelistedSeats(stringList(p, valueToken));
+                    case "wadomain" -> deal.setWhitelistedAdvertisers(stringList(p, valueToken));
+                    case "ext" -> deal.setExt(raw(p, data, base));
+                    default -> p.skipChildren();
+                }
+            }
+            deals.add(deal);
+        }
+        return deals;
+    }
+    
+    private Site readSite(JsonParser p, byte[] data, int base) throws IOException {
+        Site site = new Site();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "id" -> site.setId(text(p, token));
+                case "domain" -> site.setDomain(text(p, token));
+                case "cat" -> site.setCat(stringList(p, token));
+                case "publisher" -> site.setPublisher(token == JsonToken.START_OBJECT ? readPublisher(p) : skip(p));
+                case "ext" -> site.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return site;
+    }
+    
+    private App readApp(JsonParser p, byte[] data, int base) throws IOException {
+        App app = new App();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "id" -> app.setId(text(p, token));
+                case "bundle" -> app.setBundle(text(p, token));
+                case "domain" -> app.setDomain(text(p, token));
+                case "cat" -> app.setCategories(stringList(p, token));
+                case "publisher" -> app.setPublisher(token == JsonToken.START_OBJECT ? readPublisher(p) : skip(p));
+                case "ext" -> app.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return app;
+    }
+    
+    private Publisher readPublisher(JsonParser p) throws IOException {
+        Publisher publisher = new Publisher();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "id" -> publisher.setId(text(p, token));
+                case "domain" -> publisher.setDomain(text(p, token));
+                default -> p.skipChildren();
+            }
+        }
+        return publisher;
+    }
+    
+    private Device readDevice(JsonParser p, byte[] data, int base) throws IOException {
+        Device device = new Device();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "ua" -> device.setUa(text(p, token));
+                case "geo" -> device.setGeo(token == JsonToken.START_OBJECT ? readGeo(p, data, base) : skip(p));
+                case "dnt" -> device.setDnt(integer(p, token));
+                case "lmt" -> device.setLmt(integer(p, token));
+                case "ip" -> device.setIp(text(p, token));
+                case "ipv6" -> device.setIpv6(text(p, token));
+                case "devicetype" -> device.setDevicetype(integer(p, token));
+                case "make" -> device.setMake(text(p, token));
+                case "model" -> device.setModel(text(p, token));
+                case "os" -> device.setOs(text(p, token));
+                case "osv" -> device.setOsv(text(p, token));
+                case "ifa" -> device.setIfa(text(p, token));
+                case "ext" -> device.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return device;
+    }
+    
+    private Geo readGeo(JsonParser p, byte[] data, int base) throws IOException {
+        Geo geo = new Geo();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "lat" -> geo.setLat(decimal(p, token));
+                case "lon" -> geo.setLon(decimal(p, token));
+                case "country" -> geo.setCountry(text(p, token));
+                case "region" -> geo.setRegion(text(p, token));
+                case "city" -> geo.setCity(text(p, token));
+                case "ext" -> geo.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return geo;
+    }
+    
+    private User readUser(JsonParser p, byte[] data, int base) throws IOException {
+        User user = new User();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "id" -> user.setId(text(p, token));
+                case "yob" -> user.setYob(integer(p, token));
+                case "gender" -> user.setGender(text(p, token));
+                case "keywords" -> user.setKeywords(text(p, token));
+                case "geo" -> user.setGeo(token == JsonToken.START_OBJECT ? readGeo(p, data, base) : skip(p));
+                case "ext" -> user.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return user;
+    }
+    
+    private Source readSource(JsonParser p, byte[] data, int base) throws IOException {
+        Source source = new Source();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "fd" -> source.setFinalDecision(integer(p, token));
+                case "tid" -> source.setTransactionId(text(p, token));
+                case "ext" -> source.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return source;
+    }
+    
+    private Regs readRegs(JsonParser p, byte[] data, int base) throws IOException {
+        Regs regs = new Regs();
+        for (String name = p.nextFieldName(); name != null; name = p.nextFieldName()) {
+            JsonToken token = p.nextToken();
+            switch (name) {
+                case "coppa" -> regs.setCoppa(integer(p, token));
+                case "gdpr" -> regs.setGdpr(integer(p, token));
+                case "us_privacy" -> regs.setUsPrivacy(text(p, token));
+                case "ext" -> regs.setExt(raw(p, data, base));
+                default -> p.skipChildren();
+            }
+        }
+        return regs;
+    }
+    
+    /**
+     * 保留当前值的原始字节片段，不解析其内容
+     */
+    private RawJson raw(JsonParser p, byte[] data, int base) throws IOException {
+        if (p.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        int start = base + (int) p.currentTokenLocation().getByteOffset();
+        p.skipChildren();
+        int end = base + (int) p.currentLocation().getByteOffset();
+        return new RawJson(data, start, end - start);
+    }
+    
+    private static <T> T skip(JsonParser p) throws IOException {
+        p.skipChildren();
+        return null;
+    }
+    
+    private static String text(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            return skip(p);
+        }
+        return p.getText();
+    }
+    
+    private static Integer integer(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_STRING) {
+            return p.getValueAsInt();
+        }
+        return skip(p);
+    }
+    
+    private static Double decimal(JsonParser p, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT || token == JsonToken.VALUE_STRING) {
+            return p.getValueAsDouble();
+        }
+        return skip(p);
+    }
+    
+    private static List<String> stringList(JsonParser p, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            return skip(p);
+        }
+        List<String> values = new ArrayList<>(4);
+        for (JsonToken element = p.nextToken(); element != JsonToken.END_ARRAY; element = p.nextToken()) {
+            String value = text(p, element);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+    
+    private static List<Integer> intList(JsonParser p, JsonToken token) throws IOException {
+        if (token != JsonToken.START_ARRAY) {
+            return skip(p);
+        }
+        List<Integer> values = new ArrayList<>(4);
+        for (JsonToken element = p.nextToken(); element != JsonToken.END_ARRAY; element = p.nextToken()) {
+            Integer value = integer(p, element);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+}
\ No newline at end of file
@@ -35,7 +35,7 @@ public interface BidRequestMetricsRepository extends MongoRepository<BidRequestM
      * 按日期查询总计
      */
     @Query(value = "{ 'date': { $gte: ?0, $lte: ?1 } }", 
-           fields = "{ 'requestCount': 1, 'successCount': 1, 'failureCount': 1, 'avgResponseTime': 1 }")
+           fields = "{ 'requestCount': 1, 'successCount': 1, 'failureCount': 1, 'avgResponseTime': 1, 'totalResponseTime': 1 }")
     List<BidRequestMetrics> findMetricsByDateRange(String startDate, String endDate);
     
     /**
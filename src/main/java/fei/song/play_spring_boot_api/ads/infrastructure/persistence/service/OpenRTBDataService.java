@@ -104,9 +104,14 @@ public class OpenRTBDataService {
      * 根据定向条件获取匹配的广告活动
      */
     public List<CampaignEntity> getMatchingCampaigns(String country, Integer deviceType, BigDecimal minBid) {
-        List<CampaignEntity> activeCampaigns = getActiveCampaigns();
-        
-        return activeCampaigns.stream()
+        return filterMatchingCampaigns(getActiveCampaigns(), country, deviceType, minBid);
+    }
+
+    /**
+     * 在给定的广告活动列表中按定向条件筛选（不访问缓存或数据库）
+     */
+    public List<CampaignEntity> filterMatchingCampaigns(List<CampaignEntity> campaigns, String country, Integer deviceType, BigDecimal minBid) {
+        return campaigns.stream()
             .filter(campaign -> isTargetingMatch(campaign, country, deviceType))
             .filter(campaign -> campaign.getBidding().getMaxBid().compareTo(minBid) >= 0)
             .toList();
@@ -17,14 +17,12 @@ public class BudgetCleanupScheduler {
     private final BudgetService budgetService;
     
     /**
-     * 每5分钟清理一次过期的预算预扣记录
+     * 按时间轮tick推进，过期的预算预扣在到期后一个tick内释放
      */
-    @Scheduled(fixedRate = 300000) // 5分钟
+    @Scheduled(fixedDelayString = "#{@adsConfiguration.budget.reservationTickMs}")
     public void cleanupExpiredReservations() {
         try {
-            log.debug("开始清理过期预算预扣记录");
             budgetService.cleanupExpiredReservations();
-            log.debug("完成清理过期预算预扣记录");
         } catch (Exception e) {
             log.error("清理过期预算预扣记录异常", e);
         }
@@ -0,0 +1,30 @@
+package fei.song.play_spring_boot_api.ads.scheduler;
+
+import fei.song.play_spring_boot_api.ads.service.CampaignService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 广告活动快照刷新定时任务
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CampaignSnapshotScheduler {
+    
+    private final CampaignService campaignService;
+    
+    /**
+     * 定期在后台线程重建广告活动快照，竞价线程只读取已构建好的快照
+     */
+    @Scheduled(initialDelay = 0, fixedDelayString = "#{@adsConfiguration.campaign.snapshotRefreshMs}")
+    public void refreshCampaignSnapshot() {
+        try {
+            campaignService.refreshSnapshot();
+        } catch (Exception e) {
+            log.error("刷新广告活动快照异常", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package fei.song.play_spring_boot_api.ads.scheduler;
+
+import fei.song.play_spring_boot_api.ads.service.FraudDetectionService;
+import fei.song.play_spring_boot_api.ads.service.GeoLocationService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 反欺诈数据重新加载定时任务
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FraudDataScheduler {
+    
+    private final FraudDetectionService fraudDetectionService;
+    private final GeoLocationService geoLocationService;
+    
+    /**
+     * 定期检查IP黑名单文件，修改后在后台线程重建前缀树并整体替换
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}",
+        fixedDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}")
+    public void reloadIpBlacklist() {
+        try {
+            fraudDetectionService.refreshIpBlacklist();
+        } catch (Exception e) {
+            log.error("重新加载IP黑名单异常", e);
+        }
+    }
+    
+    /**
+     * 定期检查设备指纹黑名单文件，修改后重新加载并整体替换
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}",
+        fixedDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}")
+    public void reloadDeviceBlacklist() {
+        try {
+            fraudDetectionService.refreshDeviceBlacklist();
+        } catch (Exception e) {
+            log.error("重新加载设备指纹黑名单异常", e);
+        }
+    }
+    
+    /**
+     * 定期检查IP地理位置库，源文件更新后重新编译，库文件修改后重新映射
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}",
+        fixedDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}")
+    public void reloadGeoDatabase() {
+        try {
+            geoLocationService.refreshDatabase();
+        } catch (Exception e) {
+            log.error("重新加载IP地理位置库异常", e);
+        }
+    }
+    
+    /**
+     * 定期检查可疑User Agent模式配置，变化后重建关键词自动机
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}",
+        fixedDelayString = "#{@adsConfiguration.fraudDetection.reputationReloadMs}")
+    public void reloadUserAgentPatterns() {
+        try {
+            fraudDetectionService.refreshUserAgentClassifier();
+        } catch (Exception e) {
+            log.error("重新加载可疑User Agent模式异常", e);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,59 @@
+package fei.song.play_spring_boot_api.ads.scheduler;
+
+import fei.song.play_spring_boot_api.ads.service.BidRequestMetricsService;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * 竞价请求统计与阶段耗时分布的定时任务
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MetricsFlushScheduler {
+    
+    private final BidRequestMetricsService bidRequestMetricsService;
+    private final StageLatencyService stageLatencyService;
+    
+    /**
+     * 把内存中聚合的竞价请求统计批量写入MongoDB
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.metrics.flushIntervalMs}",
+        fixedDelayString = "#{@adsConfiguration.metrics.flushIntervalMs}")
+    public void flushBidRequestMetrics() {
+        try {
+            bidRequestMetricsService.flushMetrics();
+        } catch (Exception e) {
+            log.error("写入竞价请求统计异常", e);
+        }
+    }
+    
+    /**
+     * 汇总各竞价阶段的耗时分布，Actuator指标随之更新
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.metrics.latency.sampleIntervalMs}",
+        fixedDelayString = "#{@adsConfiguration.metrics.latency.sampleIntervalMs}")
+    public void sampleStageLatency() {
+        try {
+            stageLatencyService.sample();
+        } catch (Exception e) {
+            log.error("汇总竞价阶段耗时分布异常", e);
+        }
+    }
+    
+    /**
+     * 把各竞价阶段的耗时直方图合并写入MongoDB
+     */
+    @Scheduled(initialDelayString = "#{@adsConfiguration.metrics.latency.persistIntervalMs}",
+        fixedDelayString = "#{@adsConfiguration.metrics.latency.persistIntervalMs}")
+    public void persistStageLatency() {
+        try {
+            stageLatencyService.persist();
+        } catch (Exception e) {
+            log.error("写入竞价阶段耗时直方图异常", e);
+        }
+    }
+}
\ No newline at end of file
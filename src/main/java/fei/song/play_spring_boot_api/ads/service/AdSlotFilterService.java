@@ -1,8 +1,8 @@
 package fei.song.play_spring_boot_api.ads.service;
 
 import fei.song.play_spring_boot_api.ads.domain.model.*;
-import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
-import fei.song.play_spring_boot_api.ads.infrastructure.persistence.repository.CampaignRepository;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignSnapshot;
+import fei.song.play_spring_boot_api.ads.service.campaign.CompiledTargeting;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -19,17 +19,20 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class AdSlotFilterService {
     
-    private final CampaignRepository campaignRepository;
+    private final CampaignService campaignService;
     
     /**
      * 根据广告位要求过滤广告候选
+     * 定向规则读取快照中预编译的结果，过滤阶段不产生任何I/O
      */
     public List<BidCandidate> filterCandidatesForImpression(Impression impression, BidRequest bidRequest, List<BidCandidate> candidates) {
+        CampaignSnapshot snapshot = campaignService.getSnapshot();
+        BidContext context = BidContext.of(bidRequest);
         return candidates.stream()
             .filter(candidate -> matchesAdSize(impression, candidate))
             .filter(candidate -> meetsFloorPrice(impression, candidate))
             .filter(candidate -> matchesAdFormat(impression, candidate))
-            .filter(candidate -> matchesTargeting(bidRequest, candidate))
+            .filter(candidate -> matchesTargeting(bidRequest, candidate, snapshot, context))
             .filter(candidate -> isCreativeValid(candidate))
             .collect(Collectors.toList());
     }
@@ -71,7 +74,7 @@ public class AdSlotFilterService {
      */
     private boolean meetsFloorPrice(Impression impression, BidCandidate candidate) {
         if (impression.getBidfloor() != null && impression.getBidfloor() > 0) {
-            return candidate.getBidPrice() >= impression.getBidfloor();
+            return candidate.getBidPriceMicros() >= Money.toMicros(impression.getBidfloor());
         }
         return true;
     }
@@ -121,7 +124,8 @@ public class AdSlotFilterService {
     /**
      * 检查定向匹配
      */
-    private boolean matchesTargeting(BidRequest bidRequest, BidCandidate candidate) {
+    private boolean matchesTargeting(BidRequest bidRequest, BidCandidate candidate,
+                                     CampaignSnapshot snapshot, BidContext context) {
         // 地理位置定向
         if (!matchesGeoTargeting(bidRequest, candidate)) {
             return false;
@@ -132,13 +136,19 @@ public class AdSlotFilterService {
             return false;
         }
         
+        CompiledTargeting compiledTargeting = snapshot.getCompiledTargeting(candidate.getCampaignId());
+        if (compiledTargeting == null) {
+            log.warn("Campaign not found in snapshot for campaignId: {}", candidate.getCampaignId());
+            return false;
+        }
+        
         // 时间定向
-        if (!matchesTimeTargeting(candidate)) {
+        if (!matchesTimeTargeting(candidate, compiledTargeting, context)) {
             return false;
         }
         
         // 用户定向
-        if (!matchesUserTargeting(bidRequest, candidate)) {
+        if (!matchesUserTargeting(candidate, compiledTargeting, context)) {
             return false;
         }
         
@@ -193,162 +203,31 @@ public class AdSlotFilterService {
     /**
      * 时间定向匹配
      */
-    private boolean matchesTimeTargeting(BidCandidate candidate) {
-        try {
-            // 获取当前时间信息
-            LocalDateTime now = LocalDateTime.now();
-            int currentDayOfWeek = now.getDayOfWeek().getValue(); // 1=Monday, 7=Sunday
-            int currentHour = now.getHour(); // 0-23
-            
-            // 根据campaignId获取Campaign信息
-            Optional<CampaignEntity> campaignOpt = campaignRepository.findByCampaignId(candidate.getCampaignId());
-            if (campaignOpt.isEmpty()) {
-                log.warn("Campaign not found for campaignId: {}", candidate.getCampaignId());
-                return false;
-            }
-            
-            CampaignEntity campaign = campaignOpt.get();
-            
-            // 检查Campaign的时间定向设置
-            if (campaign.getTargeting() != null && campaign.getTargeting().getTime() != null) {
-                CampaignEntity.TimeTargeting timeTargeting = campaign.getTargeting().getTime();
-                
-                // 检查星期几定向
-                if (timeTargeting.getDaysOfWeek() != null && !timeTargeting.getDaysOfWeek().isEmpty()) {
-                    if (!timeTargeting.getDaysOfWeek().contains(currentDayOfWeek)) {
-                        log.debug("Day of week targeting failed for campaign {}: current={}, allowed={}", 
-                            candidate.getCampaignId(), currentDayOfWeek, timeTargeting.getDaysOfWeek());
-                        return false;
-                    }
-                }
-                
-                // 检查小时定向
-                if (timeTargeting.getHoursOfDay() != null && !timeTargeting.getHoursOfDay().isEmpty()) {
-                    if (!timeTargeting.getHoursOfDay().contains(currentHour)) {
-                        log.debug("Hour targeting failed for campaign {}: current={}, allowed={}", 
-                            candidate.getCampaignId(), currentHour, timeTargeting.getHoursOfDay());
-                        return false;
-                    }
-                }
-            }
-            
-            // 检查Campaign的投放时间安排
-            if (campaign.getSchedule() != null) {
-                CampaignEntity.Schedule schedule = campaign.getSchedule();
-                
-                // 检查开始时间
-                if (schedule.getStartDate() != null && now.isBefore(schedule.getStartDate())) {
-                    log.debug("Campaign {} not started yet: current={}, start={}", 
-                        candidate.getCampaignId(), now, schedule.getStartDate());
-                    return false;
-                }
-                
-                // 检查结束时间
-                if (schedule.getEndDate() != null && now.isAfter(schedule.getEndDate())) {
-                    log.debug("Campaign {} already ended: current={}, end={}", 
-                        candidate.getCampaignId(), now, schedule.getEndDate());
-                    return false;
-                }
-            }
-            
-            log.debug("Time targeting passed for campaign {}", candidate.getCampaignId());
-            return true;
-            
-        } catch (Exception e) {
-            log.error("Error checking time targeting for campaign {}: {}", 
-                candidate.getCampaignId(), e.getMessage(), e);
-            // 出现异常时，为了保证系统稳定性，默认返回false
+    private boolean matchesTimeTargeting(BidCandidate candidate, CompiledTargeting compiledTargeting,
+                                         BidContext context) {
+        if (!compiledTargeting.matchesTime(context.getDayOfWeek(), context.getHour(), context.getNow())) {
+            log.debug("Time targeting failed for campaign {}: day={}, hour={}",
+                candidate.getCampaignId(), context.getDayOfWeek(), context.getHour());
             return false;
         }
+        return true;
     }
     
     /**
      * 用户定向匹配
      */
-    private boolean matchesUserTargeting(BidRequest bidRequest, BidCandidate candidate) {
-        try {
-            if (bidRequest.getUser() == null) {
-                return true; // 没有用户信息时默认通过
-            }
-            
-            User user = bidRequest.getUser();
-            
-            // 根据campaignId获取Campaign信息
-            Optional<CampaignEntity> campaignOpt = campaignRepository.findByCampaignId(candidate.getCampaignId());
-            if (campaignOpt.isEmpty()) {
-                log.warn("Campaign not found for user targeting check: {}", candidate.getCampaignId());
-                return false;
-            }
-            
-            CampaignEntity campaign = campaignOpt.get();
-            
-            // 检查Campaign的受众定向设置
-            if (campaign.getTargeting() != null && campaign.getTargeting().getAudience() != null) {
-                CampaignEntity.AudienceTargeting audienceTargeting = campaign.getTargeting().getAudience();
-                
-                // 检查年龄定向
-                if (user.getYob() != null && audienceTargeting.getAgeRange() != null) {
-                    int age = LocalDateTime.now().getYear() - user.getYob();
-                    CampaignEntity.AgeRange ageRange = audienceTargeting.getAgeRange();
-                    
-                    if (ageRange.getMin() != null && age < ageRange.getMin()) {
-                        log.debug("Age targeting failed for campaign {}: user age {} < min age {}", 
-                            candidate.getCampaignId(), age, ageRange.getMin());
-                        return false;
-                    }
-                    
-                    if (ageRange.getMax() != null && age > ageRange.getMax()) {
-                        log.debug("Age targeting failed for campaign {}: user age {} > max age {}", 
-                            candidate.getCampaignId(), age, ageRange.getMax());
-                        return false;
-                    }
-                }
-                
-                // 检查性别定向
-                if (user.getGender() != null && audienceTargeting.getGenders() != null && !audienceTargeting.getGenders().isEmpty()) {
-                    String userGender = user.getGender();
-                    if (!audienceTargeting.getGenders().contains(userGender)) {
-                        log.debug("Gender targeting failed for campaign {}: user gender {} not in allowed genders {}", 
-                            candidate.getCampaignId(), userGender, audienceTargeting.getGenders());
-                        return false;
-                    }
-                }
-                
-                // 检查兴趣定向
-                if (user.getKeywords() != null && !user.getKeywords().trim().isEmpty() && 
-                    audienceTargeting.getInterests() != null && !audienceTargeting.getInterests().isEmpty()) {
-                    
-                    String[] userKeywords = user.getKeywords().toLowerCase().split("[,\\s]+");
-                    Set<String> userInterests = Arrays.stream(userKeywords)
-                        .map(String::trim)
-                        .filter(keyword -> !keyword.isEmpty())
-                        .collect(Collectors.toSet());
-                    
-                    Set<String> targetInterests = audienceTargeting.getInterests().stream()
-                        .map(String::toLowerCase)
-                        .collect(Collectors.toSet());
-                    
-                    // 检查是否有交集
-                    boolean hasInterestMatch = userInterests.stream()
-                        .anyMatch(targetInterests::contains);
-                    
-                    if (!hasInterestMatch) {
-                        log.debug("Interest targeting failed for campaign {}: user interests {} do not match target interests {}", 
-                            candidate.getCampaignId(), userInterests, targetInterests);
-                        return false;
-                    }
-                }
-            }
-            
-            log.debug("User targeting passed for campaign {}", candidate.getCampaignId());
-            return true;
-            
-        } catch (Exception e) {
-            log.error("Error checking user targeting for campaign {}: {}", 
-                candidate.getCampaignId(), e.getMessage(), e);
-            // 出现异常时，为了保证系统稳定性，默认返回false
+    private boolean matchesUserTargeting(BidCandidate candidate, CompiledTargeting compiledTargeting,
+                                         BidContext context) {
+        if (!context.hasUser()) {
+            return true; // 没有用户信息时默认通过
+        }
+        
+        if (!compiledTargeting.matchesUser(context.getAge(), context.getGender(), context.getKeywords())) {
+            log.debug("User targeting failed for campaign {}: age={}, gender={}, keywords={}",
+                candidate.getCampaignId(), context.getAge(), context.getGender(), context.getKeywords());
             return false;
         }
+        return true;
     }
     
     /**
@@ -381,5 +260,4 @@ public class AdSlotFilterService {
         stats.put("timestamp", LocalDateTime.now());
         stats.put("filterEnabled", true);
         return stats;
-    }
-}
\ No newline at end of file
+    }}
\ No newline at end of file
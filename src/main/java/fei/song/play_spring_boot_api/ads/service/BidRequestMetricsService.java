@@ -1,12 +1,22 @@
 package fei.song.play_spring_boot_api.ads.service;
 
+import com.mongodb.bulk.BulkWriteError;
 import fei.song.play_spring_boot_api.ads.domain.model.*;
 import fei.song.play_spring_boot_api.ads.infrastructure.persistence.repository.BidRequestMetricsRepository;
+import fei.song.play_spring_boot_api.ads.service.metrics.BidRequestMetricsAggregator;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -15,6 +25,7 @@ import java.util.stream.Collectors;
 
 /**
  * Bid Request 统计服务
+ * 请求线程只在内存中累加，统计按间隔以一次无序批量$inc upsert写入MongoDB，Redis总计数同时按增量累加
  */
 @Slf4j
 @Service
@@ -22,12 +33,18 @@ public class BidRequestMetricsService {
     
     private final BidRequestMetricsRepository metricsRepository;
     private final RedisTemplate<String, Object> redisTemplate;
+    private final MongoTemplate mongoTemplate;
+    
+    // 按(小时, 广告位类型, DSP来源)聚合的增量，写入前只存在于内存
+    private final BidRequestMetricsAggregator aggregator = new BidRequestMetricsAggregator(Clock.systemDefaultZone());
     
     public BidRequestMetricsService(
             BidRequestMetricsRepository metricsRepository,
-            @Autowired(required = false) RedisTemplate<String, Object> redisTemplate) {
+            @Autowired(required = false) RedisTemplate<String, Object> redisTemplate,
+            MongoTemplate mongoTemplate) {
         this.metricsRepository = metricsRepository;
         this.redisTemplate = redisTemplate;
+        this.mongoTemplate = mongoTemplate;
     }
     
     private static final String REDIS_KEY_PREFIX = "bid_request_metrics:";
@@ -36,23 +53,46 @@ public class BidRequestMetricsService {
     private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
     
     /**
-     * 记录Bid Request
+     * 记录Bid Request，只在内存中累加，不访问MongoDB与Redis
      */
     public void recordBidRequest(String adSlotType, String dspSource, boolean success, long responseTime) {
         try {
-            // 增加Redis计数器
-            if (redisTemplate != null) {
-                incrementRedisCounter();
-            }
-            
-            // 异步保存到MongoDB
-            saveBidRequestMetrics(adSlotType, dspSource, success, responseTime);
-            
+            aggregator.record(adSlotType, dspSource, success, responseTime);
         } catch (Exception e) {
             log.error("记录Bid Request统计失败", e);
         }
     }
     
+    /**
+     * 把内存中聚合的增量写入MongoDB，并按请求数增加Redis计数器
+     * MongoDB写入失败的增量放回内存等下次重试；无序批量写入中已成功的部分不再重复写入
+     */
+    public synchronized void flushMetrics() {
+        List<BidRequestMetricsAggregator.Delta> deltas = aggregator.drain();
+        if (deltas.isEmpty()) {
+            return;
+        }
+        long persistedRequests = writeDeltas(deltas);
+        
+        // 只累加已写入的请求数，写入失败的增量放回后随下次写入一起计数
+        if (redisTemplate != null && persistedRequests > 0) {
+            try {
+                incrementRedisCounter(persistedRequests);
+            } catch (Exception e) {
+                log.warn("增加Redis请求计数失败", e);
+            }
+        }
+    }
+    
+    /**
+     * 应用关闭时写入尚未写入的统计
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushMetrics();
+        log.info("Bid Request统计已在关闭前写入: pendingCells={}", aggregator.size());
+    }
+    
     /**
      * 获取实时统计数据
      */
@@ -84,7 +124,7 @@ public class BidRequestMetricsService {
                     .avgResponseTime(avgResponseTime)
                     .timestamp(now)
                     .build();
-                    
+        
         } catch (Exception e) {
             log.error("获取实时统计数据失败", e);
             return createEmptyStats();
@@ -119,7 +159,7 @@ public class BidRequestMetricsService {
                     })
                     .sorted((a, b) -> Long.compare(b.getTotalRequests(), a.getTotalRequests()))
                     .collect(Collectors.toList());
-                    
+        
         } catch (Exception e) {
             log.error("获取广告位类型统计失败", e);
             return Collections.emptyList();
@@ -154,7 +194,7 @@ public class BidRequestMetricsService {
                     })
                     .sorted((a, b) -> Long.compare(b.getTotalRequests(), a.getTotalRequests()))
                     .collect(Collectors.toList());
-                    
+        
         } catch (Exception e) {
             log.error("获取DSP来源统计失败", e);
             return Collections.emptyList();
@@ -176,10 +216,10 @@ public class BidRequestMetricsService {
     
     // 私有方法
     
-    private void incrementRedisCounter() {
+    private void incrementRedisCounter(long requests) {
         if (redisTemplate != null) {
             String key = REDIS_KEY_PREFIX + COUNTER_KEY;
-            redisTemplate.opsForValue().increment(key);
+            redisTemplate.opsForValue().increment(key, requests);
             redisTemplate.expire(key, 30, TimeUnit.DAYS);
         }
     }
@@ -193,45 +233,60 @@ public class BidRequestMetricsService {
         return 0L;
     }
     
-    private void saveBidRequestMetrics(String adSlotType, String dspSource, boolean success, long responseTime) {
+    /**
+     * 每个增量一个$inc upsert，合并为一次无序批量写入；新文档只在插入时设置日期与创建时间
+     *
+     * @return 已写入的请求数，不含写入失败而放回的增量
+     */
+    private long writeDeltas(List<BidRequestMetricsAggregator.Delta> deltas) {
         LocalDateTime now = LocalDateTime.now();
-        String hour = now.format(HOUR_FORMATTER);
-        String date = now.format(DATE_FORMATTER);
-        
-        // 查找或创建当前小时的统计记录
-        Optional<BidRequestMetrics> existingMetrics = metricsRepository
-                .findByHourAndAdSlotTypeAndDspSource(hour, adSlotType, dspSource);
-        
-        BidRequestMetrics metrics;
-        if (existingMetrics.isPresent()) {
-            metrics = existingMetrics.get();
-            metrics.setRequestCount(metrics.getRequestCount() + 1);
-            if (success) {
-                metrics.setSuccessCount(metrics.getSuccessCount() + 1);
-            } else {
-                metrics.setFailureCount(metrics.getFailureCount() + 1);
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class);
+        for (BidRequestMetricsAggregator.Delta delta : deltas) {
+            Query query = Query.query(Criteria.where("hour").is(delta.getHour())
+                .and("adSlotType").is(delta.getAdSlotType())
+                .and("dspSource").is(delta.getDspSource()));
+            Update update = new Update()
+                .inc("requestCount", delta.getRequests())
+                .inc("successCount", delta.getSuccesses())
+                .inc("failureCount", delta.getFailures())
+                .inc("totalResponseTime", delta.getTotalResponseTime())
+                .setOnInsert("date", delta.getDate())
+                .setOnInsert("timestamp", now)
+                .setOnInsert("createdAt", now)
+                .set("updatedAt", now);
+            bulk.upsert(query, update);
+        }
+        long requests = deltas.stream().mapToLong(BidRequestMetricsAggregator.Delta::getRequests).sum();
+        try {
+            bulk.execute();
+            return requests;
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                BidRequestMetricsAggregator.Delta failed = deltas.get(error.getIndex());
+                aggregator.restore(failed);
+                requests -= failed.getRequests();
             }
-            // 更新平均响应时间
-            long totalResponseTime = (long) (metrics.getAvgResponseTime() * (metrics.getRequestCount() - 1)) + responseTime;
-            metrics.setAvgResponseTime((double) totalResponseTime / metrics.getRequestCount());
-            metrics.setUpdatedAt(now);
-        } else {
-            metrics = BidRequestMetrics.builder()
-                    .hour(hour)
-                    .date(date)
-                    .adSlotType(adSlotType)
-                    .dspSource(dspSource)
-                    .requestCount(1L)
-                    .successCount(success ? 1L : 0L)
-                    .failureCount(success ? 0L : 1L)
-                    .avgResponseTime((double) responseTime)
-                    .timestamp(now)
-                    .createdAt(now)
-                    .updatedAt(now)
-                    .build();
+            log.error("Bid Request统计部分写入失败，失败的增量等待下次写入: failed={}, total={}",
+                e.getErrors().size(), deltas.size(), e);
+            return requests;
+        } catch (Exception e) {
+            deltas.forEach(aggregator::restore);
+            log.error("Bid Request统计写入失败，增量等待下次写入: cells={}", deltas.size(), e);
+            return 0L;
         }
-        
-        metricsRepository.save(metrics);
+    }
+    
+    /**
+     * 单条记录的总响应时间：新记录按$inc累加的总和，旧记录按平均值还原
+     */
+    private static double totalResponseTime(BidRequestMetrics metrics) {
+        if (metrics.getTotalResponseTime() != null) {
+            return metrics.getTotalResponseTime();
+        }
+        if (metrics.getAvgResponseTime() != null && metrics.getRequestCount() != null) {
+            return metrics.getAvgResponseTime() * metrics.getRequestCount();
+        }
+        return 0.0;
     }
     
     private Double calculateSuccessRate(List<BidRequestMetrics> metrics) {
@@ -246,10 +301,10 @@ public class BidRequestMetricsService {
     private Double calculateAvgResponseTime(List<BidRequestMetrics> metrics) {
         if (metrics.isEmpty()) return 0.0;
         
-        return metrics.stream()
-                .mapToDouble(BidRequestMetrics::getAvgResponseTime)
-                .average()
-                .orElse(0.0);
+        long totalRequests = metrics.stream().mapToLong(BidRequestMetrics::getRequestCount).sum();
+        double totalResponseTime = metrics.stream().mapToDouble(BidRequestMetricsService::totalResponseTime).sum();
+        
+        return totalRequests > 0 ? totalResponseTime / totalRequests : 0.0;
     }
     
     private BidRequestStatsDTO createEmptyStats() {
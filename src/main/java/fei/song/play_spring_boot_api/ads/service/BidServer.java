@@ -1,11 +1,22 @@
 package fei.song.play_spring_boot_api.ads.service;
 
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
 import fei.song.play_spring_boot_api.ads.domain.model.*;
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidDeadline;
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -20,61 +31,101 @@ public class BidServer {
     private final AdSlotFilterService adSlotFilterService;
     private final BiddingAlgorithm biddingAlgorithm;
     private final BudgetService budgetService;
+    private final AdsConfiguration adsConfiguration;
+    private final StageLatencyService stageLatencyService;
+    
+    // 截止时间相关统计
+    private final Map<BidStage, LongAdder> stageTimeouts = createStageCounters();
+    private final LongAdder deadlineNoBids = new LongAdder();
+    private final LongAdder degradedImpressions = new LongAdder();
     
     /**
      * 处理竞价请求
+     * 整个流水线受截止时间约束，超时后释放已预扣的预算并返回无竞价
      */
     public BidResponse processBidRequest(BidRequest bidRequest) {
         long startTime = System.currentTimeMillis();
+        BidDeadline deadline = BidDeadline.forRequest(bidRequest, adsConfiguration);
+        List<String> reservedBidIds = new ArrayList<>();
+        ExecutorService executor = null;
         
         try {
             log.info("开始处理竞价请求: requestId={}, impressions={}", 
                 bidRequest.getId(), bidRequest.getImp().size());
             
+            // 请求级特征上下文只构建一次并挂到请求上，反欺诈、候选生成与过滤阶段通过BidContext.of共享
+            BidContext.attach(bidRequest);
+            
             // 1. 反欺诈检测
-            if (fraudDetectionService.isFraudulent(bidRequest)) {
+            long stageStart = System.nanoTime();
+            boolean fraudulent = fraudDetectionService.isFraudulent(bidRequest);
+            recordStage(BidStage.FRAUD, stageStart);
+            if (fraudulent) {
                 log.warn("竞价请求被反欺诈系统拒绝: requestId={}", bidRequest.getId());
-                return createNoBidResponse(bidRequest.getId(), 2); // 欺诈流量
+                return createNoBidResponse(bidRequest.getId(), NoBidReason.INVALID_REQUEST); // 欺诈流量
             }
             
             // 2. 为每个广告位生成竞价
+            // 并行模式下各广告位在虚拟线程上同时评估，预算检查与预扣仍按广告位顺序在当前线程执行
             List<BidResponse.SeatBid> seatBids = new ArrayList<>();
+            List<Impression> impressions = bidRequest.getImp();
+            List<Future<BidCandidate>> evaluations = null;
+            if (shouldEvaluateConcurrently(impressions)) {
+                executor = Executors.newVirtualThreadPerTaskExecutor();
+                evaluations = submitImpressions(executor, impressions, bidRequest, deadline);
+            }
             
-            for (Impression impression : bidRequest.getImp()) {
-                BidResponse.Bid winningBid = processSingleImpression(impression, bidRequest);
-                if (winningBid != null) {
-                    // 检查预算
-                    if (budgetService.checkBudget(winningBid.getCid(), winningBid.getPrice())) {
-                        // 预扣预算
+            for (int i = 0; i < impressions.size(); i++) {
+                if (deadline.isExpired()) {
+                    return createDeadlineExceededResponse(bidRequest, deadline, reservedBidIds);
+                }
+                
+                BidCandidate winner = evaluations != null
+                    ? awaitImpression(evaluations.get(i), deadline)
+                    : processSingleImpression(impressions.get(i), bidRequest, deadline);
+                if (winner != null) {
+                    stageStart = System.nanoTime();
+                    // 检查预算（微元）
+                    if (budgetService.checkBudget(winner.getCampaignId(), winner.getBidPriceMicros())) {
+                        // 预扣预算，按请求与广告位生成的竞价ID作为预扣的键
+                        String bidId = bidIdOf(bidRequest, impressions.get(i));
                         String reservationId = budgetService.reserveBudget(
-                            winningBid.getCid(), 
-                            winningBid.getPrice(), 
-                            winningBid.getId());
+                            winner.getCampaignId(), 
+                            winner.getBidPriceMicros(), 
+                            bidId);
                         
                         if (reservationId != null) {
-                            // 创建座位竞价
+                            reservedBidIds.add(bidId);
+                            
+                            // 创建座位竞价，价格在此换算为OpenRTB的金额
                             BidResponse.SeatBid seatBid = BidResponse.SeatBid.builder()
-                                .bid(Arrays.asList(winningBid))
+                                .bid(Arrays.asList(buildBidResponse(bidId, winner, impressions.get(i))))
                                 .seat("seat_1") // 我们的座位ID
                                 .group(0) // 非组竞价
                                 .build();
                             
                             seatBids.add(seatBid);
                         } else {
-                            log.debug("预算预扣失败: campaignId={}, bidPrice={}", 
-                                winningBid.getCid(), winningBid.getPrice());
+                            log.debug("预算预扣失败: campaignId={}, bidPriceMicros={}", 
+                                winner.getCampaignId(), winner.getBidPriceMicros());
                         }
                     } else {
-                        log.debug("预算不足: campaignId={}, bidPrice={}", 
-                            winningBid.getCid(), winningBid.getPrice());
+                        log.debug("预算不足: campaignId={}, bidPriceMicros={}", 
+                            winner.getCampaignId(), winner.getBidPriceMicros());
                     }
+                    recordStage(BidStage.BUDGET, stageStart);
                 }
             }
             
+            // 超过截止时间的响应不会被交易平台采纳
+            if (deadline.isExpired()) {
+                return createDeadlineExceededResponse(bidRequest, deadline, reservedBidIds);
+            }
+            
             // 3. 构建竞价响应
             if (seatBids.isEmpty()) {
                 log.info("没有有效竞价: requestId={}", bidRequest.getId());
-                return createNoBidResponse(bidRequest.getId(), 0); // 未知原因
+                return createNoBidResponse(bidRequest.getId(), NoBidReason.UNKNOWN); // 未知原因
             }
             
             BidResponse response = BidResponse.builder()
@@ -89,31 +140,99 @@ public class BidServer {
                 bidRequest.getId(), seatBids.size(), processingTime);
             
             return response;
-            
+        
         } catch (Exception e) {
             log.error("处理竞价请求异常: requestId={}", bidRequest.getId(), e);
-            return createNoBidResponse(bidRequest.getId(), 1); // 技术错误
+            releaseReservations(reservedBidIds);
+            return createNoBidResponse(bidRequest.getId(), NoBidReason.TECHNICAL_ERROR); // 技术错误
+        } finally {
+            if (executor != null) {
+                // 不等待超时未完成的广告位，直接中断
+                executor.shutdownNow();
+            }
+        }
+    }
+    
+    /**
+     * 是否并行评估广告位
+     */
+    private boolean shouldEvaluateConcurrently(List<Impression> impressions) {
+        return adsConfiguration.getServer().isParallelImpressions() && impressions.size() > 1;
+    }
+    
+    /**
+     * 将每个广告位提交到虚拟线程，并发数受maxImpressionFanout限制
+     */
+    private List<Future<BidCandidate>> submitImpressions(ExecutorService executor, List<Impression> impressions,
+                                                         BidRequest bidRequest, BidDeadline deadline) {
+        Semaphore fanout = new Semaphore(Math.max(1, adsConfiguration.getServer().getMaxImpressionFanout()));
+        List<Future<BidCandidate>> evaluations = new ArrayList<>(impressions.size());
+        for (Impression impression : impressions) {
+            evaluations.add(executor.submit(() -> {
+                fanout.acquire();
+                try {
+                    return processSingleImpression(impression, bidRequest, deadline);
+                } finally {
+                    fanout.release();
+                }
+            }));
+        }
+        return evaluations;
+    }
+    
+    /**
+     * 在截止时间内等待广告位评估结果，超时或失败时视为无竞价
+     */
+    private BidCandidate awaitImpression(Future<BidCandidate> evaluation, BidDeadline deadline) {
+        try {
+            return evaluation.get(Math.max(deadline.remainingNanos(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            evaluation.cancel(true);
+            return null;
+        } catch (ExecutionException e) {
+            log.error("并行处理广告位异常", e.getCause());
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            evaluation.cancel(true);
+            return null;
         }
     }
     
     /**
-     * 处理单个广告位
+     * 处理单个广告位，返回设置了成交价格的获胜候选
+     * 剩余时间不足以完成全部阶段预算时进入降级模式
      */
-    private BidResponse.Bid processSingleImpression(Impression impression, BidRequest bidRequest) {
+    private BidCandidate processSingleImpression(Impression impression, BidRequest bidRequest, BidDeadline deadline) {
         try {
             log.debug("处理广告位: impressionId={}, bidfloor={}", 
                 impression.getId(), impression.getBidfloor());
             
             // 1. 生成候选广告
-            List<BidCandidate> candidates = biddingAlgorithm.generateBidCandidates(impression, bidRequest);
+            long stageStart = System.nanoTime();
+            List<BidCandidate> candidates;
+            if (deadline.hasAtLeast(BidStage.CANDIDATES.remainingBudgetMs(stageBudgets()))) {
+                candidates = biddingAlgorithm.generateBidCandidates(impression, bidRequest);
+            } else {
+                degradedImpressions.increment();
+                log.debug("剩余时间不足，降级生成候选: impressionId={}, remainingMs={}", 
+                    impression.getId(), deadline.remainingMillis());
+                candidates = biddingAlgorithm.generateBidCandidates(impression, bidRequest, true);
+            }
+            recordStage(BidStage.CANDIDATES, stageStart);
             if (candidates.isEmpty()) {
                 log.debug("没有候选广告: impressionId={}", impression.getId());
                 return null;
             }
+            if (deadline.isExpired()) {
+                return null;
+            }
             
             // 2. 过滤候选广告
+            stageStart = System.nanoTime();
             List<BidCandidate> filteredCandidates = adSlotFilterService
                 .filterCandidatesForImpression(impression, bidRequest, candidates);
+            recordStage(BidStage.FILTER, stageStart);
             
             if (filteredCandidates.isEmpty()) {
                 log.debug("所有候选广告被过滤: impressionId={}", impression.getId());
@@ -129,54 +248,101 @@ public class BidServer {
                 log.debug("预算不足，无法竞价: impressionId={}", impression.getId());
                 return null;
             }
+            if (deadline.isExpired()) {
+                return null;
+            }
             
-            // 4. 排序并选择获胜者
-            List<BidCandidate> sortedCandidates = biddingAlgorithm.sortCandidates(filteredCandidates);
-            BidCandidate winner = biddingAlgorithm.selectWinningBid(sortedCandidates, impression);
+            // 4. 拍卖选择获胜者
+            stageStart = System.nanoTime();
+            BidCandidate winner = biddingAlgorithm.runAuction(filteredCandidates, impression, bidRequest);
+            recordStage(BidStage.AUCTION, stageStart);
             
             if (winner == null) {
                 log.debug("没有获胜竞价: impressionId={}", impression.getId());
                 return null;
             }
             
-            // 5. 构建竞价响应
-            return buildBidResponse(winner, impression);
-            
+            return winner;
+        
         } catch (Exception e) {
             log.error("处理广告位异常: impressionId={}", impression.getId(), e);
             return null;
         }
     }
     
+    /**
+     * 超过截止时间：释放已预扣的预算并返回无竞价
+     */
+    private BidResponse createDeadlineExceededResponse(BidRequest bidRequest, BidDeadline deadline, List<String> reservedBidIds) {
+        deadlineNoBids.increment();
+        releaseReservations(reservedBidIds);
+        log.warn("竞价请求超过截止时间，放弃竞价: requestId={}, tmax={}, elapsed={}ms", 
+            bidRequest.getId(), bidRequest.getTimeoutMs(), deadline.elapsedMillis());
+        return createNoBidResponse(bidRequest.getId(), NoBidReason.DEADLINE_EXCEEDED);
+    }
+    
+    /**
+     * 释放本次请求中已预扣的预算
+     */
+    private void releaseReservations(List<String> reservedBidIds) {
+        for (String bidId : reservedBidIds) {
+            budgetService.releaseBudgetReservation(bidId);
+        }
+    }
+    
+    /**
+     * 记录阶段耗时到耗时分布，超过阶段预算时计数
+     */
+    private void recordStage(BidStage stage, long stageStartNanos) {
+        long elapsedNanos = System.nanoTime() - stageStartNanos;
+        stageLatencyService.record(stage, elapsedNanos);
+        if (elapsedNanos > TimeUnit.MILLISECONDS.toNanos(stage.budgetMs(stageBudgets()))) {
+            stageTimeouts.get(stage).increment();
+            log.debug("竞价阶段超出时间预算: stage={}, elapsed={}ms", stage, TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        }
+    }
+    
+    private AdsConfiguration.StageBudgets stageBudgets() {
+        return adsConfiguration.getServer().getStageBudgets();
+    }
+    
     /**
      * 检查并预扣预算
      */
     private boolean checkAndReserveBudget(BidCandidate candidate) {
         // 这里应该调用预算管理服务
         // 简化实现：模拟预算检查
-        double availableBudget = 1000.0; // 模拟可用预算
-        boolean hasEnoughBudget = availableBudget >= candidate.getBidPrice();
+        long availableBudgetMicros = 1000 * Money.MICROS_PER_UNIT; // 模拟可用预算
+        boolean hasEnoughBudget = availableBudgetMicros >= candidate.getBidPriceMicros();
         
         candidate.setBudgetAvailable(hasEnoughBudget);
         
         if (hasEnoughBudget) {
-            log.debug("预算预扣成功: adId={}, price={}", candidate.getAdId(), candidate.getBidPrice());
+            log.debug("预算预扣成功: adId={}, priceMicros={}", candidate.getAdId(), candidate.getBidPriceMicros());
         } else {
-            log.debug("预算不足: adId={}, price={}, available={}", 
-                candidate.getAdId(), candidate.getBidPrice(), availableBudget);
+            log.debug("预算不足: adId={}, priceMicros={}, availableMicros={}", 
+                candidate.getAdId(), candidate.getBidPriceMicros(), availableBudgetMicros);
         }
         
         return hasEnoughBudget;
     }
     
+    /**
+     * 竞价ID：请求ID + 广告位ID，同一请求的每个广告位唯一，用作预算预扣与获胜/损失通知的键
+     * 创意ID在并发请求之间以及同一请求的多个广告位之间共享，不能作为键
+     */
+    private static String bidIdOf(BidRequest bidRequest, Impression impression) {
+        return bidRequest.getId() + ":" + impression.getId();
+    }
+    
     /**
      * 构建竞价响应
      */
-    private BidResponse.Bid buildBidResponse(BidCandidate candidate, Impression impression) {
+    private BidResponse.Bid buildBidResponse(String bidId, BidCandidate candidate, Impression impression) {
         return BidResponse.Bid.builder()
-            .id(candidate.getAdId())
+            .id(bidId)
             .impid(impression.getId())
-            .price(candidate.getBidPrice())
+            .price(Money.toDouble(candidate.getBidPriceMicros()))
             .adid(candidate.getAdId())
             .nurl(candidate.getNotificationUrl())
             .adm(candidate.getAdMarkup())
@@ -211,7 +377,7 @@ public class BidServer {
             
             // 1. 确认预算扣除
             if (winPrice != null) {
-                budgetService.confirmBudgetSpend(bidId, winPrice);
+                budgetService.confirmBudgetSpend(bidId, Money.toMicros(winPrice));
             }
             confirmBudgetDeduction(bidId, winPrice);
             
@@ -220,7 +386,7 @@ public class BidServer {
             
             // 3. 触发后续处理（如统计更新、报告生成等）
             triggerPostWinProcessing(bidId, winPrice);
-            
+        
         } catch (Exception e) {
             log.error("处理获胜通知异常: bidId={}", bidId, e);
         }
@@ -239,7 +405,7 @@ public class BidServer {
             
             // 2. 记录损失日志
             recordLossEvent(bidId, winPrice, lossReason);
-            
+        
         } catch (Exception e) {
             log.error("处理损失通知异常: bidId={}", bidId, e);
         }
@@ -295,6 +461,29 @@ public class BidServer {
         stats.put("filtering", adSlotFilterService.getFilterStatistics());
         stats.put("bidding", biddingAlgorithm.getBiddingStatistics());
         stats.put("budgetStats", budgetService.getBudgetStatistics());
+        stats.put("deadline", getDeadlineStatistics());
         return stats;
     }
+    
+    /**
+     * 获取截止时间统计信息
+     */
+    private Map<String, Object> getDeadlineStatistics() {
+        Map<String, Long> timeouts = new LinkedHashMap<>();
+        stageTimeouts.forEach((stage, counter) -> timeouts.put(stage.name(), counter.sum()));
+        
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("stageTimeouts", timeouts);
+        stats.put("deadlineNoBids", deadlineNoBids.sum());
+        stats.put("degradedImpressions", degradedImpressions.sum());
+        return stats;
+    }
+    
+    private static Map<BidStage, LongAdder> createStageCounters() {
+        Map<BidStage, LongAdder> counters = new EnumMap<>(BidStage.class);
+        for (BidStage stage : BidStage.values()) {
+            counters.put(stage, new LongAdder());
+        }
+        return counters;
+    }
 }
\ No newline at end of file
@@ -2,13 +2,16 @@ package fei.song.play_spring_boot_api.ads.service;
 
 import fei.song.play_spring_boot_api.ads.domain.model.*;
 import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.service.auction.AuctionEngine;
+import fei.song.play_spring_boot_api.ads.service.auction.AuctionEngineSelector;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignPricing;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignSnapshot;
+import fei.song.play_spring_boot_api.ads.service.campaign.CreativeTemplate;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * 竞价算法服务
@@ -19,6 +22,9 @@ import java.util.stream.Collectors;
 public class BiddingAlgorithm {
     
     private final CampaignService campaignService;
+    private final AuctionEngineSelector auctionEngineSelector;
+    private final BudgetService budgetService;
+    private final GeoLocationService geoLocationService;
     
     // 算法权重配置
     private static final double USER_VALUE_WEIGHT = 0.3;
@@ -26,19 +32,41 @@ public class BiddingAlgorithm {
     private static final double COMPETITION_WEIGHT = 0.2;
     private static final double QUALITY_WEIGHT = 0.25;
     
+    // 降级模式下跳过质量评分时使用的中性质量分数
+    private static final double NEUTRAL_QUALITY_SCORE = 0.5;
+    
+    // 交易平台未提供国家且IP地理位置未知时的默认国家
+    private static final String DEFAULT_COUNTRY = "US";
+    
+    // 未设置基础竞价时的默认值（1元）
+    private static final long DEFAULT_BASE_BID_MICROS = Money.MICROS_PER_UNIT;
+    
     /**
      * 为广告位生成竞价候选
      */
     public List<BidCandidate> generateBidCandidates(Impression impression, BidRequest bidRequest) {
+        return generateBidCandidates(impression, bidRequest, false);
+    }
+    
+    /**
+     * 为广告位生成竞价候选
+     * 降级模式下跳过质量评分等可选计算，仅保留出价所需的最小计算量
+     */
+    public List<BidCandidate> generateBidCandidates(Impression impression, BidRequest bidRequest, boolean degraded) {
+        BidContext context = BidContext.of(bidRequest);
         List<BidCandidate> candidates = new ArrayList<>();
         
         // 从infrastructure层获取真实的广告活动数据
-        candidates.addAll(getRealAdCandidates(impression, bidRequest));
+        candidates.addAll(getRealAdCandidates(impression, bidRequest, context));
         
-        // 计算每个候选的竞价价格和分数
+        // 计算每个候选的竞价价格和分数，只依赖请求的特征从上下文读取
         for (BidCandidate candidate : candidates) {
-            calculateBidPrice(candidate, bidRequest);
-            calculateQualityScore(candidate, bidRequest);
+            calculateBidPrice(candidate, context);
+            if (degraded) {
+                candidate.setQualityScore(NEUTRAL_QUALITY_SCORE);
+            } else {
+                calculateQualityScore(candidate, bidRequest);
+            }
             calculateFinalScore(candidate);
         }
         
@@ -46,170 +74,87 @@ public class BiddingAlgorithm {
     }
     
     /**
-     * 对竞价候选进行排序
-     */
-    public List<BidCandidate> sortCandidates(List<BidCandidate> candidates) {
-        return candidates.stream()
-            .sorted((c1, c2) -> {
-                // 首先按优先级排序
-                int priorityCompare = Integer.compare(c2.getPriority(), c1.getPriority());
-                if (priorityCompare != 0) {
-                    return priorityCompare;
-                }
-                
-                // 然后按最终分数排序
-                int scoreCompare = Double.compare(c2.getFinalScore(), c1.getFinalScore());
-                if (scoreCompare != 0) {
-                    return scoreCompare;
-                }
-                
-                // 最后按竞价价格排序
-                return Double.compare(c2.getBidPrice(), c1.getBidPrice());
-            })
-            .collect(Collectors.toList());
-    }
-    
-    /**
-     * 选择获胜竞价（第二价格拍卖）
+     * 对广告位的候选执行拍卖，返回设置了成交价格的获胜者
+     * 拍卖类型按请求的at与PMP设置选择，只需一次线性遍历，不对候选整体排序
      */
-    public BidCandidate selectWinningBid(List<BidCandidate> sortedCandidates, Impression impression) {
-        if (sortedCandidates.isEmpty()) {
-            return null;
+    public BidCandidate runAuction(List<BidCandidate> candidates, Impression impression, BidRequest bidRequest) {
+        AuctionEngine engine = auctionEngineSelector.select(bidRequest, impression);
+        BidCandidate winner = engine.selectWinner(candidates, impression);
+        if (winner != null) {
+            log.debug("选择获胜竞价: adId={}, auction={}, finalPriceMicros={}", 
+                winner.getAdId(), engine.getName(), winner.getBidPriceMicros());
         }
-        
-        BidCandidate winner = sortedCandidates.get(0);
-        
-        // 实施第二价格拍卖
-        if (sortedCandidates.size() > 1) {
-            BidCandidate secondPlace = sortedCandidates.get(1);
-            double secondPrice = Math.max(secondPlace.getBidPrice(), 
-                impression.getBidfloor() != null ? impression.getBidfloor() : 0.0);
-            
-            // 设置获胜价格为第二高价格 + 0.01
-            winner.setBidPrice(secondPrice + 0.01);
-        } else {
-            // 只有一个竞价者，使用底价
-            if (impression.getBidfloor() != null && impression.getBidfloor() > 0) {
-                winner.setBidPrice(Math.max(winner.getBidPrice(), impression.getBidfloor()));
-            }
-        }
-        
-        log.info("选择获胜竞价: adId={}, finalPrice={}, originalBid={}", 
-            winner.getAdId(), winner.getBidPrice(), 
-            sortedCandidates.get(0).getBidPrice());
-        
         return winner;
     }
     
     /**
-     * 计算竞价价格
+     * 计算竞价价格（微元）
      */
-    private void calculateBidPrice(BidCandidate candidate, BidRequest bidRequest) {
-        double baseBid = getBaseBidPrice(candidate);
+    private void calculateBidPrice(BidCandidate candidate, BidContext context) {
+        long baseBidMicros = getBaseBidMicros(candidate);
         
         // 用户价值调整
-        double userValueMultiplier = calculateUserValueMultiplier(bidRequest);
+        double userValueMultiplier = context.getUserValue();
         
         // 上下文相关性调整
-        double contextMultiplier = calculateContextRelevanceMultiplier(candidate, bidRequest);
+        double contextMultiplier = calculateContextRelevanceMultiplier(candidate, context);
         
         // 竞争强度调整
-        double competitionMultiplier = calculateCompetitionMultiplier(bidRequest);
+        double competitionMultiplier = calculateCompetitionMultiplier(context);
         
-        double finalBid = baseBid * userValueMultiplier * contextMultiplier * competitionMultiplier;
+        double multiplier = userValueMultiplier * contextMultiplier * competitionMultiplier;
         
-        candidate.setBidPrice(finalBid);
+        candidate.setBidPriceMicros(Math.round(baseBidMicros * multiplier));
         candidate.setUserValueScore(userValueMultiplier);
         candidate.setContextRelevanceScore(contextMultiplier);
         candidate.setCompetitionScore(competitionMultiplier);
     }
     
     /**
-     * 获取基础竞价价格
+     * 获取基础竞价价格（微元）
      */
-    private double getBaseBidPrice(BidCandidate candidate) {
-        // 从campaign数据中获取真实的竞价价格
-        CampaignEntity.Bidding bidding = campaignService.getCampaignBidding(candidate.getCampaignId());
-        if (bidding != null && bidding.getBaseBid() != null) {
-            return bidding.getBaseBid().doubleValue();
+    private long getBaseBidMicros(BidCandidate candidate) {
+        // 快照构建时已换算为微元
+        CampaignPricing pricing = campaignService.getCampaignPricing(candidate.getCampaignId());
+        if (pricing != null && pricing.getBaseBidMicros() != Money.UNSET) {
+            return pricing.getBaseBidMicros();
         }
         
         // 如果没有设置基础竞价，使用默认值
         log.warn("未找到广告活动基础竞价，使用默认值: campaignId={}", candidate.getCampaignId());
-        return 1.0;
+        return DEFAULT_BASE_BID_MICROS;
     }
     
     /**
-     * 计算用户价值倍数
+     * 计算上下文相关性倍数（网站类别与设备类别来自请求级上下文）
      */
-    private double calculateUserValueMultiplier(BidRequest bidRequest) {
-        double multiplier = 1.0;
-        
-        if (bidRequest.getUser() != null) {
-            User user = bidRequest.getUser();
-            
-            // 基于用户年龄调整
-            if (user.getYob() != null) {
-                int age = 2024 - user.getYob();
-                if (age >= 25 && age <= 45) {
-                    multiplier += 0.2; // 核心消费群体
-                }
-            }
-            
-            // 基于用户性别调整
-            if (user.getGender() != null) {
-                multiplier += 0.1; // 有性别信息的用户更有价值
-            }
-            
-            // 基于用户兴趣关键词调整
-            if (user.getKeywords() != null && !user.getKeywords().trim().isEmpty()) {
-                multiplier += 0.15; // 有兴趣标签的用户更有价值
-            }
-        }
-        
-        return Math.min(multiplier, 2.0); // 最大不超过2倍
-    }
-    
-    /**
-     * 计算上下文相关性倍数
-     */
-    private double calculateContextRelevanceMultiplier(BidCandidate candidate, BidRequest bidRequest) {
+    private double calculateContextRelevanceMultiplier(BidCandidate candidate, BidContext context) {
         double multiplier = 1.0;
         
         // 基于网站类别匹配
-        if (bidRequest.getSite() != null && bidRequest.getSite().getCat() != null) {
-            if (candidate.getCategories() != null) {
-                boolean hasMatch = candidate.getCategories().stream()
-                    .anyMatch(adCat -> bidRequest.getSite().getCat().contains(adCat));
-                if (hasMatch) {
-                    multiplier += 0.3;
-                }
-            }
+        if (context.matchesSiteCategory(candidate.getCategories())) {
+            multiplier += 0.3;
         }
         
-        // 基于设备类型匹配
-        if (bidRequest.getDevice() != null && bidRequest.getDevice().getDevicetype() != null) {
-            // 移动设备上的移动优化广告
-            if (bidRequest.getDevice().getDevicetype() == 1 || bidRequest.getDevice().getDevicetype() == 4) {
-                multiplier += 0.2;
-            }
+        // 移动设备上的移动优化广告
+        if (context.isMobile()) {
+            multiplier += 0.2;
         }
         
         return Math.min(multiplier, 1.8);
     }
     
     /**
-     * 计算竞争强度倍数
+     * 计算竞争强度倍数（基于时段的竞争强度）
      */
-    private double calculateCompetitionMultiplier(BidRequest bidRequest) {
-        // 基于时间段的竞争强度
-        int hour = java.time.LocalTime.now().getHour();
-        if (hour >= 19 && hour <= 23) {
-            return 1.3; // 黄金时段竞争激烈
-        } else if (hour >= 9 && hour <= 18) {
-            return 1.1; // 工作时间适中竞争
-        } else {
-            return 0.9; // 其他时间竞争较少
+    private double calculateCompetitionMultiplier(BidContext context) {
+        switch (context.getHourBucket()) {
+            case PRIME_TIME:
+                return 1.3; // 黄金时段竞争激烈
+            case DAYTIME:
+                return 1.1; // 工作时间适中竞争
+            default:
+                return 0.9; // 其他时间竞争较少
         }
     }
     
@@ -256,72 +201,38 @@ public class BiddingAlgorithm {
     /**
      * 从infrastructure层获取真实的广告候选
      */
-    private List<BidCandidate> getRealAdCandidates(Impression impression, BidRequest bidRequest) {
+    private List<BidCandidate> getRealAdCandidates(Impression impression, BidRequest bidRequest, BidContext context) {
         List<BidCandidate> candidates = new ArrayList<>();
         
         try {
             // 从CampaignService获取匹配的广告活动
-             String country = bidRequest.getDevice() != null ? "US" : "US"; // 默认国家
-             Integer deviceType = bidRequest.getDevice() != null ? bidRequest.getDevice().getDevicetype() : 1;
-             BigDecimal minBid = impression.getBidfloor() != null ? BigDecimal.valueOf(impression.getBidfloor()) : BigDecimal.ZERO;
+            String country = geoLocationService.resolveCountry(bidRequest.getDevice());
+            if (country == null) {
+                country = DEFAULT_COUNTRY;
+            }
+            Integer deviceType = bidRequest.getDevice() != null ? context.getDeviceType() : Integer.valueOf(1);
+            long minBidMicros = Money.toMicros(impression.getBidfloor(), 0L);
             
-            List<CampaignEntity> matchingCampaigns = campaignService.getMatchingCampaigns(country, deviceType, minBid);
+            // 定向结果与预算可投放位图按字求交集，预算耗尽的活动不产生候选
+            CampaignSnapshot snapshot = campaignService.getSnapshot();
+            List<CampaignEntity> matchingCampaigns = snapshot.getTargetingIndex()
+                .match(country, deviceType, context.getOs(), context.getAge(), minBidMicros,
+                    budgetService.getEligibleCampaigns(snapshot));
             
-            // 将CampaignEntity转换为BidCandidate
+            // 基于快照中预生成的创意模板构建候选，每个campaign的每个creative对应一个候选
             for (CampaignEntity campaign : matchingCampaigns) {
-                // 为每个campaign的每个creative创建一个候选
-                if (campaign.getCreatives() != null) {
-                    for (CampaignEntity.Creative creative : campaign.getCreatives()) {
-                        BidCandidate candidate = BidCandidate.builder()
-                            .impressionId(impression.getId())
-                            .adId(creative.getCreativeId())
-                            .creativeId(creative.getCreativeId())
-                            .campaignId(campaign.getCampaignId())
-                            .priority(1)
-                            .adMarkup(creative.getHtml() != null ? creative.getHtml() : "<div>广告内容</div>")
-                            .advertiserDomains(Arrays.asList(campaign.getAdvertiserId() + ".com"))
-                            .categories(Arrays.asList("IAB1", "IAB2"))
-                            .width(impression.getBanner() != null ? impression.getBanner().getW() : 300)
-                            .height(impression.getBanner() != null ? impression.getBanner().getH() : 250)
-                            .clickUrl("https://" + campaign.getAdvertiserId() + ".com/click")
-                            .impressionUrl("https://" + campaign.getAdvertiserId() + ".com/impression")
-                            .notificationUrl("https://" + campaign.getAdvertiserId() + ".com/win")
-                            .seatId("seat_" + campaign.getAdvertiserId())
-                            .passedFraudCheck(true)
-                            .budgetAvailable(true)
-                            .targetingMatched(true)
-                            .build();
-                        
-                        candidates.add(candidate);
-                    }
-                } else {
-                    // 如果没有创意，创建一个基础候选
-                    BidCandidate candidate = BidCandidate.builder()
-                        .impressionId(impression.getId())
-                        .adId("ad_" + campaign.getCampaignId())
-                        .creativeId("default_creative")
-                        .campaignId(campaign.getCampaignId())
-                        .priority(1)
-                        .adMarkup("<div>广告内容</div>")
-                        .advertiserDomains(Arrays.asList(campaign.getAdvertiserId() + ".com"))
-                        .categories(Arrays.asList("IAB1", "IAB2"))
-                        .width(impression.getBanner() != null ? impression.getBanner().getW() : 300)
-                        .height(impression.getBanner() != null ? impression.getBanner().getH() : 250)
-                        .clickUrl("https://" + campaign.getAdvertiserId() + ".com/click")
-                        .impressionUrl("https://" + campaign.getAdvertiserId() + ".com/impression")
-                        .notificationUrl("https://" + campaign.getAdvertiserId() + ".com/win")
-                        .seatId("seat_" + campaign.getAdvertiserId())
-                        .passedFraudCheck(true)
-                        .budgetAvailable(true)
-                        .targetingMatched(true)
-                        .build();
-                    
-                    candidates.add(candidate);
+                // 超出匀速投放速率的活动不生成候选，避免无效的评分与预算检查
+                if (!budgetService.isPacingAllowed(campaign.getCampaignId())) {
+                    log.debug("广告活动超出匀速投放速率，跳过: campaignId={}", campaign.getCampaignId());
+                    continue;
+                }
+                for (CreativeTemplate template : snapshot.getCreativeTemplates(campaign.getCampaignId())) {
+                    candidates.add(template.newCandidate(bidRequest.getId(), impression));
                 }
             }
             
             log.debug("从infrastructure层获取到{}个广告候选", candidates.size());
-            
+        
         } catch (Exception e) {
             log.error("获取广告候选时发生错误，使用备用候选", e);
             // 如果获取真实数据失败，返回一个基础候选以保证系统可用性
@@ -365,7 +276,7 @@ public class BiddingAlgorithm {
         stats.put("contextRelevanceWeight", CONTEXT_RELEVANCE_WEIGHT);
         stats.put("competitionWeight", COMPETITION_WEIGHT);
         stats.put("qualityWeight", QUALITY_WEIGHT);
-        stats.put("auctionType", "second_price");
+        stats.put("auctionType", auctionEngineSelector.getDefaultEngine().getName());
         return stats;
     }
 }
\ No newline at end of file
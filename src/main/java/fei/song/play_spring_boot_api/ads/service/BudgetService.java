@@ -1,46 +1,123 @@
 package fei.song.play_spring_boot_api.ads.service;
 
 import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
-import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
-import lombok.RequiredArgsConstructor;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.service.budget.BudgetLeaseManager;
+import fei.song.play_spring_boot_api.ads.service.budget.BudgetPacer;
+import fei.song.play_spring_boot_api.ads.service.budget.SpendJournal;
+import fei.song.play_spring_boot_api.ads.service.budget.SpendJournalState;
+import fei.song.play_spring_boot_api.ads.service.budget.TimingWheel;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignPricing;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignSnapshot;
+import fei.song.play_spring_boot_api.ads.service.campaign.EligibleCampaigns;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Clock;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 预算管理服务
+ * 金额统一为微元，预算数据来自快照中预先换算的CampaignPricing；
+ * 启用预算租约时日预算由集群共享：检查与预扣只操作本节点从Redis申领的租约余额，不产生网络I/O；
+ * 启用消费日志时预扣、确认与释放事件写入本地日志，启动时回放恢复本节点的消费与在途预扣；
+ * 匀速投放按当日剩余预算与剩余时间限制消费速率，在候选生成阶段跳过超速的广告活动；
+ * 消费加预扣越过上限的广告活动立即从可投放位图中清位，候选生成阶段不再匹配到它
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class BudgetService {
     
     private final AdsConfiguration adsConfiguration;
     private final CampaignService campaignService;
     
+    // 集群预算租约，未启用时为null，日预算按本节点消耗控制
+    private final BudgetLeaseManager budgetLeaseManager;
+    
+    // 预算消费日志，未启用时为null
+    private final SpendJournal spendJournal;
+    
     // 广告活动预算信息
     private final Map<String, CampaignBudget> campaignBudgets = new ConcurrentHashMap<>();
     
     // 预算预扣记录
     private final Map<String, BudgetReservation> budgetReservations = new ConcurrentHashMap<>();
     
+    // 匀速投放的令牌桶
+    private final BudgetPacer budgetPacer;
+    
+    // 按快照序号的可投放位图，快照替换或跨天时重建
+    private volatile Eligibility eligibility;
+    
+    // 预扣到期时间轮，插入与取消为O(1)，到期由定时任务按tick推进
+    private final TimingWheel<BudgetReservation> reservationExpiry;
+    
     // 统计信息
     private final AtomicLong totalBudgetChecks = new AtomicLong(0);
     private final AtomicLong budgetCheckFailures = new AtomicLong(0);
     private final AtomicLong budgetReservationCount = new AtomicLong(0);
     private final AtomicLong budgetConfirmations = new AtomicLong(0);
-    private final DoubleAdder totalSpent = new DoubleAdder();
+    private final LongAdder totalSpentMicros = new LongAdder();
+    
+    public BudgetService(AdsConfiguration adsConfiguration, CampaignService campaignService,
+                         @Autowired(required = false) BudgetLeaseManager budgetLeaseManager,
+                         @Autowired(required = false) SpendJournal spendJournal) {
+        this.adsConfiguration = adsConfiguration;
+        this.campaignService = campaignService;
+        this.budgetLeaseManager = budgetLeaseManager;
+        this.spendJournal = spendJournal;
+        this.budgetPacer = new BudgetPacer(adsConfiguration.getBudget().getPacing(), Clock.systemDefaultZone());
+        this.reservationExpiry = new TimingWheel<>(adsConfiguration.getBudget().getReservationTickMs(),
+            System.currentTimeMillis());
+        if (spendJournal != null) {
+            restoreFromJournal(spendJournal.takeRecoveredState());
+        }
+    }
+    
+    /**
+     * 按消费日志回放结果恢复本节点的消费与未到期的预扣
+     * 日志中的当日消费只在同一天内恢复；恢复的预扣不占用预算租约，确认时只上报实际消费
+     */
+    private void restoreFromJournal(SpendJournalState state) {
+        if (state == null) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        for (SpendJournalState.CampaignSpend spend : state.getCampaigns()) {
+            long dailyMicros = today.equals(spend.getDay()) ? spend.getDailySpentMicros() : 0L;
+            getCampaignBudget(spend.getCampaignId()).restoreSpentMicros(dailyMicros, spend.getTotalSpentMicros());
+        }
+        
+        long ttlMillis = adsConfiguration.getBudget().getReservationTtlSeconds() * 1000L;
+        for (SpendJournalState.OpenReservation open : state.getReservations()) {
+            BudgetReservation reservation = BudgetReservation.builder()
+                .reservationId(open.getBidId())
+                .campaignId(open.getCampaignId())
+                .amountMicros(open.getAmountMicros())
+                .createdAtMillis(open.getExpiresAtMillis() - ttlMillis)
+                .expiresAtMillis(open.getExpiresAtMillis())
+                .restored(true)
+                .build();
+            budgetReservations.put(reservation.getReservationId(), reservation);
+            getCampaignBudget(reservation.getCampaignId()).addReservedMicros(reservation.getAmountMicros());
+            reservation.expiry = reservationExpiry.schedule(reservation, reservation.getExpiresAtMillis());
+        }
+        
+        log.info("从预算消费日志恢复: campaigns={}, reservations={}",
+            state.getCampaigns().size(), state.getReservations().size());
+    }
     
     /**
      * 检查预算是否充足
      */
-    public boolean checkBudget(String campaignId, double bidPrice) {
+    public boolean checkBudget(String campaignId, long bidPriceMicros) {
         totalBudgetChecks.incrementAndGet();
         
         if (!adsConfiguration.getBudget().isEnabled()) {
@@ -48,67 +125,207 @@ public class BudgetService {
         }
         
         try {
-            // 从infrastructure层获取真实的预算数据
-            CampaignEntity.Budget campaignBudget = campaignService.getCampaignBudget(campaignId);
-            if (campaignBudget == null) {
+            // 快照中已换算为微元的预算数据
+            CampaignPricing pricing = campaignService.getCampaignPricing(campaignId);
+            if (pricing == null || !pricing.hasBudget()) {
                 log.warn("未找到广告活动预算信息，使用默认预算检查: campaignId={}", campaignId);
-                return checkDefaultBudget(campaignId, bidPrice);
+                return checkDefaultBudget(campaignId, bidPriceMicros);
             }
             
             // 获取内存中的消费记录（用于实时预算控制）
             CampaignBudget localBudget = getCampaignBudget(campaignId);
             
             // 检查日预算
-            double dailyBudget = campaignBudget.getDailyBudget() != null ? 
-                campaignBudget.getDailyBudget().doubleValue() : adsConfiguration.getBudget().getDefaultDailyBudget();
-            double dailySpent = campaignBudget.getSpentToday() != null ? 
-                campaignBudget.getSpentToday().doubleValue() : 0.0;
-            dailySpent += localBudget.getDailySpent(); // 加上内存中的实时消费
-            
-            if (dailySpent + bidPrice > dailyBudget) {
-                log.debug("广告活动日预算不足: campaignId={}, dailySpent={}, dailyBudget={}, bidPrice={}",
-                    campaignId, dailySpent, dailyBudget, bidPrice);
+            long dailyBudgetMicros = dailyBudgetOf(pricing);
+            if (budgetLeaseManager != null) {
+                // 集群共享日预算：只检查本节点租约余额
+                if (!budgetLeaseManager.hasBudget(campaignId, bidPriceMicros, dailyBudgetMicros)) {
+                    log.debug("广告活动预算租约余额不足: campaignId={}, bidPriceMicros={}", campaignId, bidPriceMicros);
+                    budgetCheckFailures.incrementAndGet();
+                    return false;
+                }
+            } else if (exceedsLocalDailyBudget(campaignId, pricing, localBudget, dailyBudgetMicros, bidPriceMicros)) {
                 budgetCheckFailures.incrementAndGet();
                 return false;
             }
             
             // 检查总预算
-            double totalBudget = campaignBudget.getTotalBudget() != null ? 
-                campaignBudget.getTotalBudget().doubleValue() : adsConfiguration.getBudget().getDefaultDailyBudget() * 30;
-            double totalSpent = campaignBudget.getSpentTotal() != null ? 
-                campaignBudget.getSpentTotal().doubleValue() : 0.0;
-            totalSpent += localBudget.getTotalSpent(); // 加上内存中的实时消费
+            long totalBudgetMicros = pricing.getTotalBudgetMicros() != Money.UNSET ? 
+                pricing.getTotalBudgetMicros() : defaultDailyBudgetMicros() * 30;
+            long totalSpentMicros = pricing.getSpentTotalMicros() + localBudget.getTotalSpentMicros(); // 加上内存中的实时消费
             
-            if (totalSpent + bidPrice > totalBudget) {
-                log.debug("广告活动总预算不足: campaignId={}, totalSpent={}, totalBudget={}, bidPrice={}",
-                    campaignId, totalSpent, totalBudget, bidPrice);
+            if (totalSpentMicros + bidPriceMicros > totalBudgetMicros) {
+                log.debug("广告活动总预算不足: campaignId={}, totalSpentMicros={}, totalBudgetMicros={}, bidPriceMicros={}",
+                    campaignId, totalSpentMicros, totalBudgetMicros, bidPriceMicros);
                 budgetCheckFailures.incrementAndGet();
                 return false;
             }
             
             return true;
-            
+        
         } catch (Exception e) {
-            log.error("预算检查异常: campaignId={}, bidPrice={}", campaignId, bidPrice, e);
+            log.error("预算检查异常: campaignId={}, bidPriceMicros={}", campaignId, bidPriceMicros, e);
             budgetCheckFailures.incrementAndGet();
             return false;
         }
     }
     
+    /**
+     * 获取与快照对应的可投放位图，候选生成时与定向结果求交集
+     * 快照更新或跨天后首次调用时按全部活动的预算重建；预算控制关闭或快照已过期时返回null（不做限制）
+     */
+    public EligibleCampaigns getEligibleCampaigns(CampaignSnapshot snapshot) {
+        if (!adsConfiguration.getBudget().isEnabled()) {
+            return null;
+        }
+        Eligibility current = eligibility;
+        if (current != null && current.snapshot == snapshot && System.currentTimeMillis() < current.validUntilMillis) {
+            return current.campaigns;
+        }
+        if (current != null && snapshot.getVersion() < current.snapshot.getVersion()) {
+            return null;
+        }
+        return rebuildEligibility(snapshot).campaigns;
+    }
+    
+    private synchronized Eligibility rebuildEligibility(CampaignSnapshot snapshot) {
+        Eligibility current = eligibility;
+        if (current != null && current.snapshot == snapshot && System.currentTimeMillis() < current.validUntilMillis) {
+            return current;
+        }
+        
+        EligibleCampaigns campaigns = new EligibleCampaigns(snapshot.getVersion(), snapshot.size());
+        for (int ordinal = 0; ordinal < snapshot.size(); ordinal++) {
+            String campaignId = snapshot.getCampaigns().get(ordinal).getCampaignId();
+            if (isExhausted(campaignId, snapshot.getPricing(campaignId))) {
+                campaigns.clear(ordinal);
+            }
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long validUntilMillis = LocalDate.now(zone).plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        current = new Eligibility(snapshot, campaigns, validUntilMillis);
+        eligibility = current;
+        
+        log.debug("可投放位图已重建: version={}, campaigns={}, eligible={}",
+            snapshot.getVersion(), snapshot.size(), campaigns.cardinality());
+        return current;
+    }
+    
+    /**
+     * 按最新的消费与预扣更新广告活动的可投放位
+     */
+    private void updateEligibility(String campaignId) {
+        Eligibility current = eligibility;
+        if (current == null) {
+            return;
+        }
+        int ordinal = current.snapshot.ordinalOf(campaignId);
+        if (ordinal < 0) {
+            return;
+        }
+        if (isExhausted(campaignId, current.snapshot.getPricing(campaignId))) {
+            current.campaigns.clear(ordinal);
+        } else {
+            current.campaigns.set(ordinal);
+        }
+    }
+    
+    /**
+     * 重新检查已清位的广告活动，纠正并发更新时被后写入覆盖的位
+     */
+    private void recheckExhaustedCampaigns() {
+        Eligibility current = eligibility;
+        if (current == null) {
+            return;
+        }
+        EligibleCampaigns campaigns = current.campaigns;
+        for (int ordinal = 0; ordinal < campaigns.size(); ordinal++) {
+            if (!campaigns.get(ordinal)) {
+                updateEligibility(current.snapshot.getCampaigns().get(ordinal).getCampaignId());
+            }
+        }
+    }
+    
+    /**
+     * 消费加预扣是否已达到预算上限
+     * 启用预算租约时日预算由租约余额控制，这里只判断总预算
+     */
+    private boolean isExhausted(String campaignId, CampaignPricing pricing) {
+        CampaignBudget localBudget = getCampaignBudget(campaignId);
+        long reservedMicros = localBudget.getReservedMicros();
+        if (pricing == null || !pricing.hasBudget()) {
+            return localBudget.getDailySpentMicros() + reservedMicros >= localBudget.getDailyBudgetMicros()
+                || localBudget.getTotalSpentMicros() + reservedMicros >= localBudget.getTotalBudgetMicros();
+        }
+        if (budgetLeaseManager == null
+            && pricing.getSpentTodayMicros() + localBudget.getDailySpentMicros() + reservedMicros >= dailyBudgetOf(pricing)) {
+            return true;
+        }
+        long totalBudgetMicros = pricing.getTotalBudgetMicros() != Money.UNSET ? 
+            pricing.getTotalBudgetMicros() : defaultDailyBudgetMicros() * 30;
+        return pricing.getSpentTotalMicros() + localBudget.getTotalSpentMicros() + reservedMicros >= totalBudgetMicros;
+    }
+    
+    /**
+     * 匀速投放检查：广告活动的消费是否仍在目标速率内，在候选生成阶段调用，超速的活动不参与本次竞价
+     */
+    public boolean isPacingAllowed(String campaignId) {
+        if (!adsConfiguration.getBudget().isEnabled() || !adsConfiguration.getBudget().getPacing().isEnabled()) {
+            return true;
+        }
+        return budgetPacer.allows(campaignId, () -> remainingDailyMicros(campaignId));
+    }
+    
+    /**
+     * 当日剩余预算（微元）
+     */
+    private long remainingDailyMicros(String campaignId) {
+        CampaignBudget localBudget = getCampaignBudget(campaignId);
+        CampaignPricing pricing = campaignService.getCampaignPricing(campaignId);
+        if (pricing == null || !pricing.hasBudget()) {
+            return localBudget.getDailyBudgetMicros() - localBudget.getDailySpentMicros();
+        }
+        return dailyBudgetOf(pricing) - pricing.getSpentTodayMicros() - localBudget.getDailySpentMicros();
+    }
+    
+    /**
+     * 按本节点消耗检查日预算（未启用预算租约时）
+     */
+    private boolean exceedsLocalDailyBudget(String campaignId, CampaignPricing pricing, CampaignBudget localBudget,
+                                            long dailyBudgetMicros, long bidPriceMicros) {
+        long dailySpentMicros = pricing.getSpentTodayMicros() + localBudget.getDailySpentMicros(); // 加上内存中的实时消费
+        
+        if (dailySpentMicros + bidPriceMicros > dailyBudgetMicros) {
+            log.debug("广告活动日预算不足: campaignId={}, dailySpentMicros={}, dailyBudgetMicros={}, bidPriceMicros={}",
+                campaignId, dailySpentMicros, dailyBudgetMicros, bidPriceMicros);
+            return true;
+        }
+        return false;
+    }
+    
+    private long dailyBudgetOf(CampaignPricing pricing) {
+        return pricing != null && pricing.getDailyBudgetMicros() != Money.UNSET ? 
+            pricing.getDailyBudgetMicros() : defaultDailyBudgetMicros();
+    }
+    
+    private long defaultDailyBudgetMicros() {
+        return Money.toMicros(adsConfiguration.getBudget().getDefaultDailyBudget());
+    }
+    
     /**
      * 使用默认预算进行检查（当无法获取真实预算数据时）
      */
-    private boolean checkDefaultBudget(String campaignId, double bidPrice) {
+    private boolean checkDefaultBudget(String campaignId, long bidPriceMicros) {
         CampaignBudget budget = getCampaignBudget(campaignId);
         
         // 检查日预算
-        if (budget.getDailySpent() + bidPrice > budget.getDailyBudget()) {
+        if (budget.getDailySpentMicros() + bidPriceMicros > budget.getDailyBudgetMicros()) {
             budgetCheckFailures.incrementAndGet();
             return false;
         }
         
         // 检查总预算
-        if (budget.getTotalSpent() + bidPrice > budget.getTotalBudget()) {
+        if (budget.getTotalSpentMicros() + bidPriceMicros > budget.getTotalBudgetMicros()) {
             budgetCheckFailures.incrementAndGet();
             return false;
         }
@@ -119,7 +336,7 @@ public class BudgetService {
     /**
      * 预扣预算
      */
-    public String reserveBudget(String campaignId, double amount, String bidId) {
+    public String reserveBudget(String campaignId, long amountMicros, String bidId) {
         if (!adsConfiguration.getBudget().isEnabled()) {
             return bidId;
         }
@@ -127,29 +344,44 @@ public class BudgetService {
         try {
             CampaignBudget budget = getCampaignBudget(campaignId);
             
+            // 集群共享日预算：从本节点租约余额中预扣
+            if (budgetLeaseManager != null) {
+                long capMicros = dailyBudgetOf(campaignService.getCampaignPricing(campaignId));
+                if (!budgetLeaseManager.tryReserve(campaignId, amountMicros, capMicros)) {
+                    log.debug("预算租约余额不足，预扣失败: campaignId={}, amountMicros={}, bidId={}", campaignId, amountMicros, bidId);
+                    budgetCheckFailures.incrementAndGet();
+                    return null;
+                }
+            }
+            
             // 创建预扣记录
+            long now = System.currentTimeMillis();
             BudgetReservation reservation = BudgetReservation.builder()
                 .reservationId(bidId)
                 .campaignId(campaignId)
-                .amount(amount)
-                .createdAt(LocalDateTime.now())
-                .expiresAt(LocalDateTime.now().plusSeconds(
-                    adsConfiguration.getBudget().getReservationTtlSeconds()))
+                .amountMicros(amountMicros)
+                .createdAtMillis(now)
+                .expiresAtMillis(now + adsConfiguration.getBudget().getReservationTtlSeconds() * 1000L)
                 .build();
             
             budgetReservations.put(bidId, reservation);
-            budget.addReservedAmount(amount);
+            budget.addReservedMicros(amountMicros);
+            reservation.expiry = reservationExpiry.schedule(reservation, reservation.getExpiresAtMillis());
+            if (spendJournal != null) {
+                spendJournal.recordReserve(bidId, campaignId, amountMicros, reservation.getExpiresAtMillis());
+            }
+            updateEligibility(campaignId);
             
             budgetReservationCount.incrementAndGet();
             
-            log.debug("预算预扣成功: campaignId={}, amount={}, bidId={}", 
-                campaignId, amount, bidId);
+            log.debug("预算预扣成功: campaignId={}, amountMicros={}, bidId={}", 
+                campaignId, amountMicros, bidId);
             
             return bidId;
-            
+        
         } catch (Exception e) {
-            log.error("预算预扣异常: campaignId={}, amount={}, bidId={}", 
-                campaignId, amount, bidId, e);
+            log.error("预算预扣异常: campaignId={}, amountMicros={}, bidId={}", 
+                campaignId, amountMicros, bidId, e);
             return null;
         }
     }
@@ -157,7 +389,7 @@ public class BudgetService {
     /**
      * 确认消费预算
      */
-    public void confirmBudgetSpend(String bidId, double actualAmount) {
+    public void confirmBudgetSpend(String bidId, long actualMicros) {
         if (!adsConfiguration.getBudget().isEnabled()) {
             return;
         }
@@ -168,26 +400,36 @@ public class BudgetService {
                 log.warn("未找到预算预扣记录: bidId={}", bidId);
                 return;
             }
+            reservationExpiry.cancel(reservation.expiry);
             
             CampaignBudget budget = getCampaignBudget(reservation.getCampaignId());
             
             // 释放预扣金额
-            budget.removeReservedAmount(reservation.getAmount());
+            budget.removeReservedMicros(reservation.getAmountMicros());
+            if (budgetLeaseManager != null) {
+                long leasedMicros = reservation.isRestored() ? 0L : reservation.getAmountMicros();
+                budgetLeaseManager.confirm(reservation.getCampaignId(), leasedMicros, actualMicros);
+            }
+            if (spendJournal != null) {
+                spendJournal.recordConfirm(bidId, reservation.getCampaignId(), reservation.getAmountMicros(), actualMicros);
+            }
             
             // 增加实际消费
-            budget.addSpent(actualAmount);
-            totalSpent.add(actualAmount);
+            budget.addSpentMicros(actualMicros);
+            totalSpentMicros.add(actualMicros);
+            budgetPacer.onSpend(reservation.getCampaignId(), actualMicros);
+            updateEligibility(reservation.getCampaignId());
             
             budgetConfirmations.incrementAndGet();
             
-            log.debug("预算消费确认: campaignId={}, reservedAmount={}, actualAmount={}, bidId={}",
-                reservation.getCampaignId(), reservation.getAmount(), actualAmount, bidId);
+            log.debug("预算消费确认: campaignId={}, reservedMicros={}, actualMicros={}, bidId={}",
+                reservation.getCampaignId(), reservation.getAmountMicros(), actualMicros, bidId);
             
             // 检查预算告警
             checkBudgetAlert(budget);
-            
+        
         } catch (Exception e) {
-            log.error("预算消费确认异常: bidId={}, actualAmount={}", bidId, actualAmount, e);
+            log.error("预算消费确认异常: bidId={}, actualMicros={}", bidId, actualMicros, e);
         }
     }
     
@@ -205,18 +447,30 @@ public class BudgetService {
                 log.debug("未找到预算预扣记录: bidId={}", bidId);
                 return;
             }
-            
-            CampaignBudget budget = getCampaignBudget(reservation.getCampaignId());
-            budget.removeReservedAmount(reservation.getAmount());
-            
-            log.debug("预算预扣释放: campaignId={}, amount={}, bidId={}",
-                reservation.getCampaignId(), reservation.getAmount(), bidId);
-            
+            reservationExpiry.cancel(reservation.expiry);
+            releaseReservedAmount(reservation);
+        
         } catch (Exception e) {
             log.error("预算预扣释放异常: bidId={}", bidId, e);
         }
     }
     
+    private void releaseReservedAmount(BudgetReservation reservation) {
+        CampaignBudget budget = getCampaignBudget(reservation.getCampaignId());
+        budget.removeReservedMicros(reservation.getAmountMicros());
+        if (budgetLeaseManager != null && !reservation.isRestored()) {
+            budgetLeaseManager.release(reservation.getCampaignId(), reservation.getAmountMicros());
+        }
+        if (spendJournal != null) {
+            spendJournal.recordRelease(reservation.getReservationId(), reservation.getCampaignId(),
+                reservation.getAmountMicros());
+        }
+        updateEligibility(reservation.getCampaignId());
+        
+        log.debug("预算预扣释放: campaignId={}, amountMicros={}, bidId={}",
+            reservation.getCampaignId(), reservation.getAmountMicros(), reservation.getReservationId());
+    }
+    
     /**
      * 设置广告活动预算
      */
@@ -224,8 +478,9 @@ public class BudgetService {
         CampaignBudget budget = campaignBudgets.computeIfAbsent(campaignId, 
             k -> new CampaignBudget(campaignId));
         
-        budget.setDailyBudget(dailyBudget);
-        budget.setTotalBudget(totalBudget);
+        budget.setDailyBudgetMicros(Money.toMicros(dailyBudget));
+        budget.setTotalBudgetMicros(Money.toMicros(totalBudget));
+        updateEligibility(campaignId);
         
         log.info("设置广告活动预算: campaignId={}, dailyBudget={}, totalBudget={}",
             campaignId, dailyBudget, totalBudget);
@@ -237,23 +492,26 @@ public class BudgetService {
     public CampaignBudget getCampaignBudget(String campaignId) {
         return campaignBudgets.computeIfAbsent(campaignId, k -> {
             CampaignBudget budget = new CampaignBudget(campaignId);
-            budget.setDailyBudget(adsConfiguration.getBudget().getDefaultDailyBudget());
-            budget.setTotalBudget(adsConfiguration.getBudget().getDefaultDailyBudget() * 30);
+            budget.setDailyBudgetMicros(defaultDailyBudgetMicros());
+            budget.setTotalBudgetMicros(defaultDailyBudgetMicros() * 30);
             return budget;
         });
     }
     
     /**
      * 清理过期的预算预扣
+     * 推进时间轮，只处理已到期的槽位，不扫描全部预扣记录
      */
     public void cleanupExpiredReservations() {
-        LocalDateTime now = LocalDateTime.now();
+        cleanupExpiredReservations(System.currentTimeMillis());
+    }
+    
+    int cleanupExpiredReservations(long nowMillis) {
         int cleanedCount = 0;
-        
-        for (Map.Entry<String, BudgetReservation> entry : budgetReservations.entrySet()) {
-            BudgetReservation reservation = entry.getValue();
-            if (reservation.getExpiresAt().isBefore(now)) {
-                releaseBudgetReservation(entry.getKey());
+        for (BudgetReservation reservation : reservationExpiry.advance(nowMillis)) {
+            // 只释放仍在记录中的同一预扣，已确认或已释放的跳过
+            if (budgetReservations.remove(reservation.getReservationId(), reservation)) {
+                releaseReservedAmount(reservation);
                 cleanedCount++;
             }
         }
@@ -261,14 +519,16 @@ public class BudgetService {
         if (cleanedCount > 0) {
             log.info("清理过期预算预扣: count={}", cleanedCount);
         }
+        recheckExhaustedCampaigns();
+        return cleanedCount;
     }
     
     /**
      * 检查预算告警
      */
     private void checkBudgetAlert(CampaignBudget budget) {
-        double dailyUsageRate = budget.getDailySpent() / budget.getDailyBudget();
-        double totalUsageRate = budget.getTotalSpent() / budget.getTotalBudget();
+        double dailyUsageRate = (double) budget.getDailySpentMicros() / budget.getDailyBudgetMicros();
+        double totalUsageRate = (double) budget.getTotalSpentMicros() / budget.getTotalBudgetMicros();
         double alertThreshold = adsConfiguration.getBudget().getAlertThreshold();
         
         if (dailyUsageRate >= alertThreshold) {
@@ -286,27 +546,55 @@ public class BudgetService {
      * 获取预算统计信息
      */
     public Map<String, Object> getBudgetStatistics() {
-        return Map.of(
-            "totalBudgetChecks", totalBudgetChecks.get(),
-            "budgetCheckFailures", budgetCheckFailures.get(),
-            "budgetReservations", budgetReservationCount.get(),
-            "budgetConfirmations", budgetConfirmations.get(),
-            "totalSpent", totalSpent.sum(),
-            "activeCampaigns", campaignBudgets.size(),
-            "activeReservations", budgetReservations.size()
-        );
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalBudgetChecks", totalBudgetChecks.get());
+        stats.put("budgetCheckFailures", budgetCheckFailures.get());
+        stats.put("budgetReservations", budgetReservationCount.get());
+        stats.put("budgetConfirmations", budgetConfirmations.get());
+        stats.put("totalSpent", Money.toDouble(totalSpentMicros.sum()));
+        stats.put("activeCampaigns", campaignBudgets.size());
+        stats.put("activeReservations", budgetReservations.size());
+        stats.put("pendingExpirations", reservationExpiry.size());
+        Eligibility current = eligibility;
+        if (current != null) {
+            stats.put("eligibleCampaigns", current.campaigns.cardinality());
+        }
+        if (budgetLeaseManager != null) {
+            stats.put("lease", budgetLeaseManager.getStatistics());
+        }
+        stats.put("pacing", budgetPacer.getStatistics());
+        if (spendJournal != null) {
+            stats.put("journal", spendJournal.getStatistics());
+        }
+        return stats;
     }
     
     /**
-     * 广告活动预算信息
+     * 可投放位图及其对应的快照，validUntilMillis为次日零点
+     */
+    private static final class Eligibility {
+        private final CampaignSnapshot snapshot;
+        private final EligibleCampaigns campaigns;
+        private final long validUntilMillis;
+        
+        private Eligibility(CampaignSnapshot snapshot, EligibleCampaigns campaigns, long validUntilMillis) {
+            this.snapshot = snapshot;
+            this.campaigns = campaigns;
+            this.validUntilMillis = validUntilMillis;
+        }
+    }
+    
+    /**
+     * 广告活动预算信息（微元）
+     * 计数器为整数，预扣与释放成对加减后精确归零，不会累积浮点误差
      */
     public static class CampaignBudget {
         private final String campaignId;
-        private volatile double dailyBudget;
-        private volatile double totalBudget;
-        private final DoubleAdder dailySpent = new DoubleAdder();
-        private final DoubleAdder totalSpent = new DoubleAdder();
-        private final DoubleAdder reservedAmount = new DoubleAdder();
+        private volatile long dailyBudgetMicros;
+        private volatile long totalBudgetMicros;
+        private final LongAdder dailySpentMicros = new LongAdder();
+        private final LongAdder totalSpentMicros = new LongAdder();
+        private final LongAdder reservedMicros = new LongAdder();
         private volatile LocalDate lastResetDate = LocalDate.now();
         
         public CampaignBudget(String campaignId) {
@@ -314,37 +602,46 @@ public class BudgetService {
         }
         
         public String getCampaignId() { return campaignId; }
-        public double getDailyBudget() { return dailyBudget; }
-        public void setDailyBudget(double dailyBudget) { this.dailyBudget = dailyBudget; }
-        public double getTotalBudget() { return totalBudget; }
-        public void setTotalBudget(double totalBudget) { this.totalBudget = totalBudget; }
+        public long getDailyBudgetMicros() { return dailyBudgetMicros; }
+        public void setDailyBudgetMicros(long dailyBudgetMicros) { this.dailyBudgetMicros = dailyBudgetMicros; }
+        public long getTotalBudgetMicros() { return totalBudgetMicros; }
+        public void setTotalBudgetMicros(long totalBudgetMicros) { this.totalBudgetMicros = totalBudgetMicros; }
         
-        public double getDailySpent() {
+        public long getDailySpentMicros() {
             resetDailySpentIfNeeded();
-            return dailySpent.sum();
+            return dailySpentMicros.sum();
         }
         
-        public double getTotalSpent() { return totalSpent.sum(); }
-        public double getReservedAmount() { return reservedAmount.sum(); }
+        public long getTotalSpentMicros() { return totalSpentMicros.sum(); }
+        public long getReservedMicros() { return reservedMicros.sum(); }
         
-        public void addSpent(double amount) {
+        public void addSpentMicros(long micros) {
             resetDailySpentIfNeeded();
-            dailySpent.add(amount);
-            totalSpent.add(amount);
+            dailySpentMicros.add(micros);
+            totalSpentMicros.add(micros);
+        }
+        
+        public void addReservedMicros(long micros) {
+            reservedMicros.add(micros);
         }
         
-        public void addReservedAmount(double amount) {
-            reservedAmount.add(amount);
+        public void removeReservedMicros(long micros) {
+            reservedMicros.add(-micros);
         }
         
-        public void removeReservedAmount(double amount) {
-            reservedAmount.add(-amount);
+        /**
+         * 恢复重启前的消费
+         */
+        public void restoreSpentMicros(long dailyMicros, long totalMicros) {
+            resetDailySpentIfNeeded();
+            dailySpentMicros.add(dailyMicros);
+            totalSpentMicros.add(totalMicros);
         }
         
         private void resetDailySpentIfNeeded() {
             LocalDate today = LocalDate.now();
             if (!today.equals(lastResetDate)) {
-                dailySpent.reset();
+                dailySpentMicros.reset();
                 lastResetDate = today;
             }
         }
@@ -356,32 +653,38 @@ public class BudgetService {
     public static class BudgetReservation {
         private final String reservationId;
         private final String campaignId;
-        private final double amount;
-        private final LocalDateTime createdAt;
-        private final LocalDateTime expiresAt;
+        private final long amountMicros;
+        private final long createdAtMillis;
+        private final long expiresAtMillis;
+        // 从消费日志恢复的预扣，不占用预算租约
+        private final boolean restored;
+        private volatile TimingWheel.Timeout<BudgetReservation> expiry;
         
         private BudgetReservation(Builder builder) {
             this.reservationId = builder.reservationId;
             this.campaignId = builder.campaignId;
-            this.amount = builder.amount;
-            this.createdAt = builder.createdAt;
-            this.expiresAt = builder.expiresAt;
+            this.amountMicros = builder.amountMicros;
+            this.createdAtMillis = builder.createdAtMillis;
+            this.expiresAtMillis = builder.expiresAtMillis;
+            this.restored = builder.restored;
         }
         
         public static Builder builder() { return new Builder(); }
         
         public String getReservationId() { return reservationId; }
         public String getCampaignId() { return campaignId; }
-        public double getAmount() { return amount; }
-        public LocalDateTime getCreatedAt() { return createdAt; }
-        public LocalDateTime getExpiresAt() { return expiresAt; }
+        public long getAmountMicros() { return amountMicros; }
+        public long getCreatedAtMillis() { return createdAtMillis; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
+        public boolean isRestored() { return restored; }
         
         public static class Builder {
             private String reservationId;
             private String campaignId;
-            private double amount;
-            private LocalDateTime createdAt;
-            private LocalDateTime expiresAt;
+            private long amountMicros;
+            private long createdAtMillis;
+            private long expiresAtMillis;
+            private boolean restored;
             
             public Builder reservationId(String reservationId) {
                 this.reservationId = reservationId;
@@ -393,18 +696,23 @@ public class BudgetService {
                 return this;
             }
             
-            public Builder amount(double amount) {
-                this.amount = amount;
+            public Builder amountMicros(long amountMicros) {
+                this.amountMicros = amountMicros;
+                return this;
+            }
+            
+            public Builder createdAtMillis(long createdAtMillis) {
+                this.createdAtMillis = createdAtMillis;
                 return this;
             }
             
-            public Builder createdAt(LocalDateTime createdAt) {
-                this.createdAt = createdAt;
+            public Builder expiresAtMillis(long expiresAtMillis) {
+                this.expiresAtMillis = expiresAtMillis;
                 return this;
             }
             
-            public Builder expiresAt(LocalDateTime expiresAt) {
-                this.expiresAt = expiresAt;
+            public Builder restored(boolean restored) {
+                this.restored = restored;
                 return this;
             }
             
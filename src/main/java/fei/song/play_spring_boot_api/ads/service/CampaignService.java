@@ -1,7 +1,10 @@
 package fei.song.play_spring_boot_api.ads.service;
 
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
 import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
 import fei.song.play_spring_boot_api.ads.infrastructure.persistence.service.OpenRTBDataService;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignPricing;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignSnapshot;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -9,10 +12,13 @@ import org.springframework.stereotype.Service;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 广告活动服务
- * 提供广告活动相关的业务逻辑，从infrastructure层获取数据
+ * 提供广告活动相关的业务逻辑，从infrastructure层获取数据。
+ * 竞价路径上的查询全部基于内存快照，快照由后台任务定期重建并原子替换。
  */
 @Slf4j
 @Service
@@ -21,20 +27,59 @@ public class CampaignService {
     
     private final OpenRTBDataService openRTBDataService;
     
+    // 当前生效的广告活动快照
+    private final AtomicReference<CampaignSnapshot> snapshotRef = new AtomicReference<>(CampaignSnapshot.EMPTY);
+    
+    // 快照版本号
+    private final AtomicLong snapshotVersion = new AtomicLong(0);
+    
+    /**
+     * 获取当前广告活动快照，只读取引用，不做任何I/O
+     * 快照只由后台任务加载（启动时立即执行一次），尚未加载成功时为空快照，即没有可投放的广告活动
+     */
+    public CampaignSnapshot getSnapshot() {
+        return snapshotRef.get();
+    }
+    
+    /**
+     * 从infrastructure层重新加载活跃广告活动并原子替换快照
+     * 加载失败时保留旧快照
+     */
+    public synchronized CampaignSnapshot refreshSnapshot() {
+        try {
+            List<CampaignEntity> campaigns = openRTBDataService.getActiveCampaigns();
+            CampaignSnapshot snapshot = CampaignSnapshot.build(snapshotVersion.incrementAndGet(), campaigns);
+            snapshotRef.set(snapshot);
+            log.debug("广告活动快照已更新: version={}, campaigns={}", snapshot.getVersion(), snapshot.size());
+            return snapshot;
+        } catch (Exception e) {
+            log.error("广告活动快照加载失败，继续使用旧快照: version={}", snapshotRef.get().getVersion(), e);
+            return snapshotRef.get();
+        }
+    }
+    
     /**
      * 获取所有活跃的广告活动
      */
     public List<CampaignEntity> getActiveCampaigns() {
         log.debug("获取活跃的广告活动");
-        return openRTBDataService.getActiveCampaigns();
+        return getSnapshot().getCampaigns();
     }
     
     /**
      * 根据定向条件获取匹配的广告活动
      */
     public List<CampaignEntity> getMatchingCampaigns(String country, Integer deviceType, BigDecimal minBid) {
-        log.debug("获取匹配的广告活动: country={}, deviceType={}, minBid={}", country, deviceType, minBid);
-        return openRTBDataService.getMatchingCampaigns(country, deviceType, minBid);
+        return getMatchingCampaigns(country, deviceType, null, null, minBid);
+    }
+    
+    /**
+     * 根据定向条件获取匹配的广告活动（基于快照的定向倒排索引）
+     */
+    public List<CampaignEntity> getMatchingCampaigns(String country, Integer deviceType, String os, Integer age, BigDecimal minBid) {
+        log.debug("获取匹配的广告活动: country={}, deviceType={}, os={}, age={}, minBid={}", country, deviceType, os, age, minBid);
+        return getSnapshot().getTargetingIndex()
+            .match(country, deviceType, os, age, Money.toMicros(minBid, 0L));
     }
     
     /**
@@ -42,10 +87,21 @@ public class CampaignService {
      */
     public Optional<CampaignEntity> getCampaignById(String campaignId) {
         log.debug("根据ID获取广告活动: campaignId={}", campaignId);
-        List<CampaignEntity> activeCampaigns = getActiveCampaigns();
-        return activeCampaigns.stream()
-            .filter(campaign -> campaignId.equals(campaign.getCampaignId()))
-            .findFirst();
+        return Optional.ofNullable(getSnapshot().getCampaign(campaignId));
+    }
+    
+    /**
+     * 根据advertiserId获取广告活动
+     */
+    public List<CampaignEntity> getCampaignsByAdvertiser(String advertiserId) {
+        return getSnapshot().getCampaignsByAdvertiser(advertiserId);
+    }
+    
+    /**
+     * 根据creativeId获取创意
+     */
+    public Optional<CampaignEntity.Creative> getCreativeById(String creativeId) {
+        return Optional.ofNullable(getSnapshot().getCreative(creativeId));
     }
     
     /**
@@ -61,6 +117,13 @@ public class CampaignService {
         return null;
     }
     
+    /**
+     * 获取广告活动换算为微元的出价与预算，不存在时返回null
+     */
+    public CampaignPricing getCampaignPricing(String campaignId) {
+        return getSnapshot().getPricing(campaignId);
+    }
+    
     /**
      * 获取广告活动的竞价信息
      */
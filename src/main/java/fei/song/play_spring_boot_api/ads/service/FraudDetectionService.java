@@ -1,15 +1,26 @@
 package fei.song.play_spring_boot_api.ads.service;
 
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidContext;
 import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
 import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import fei.song.play_spring_boot_api.ads.domain.model.Geo;
+import fei.song.play_spring_boot_api.ads.service.fraud.DeviceBlacklist;
+import fei.song.play_spring_boot_api.ads.service.fraud.DeviceFingerprint;
+import fei.song.play_spring_boot_api.ads.service.fraud.FraudVerdictCache;
+import fei.song.play_spring_boot_api.ads.service.fraud.HeavyHitterDetector;
+import fei.song.play_spring_boot_api.ads.service.fraud.IpPrefixTrie;
+import fei.song.play_spring_boot_api.ads.service.fraud.SlidingWindowCounter;
+import fei.song.play_spring_boot_api.ads.service.fraud.UserAgentClassifier;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.regex.Pattern;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * 反欺诈检测服务
@@ -18,34 +29,133 @@ import java.util.regex.Pattern;
 @Service
 public class FraudDetectionService {
     
-    // IP黑名单
+    // 手动添加的IP黑名单（地址或网段）
     private final Set<String> ipBlacklist = ConcurrentHashMap.newKeySet();
     
-    // 设备指纹黑名单
-    private final Set<String> deviceBlacklist = ConcurrentHashMap.newKeySet();
+    // 手动添加的黑名单构成的前缀树，添加时重建
+    private volatile IpPrefixTrie manualIpRanges = IpPrefixTrie.EMPTY;
+    
+    // 配置与黑名单文件中的网段，后台重建后整体替换
+    private final AtomicReference<IpPrefixTrie> ipRanges = new AtomicReference<>(IpPrefixTrie.EMPTY);
+    
+    private final AdsConfiguration.FraudDetection config;
+    private long ipBlacklistFileModified = Long.MIN_VALUE;
+    private long deviceBlacklistFileModified = Long.MIN_VALUE;
+    
+    // 设备指纹黑名单（64位指纹，布隆过滤器前置），重新加载时整体替换
+    private final AtomicReference<DeviceBlacklist> deviceBlacklist = new AtomicReference<>(new DeviceBlacklist());
+    
+    // 手动添加的设备指纹，重新加载文件时保留
+    private final Set<Long> manualDeviceFingerprints = ConcurrentHashMap.newKeySet();
     
     // 域名白名单
     private final Set<String> domainWhitelist = ConcurrentHashMap.newKeySet();
     
-    // 点击频率记录 <IP, 点击时间列表>
-    private final Map<String, List<LocalDateTime>> clickFrequencyMap = new ConcurrentHashMap<>();
+    // 按IP的点击频率计数（滑动窗口，内存有界）
+    private final SlidingWindowCounter clickCounter;
+    
+    // 按IP的显示频率计数（滑动窗口，内存有界）
+    private final SlidingWindowCounter impressionCounter;
+    
+    // 按配置的可疑User Agent模式构建的分类器，模式变化时整体替换
+    private volatile UserAgentClassifier userAgentClassifier;
+    
+    // IP/设备/App/网站的每分钟高频键统计与自动封禁，未启用时为null
+    private final HeavyHitterDetector heavyHitterDetector;
     
-    // 显示频率记录 <IP, 显示时间列表>
-    private final Map<String, List<LocalDateTime>> impressionFrequencyMap = new ConcurrentHashMap<>();
+    // IP地理位置库，与候选生成的国家定向共用
+    private final GeoLocationService geoLocationService;
     
-    // 可疑User Agent模式
-    private final List<Pattern> suspiciousUserAgentPatterns = Arrays.asList(
-        Pattern.compile(".*bot.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*crawler.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*spider.*", Pattern.CASE_INSENSITIVE),
-        Pattern.compile(".*scraper.*", Pattern.CASE_INSENSITIVE)
-    );
+    // 按(IP, UA, 域名)缓存的判断结果，黑名单、UA模式或地理位置库变化时整体失效
+    private final FraudVerdictCache verdictCache;
     
     // 配置参数
     private static final int MAX_CLICKS_PER_HOUR = 100;
     private static final int MAX_IMPRESSIONS_PER_HOUR = 1000;
     private static final double FRAUD_RISK_THRESHOLD = 0.7;
     
+    public FraudDetectionService(AdsConfiguration adsConfiguration, GeoLocationService geoLocationService) {
+        this.config = adsConfiguration.getFraudDetection();
+        this.geoLocationService = geoLocationService;
+        AdsConfiguration.FrequencyCounter counterConfig = config.getFrequencyCounter();
+        Clock clock = Clock.systemDefaultZone();
+        this.clickCounter = new SlidingWindowCounter(counterConfig, clock);
+        this.impressionCounter = new SlidingWindowCounter(counterConfig, clock);
+        this.heavyHitterDetector = config.getHeavyHitters().isEnabled()
+            ? new HeavyHitterDetector(config.getHeavyHitters(), clock) : null;
+        this.userAgentClassifier = new UserAgentClassifier(config.getSuspiciousUserAgentPatterns(), config.getUserAgentCacheSize());
+        this.verdictCache = new FraudVerdictCache(config.getVerdictCache().getCapacity(), config.getVerdictCache().getTtlMillis());
+        refreshIpBlacklist();
+        refreshDeviceBlacklist();
+    }
+    
+    /**
+     * 重新加载设备指纹黑名单文件，文件未修改时跳过；失败时继续使用旧的黑名单
+     */
+    public synchronized void refreshDeviceBlacklist() {
+        String file = config.getDeviceBlacklistFile();
+        try {
+            long modified = file == null || file.isBlank() ? 0L : Files.getLastModifiedTime(Path.of(file)).toMillis();
+            if (modified == deviceBlacklistFileModified) {
+                return;
+            }
+            DeviceBlacklist blacklist = new DeviceBlacklist();
+            if (modified != 0L) {
+                blacklist.addAll(Path.of(file));
+            }
+            manualDeviceFingerprints.forEach(blacklist::add);
+            deviceBlacklist.set(blacklist);
+            deviceBlacklistFileModified = modified;
+            log.info("设备指纹黑名单已加载: entries={}, invalid={}, memoryBytes={}, file={}",
+                blacklist.size(), blacklist.getInvalidCount(), blacklist.getMemoryBytes(), file);
+        } catch (Exception e) {
+            log.error("设备指纹黑名单加载失败，继续使用旧黑名单: file={}", file, e);
+        }
+    }
+    
+    /**
+     * 可疑User Agent模式配置变化时重建分类器，判断结果缓存随之清空；失败时继续使用旧的分类器
+     */
+    public synchronized void refreshUserAgentClassifier() {
+        List<String> patterns = config.getSuspiciousUserAgentPatterns();
+        if (patterns.equals(userAgentClassifier.getPatterns())) {
+            return;
+        }
+        try {
+            userAgentClassifier = new UserAgentClassifier(patterns, config.getUserAgentCacheSize());
+            verdictCache.invalidateAll();
+            log.info("可疑User Agent模式已重新加载: patterns={}", patterns.size());
+        } catch (Exception e) {
+            log.error("可疑User Agent模式加载失败，继续使用旧模式: patterns={}", patterns, e);
+        }
+    }
+    
+    /**
+     * 重建配置与文件中的IP网段黑名单，文件未修改时跳过；失败时继续使用旧的黑名单
+     */
+    public synchronized void refreshIpBlacklist() {
+        String file = config.getIpBlacklistFile();
+        try {
+            long modified = file == null || file.isBlank() ? 0L : Files.getLastModifiedTime(Path.of(file)).toMillis();
+            if (modified == ipBlacklistFileModified) {
+                return;
+            }
+            IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+            config.getIpBlacklist().forEach(builder::add);
+            if (modified != 0L) {
+                builder.addAll(Path.of(file));
+            }
+            IpPrefixTrie trie = builder.build();
+            ipRanges.set(trie);
+            ipBlacklistFileModified = modified;
+            verdictCache.invalidateAll();
+            log.info("IP网段黑名单已加载: prefixes={}, nodes={}, invalid={}, file={}",
+                trie.size(), trie.getNodeCount(), builder.getInvalidCount(), file);
+        } catch (Exception e) {
+            log.error("IP网段黑名单加载失败，继续使用旧黑名单: file={}", file, e);
+        }
+    }
+    
     /**
      * 检测竞价请求是否存在欺诈风险
      */
@@ -56,7 +166,7 @@ public class FraudDetectionService {
             
             if (isFraud) {
                 log.warn("检测到欺诈风险: requestId={}, riskScore={}, ip={}", 
-                    bidRequest.getId(), riskScore, bidRequest.getDevice().getIp());
+                    bidRequest.getId(), riskScore, BidContext.of(bidRequest).getIp());
             }
             
             return isFraud;
@@ -68,148 +178,185 @@ public class FraudDetectionService {
     
     /**
      * 计算欺诈风险分数
+     * 由IP、UA、域名决定的检查结果取自判断结果缓存，频率类与设备检查逐个请求执行
      */
     private double calculateFraudRiskScore(BidRequest bidRequest) {
-        double riskScore = 0.0;
-        
-        // IP黑名单检查
-        if (isIpBlacklisted(bidRequest.getDevice().getIp())) {
-            riskScore += 0.8;
-        }
+        BidContext context = BidContext.of(bidRequest);
+        FraudVerdictCache.Verdict verdict = lookupVerdict(context, bidRequest.getDevice());
+        double riskScore = verdict.getRiskScore();
         
         // 点击频率检查
-        if (isClickFrequencyAbnormal(bidRequest.getDevice().getIp())) {
+        if (isClickFrequencyAbnormal(context.getIp())) {
             riskScore += 0.6;
         }
         
-        // User Agent异常检查
-        if (isUserAgentSuspicious(bidRequest.getDevice().getUa())) {
-            riskScore += 0.5;
-        }
-        
         // 地理位置一致性检查
-        if (isGeoLocationInconsistent(bidRequest)) {
+        if (isGeoLocationInconsistent(bidRequest.getDevice(), verdict.getLocatedCountry())) {
             riskScore += 0.4;
         }
         
-        // 设备指纹检查
-        if (isDeviceBlacklisted(bidRequest.getDevice())) {
+        // 设备指纹检查，指纹同时用作高频键统计的设备键
+        long fingerprint = bidRequest.getDevice() != null ? DeviceFingerprint.of(bidRequest.getDevice()) : 0L;
+        if (isDeviceBlacklisted(fingerprint)) {
             riskScore += 0.7;
         }
         
+        // 高频键检查：每分钟请求数超过阈值的IP/设备/App/网站被自动封禁
+        if (isHeavyHitterBlocked(bidRequest, context, fingerprint)) {
+            riskScore += 0.8;
+        }
+        
         // 显示频率检查
-        if (isImpressionFrequencyAbnormal(bidRequest.getDevice().getIp())) {
+        if (isImpressionFrequencyAbnormal(context.getIp())) {
             riskScore += 0.3;
         }
         
+        return Math.min(riskScore, 1.0);
+    }
+    
+    /**
+     * 取缓存的判断结果，未命中或关闭缓存时重新检查；命中与否都不影响频率类计数
+     */
+    private FraudVerdictCache.Verdict lookupVerdict(BidContext context, Device device) {
+        String ipv6 = device != null ? device.getIpv6() : null;
+        if (!config.getVerdictCache().isEnabled()) {
+            return computeVerdict(context, device, ipv6, 0L, 0L);
+        }
+        // 计算前读取代数，计算期间黑名单变化时写入的结果立即失效
+        long generation = verdictCache.generation() + geoLocationService.getDatabaseGeneration();
+        long start = System.nanoTime();
+        FraudVerdictCache.Verdict verdict = verdictCache.get(
+            context.getIp(), ipv6, context.getUserAgent(), context.getSiteDomain(), generation, start);
+        if (verdict == null) {
+            verdict = computeVerdict(context, device, ipv6, generation, start);
+            verdictCache.put(verdict, start);
+        }
+        return verdict;
+    }
+    
+    /**
+     * 执行由IP、UA、域名决定的检查：IP黑名单、User Agent、域名白名单，并查找IP所在国家
+     */
+    private FraudVerdictCache.Verdict computeVerdict(BidContext context, Device device, String ipv6, long generation, long start) {
+        int signals = 0;
+        double riskScore = 0.0;
+        
+        // IP黑名单检查
+        if (isIpBlacklisted(context.getIp(), ipv6)) {
+            signals |= FraudVerdictCache.IP_BLACKLISTED;
+            riskScore += 0.8;
+        }
+        
+        // User Agent异常检查
+        if (isUserAgentSuspicious(context.getUserAgent())) {
+            signals |= FraudVerdictCache.USER_AGENT_SUSPICIOUS;
+            riskScore += 0.5;
+        }
+        
         // 域名白名单检查
-        if (!isDomainWhitelisted(bidRequest)) {
+        if (!isDomainWhitelisted(context.getSiteDomain())) {
+            signals |= FraudVerdictCache.DOMAIN_NOT_WHITELISTED;
             riskScore += 0.2;
         }
         
-        return Math.min(riskScore, 1.0);
+        String locatedCountry = geoLocationService.lookupCountry(device);
+        long computeNanos = start != 0L ? System.nanoTime() - start : 0L;
+        return new FraudVerdictCache.Verdict(context.getIp(), ipv6, context.getUserAgent(), context.getSiteDomain(),
+            generation, signals, riskScore, locatedCountry, computeNanos);
     }
     
     /**
-     * 检查IP是否在黑名单中
+     * 检查IPv4或IPv6地址是否落在黑名单网段中
      */
-    private boolean isIpBlacklisted(String ip) {
-        return ipBlacklist.contains(ip);
+    private boolean isIpBlacklisted(String ip, String ipv6) {
+        IpPrefixTrie ranges = ipRanges.get();
+        IpPrefixTrie manual = manualIpRanges;
+        if (ranges.contains(ip) || manual.contains(ip)) {
+            return true;
+        }
+        return ranges.contains(ipv6) || manual.contains(ipv6);
     }
     
     /**
      * 检查点击频率是否异常
      */
     private boolean isClickFrequencyAbnormal(String ip) {
-        List<LocalDateTime> clickTimes = clickFrequencyMap.computeIfAbsent(ip, k -> new ArrayList<>());
-        
-        // 清理1小时前的记录
-        LocalDateTime oneHourAgo = LocalDateTime.now().minus(1, ChronoUnit.HOURS);
-        clickTimes.removeIf(time -> time.isBefore(oneHourAgo));
-        
-        // 记录当前点击
-        clickTimes.add(LocalDateTime.now());
-        
-        return clickTimes.size() > MAX_CLICKS_PER_HOUR;
+        if (ip == null) {
+            return false;
+        }
+        return clickCounter.incrementAndGet(ip) > MAX_CLICKS_PER_HOUR;
     }
     
     /**
      * 检查User Agent是否可疑
      */
     private boolean isUserAgentSuspicious(String userAgent) {
-        if (userAgent == null || userAgent.trim().isEmpty()) {
-            return true;
+        return userAgentClassifier.isSuspicious(userAgent);
+    }
+    
+    /**
+     * 检查交易平台提供的国家与IP所在国家是否一致
+     * 任一方未知，或两者编码长度不同（ISO-3166-1 alpha-2与alpha-3无法直接比较）时视为一致
+     */
+    private boolean isGeoLocationInconsistent(Device device, String located) {
+        Geo geo = device != null ? device.getGeo() : null;
+        String declared = geo != null ? geo.getCountry() : null;
+        if (declared == null || declared.isBlank()) {
+            return false;
         }
-        
-        return suspiciousUserAgentPatterns.stream()
-            .anyMatch(pattern -> pattern.matcher(userAgent).matches());
+        return located != null && located.length() == declared.length() && !located.equalsIgnoreCase(declared);
     }
     
     /**
-     * 检查地理位置一致性
+     * 检查设备是否在黑名单中，指纹为0表示请求没有设备信息
      */
-    private boolean isGeoLocationInconsistent(BidRequest bidRequest) {
-        // 简化实现：检查IP地址与地理位置是否匹配
-        // 实际实现需要IP地理位置数据库
-        return false;
+    private boolean isDeviceBlacklisted(long fingerprint) {
+        return fingerprint != 0L && deviceBlacklist.get().contains(fingerprint);
     }
     
     /**
-     * 检查设备是否在黑名单中
+     * 把请求的IP、设备指纹、App bundle、网站域名计入高频键统计，任一维度处于自动封禁中即返回true
      */
-    private boolean isDeviceBlacklisted(Device device) {
-        String deviceFingerprint = generateDeviceFingerprint(device);
-        return deviceBlacklist.contains(deviceFingerprint);
+    private boolean isHeavyHitterBlocked(BidRequest bidRequest, BidContext context, long fingerprint) {
+        if (heavyHitterDetector == null) {
+            return false;
+        }
+        String bundle = bidRequest.getApp() != null ? bidRequest.getApp().getBundle() : null;
+        String device = fingerprint != 0L ? DeviceFingerprint.toHex(fingerprint) : null;
+        return heavyHitterDetector.record(context.getIp(), device, bundle, context.getSiteDomain());
     }
     
     /**
      * 检查显示频率是否异常
      */
     private boolean isImpressionFrequencyAbnormal(String ip) {
-        List<LocalDateTime> impressionTimes = impressionFrequencyMap.computeIfAbsent(ip, k -> new ArrayList<>());
-        
-        // 清理1小时前的记录
-        LocalDateTime oneHourAgo = LocalDateTime.now().minus(1, ChronoUnit.HOURS);
-        impressionTimes.removeIf(time -> time.isBefore(oneHourAgo));
-        
-        // 记录当前显示
-        impressionTimes.add(LocalDateTime.now());
-        
-        return impressionTimes.size() > MAX_IMPRESSIONS_PER_HOUR;
+        if (ip == null) {
+            return false;
+        }
+        return impressionCounter.incrementAndGet(ip) > MAX_IMPRESSIONS_PER_HOUR;
     }
     
     /**
      * 检查域名是否在白名单中
      */
-    private boolean isDomainWhitelisted(BidRequest bidRequest) {
-        if (bidRequest.getSite() != null && bidRequest.getSite().getDomain() != null) {
-            return domainWhitelist.isEmpty() || domainWhitelist.contains(bidRequest.getSite().getDomain());
+    private boolean isDomainWhitelisted(String siteDomain) {
+        if (siteDomain != null) {
+            return domainWhitelist.isEmpty() || domainWhitelist.contains(siteDomain);
         }
         return true; // 如果没有域名信息，默认通过
     }
     
     /**
-     * 生成设备指纹
-     */
-    private String generateDeviceFingerprint(Device device) {
-        StringBuilder fingerprint = new StringBuilder();
-        
-        if (device.getUa() != null) fingerprint.append(device.getUa());
-        if (device.getIp() != null) fingerprint.append("|").append(device.getIp());
-        if (device.getDevicetype() != null) fingerprint.append("|").append(device.getDevicetype());
-        if (device.getMake() != null) fingerprint.append("|").append(device.getMake());
-        if (device.getModel() != null) fingerprint.append("|").append(device.getModel());
-        if (device.getOs() != null) fingerprint.append("|").append(device.getOs());
-        if (device.getOsv() != null) fingerprint.append("|").append(device.getOsv());
-        
-        return Integer.toString(fingerprint.toString().hashCode());
-    }
-    
-    /**
-     * 添加IP到黑名单
+     * 添加IP或CIDR网段到黑名单
      */
     public void addIpToBlacklist(String ip) {
-        ipBlacklist.add(ip);
+        synchronized (ipBlacklist) {
+            ipBlacklist.add(ip);
+            IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+            ipBlacklist.forEach(builder::add);
+            manualIpRanges = builder.build();
+        }
+        verdictCache.invalidateAll();
         log.info("IP已添加到黑名单: {}", ip);
     }
     
@@ -217,9 +364,12 @@ public class FraudDetectionService {
      * 添加设备到黑名单
      */
     public void addDeviceToBlacklist(Device device) {
-        String fingerprint = generateDeviceFingerprint(device);
-        deviceBlacklist.add(fingerprint);
-        log.info("设备已添加到黑名单: {}", fingerprint);
+        long fingerprint = DeviceFingerprint.of(device);
+        synchronized (this) {
+            manualDeviceFingerprints.add(fingerprint);
+            deviceBlacklist.get().add(fingerprint);
+        }
+        log.info("设备已添加到黑名单: {}", DeviceFingerprint.toHex(fingerprint));
     }
     
     /**
@@ -227,19 +377,53 @@ public class FraudDetectionService {
      */
     public void addDomainToWhitelist(String domain) {
         domainWhitelist.add(domain);
+        verdictCache.invalidateAll();
         log.info("域名已添加到白名单: {}", domain);
     }
     
+    /**
+     * 各维度每分钟的Top-K高频键，未启用时返回空
+     */
+    public Map<String, Object> getHeavyHitters() {
+        return heavyHitterDetector != null ? heavyHitterDetector.getTopHitters() : Map.of();
+    }
+    
+    /**
+     * 解除高频键的自动封禁
+     */
+    public boolean unblockHeavyHitter(HeavyHitterDetector.Dimension dimension, String key) {
+        boolean removed = heavyHitterDetector != null && heavyHitterDetector.unblock(dimension, key);
+        if (removed) {
+            log.info("已解除高频键封禁: dimension={}, key={}", dimension, key);
+        }
+        return removed;
+    }
+    
     /**
      * 获取欺诈统计信息
      */
     public Map<String, Object> getFraudStatistics() {
         Map<String, Object> stats = new HashMap<>();
-        stats.put("ipBlacklistSize", ipBlacklist.size());
-        stats.put("deviceBlacklistSize", deviceBlacklist.size());
+        IpPrefixTrie ranges = ipRanges.get();
+        stats.put("ipBlacklistSize", ranges.size() + manualIpRanges.size());
+        stats.put("ipBlacklistMemoryBytes", ranges.getMemoryBytes() + manualIpRanges.getMemoryBytes());
+        DeviceBlacklist devices = deviceBlacklist.get();
+        stats.put("deviceBlacklistSize", devices.size());
+        stats.put("deviceBlacklistMemoryBytes", devices.getMemoryBytes());
+        stats.put("deviceBlacklistBytesPerEntry", devices.size() > 0 ? (double) devices.getMemoryBytes() / devices.size() : 0.0);
         stats.put("domainWhitelistSize", domainWhitelist.size());
-        stats.put("activeClickTracking", clickFrequencyMap.size());
-        stats.put("activeImpressionTracking", impressionFrequencyMap.size());
+        stats.put("activeClickTracking", clickCounter.trackedKeys());
+        stats.put("activeImpressionTracking", impressionCounter.trackedKeys());
+        stats.put("clickCounter", clickCounter.getStatistics());
+        stats.put("impressionCounter", impressionCounter.getStatistics());
+        stats.put("userAgentClassifier", userAgentClassifier.getStatistics());
+        stats.put("geoIpDatabase", geoLocationService.getStatistics());
+        if (heavyHitterDetector != null) {
+            stats.put("heavyHitters", heavyHitterDetector.getStatistics());
+        }
+        Map<String, Object> verdictCacheStats = verdictCache.getStatistics();
+        verdictCacheStats.put("enabled", config.getVerdictCache().isEnabled());
+        stats.put("verdictCache", verdictCacheStats);
         return stats;
     }
 }
\ No newline at end of file
@@ -0,0 +1,116 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import fei.song.play_spring_boot_api.ads.domain.model.Geo;
+import fei.song.play_spring_boot_api.ads.service.fraud.GeoIpDatabase;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * IP地理位置服务
+ * 反欺诈的地理位置一致性检查与候选生成的国家定向共用同一个内存映射的地理位置库。
+ */
+@Slf4j
+@Service
+public class GeoLocationService {
+    
+    private final AdsConfiguration.FraudDetection config;
+    
+    // 当前映射的地理位置库，重新加载时整体替换
+    private final AtomicReference<GeoIpDatabase> database = new AtomicReference<>(GeoIpDatabase.EMPTY);
+    private long databaseFileModified = Long.MIN_VALUE;
+    
+    // 地理位置库每替换一次加1，依赖查找结果的缓存据此失效
+    private volatile long databaseGeneration;
+    
+    public GeoLocationService(AdsConfiguration adsConfiguration) {
+        this.config = adsConfiguration.getFraudDetection();
+        refreshDatabase();
+    }
+    
+    /**
+     * CSV源文件比库文件新时先重新编译，库文件修改后重新映射；失败时继续使用旧的地理位置库
+     */
+    public synchronized void refreshDatabase() {
+        String file = config.getGeoIpDatabaseFile();
+        String source = config.getGeoIpSourceFile();
+        try {
+            if (file == null || file.isBlank()) {
+                if (databaseFileModified != 0L) {
+                    database.set(GeoIpDatabase.EMPTY);
+                    databaseFileModified = 0L;
+                    databaseGeneration++;
+                }
+                return;
+            }
+            Path databasePath = Path.of(file);
+            if (source != null && !source.isBlank()) {
+                Path sourcePath = Path.of(source);
+                if (!Files.exists(databasePath)
+                    || Files.getLastModifiedTime(sourcePath).compareTo(Files.getLastModifiedTime(databasePath)) > 0) {
+                    int skipped = GeoIpDatabase.compile(sourcePath, databasePath);
+                    log.info("IP地理位置库已编译: source={}, file={}, skipped={}", source, file, skipped);
+                }
+            }
+            long modified = Files.getLastModifiedTime(databasePath).toMillis();
+            if (modified == databaseFileModified) {
+                return;
+            }
+            GeoIpDatabase opened = GeoIpDatabase.open(databasePath);
+            database.set(opened);
+            databaseFileModified = modified;
+            databaseGeneration++;
+            log.info("IP地理位置库已加载: ranges={}, mappedBytes={}, file={}", opened.size(), opened.getMappedBytes(), file);
+        } catch (Exception e) {
+            log.error("IP地理位置库加载失败，继续使用旧地理位置库: file={}, source={}", file, source, e);
+        }
+    }
+    
+    /**
+     * 按设备IP（先IPv4后IPv6）查找国家，未知时返回null
+     */
+    public String lookupCountry(Device device) {
+        if (device == null) {
+            return null;
+        }
+        GeoIpDatabase current = database.get();
+        String country = current.lookupCountry(device.getIp());
+        return country != null ? country : current.lookupCountry(device.getIpv6());
+    }
+    
+    /**
+     * 设备所在国家：优先使用交易平台提供的 device.geo.country，缺失时按IP查找，仍未知时返回null
+     */
+    public String resolveCountry(Device device) {
+        if (device == null) {
+            return null;
+        }
+        Geo geo = device.getGeo();
+        if (geo != null && geo.getCountry() != null && !geo.getCountry().isBlank()) {
+            return geo.getCountry();
+        }
+        return lookupCountry(device);
+    }
+    
+    /**
+     * 地理位置库的版本号，每次重新映射后递增
+     */
+    public long getDatabaseGeneration() {
+        return databaseGeneration;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        GeoIpDatabase current = database.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ranges", current.size());
+        stats.put("mappedBytes", current.getMappedBytes());
+        return stats;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.StageLatencyHistogram;
+import fei.song.play_spring_boot_api.ads.service.metrics.StageLatencyRecorder;
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 竞价阶段耗时分布服务
+ * 请求线程把各阶段的纳秒耗时记录到无锁的HdrHistogram Recorder；采样任务定期汇总当前小时的分布供接口与Actuator指标读取，
+ * 写入任务把各小时的直方图压缩编码后以一次无序批量upsert追加到MongoDB，读取历史小时时解码合并
+ */
+@Slf4j
+@Service
+public class StageLatencyService {
+    
+    private static final String COLLECTION = "stage_latency_histograms";
+    private static final double[] GAUGE_PERCENTILES = {50.0, 90.0, 99.0, 99.9};
+    
+    private final MongoTemplate mongoTemplate;
+    private final StageLatencyRecorder recorder;
+    private final int significantDigits;
+    
+    @Autowired
+    public StageLatencyService(AdsConfiguration adsConfiguration,
+                               MongoTemplate mongoTemplate,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this(adsConfiguration, mongoTemplate, Clock.systemDefaultZone());
+        meterRegistry.ifAvailable(this::registerGauges);
+    }
+    
+    public StageLatencyService(AdsConfiguration adsConfiguration, MongoTemplate mongoTemplate, Clock clock) {
+        AdsConfiguration.Latency latency = adsConfiguration.getMetrics().getLatency();
+        this.mongoTemplate = mongoTemplate;
+        this.significantDigits = latency.getSignificantDigits();
+        this.recorder = new StageLatencyRecorder(
+            TimeUnit.MILLISECONDS.toNanos(latency.getHighestTrackableMs()), latency.getSignificantDigits(), clock);
+    }
+    
+    /**
+     * 记录流水线阶段的耗时(纳秒)
+     */
+    public void record(BidStage stage, long nanos) {
+        recorder.record(stage, nanos);
+    }
+    
+    /**
+     * 记录响应序列化的耗时(纳秒)
+     */
+    public void recordSerialization(long nanos) {
+        recorder.recordSerialization(nanos);
+    }
+    
+    /**
+     * 汇总各阶段自上次采样以来的耗时到当前小时
+     */
+    public void sample() {
+        recorder.sample();
+    }
+    
+    /**
+     * 当前小时各阶段耗时的分位数，包含截至调用时的所有记录
+     */
+    public Map<String, Object> getCurrentHourLatency() {
+        recorder.sample();
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hour", recorder.currentHour());
+        result.put("stages", recorder.currentHourSummary());
+        return result;
+    }
+    
+    /**
+     * 指定小时各阶段耗时的分位数：合并MongoDB中各实例写入的直方图与本实例尚未写入的部分
+     * 与写入互斥，不会漏掉已取出但尚未写入的直方图
+     */
+    public synchronized Map<String, Object> getHourLatency(String hour) {
+        recorder.sample();
+        String currentHour = recorder.currentHour();
+        Map<String, Histogram> merged = new LinkedHashMap<>();
+        for (String stage : recorder.stages()) {
+            // 自动扩展范围，兼容不同配置的实例写入的直方图
+            Histogram histogram = new Histogram(significantDigits);
+            histogram.setAutoResize(true);
+            merged.put(stage, histogram);
+        }
+        
+        List<StageLatencyHistogram> documents = mongoTemplate.find(
+            new Query(Criteria.where("hour").is(hour)), StageLatencyHistogram.class, COLLECTION);
+        for (StageLatencyHistogram document : documents) {
+            Histogram target = merged.get(document.getStage());
+            if (target == null || document.getHistograms() == null) {
+                continue;
+            }
+            for (byte[] encoded : document.getHistograms()) {
+                try {
+                    target.add(StageLatencyRecorder.decode(encoded));
+                } catch (Exception e) {
+                    log.warn("解码阶段耗时直方图失败: hour={}, stage={}", hour, document.getStage(), e);
+                }
+            }
+        }
+        for (StageLatencyRecorder.HourlyHistogram pending : recorder.pending(hour)) {
+            merged.get(pending.getStage()).add(pending.getHistogram());
+        }
+        
+        Map<String, Object> stages = new LinkedHashMap<>();
+        merged.forEach((stage, histogram) -> stages.put(stage, StageLatencyRecorder.summarize(histogram)));
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("hour", hour);
+        result.put("current", hour.equals(currentHour));
+        result.put("stages", stages);
+        return result;
+    }
+    
+    /**
+     * 把各小时尚未写入的直方图追加到MongoDB，每个(小时, 阶段)一条记录
+     * 写入失败的直方图放回内存等下次重试；无序批量写入中已成功的部分不再重复写入
+     */
+    public synchronized void persist() {
+        List<StageLatencyRecorder.HourlyHistogram> drained = recorder.drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StageLatencyHistogram.class, COLLECTION);
+            for (StageLatencyRecorder.HourlyHistogram hourly : drained) {
+                Query query = new Query(Criteria.where("hour").is(hourly.getHour()).and("stage").is(hourly.getStage()));
+                Update update = new Update()
+                    .setOnInsert("date", hourly.getDate())
+                    .inc("totalCount", hourly.getHistogram().getTotalCount())
+                    .push("histograms", StageLatencyRecorder.encode(hourly.getHistogram()))
+                    .set("updatedAt", now);
+                bulkOps.upsert(query, update);
+            }
+            bulkOps.execute();
+            log.debug("阶段耗时直方图已写入: histograms={}", drained.size());
+        } catch (BulkOperationException e) {
+            Set<Integer> failed = new HashSet<>();
+            e.getErrors().forEach(error -> failed.add(error.getIndex()));
+            for (int i = 0; i < drained.size(); i++) {
+                if (failed.contains(i)) {
+                    recorder.restore(drained.get(i));
+                }
+            }
+            log.error("阶段耗时直方图部分写入失败，失败部分等待重试: failed={}, total={}", failed.size(), drained.size(), e);
+        } catch (Exception e) {
+            drained.forEach(recorder::restore);
+            log.error("阶段耗时直方图写入失败，等待重试: histograms={}", drained.size(), e);
+        }
+    }
+    
+    /**
+     * 应用关闭时写入尚未写入的直方图
+     */
+    @PreDestroy
+    public void shutdown() {
+        persist();
+        log.info("阶段耗时直方图已在关闭前写入");
+    }
+    
+    /**
+     * 按阶段与分位数注册当前小时的耗时指标，读取的是最近一次采样的结果
+     */
+    private void registerGauges(MeterRegistry registry) {
+        List<String> stages = recorder.stages();
+        for (int i = 0; i < stages.size(); i++) {
+            int stageIndex = i;
+            for (double percentile : GAUGE_PERCENTILES) {
+                Gauge.builder("ads.bid.stage.latency", recorder, r -> r.percentileMillis(stageIndex, percentile))
+                    .description("竞价阶段当前小时耗时分位数")
+                    .baseUnit("milliseconds")
+                    .tag("stage", stages.get(i))
+                    .tag("quantile", Double.toString(percentile / 100.0))
+                    .register(registry);
+            }
+            Gauge.builder("ads.bid.stage.latency.max", recorder, r -> r.percentileMillis(stageIndex, 100.0))
+                .description("竞价阶段当前小时最大耗时")
+                .baseUnit("milliseconds")
+                .tag("stage", stages.get(i))
+                .register(registry);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,136 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+
+import java.util.List;
+
+/**
+ * 基于线性扫描的拍卖引擎基类
+ * 一次遍历候选，按 (层级, 优先级, 最终分数, 出价) 降序维护前两名，无需对候选整体排序。
+ * 排序键在遍历时拆箱为基本类型，并列时先出现的候选优先（与稳定排序一致）。
+ * 出价、底价与成交价均为微元。
+ */
+public abstract class AbstractAuctionEngine implements AuctionEngine {
+    
+    /**
+     * 不参与本次拍卖的候选层级
+     */
+    protected static final int EXCLUDED = -1;
+    
+    /**
+     * 出价高于第二名时的最小加价（0.01元）
+     */
+    protected static final long PRICE_INCREMENT_MICROS = 10_000L;
+    
+    @Override
+    public BidCandidate selectWinner(List<BidCandidate> candidates, Impression impression) {
+        if (candidates == null || candidates.isEmpty()) {
+            return null;
+        }
+        
+        int first = -1;
+        int firstTier = 0;
+        int firstPriority = 0;
+        double firstScore = 0.0;
+        long firstPrice = 0L;
+        
+        int second = -1;
+        int secondTier = 0;
+        int secondPriority = 0;
+        double secondScore = 0.0;
+        long secondPrice = 0L;
+        
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            BidCandidate candidate = candidates.get(i);
+            int tier = tier(candidate, impression);
+            if (tier == EXCLUDED) {
+                continue;
+            }
+            int priority = candidate.getPriority() != null ? candidate.getPriority() : 0;
+            double score = candidate.getFinalScore() != null ? candidate.getFinalScore() : 0.0;
+            long price = candidate.getBidPriceMicros();
+            
+            if (first < 0 || ranksAbove(tier, priority, score, price, firstTier, firstPriority, firstScore, firstPrice)) {
+                second = first;
+                secondTier = firstTier;
+                secondPriority = firstPriority;
+                secondScore = firstScore;
+                secondPrice = firstPrice;
+                
+                first = i;
+                firstTier = tier;
+                firstPriority = priority;
+                firstScore = score;
+                firstPrice = price;
+            } else if (second < 0 || ranksAbove(tier, priority, score, price, secondTier, secondPriority, secondScore, secondPrice)) {
+                second = i;
+                secondTier = tier;
+                secondPriority = priority;
+                secondScore = score;
+                secondPrice = price;
+            }
+        }
+        
+        if (first < 0) {
+            return null;
+        }
+        
+        BidCandidate winner = candidates.get(first);
+        BidCandidate runnerUp = second >= 0 && secondTier == firstTier ? candidates.get(second) : null;
+        winner.setBidPriceMicros(clearingPrice(winner, runnerUp, impression));
+        return winner;
+    }
+    
+    /**
+     * 候选所在的层级，层级高的候选优先于任何层级低的候选；返回EXCLUDED表示不参与拍卖
+     */
+    protected int tier(BidCandidate candidate, Impression impression) {
+        return 0;
+    }
+    
+    /**
+     * 计算获胜者的成交价格（微元）
+     *
+     * @param runnerUp 同一层级中的第二名，没有时为null
+     */
+    protected abstract long clearingPrice(BidCandidate winner, BidCandidate runnerUp, Impression impression);
+    
+    /**
+     * 第一价格：按自身出价成交，不低于底价
+     */
+    static long firstPrice(BidCandidate winner, long floor) {
+        return Math.max(winner.getBidPriceMicros(), floor);
+    }
+    
+    /**
+     * 第二价格：按第二名出价（不低于底价）加最小加价成交，且不超过获胜者自身出价
+     */
+    static long secondPrice(BidCandidate winner, BidCandidate runnerUp, long floor) {
+        long ownPrice = firstPrice(winner, floor);
+        if (runnerUp == null) {
+            return ownPrice;
+        }
+        return Math.min(Math.max(runnerUp.getBidPriceMicros(), floor) + PRICE_INCREMENT_MICROS, ownPrice);
+    }
+    
+    static long bidFloor(Impression impression) {
+        return impression != null ? Money.toMicros(impression.getBidfloor(), 0L) : 0L;
+    }
+    
+    private static boolean ranksAbove(int tier, int priority, double score, long price,
+                                      int otherTier, int otherPriority, double otherScore, long otherPrice) {
+        if (tier != otherTier) {
+            return tier > otherTier;
+        }
+        if (priority != otherPriority) {
+            return priority > otherPriority;
+        }
+        int scoreCompare = Double.compare(score, otherScore);
+        if (scoreCompare != 0) {
+            return scoreCompare > 0;
+        }
+        return price > otherPrice;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,23 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+
+import java.util.List;
+
+/**
+ * 拍卖引擎
+ * 从候选中选出获胜者并设置成交价格，实现不应依赖候选列表的顺序
+ */
+public interface AuctionEngine {
+    
+    /**
+     * 选出获胜候选并将其bidPrice设置为成交价格，没有合格候选时返回null
+     */
+    BidCandidate selectWinner(List<BidCandidate> candidates, Impression impression);
+    
+    /**
+     * 拍卖类型名称，用于日志与统计
+     */
+    String getName();
+}
\ No newline at end of file
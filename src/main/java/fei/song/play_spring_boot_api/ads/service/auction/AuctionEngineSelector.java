@@ -0,0 +1,50 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Pmp;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+/**
+ * 拍卖引擎选择器
+ * 按请求的拍卖类型（BidRequest.at，缺省时取 ads.bidding.auction-type）选择第一/第二价格拍卖；
+ * 广告位携带PMP交易或为私有拍卖时使用交易优先拍卖。
+ */
+@Component
+@RequiredArgsConstructor
+public class AuctionEngineSelector {
+    
+    private final AdsConfiguration adsConfiguration;
+    
+    /**
+     * 为单个广告位选择拍卖引擎
+     */
+    public AuctionEngine select(BidRequest bidRequest, Impression impression) {
+        boolean firstPrice = auctionType(bidRequest) == DealPriorityAuction.AUCTION_FIRST_PRICE;
+        if (hasPrivateMarketplace(impression.getPmp())) {
+            return firstPrice ? DealPriorityAuction.FIRST_PRICE : DealPriorityAuction.SECOND_PRICE;
+        }
+        return firstPrice ? FirstPriceAuction.INSTANCE : SecondPriceAuction.INSTANCE;
+    }
+    
+    /**
+     * 未指定请求时使用的默认拍卖引擎
+     */
+    public AuctionEngine getDefaultEngine() {
+        return adsConfiguration.getBidding().getAuctionType() == DealPriorityAuction.AUCTION_FIRST_PRICE
+            ? FirstPriceAuction.INSTANCE
+            : SecondPriceAuction.INSTANCE;
+    }
+    
+    private int auctionType(BidRequest bidRequest) {
+        Integer requested = bidRequest != null ? bidRequest.getAuctionType() : null;
+        return requested != null ? requested : adsConfiguration.getBidding().getAuctionType();
+    }
+    
+    private static boolean hasPrivateMarketplace(Pmp pmp) {
+        return pmp != null
+            && (DealPriorityAuction.isPrivateAuction(pmp) || (pmp.getDeals() != null && !pmp.getDeals().isEmpty()));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,94 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.domain.model.Pmp;
+
+import java.util.List;
+
+/**
+ * 私有市场（PMP）优先拍卖
+ * 携带有效dealId且达到交易底价的候选优先于公开市场候选；
+ * private_auction=1 时只接受交易候选。
+ * 交易层按交易自身的拍卖类型定价（at=3 固定价格按交易底价成交），未指定时沿用请求的拍卖类型。
+ */
+public final class DealPriorityAuction extends AbstractAuctionEngine {
+    
+    static final int AUCTION_FIRST_PRICE = 1;
+    static final int AUCTION_FIXED_PRICE = 3;
+    
+    private static final int TIER_OPEN = 0;
+    private static final int TIER_DEAL = 1;
+    
+    public static final DealPriorityAuction FIRST_PRICE = new DealPriorityAuction(AUCTION_FIRST_PRICE);
+    public static final DealPriorityAuction SECOND_PRICE = new DealPriorityAuction(2);
+    
+    private final int openMarketAuctionType;
+    
+    private DealPriorityAuction(int openMarketAuctionType) {
+        this.openMarketAuctionType = openMarketAuctionType;
+    }
+    
+    @Override
+    protected int tier(BidCandidate candidate, Impression impression) {
+        Pmp pmp = impression.getPmp();
+        if (candidate.getDealId() == null) {
+            return isPrivateAuction(pmp) ? EXCLUDED : TIER_OPEN;
+        }
+        Pmp.Deal deal = findDeal(pmp, candidate.getDealId());
+        if (deal == null || candidate.getBidPriceMicros() < dealFloor(deal)) {
+            return EXCLUDED;
+        }
+        return TIER_DEAL;
+    }
+    
+    @Override
+    protected long clearingPrice(BidCandidate winner, BidCandidate runnerUp, Impression impression) {
+        if (winner.getDealId() == null) {
+            return price(openMarketAuctionType, winner, runnerUp, bidFloor(impression));
+        }
+        Pmp.Deal deal = findDeal(impression.getPmp(), winner.getDealId());
+        long floor = dealFloor(deal);
+        if (deal.getAuctionType() == null) {
+            return price(openMarketAuctionType, winner, runnerUp, floor);
+        }
+        if (deal.getAuctionType() == AUCTION_FIXED_PRICE) {
+            return floor;
+        }
+        return price(deal.getAuctionType(), winner, runnerUp, floor);
+    }
+    
+    @Override
+    public String getName() {
+        return "deal_priority";
+    }
+    
+    private static long price(int auctionType, BidCandidate winner, BidCandidate runnerUp, long floor) {
+        return auctionType == AUCTION_FIRST_PRICE
+            ? firstPrice(winner, floor)
+            : secondPrice(winner, runnerUp, floor);
+    }
+    
+    static boolean isPrivateAuction(Pmp pmp) {
+        return pmp != null && pmp.getPrivateAuction() != null && pmp.getPrivateAuction() == 1;
+    }
+    
+    private static Pmp.Deal findDeal(Pmp pmp, String dealId) {
+        if (pmp == null || pmp.getDeals() == null) {
+            return null;
+        }
+        List<Pmp.Deal> deals = pmp.getDeals();
+        for (int i = 0, n = deals.size(); i < n; i++) {
+            Pmp.Deal deal = deals.get(i);
+            if (dealId.equals(deal.getId())) {
+                return deal;
+            }
+        }
+        return null;
+    }
+    
+    private static long dealFloor(Pmp.Deal deal) {
+        return Money.toMicros(deal.getBidfloor(), 0L);
+    }
+}
\ No newline at end of file
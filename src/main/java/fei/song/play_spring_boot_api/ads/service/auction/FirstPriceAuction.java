@@ -0,0 +1,25 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+
+/**
+ * 第一价格拍卖（OpenRTB at=1）
+ */
+public final class FirstPriceAuction extends AbstractAuctionEngine {
+    
+    public static final FirstPriceAuction INSTANCE = new FirstPriceAuction();
+    
+    private FirstPriceAuction() {
+    }
+    
+    @Override
+    protected long clearingPrice(BidCandidate winner, BidCandidate runnerUp, Impression impression) {
+        return firstPrice(winner, bidFloor(impression));
+    }
+    
+    @Override
+    public String getName() {
+        return "first_price";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+
+/**
+ * 第二价格拍卖（OpenRTB at=2）
+ */
+public final class SecondPriceAuction extends AbstractAuctionEngine {
+    
+    public static final SecondPriceAuction INSTANCE = new SecondPriceAuction();
+    
+    private SecondPriceAuction() {
+    }
+    
+    @Override
+    protected long clearingPrice(BidCandidate winner, BidCandidate runnerUp, Impression impression) {
+        return secondPrice(winner, runnerUp, bidFloor(impression));
+    }
+    
+    @Override
+    public String getName() {
+        return "second_price";
+    }
+}
\ No newline at end of file
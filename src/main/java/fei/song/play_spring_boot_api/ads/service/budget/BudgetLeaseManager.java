@@ -0,0 +1,363 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点本地的预算租约管理
+ * 每个节点从共享存储中按块申领日预算额度，预算检查与预扣只操作本地余额，不产生网络I/O；
+ * 余额不足或低于补充阈值时在后台线程申领下一块，租约额度按节点最近的预扣速率自适应。
+ * 后台同步定期上报实际消耗并续期租约，节点下线时归还剩余租约，异常退出的租约过期后由其他节点回收。
+ * 本地租约在共享存储中的租约过期之前失效：续期失败超过有效期后停止预扣，避免与回收了该租约的其他节点重复使用同一份额度。
+ * 金额单位均为微元（见Money）。
+ */
+@Slf4j
+public class BudgetLeaseManager {
+    
+    private final BudgetLeaseStore store;
+    private final String nodeId;
+    private final AdsConfiguration.BudgetLease config;
+    private final Executor refillExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Clock clock;
+    
+    private final Map<String, CampaignLease> leases = new ConcurrentHashMap<>();
+    
+    // 统计信息
+    private final LongAdder claims = new LongAdder();
+    private final LongAdder claimFailures = new LongAdder();
+    private final LongAdder grantedMicros = new LongAdder();
+    private final LongAdder localRejects = new LongAdder();
+    
+    BudgetLeaseManager(BudgetLeaseStore store, String nodeId, AdsConfiguration.BudgetLease config,
+                       Executor refillExecutor, ScheduledExecutorService scheduler, Clock clock) {
+        this.store = store;
+        this.nodeId = nodeId;
+        this.config = config;
+        this.refillExecutor = refillExecutor;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+    
+    /**
+     * 创建租约管理器并启动后台同步线程
+     */
+    public static BudgetLeaseManager start(BudgetLeaseStore store, AdsConfiguration.BudgetLease config) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("budget-lease").daemon().factory());
+        BudgetLeaseManager manager = new BudgetLeaseManager(
+            store, resolveNodeId(config), config, scheduler, scheduler, Clock.systemUTC());
+        scheduler.scheduleWithFixedDelay(manager::syncAll,
+            config.getSyncIntervalMs(), config.getSyncIntervalMs(), TimeUnit.MILLISECONDS);
+        log.info("预算租约管理已启动: nodeId={}, syncIntervalMs={}, ttlMs={}",
+            manager.nodeId, config.getSyncIntervalMs(), config.getTtlMs());
+        return manager;
+    }
+    
+    /**
+     * 本地余额是否足够（不预扣）
+     */
+    public boolean hasBudget(String campaignId, long micros, long capMicros) {
+        CampaignLease lease = leaseFor(campaignId, capMicros);
+        if (!lease.isExpired(clock.millis()) && lease.available.get() >= micros) {
+            return true;
+        }
+        localRejects.increment();
+        requestRefill(lease);
+        return false;
+    }
+    
+    /**
+     * 从本地余额中预扣
+     */
+    public boolean tryReserve(String campaignId, long micros, long capMicros) {
+        CampaignLease lease = leaseFor(campaignId, capMicros);
+        boolean expired = lease.isExpired(clock.millis());
+        long current;
+        do {
+            current = lease.available.get();
+            if (expired || current < micros) {
+                localRejects.increment();
+                requestRefill(lease);
+                return false;
+            }
+        } while (!lease.available.compareAndSet(current, current - micros));
+        
+        lease.reserved.addAndGet(micros);
+        lease.demandSinceSample.addAndGet(micros);
+        if (current - micros < lease.lastChunk * config.getRefillThreshold()) {
+            requestRefill(lease);
+        }
+        return true;
+    }
+    
+    /**
+     * 释放预扣，额度回到本地余额
+     */
+    public void release(String campaignId, long micros) {
+        CampaignLease lease = leases.get(campaignId);
+        if (lease != null) {
+            lease.available.addAndGet(micros);
+            lease.reserved.addAndGet(-micros);
+        }
+    }
+    
+    /**
+     * 确认消费：预扣与实际消费的差额回到本地余额，实际消费在下次同步时上报
+     */
+    public void confirm(String campaignId, long reservedMicros, long spentMicros) {
+        CampaignLease lease = leases.get(campaignId);
+        if (lease != null) {
+            lease.unreportedSpend.addAndGet(spentMicros);
+            lease.available.addAndGet(reservedMicros - spentMicros);
+            lease.reserved.addAndGet(-reservedMicros);
+        }
+    }
+    
+    /**
+     * 同步所有租约：更新消耗速率、上报实际消耗、续期并补足额度
+     */
+    public void syncAll() {
+        long now = System.nanoTime();
+        for (CampaignLease lease : leases.values()) {
+            try {
+                lease.sampleRate(now, config.getRateSmoothing());
+                refill(lease);
+            } catch (Exception e) {
+                log.error("预算租约同步异常: campaignId={}", lease.campaignId, e);
+            }
+        }
+    }
+    
+    /**
+     * 归还全部租约并停止后台同步（节点下线时调用）
+     */
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(config.getSyncIntervalMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (CampaignLease lease : leases.values()) {
+            synchronized (lease) {
+                long used = lease.unreportedSpend.getAndSet(0);
+                try {
+                    store.release(lease.campaignId, lease.day, nodeId, used);
+                    lease.available.set(0);
+                } catch (Exception e) {
+                    lease.unreportedSpend.addAndGet(used);
+                    log.warn("归还预算租约失败，等待租约过期回收: campaignId={}", lease.campaignId, e);
+                }
+            }
+        }
+        log.info("预算租约已归还: nodeId={}, campaigns={}", nodeId, leases.size());
+    }
+    
+    /**
+     * 本地可用余额（微元），租约过期后为0
+     */
+    public long getAvailableMicros(String campaignId) {
+        CampaignLease lease = leases.get(campaignId);
+        return lease != null && !lease.isExpired(clock.millis()) ? Math.max(0L, lease.available.get()) : 0L;
+    }
+    
+    public String getNodeId() {
+        return nodeId;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("nodeId", nodeId);
+        stats.put("leases", leases.size());
+        stats.put("claims", claims.sum());
+        stats.put("claimFailures", claimFailures.sum());
+        stats.put("grantedMicros", grantedMicros.sum());
+        stats.put("localRejects", localRejects.sum());
+        return stats;
+    }
+    
+    private CampaignLease leaseFor(String campaignId, long capMicros) {
+        CampaignLease lease = leases.get(campaignId);
+        if (lease == null) {
+            lease = leases.computeIfAbsent(campaignId, id -> new CampaignLease(id, LocalDate.now(clock), System.nanoTime()));
+        }
+        lease.capMicros = capMicros;
+        return lease;
+    }
+    
+    private void requestRefill(CampaignLease lease) {
+        if (lease.refillPending.compareAndSet(false, true)) {
+            try {
+                refillExecutor.execute(() -> {
+                    try {
+                        refill(lease);
+                    } finally {
+                        lease.refillPending.set(false);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                lease.refillPending.set(false);
+            }
+        }
+    }
+    
+    /**
+     * 上报消耗并申领额度，申领量为目标额度与当前余额之差
+     */
+    private void refill(CampaignLease lease) {
+        synchronized (lease) {
+            LocalDate today = LocalDate.now(clock);
+            if (!today.equals(lease.day)) {
+                rollover(lease, today);
+            }
+            long now = clock.millis();
+            if (lease.expiresAtMillis != 0 && lease.isExpired(now) && !surrender(lease)) {
+                return;
+            }
+            
+            long chunk = chunkSize(lease);
+            lease.lastChunk = chunk;
+            long requested = Math.max(0L, chunk - lease.available.get());
+            long used = lease.unreportedSpend.getAndSet(0);
+            try {
+                long granted = store.claim(lease.campaignId, lease.day, nodeId, used, requested,
+                    lease.capMicros, config.getTtlMs());
+                // 从发起申领的时间算起，提前于共享存储中的租约过期
+                lease.expiresAtMillis = now + Math.max(0L, config.getTtlMs() - config.getExpiryMarginMs());
+                lease.available.addAndGet(granted);
+                claims.increment();
+                grantedMicros.add(granted);
+                if (granted < requested) {
+                    log.debug("预算租约额度不足: campaignId={}, requested={}, granted={}",
+                        lease.campaignId, requested, granted);
+                }
+            } catch (Exception e) {
+                lease.unreportedSpend.addAndGet(used);
+                claimFailures.increment();
+                log.warn("申领预算租约失败，继续使用本地余额: campaignId={}, available={}",
+                    lease.campaignId, lease.available.get(), e);
+            }
+        }
+    }
+    
+    /**
+     * 本地租约过期：结算并放弃共享存储中的租约（可能已被其他节点回收），本地余额清零后重新申领
+     * 尚未确认的预扣仍属于旧租约，先从余额中扣除，确认或释放时加回的额度不会被再次使用
+     *
+     * @return 放弃成功时为true，共享存储不可用时保持过期状态等待下次同步
+     */
+    private boolean surrender(CampaignLease lease) {
+        long used = lease.unreportedSpend.getAndSet(0);
+        try {
+            store.release(lease.campaignId, lease.day, nodeId, used);
+        } catch (Exception e) {
+            lease.unreportedSpend.addAndGet(used);
+            claimFailures.increment();
+            log.warn("本地预算租约已过期且无法结算，暂停预扣: campaignId={}", lease.campaignId, e);
+            return false;
+        }
+        lease.available.set(-lease.reserved.get());
+        lease.expiresAtMillis = 0;
+        log.warn("本地预算租约已过期，放弃剩余租约后重新申领: campaignId={}", lease.campaignId);
+        return true;
+    }
+    
+    /**
+     * 跨天：结算并归还前一天的租约，本地余额清零后按新一天重新申领
+     */
+    private void rollover(CampaignLease lease, LocalDate today) {
+        long used = lease.unreportedSpend.getAndSet(0);
+        try {
+            store.release(lease.campaignId, lease.day, nodeId, used);
+        } catch (Exception e) {
+            log.warn("归还前一天预算租约失败: campaignId={}, day={}", lease.campaignId, lease.day, e);
+        }
+        lease.available.set(0);
+        lease.expiresAtMillis = 0;
+        lease.day = today;
+    }
+    
+    /**
+     * 租约额度：最近预扣速率覆盖targetLeaseSeconds秒，限制在[minChunk, 日预算 * maxChunkFraction]之间
+     */
+    private long chunkSize(CampaignLease lease) {
+        long minChunk = Money.toMicros(config.getMinChunk());
+        long maxChunk = Math.max(minChunk, (long) (lease.capMicros * config.getMaxChunkFraction()));
+        long byRate = (long) (lease.ratePerSecond * config.getTargetLeaseSeconds());
+        return Math.min(maxChunk, Math.max(minChunk, byRate));
+    }
+    
+    private static String resolveNodeId(AdsConfiguration.BudgetLease config) {
+        if (config.getNodeId() != null && !config.getNodeId().isBlank()) {
+            return config.getNodeId();
+        }
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "unknown";
+        }
+        return host + ":" + ManagementFactory.getRuntimeMXBean().getPid();
+    }
+    
+    /**
+     * 单个广告活动在本节点的租约
+     */
+    private static final class CampaignLease {
+        private final String campaignId;
+        private final AtomicLong available = new AtomicLong();
+        private final AtomicLong reserved = new AtomicLong();
+        private final AtomicLong unreportedSpend = new AtomicLong();
+        private final AtomicLong demandSinceSample = new AtomicLong();
+        private final AtomicBoolean refillPending = new AtomicBoolean();
+        private volatile long capMicros;
+        private volatile long lastChunk;
+        private volatile LocalDate day;
+        // 本地租约的过期时间(毫秒)，0 表示尚未申领成功
+        private volatile long expiresAtMillis;
+        
+        // 以下字段只在同步线程中读写
+        private long lastSampleNanos;
+        private double ratePerSecond;
+        
+        private CampaignLease(String campaignId, LocalDate day, long nowNanos) {
+            this.campaignId = campaignId;
+            this.day = day;
+            this.lastSampleNanos = nowNanos;
+        }
+        
+        private boolean isExpired(long nowMillis) {
+            return nowMillis >= expiresAtMillis;
+        }
+        
+        private void sampleRate(long nowNanos, double smoothing) {
+            double seconds = (nowNanos - lastSampleNanos) / 1e9;
+            if (seconds <= 0) {
+                return;
+            }
+            double instant = demandSinceSample.getAndSet(0) / seconds;
+            ratePerSecond = ratePerSecond == 0 ? instant : smoothing * instant + (1 - smoothing) * ratePerSecond;
+            lastSampleNanos = nowNanos;
+        }
+    }
+}
\ No newline at end of file
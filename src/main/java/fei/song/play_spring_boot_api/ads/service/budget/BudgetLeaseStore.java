@@ -0,0 +1,29 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import java.time.LocalDate;
+
+/**
+ * 集群共享的预算租约存储
+ * 每个广告活动每天一条记录，包含已结算消耗(spent)与各节点未用完的租约余额；
+ * 所有操作必须原子执行，已结算消耗与未过期租约之和不超过日预算上限。金额单位均为微元(1元 = 1_000_000)。
+ */
+public interface BudgetLeaseStore {
+    
+    /**
+     * 结算本节点的实际消耗并申请新的租约额度，同时续期本节点租约
+     * 申请前回收其他节点已过期的租约
+     *
+     * @param usedMicros      本节点自上次同步以来的实际消耗，从本节点租约余额转入已结算消耗
+     * @param requestedMicros 申请的额度
+     * @param capMicros       当日预算上限
+     * @param ttlMillis       租约有效期，超过有效期未续期的租约由其他节点回收
+     * @return 实际授予的额度，预算耗尽时为0
+     */
+    long claim(String campaignId, LocalDate day, String nodeId,
+               long usedMicros, long requestedMicros, long capMicros, long ttlMillis);
+    
+    /**
+     * 结算本节点的实际消耗并归还剩余租约（节点下线或跨天时调用）
+     */
+    void release(String campaignId, LocalDate day, String nodeId, long usedMicros);
+}
\ No newline at end of file
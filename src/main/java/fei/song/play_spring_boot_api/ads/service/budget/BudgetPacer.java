@@ -0,0 +1,146 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * 预算匀速投放控制
+ * 每个广告活动的目标消费速率 = 当日剩余预算 / 当日剩余时间，按该速率向令牌桶补充额度；
+ * 令牌桶以GCRA形式实现：只保存一个"已消费额度按目标速率还清的时间点"，
+ * 判断是否放行为一次volatile读，记入消费为一次CAS，没有锁。
+ * 额度为正时放行，确认消费后扣减，超出的消费形成欠额，还清前该活动在候选生成阶段被跳过；
+ * 桶容量为burstSeconds秒的目标消费，限制空闲后的突发。
+ * 启用预算租约时各节点按整体剩余预算计算速率，速率是节点消费的上限而非均分值。
+ */
+public class BudgetPacer {
+    
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    
+    private final AdsConfiguration.Pacing config;
+    private final Clock clock;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    
+    // 统计信息
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    
+    public BudgetPacer(AdsConfiguration.Pacing config, Clock clock) {
+        this.config = config;
+        this.clock = clock;
+    }
+    
+    /**
+     * 广告活动当前是否放行
+     *
+     * @param remainingMicros 当日剩余预算，只在需要重新计算目标速率时调用
+     */
+    public boolean allows(String campaignId, LongSupplier remainingMicros) {
+        long nowNanos = nowNanos();
+        // 新的令牌桶为满桶
+        Bucket bucket = buckets.computeIfAbsent(campaignId, k -> new Bucket(nowNanos - burstNanos()));
+        if (nowNanos - bucket.rateUpdatedNanos >= config.getRateRefreshMs() * 1_000_000L) {
+            bucket.updateRate(targetRateMicrosPerSecond(remainingMicros.getAsLong()), nowNanos);
+        }
+        
+        if (bucket.allows(nowNanos)) {
+            allowed.increment();
+            return true;
+        }
+        throttled.increment();
+        return false;
+    }
+    
+    /**
+     * 记入已确认的消费
+     */
+    public void onSpend(String campaignId, long micros) {
+        Bucket bucket = buckets.get(campaignId);
+        if (bucket != null) {
+            bucket.consume(micros, nowNanos(), burstNanos());
+        }
+    }
+    
+    /**
+     * 当前目标消费速率（微元/秒），未计算过时返回-1
+     */
+    public long getTargetRate(String campaignId) {
+        Bucket bucket = buckets.get(campaignId);
+        return bucket != null ? bucket.rateMicrosPerSecond : -1L;
+    }
+    
+    /**
+     * 剩余预算在当日剩余时间内均匀消费的速率，临近午夜时按最小剩余时间计算以避免速率突增
+     */
+    long targetRateMicrosPerSecond(long remainingMicros) {
+        if (remainingMicros <= 0) {
+            return 0L;
+        }
+        ZonedDateTime now = Instant.ofEpochMilli(clock.millis()).atZone(clock.getZone());
+        ZonedDateTime endOfDay = LocalDate.from(now).plusDays(1).atStartOfDay(clock.getZone());
+        long secondsLeft = Math.max(config.getMinRemainingSeconds(), endOfDay.toEpochSecond() - now.toEpochSecond());
+        return Math.max(1L, remainingMicros / secondsLeft);
+    }
+    
+    private long burstNanos() {
+        return config.getBurstSeconds() * NANOS_PER_SECOND;
+    }
+    
+    private long nowNanos() {
+        return clock.millis() * 1_000_000L;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("pacedCampaigns", buckets.size());
+        stats.put("allowed", allowed.sum());
+        stats.put("throttled", throttled.sum());
+        return stats;
+    }
+    
+    /**
+     * GCRA令牌桶：paidUntilNanos早于当前时间即有可用额度
+     */
+    private static final class Bucket {
+        private final AtomicLong paidUntilNanos;
+        private volatile long rateMicrosPerSecond;
+        private volatile long rateUpdatedNanos;
+        
+        private Bucket(long paidUntilNanos) {
+            this.paidUntilNanos = new AtomicLong(paidUntilNanos);
+            this.rateUpdatedNanos = Long.MIN_VALUE / 2;
+        }
+        
+        private boolean allows(long nowNanos) {
+            return rateMicrosPerSecond > 0 && paidUntilNanos.get() <= nowNanos;
+        }
+        
+        private void updateRate(long rate, long nowNanos) {
+            rateMicrosPerSecond = rate;
+            rateUpdatedNanos = nowNanos;
+        }
+        
+        /**
+         * 按目标速率把消费折算为还清所需时间；桶满时从 now - burst 开始累计
+         */
+        private void consume(long micros, long nowNanos, long burstNanos) {
+            long rate = rateMicrosPerSecond;
+            long costNanos = rate > 0 ? (long) ((double) micros * NANOS_PER_SECOND / rate) : burstNanos;
+            long current;
+            long next;
+            do {
+                current = paidUntilNanos.get();
+                next = Math.max(current, nowNanos - burstNanos) + costNanos;
+            } while (!paidUntilNanos.compareAndSet(current, next));
+        }
+    }
+}
\ No newline at end of file
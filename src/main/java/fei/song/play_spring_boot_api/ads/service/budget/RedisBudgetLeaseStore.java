@@ -0,0 +1,113 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * 基于Redis Lua脚本的预算租约存储
+ * 每个广告活动每天一个Hash：spent 为已结算消耗，l:{node} 为节点未用完的租约余额，e:{node} 为租约到期时间(毫秒)。
+ * 申请、结算、回收过期租约在同一脚本中完成，保证集群内已结算消耗与未过期租约之和不超过日预算。
+ */
+@RequiredArgsConstructor
+public class RedisBudgetLeaseStore implements BudgetLeaseStore {
+    
+    private static final String KEY_PREFIX = "ads:budget:lease:";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+    
+    // 当日记录保留两天，跨天后自然过期
+    private static final long KEY_RETENTION_MILLIS = 2 * 24 * 3600 * 1000L;
+    
+    static final RedisScript<Long> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+        local key = KEYS[1]
+        local node = ARGV[1]
+        local used = tonumber(ARGV[2])
+        local requested = tonumber(ARGV[3])
+        local cap = tonumber(ARGV[4])
+        local now = tonumber(ARGV[5])
+        local ttl = tonumber(ARGV[6])
+        local leaseField = 'l:' .. node
+        if used ~= 0 then
+          redis.call('HINCRBY', key, 'spent', used)
+          redis.call('HINCRBY', key, leaseField, -used)
+        end
+        local fields = redis.call('HGETALL', key)
+        local expired = {}
+        for i = 1, #fields, 2 do
+          local field = fields[i]
+          if string.sub(field, 1, 2) == 'e:' then
+            local owner = string.sub(field, 3)
+            if owner ~= node and tonumber(fields[i + 1]) < now then
+              expired[owner] = true
+              redis.call('HDEL', key, field)
+            end
+          end
+        end
+        local outstanding = 0
+        for i = 1, #fields, 2 do
+          local field = fields[i]
+          if string.sub(field, 1, 2) == 'l:' then
+            local owner = string.sub(field, 3)
+            if expired[owner] then
+              redis.call('HDEL', key, field)
+            else
+              local balance = tonumber(fields[i + 1])
+              if balance > 0 then
+                outstanding = outstanding + balance
+              end
+            end
+          end
+        end
+        local spent = tonumber(redis.call('HGET', key, 'spent') or '0')
+        local grant = math.min(requested, cap - spent - outstanding)
+        if grant < 0 then
+          grant = 0
+        end
+        if grant > 0 then
+          redis.call('HINCRBY', key, leaseField, grant)
+        end
+        redis.call('HSET', key, 'e:' .. node, now + ttl)
+        redis.call('PEXPIRE', key, ARGV[7])
+        return grant
+        """, Long.class);
+    
+    static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+        local key = KEYS[1]
+        local node = ARGV[1]
+        local used = tonumber(ARGV[2])
+        if used ~= 0 then
+          redis.call('HINCRBY', key, 'spent', used)
+        end
+        return redis.call('HDEL', key, 'l:' .. node, 'e:' .. node)
+        """, Long.class);
+    
+    private final StringRedisTemplate redisTemplate;
+    
+    @Override
+    public long claim(String campaignId, LocalDate day, String nodeId,
+                      long usedMicros, long requestedMicros, long capMicros, long ttlMillis) {
+        Long granted = redisTemplate.execute(CLAIM_SCRIPT, List.of(key(campaignId, day)),
+            nodeId,
+            Long.toString(usedMicros),
+            Long.toString(requestedMicros),
+            Long.toString(capMicros),
+            Long.toString(System.currentTimeMillis()),
+            Long.toString(ttlMillis),
+            Long.toString(KEY_RETENTION_MILLIS));
+        return granted != null ? granted : 0L;
+    }
+    
+    @Override
+    public void release(String campaignId, LocalDate day, String nodeId, long usedMicros) {
+        redisTemplate.execute(RELEASE_SCRIPT, List.of(key(campaignId, day)), nodeId, Long.toString(usedMicros));
+    }
+    
+    static String key(String campaignId, LocalDate day) {
+        return KEY_PREFIX + campaignId + ":" + DAY_FORMAT.format(day);
+    }
+}
\ No newline at end of file
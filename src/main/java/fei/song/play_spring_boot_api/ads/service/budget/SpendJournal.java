@@ -0,0 +1,464 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 预算消费日志
+ * 预扣、确认、释放事件按定长头+变长ID写入内存映射的只追加分段文件，追加只是一次内存拷贝；
+ * 后台线程按固定间隔对当前分段做一次force（组提交），竞价与赢价通知路径不会等待fsync。
+ * 进程崩溃时已写入映射区的记录仍在页缓存中，操作系统崩溃最多丢失一个刷盘间隔的记录。
+ * 分段写满或到达检查点间隔时切换新分段，旧分段在后台与上一个检查点合并为新的检查点后删除，
+ * 启动时只需读取检查点并回放其后的少量分段。每条记录带CRC，回放遇到残缺记录即停止。
+ */
+@Slf4j
+public class SpendJournal implements AutoCloseable {
+    
+    private static final int SEGMENT_MAGIC = 0x53504a31;
+    private static final int CHECKPOINT_MAGIC = 0x53504b31;
+    private static final String SEGMENT_PREFIX = "spend-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    private static final String CHECKPOINT_SUFFIX = ".bin";
+    
+    // 记录：长度(4) + 类型(1) + 时间戳(8) + 金额(8) + 附加值(8) + bidId(2+n) + campaignId(2+n) + CRC(4)
+    private static final int MIN_PAYLOAD_BYTES = 1 + 8 + 8 + 8 + 2 + 2;
+    private static final int RECORD_OVERHEAD_BYTES = 4 + MIN_PAYLOAD_BYTES + 4;
+    
+    private final Path directory;
+    private final AdsConfiguration.BudgetJournal config;
+    private final Clock clock;
+    private final ScheduledExecutorService scheduler;
+    
+    // 启动时回放得到的状态，由BudgetService取走一次
+    private volatile SpendJournalState recoveredState;
+    
+    // 以下字段由this保护
+    private Segment active;
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private final CRC32 crc = new CRC32();
+    private boolean dirty;
+    private boolean closed;
+    
+    // 统计信息
+    private final LongAdder appendedRecords = new LongAdder();
+    private final LongAdder appendFailures = new LongAdder();
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    
+    SpendJournal(Path directory, AdsConfiguration.BudgetJournal config, Clock clock,
+                 ScheduledExecutorService scheduler, SpendJournalState recoveredState, long nextSeq) throws IOException {
+        this.directory = directory;
+        this.config = config;
+        this.clock = clock;
+        this.scheduler = scheduler;
+        this.recoveredState = recoveredState;
+        this.active = createSegment(nextSeq);
+    }
+    
+    /**
+     * 回放已有日志并启动组提交与检查点线程
+     */
+    public static SpendJournal open(AdsConfiguration.BudgetJournal config) throws IOException {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("spend-journal").daemon().factory());
+        SpendJournal journal = open(Path.of(config.getDirectory()), config, Clock.systemDefaultZone(), scheduler);
+        scheduler.scheduleWithFixedDelay(journal::flush,
+            config.getFlushIntervalMs(), config.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(journal::checkpoint,
+            config.getCheckpointIntervalMs(), config.getCheckpointIntervalMs(), TimeUnit.MILLISECONDS);
+        return journal;
+    }
+    
+    /**
+     * 回放已有日志：读取最新检查点，回放其后的分段并合并为新的检查点，然后从下一个序号开始写入
+     * scheduler为null时分段切换后在调用线程内压缩
+     */
+    static SpendJournal open(Path directory, AdsConfiguration.BudgetJournal config, Clock clock,
+                             ScheduledExecutorService scheduler) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(directory);
+        long lastSeq = Math.max(
+            lastSequence(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX),
+            lastSequence(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX));
+        SpendJournalState state = compact(directory, clock, lastSeq);
+        log.info("预算消费日志回放完成: directory={}, campaigns={}, reservations={}, elapsedMs={}",
+            directory, state.getCampaigns().size(), state.getReservations().size(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return new SpendJournal(directory, config, clock, scheduler, state, lastSeq + 1);
+    }
+    
+    /**
+     * 取走启动时回放得到的状态，只能取一次
+     */
+    public SpendJournalState takeRecoveredState() {
+        SpendJournalState state = recoveredState;
+        recoveredState = null;
+        return state;
+    }
+    
+    public void recordReserve(String bidId, String campaignId, long amountMicros, long expiresAtMillis) {
+        append(SpendJournalState.RESERVE, bidId, campaignId, amountMicros, expiresAtMillis);
+    }
+    
+    public void recordConfirm(String bidId, String campaignId, long reservedMicros, long actualMicros) {
+        append(SpendJournalState.CONFIRM, bidId, campaignId, actualMicros, reservedMicros);
+    }
+    
+    public void recordRelease(String bidId, String campaignId, long amountMicros) {
+        append(SpendJournalState.RELEASE, bidId, campaignId, amountMicros, 0L);
+    }
+    
+    /**
+     * 追加一条记录到映射区，不等待刷盘；写入失败只计数，不影响预算流程
+     */
+    private void append(byte type, String bidId, String campaignId, long amountMicros, long extra) {
+        byte[] bid = bidId.getBytes(StandardCharsets.UTF_8);
+        byte[] campaign = campaignId.getBytes(StandardCharsets.UTF_8);
+        int payloadBytes = MIN_PAYLOAD_BYTES + bid.length + campaign.length;
+        if (bid.length > Short.MAX_VALUE || campaign.length > Short.MAX_VALUE
+            || 4 + payloadBytes + 4 > config.getSegmentBytes() - 4) {
+            appendFailures.increment();
+            log.warn("预算消费日志记录过长: bidId={}, campaignId={}", bidId, campaignId);
+            return;
+        }
+        long timestamp = clock.millis();
+        
+        synchronized (this) {
+            if (closed) {
+                appendFailures.increment();
+                return;
+            }
+            try {
+                if (active.buffer.remaining() < 4 + payloadBytes + 4) {
+                    roll();
+                }
+                if (scratch.capacity() < payloadBytes) {
+                    scratch = ByteBuffer.allocate(Math.max(payloadBytes, scratch.capacity() * 2));
+                }
+                scratch.clear();
+                scratch.put(type).putLong(timestamp).putLong(amountMicros).putLong(extra)
+                    .putShort((short) bid.length).put(bid)
+                    .putShort((short) campaign.length).put(campaign);
+                crc.reset();
+                crc.update(scratch.array(), 0, payloadBytes);
+                
+                active.buffer.putInt(payloadBytes)
+                    .put(scratch.array(), 0, payloadBytes)
+                    .putInt((int) crc.getValue());
+                active.records++;
+                dirty = true;
+                appendedRecords.increment();
+            } catch (IOException e) {
+                appendFailures.increment();
+                log.error("预算消费日志写入失败: type={}, bidId={}", type, bidId, e);
+            }
+        }
+    }
+    
+    /**
+     * 组提交：把上次刷盘后写入当前分段的记录一次性落盘
+     */
+    void flush() {
+        Segment segment;
+        synchronized (this) {
+            if (!dirty || closed) {
+                return;
+            }
+            dirty = false;
+            segment = active;
+        }
+        try {
+            segment.buffer.force();
+            flushes.increment();
+        } catch (Exception e) {
+            log.error("预算消费日志刷盘失败: segment={}", segment.seq, e);
+        }
+    }
+    
+    /**
+     * 定期检查点：当前分段有记录时切换新分段，并把旧分段合并进检查点
+     */
+    void checkpoint() {
+        Segment sealed;
+        synchronized (this) {
+            if (closed || active.records == 0) {
+                return;
+            }
+            sealed = active;
+            try {
+                active = createSegment(sealed.seq + 1);
+                dirty = false;
+            } catch (IOException e) {
+                active = sealed;
+                log.error("预算消费日志分段切换失败: segment={}", sealed.seq, e);
+                return;
+            }
+        }
+        seal(sealed);
+    }
+    
+    /**
+     * 当前分段已满时切换新分段（调用方持有锁），旧分段交给后台线程压缩
+     */
+    private void roll() throws IOException {
+        Segment sealed = active;
+        active = createSegment(sealed.seq + 1);
+        dirty = false;
+        if (scheduler != null) {
+            scheduler.execute(() -> seal(sealed));
+        } else {
+            seal(sealed);
+        }
+    }
+    
+    private void seal(Segment segment) {
+        try {
+            segment.buffer.force();
+            segment.channel.close();
+            compact(directory, clock, segment.seq);
+            checkpoints.increment();
+        } catch (Exception e) {
+            log.error("预算消费日志检查点写入失败: segment={}", segment.seq, e);
+        }
+    }
+    
+    /**
+     * 停止后台线程，把当前分段合并进检查点，下次启动只需读取检查点
+     */
+    @Override
+    public void close() {
+        Segment last;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            last = active;
+        }
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        seal(last);
+        log.info("预算消费日志已关闭: directory={}, records={}", directory, appendedRecords.sum());
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("appendedRecords", appendedRecords.sum());
+        stats.put("appendFailures", appendFailures.sum());
+        stats.put("flushes", flushes.sum());
+        stats.put("checkpoints", checkpoints.sum());
+        synchronized (this) {
+            stats.put("activeSegment", active.seq);
+            stats.put("activeSegmentBytes", active.buffer.position());
+        }
+        return stats;
+    }
+    
+    private Segment createSegment(long seq) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(directory, seq),
+            StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, config.getSegmentBytes());
+        buffer.putInt(SEGMENT_MAGIC);
+        return new Segment(seq, channel, buffer);
+    }
+    
+    /**
+     * 以最新检查点为基础回放序号不超过upToSeq的分段，写入新检查点并删除已合并的文件
+     */
+    static SpendJournalState compact(Path directory, Clock clock, long upToSeq) throws IOException {
+        SpendJournalState state = new SpendJournalState(clock.getZone());
+        long checkpointSeq = readLatestCheckpoint(directory, state);
+        List<Long> segments = sequences(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        for (long seq : segments) {
+            if (seq > checkpointSeq && seq <= upToSeq) {
+                replaySegment(segmentPath(directory, seq), state);
+            }
+        }
+        state.pruneExpired(clock.millis());
+        
+        if (upToSeq > checkpointSeq) {
+            writeCheckpoint(directory, state, upToSeq);
+        }
+        for (long seq : segments) {
+            if (seq <= upToSeq) {
+                Files.deleteIfExists(segmentPath(directory, seq));
+            }
+        }
+        for (long seq : sequences(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX)) {
+            if (seq < upToSeq) {
+                Files.deleteIfExists(checkpointPath(directory, seq));
+            }
+        }
+        return state;
+    }
+    
+    /**
+     * 回放一个分段，返回回放的记录数；遇到空白或CRC不匹配的记录即视为日志末尾
+     */
+    static int replaySegment(Path path, SpendJournalState state) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 4 || buffer.getInt() != SEGMENT_MAGIC) {
+                log.warn("忽略无效的预算消费日志分段: path={}", path);
+                return 0;
+            }
+            
+            CRC32 checksum = new CRC32();
+            byte[] payload = new byte[256];
+            int records = 0;
+            while (buffer.remaining() >= RECORD_OVERHEAD_BYTES) {
+                int payloadBytes = buffer.getInt();
+                if (payloadBytes < MIN_PAYLOAD_BYTES || payloadBytes + 4 > buffer.remaining()) {
+                    break;
+                }
+                if (payload.length < payloadBytes) {
+                    payload = new byte[payloadBytes];
+                }
+                buffer.get(payload, 0, payloadBytes);
+                checksum.reset();
+                checksum.update(payload, 0, payloadBytes);
+                if ((int) checksum.getValue() != buffer.getInt()) {
+                    log.warn("预算消费日志记录校验失败，截断回放: path={}, records={}", path, records);
+                    break;
+                }
+                
+                ByteBuffer record = ByteBuffer.wrap(payload, 0, payloadBytes);
+                byte type = record.get();
+                long timestamp = record.getLong();
+                long amountMicros = record.getLong();
+                long extra = record.getLong();
+                String bidId = readString(record);
+                String campaignId = readString(record);
+                state.apply(type, timestamp, amountMicros, extra, bidId, campaignId);
+                records++;
+            }
+            return records;
+        }
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort();
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+    
+    /**
+     * 先写临时文件并fsync，再原子替换为检查点文件
+     */
+    private static void writeCheckpoint(Path directory, SpendJournalState state, long seq) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(CHECKPOINT_MAGIC);
+        out.writeLong(seq);
+        state.writeTo(out);
+        out.flush();
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes.toByteArray());
+        out.writeInt((int) checksum.getValue());
+        
+        Path target = checkpointPath(directory, seq);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+    
+    /**
+     * 读取最新的有效检查点到state，返回其覆盖的分段序号，没有检查点时返回0
+     */
+    private static long readLatestCheckpoint(Path directory, SpendJournalState state) throws IOException {
+        List<Long> seqs = sequences(directory, CHECKPOINT_PREFIX, CHECKPOINT_SUFFIX);
+        if (seqs.isEmpty()) {
+            return 0L;
+        }
+        long seq = seqs.get(seqs.size() - 1);
+        byte[] data = Files.readAllBytes(checkpointPath(directory, seq));
+        CRC32 checksum = new CRC32();
+        checksum.update(data, 0, Math.max(0, data.length - 4));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (data.length < 16 || in.readInt() != CHECKPOINT_MAGIC
+            || ByteBuffer.wrap(data, data.length - 4, 4).getInt() != (int) checksum.getValue()) {
+            throw new IOException("预算消费日志检查点损坏: " + checkpointPath(directory, seq));
+        }
+        in.readLong();
+        state.readFrom(in);
+        return seq;
+    }
+    
+    private static long lastSequence(Path directory, String prefix, String suffix) throws IOException {
+        List<Long> seqs = sequences(directory, prefix, suffix);
+        return seqs.isEmpty() ? 0L : seqs.get(seqs.size() - 1);
+    }
+    
+    private static List<Long> sequences(Path directory, String prefix, String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                .filter(name -> name.startsWith(prefix) && name.endsWith(suffix))
+                .map(name -> Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())))
+                .sorted()
+                .toList();
+        }
+    }
+    
+    private static Path segmentPath(Path directory, long seq) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+    
+    private static Path checkpointPath(Path directory, long seq) {
+        return directory.resolve(String.format("%s%016d%s", CHECKPOINT_PREFIX, seq, CHECKPOINT_SUFFIX));
+    }
+    
+    /**
+     * 一个内存映射的日志分段，写入位置即映射区的position
+     */
+    private static final class Segment {
+        private final long seq;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int records;
+        
+        private Segment(long seq, FileChannel channel, MappedByteBuffer buffer) {
+            this.seq = seq;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+}
\ No newline at end of file
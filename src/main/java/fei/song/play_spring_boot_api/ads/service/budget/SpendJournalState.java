@@ -0,0 +1,154 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 消费日志回放得到的预算状态
+ * 按广告活动累计当日与累计消费，并保留尚未确认或释放的预扣；检查点即该状态的序列化结果。
+ * 非线程安全，只在恢复与压缩线程中使用。
+ */
+public final class SpendJournalState {
+    
+    static final byte RESERVE = 1;
+    static final byte CONFIRM = 2;
+    static final byte RELEASE = 3;
+    
+    private final ZoneId zone;
+    private final Map<String, CampaignSpend> campaigns = new HashMap<>();
+    private final Map<String, OpenReservation> reservations = new HashMap<>();
+    
+    SpendJournalState(ZoneId zone) {
+        this.zone = zone;
+    }
+    
+    /**
+     * 应用一条日志记录
+     *
+     * @param amountMicros 预扣/释放为预扣金额，确认为实际消费
+     * @param extra        预扣为到期时间(epoch毫秒)，确认为原预扣金额
+     */
+    void apply(byte type, long timestampMillis, long amountMicros, long extra, String bidId, String campaignId) {
+        switch (type) {
+            case RESERVE -> reservations.put(bidId, new OpenReservation(bidId, campaignId, amountMicros, extra));
+            case CONFIRM -> {
+                reservations.remove(bidId);
+                long epochDay = LocalDate.ofInstant(Instant.ofEpochMilli(timestampMillis), zone).toEpochDay();
+                campaigns.computeIfAbsent(campaignId, CampaignSpend::new).add(epochDay, amountMicros);
+            }
+            case RELEASE -> reservations.remove(bidId);
+            default -> throw new IllegalArgumentException("未知的日志记录类型: " + type);
+        }
+    }
+    
+    /**
+     * 丢弃已过期的预扣
+     */
+    void pruneExpired(long nowMillis) {
+        Iterator<OpenReservation> it = reservations.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().expiresAtMillis <= nowMillis) {
+                it.remove();
+            }
+        }
+    }
+    
+    public Collection<CampaignSpend> getCampaigns() {
+        return campaigns.values();
+    }
+    
+    public Collection<OpenReservation> getReservations() {
+        return reservations.values();
+    }
+    
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(campaigns.size());
+        for (CampaignSpend spend : campaigns.values()) {
+            out.writeUTF(spend.campaignId);
+            out.writeLong(spend.epochDay);
+            out.writeLong(spend.dailySpentMicros);
+            out.writeLong(spend.totalSpentMicros);
+        }
+        out.writeInt(reservations.size());
+        for (OpenReservation reservation : reservations.values()) {
+            out.writeUTF(reservation.bidId);
+            out.writeUTF(reservation.campaignId);
+            out.writeLong(reservation.amountMicros);
+            out.writeLong(reservation.expiresAtMillis);
+        }
+    }
+    
+    void readFrom(DataInputStream in) throws IOException {
+        int campaignCount = in.readInt();
+        for (int i = 0; i < campaignCount; i++) {
+            CampaignSpend spend = new CampaignSpend(in.readUTF());
+            spend.epochDay = in.readLong();
+            spend.dailySpentMicros = in.readLong();
+            spend.totalSpentMicros = in.readLong();
+            campaigns.put(spend.campaignId, spend);
+        }
+        int reservationCount = in.readInt();
+        for (int i = 0; i < reservationCount; i++) {
+            OpenReservation reservation = new OpenReservation(in.readUTF(), in.readUTF(), in.readLong(), in.readLong());
+            reservations.put(reservation.bidId, reservation);
+        }
+    }
+    
+    /**
+     * 广告活动的已确认消费（微元）
+     */
+    public static final class CampaignSpend {
+        private final String campaignId;
+        private long epochDay;
+        private long dailySpentMicros;
+        private long totalSpentMicros;
+        
+        private CampaignSpend(String campaignId) {
+            this.campaignId = campaignId;
+        }
+        
+        private void add(long day, long micros) {
+            if (day != epochDay) {
+                epochDay = day;
+                dailySpentMicros = 0;
+            }
+            dailySpentMicros += micros;
+            totalSpentMicros += micros;
+        }
+        
+        public String getCampaignId() { return campaignId; }
+        public LocalDate getDay() { return LocalDate.ofEpochDay(epochDay); }
+        public long getDailySpentMicros() { return dailySpentMicros; }
+        public long getTotalSpentMicros() { return totalSpentMicros; }
+    }
+    
+    /**
+     * 尚未确认或释放的预扣
+     */
+    public static final class OpenReservation {
+        private final String bidId;
+        private final String campaignId;
+        private final long amountMicros;
+        private final long expiresAtMillis;
+        
+        private OpenReservation(String bidId, String campaignId, long amountMicros, long expiresAtMillis) {
+            this.bidId = bidId;
+            this.campaignId = campaignId;
+            this.amountMicros = amountMicros;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+        
+        public String getBidId() { return bidId; }
+        public String getCampaignId() { return campaignId; }
+        public long getAmountMicros() { return amountMicros; }
+        public long getExpiresAtMillis() { return expiresAtMillis; }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,208 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 分层时间轮
+ * 按到期时间(epoch毫秒)将定时项挂到对应层级的槽位链表上：插入与取消均为O(1)，
+ * 推进时只处理到期槽位，高层槽位在低层转完一圈时整体下移一层，开销与在途定时项总数无关。
+ * 到期判定精度为一个tick（不会提前到期），所有操作在同一把锁内完成，到期回调由调用方在锁外执行。
+ */
+public final class TimingWheel<T> {
+    
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    
+    // 4层共覆盖 2^32 个tick，tick为1秒时约136年
+    private static final int LEVELS = 4;
+    
+    private final long tickMs;
+    private final Timeout<T>[][] wheels;
+    private long currentTick;
+    private int size;
+    
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMs, long startMillis) {
+        if (tickMs <= 0) {
+            throw new IllegalArgumentException("tickMs必须大于0: " + tickMs);
+        }
+        this.tickMs = tickMs;
+        this.currentTick = startMillis / tickMs;
+        this.wheels = new Timeout[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = Timeout.sentinel();
+            }
+        }
+    }
+    
+    /**
+     * 添加定时项，已过期的定时项在下一个tick到期
+     */
+    public synchronized Timeout<T> schedule(T value, long deadlineMillis) {
+        Timeout<T> timeout = new Timeout<>(this, value, deadlineMillis);
+        place(timeout, currentTick + 1);
+        size++;
+        return timeout;
+    }
+    
+    /**
+     * 取消定时项，已到期或已取消时返回false
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout == null || timeout.wheel != this || timeout.prev == null) {
+            return false;
+        }
+        timeout.unlink();
+        size--;
+        return true;
+    }
+    
+    /**
+     * 推进到nowMillis，返回期间到期的定时项
+     */
+    public synchronized List<T> advance(long nowMillis) {
+        long targetTick = nowMillis / tickMs;
+        List<T> expired = null;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // 低层转完一圈时，从最高层开始把对应槽位下移一层
+            int cascadeLevel = 0;
+            while (cascadeLevel + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (cascadeLevel + 1))) - 1)) == 0) {
+                cascadeLevel++;
+            }
+            for (int level = cascadeLevel; level > 0; level--) {
+                Timeout<T> head = wheels[level][slot(currentTick, level)];
+                for (Timeout<T> timeout = head.detachAll(); timeout != null; ) {
+                    Timeout<T> next = timeout.next;
+                    timeout.next = null;
+                    // 本tick到期的定时项落入下面即将处理的第0层槽位
+                    place(timeout, currentTick);
+                    timeout = next;
+                }
+            }
+            
+            Timeout<T> head = wheels[0][slot(currentTick, 0)];
+            for (Timeout<T> timeout = head.detachAll(); timeout != null; ) {
+                Timeout<T> next = timeout.next;
+                timeout.next = null;
+                if (deadlineTick(timeout) <= currentTick) {
+                    if (expired == null) {
+                        expired = new ArrayList<>();
+                    }
+                    expired.add(timeout.value);
+                    size--;
+                } else {
+                    // 超出时间轮范围时被放在最高层末尾，重新放置
+                    place(timeout, currentTick + 1);
+                }
+                timeout = next;
+            }
+        }
+        return expired != null ? expired : List.of();
+    }
+    
+    /**
+     * 在途定时项数量
+     */
+    public synchronized int size() {
+        return size;
+    }
+    
+    public long getTickMs() {
+        return tickMs;
+    }
+    
+    /**
+     * 按到期tick与当前tick的最高相同前缀选择层级，保证槽位在本圈内尚未经过
+     */
+    private void place(Timeout<T> timeout, long minTick) {
+        long tick = Math.max(deadlineTick(timeout), minTick);
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * (level + 1);
+            if (level + 1 == LEVELS || (tick >>> shift) == (currentTick >>> shift)) {
+                if (level + 1 == LEVELS && (tick >>> shift) != (currentTick >>> shift)) {
+                    tick = currentTick | ((1L << shift) - 1);
+                }
+                wheels[level][slot(tick, level)].append(timeout);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * 到期时间向上取整到tick，保证不会提前到期
+     */
+    private long deadlineTick(Timeout<T> timeout) {
+        return Math.ceilDiv(timeout.deadlineMillis, tickMs);
+    }
+    
+    private static int slot(long tick, int level) {
+        return (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+    
+    /**
+     * 时间轮中的定时项，同时作为槽位双向链表的节点
+     */
+    public static final class Timeout<T> {
+        private final TimingWheel<T> wheel;
+        private final T value;
+        private final long deadlineMillis;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+        
+        private Timeout(TimingWheel<T> wheel, T value, long deadlineMillis) {
+            this.wheel = wheel;
+            this.value = value;
+            this.deadlineMillis = deadlineMillis;
+        }
+        
+        private static <T> Timeout<T> sentinel() {
+            Timeout<T> head = new Timeout<>(null, null, 0L);
+            head.prev = head;
+            head.next = head;
+            return head;
+        }
+        
+        public T getValue() {
+            return value;
+        }
+        
+        public long getDeadlineMillis() {
+            return deadlineMillis;
+        }
+        
+        private void append(Timeout<T> timeout) {
+            timeout.prev = prev;
+            timeout.next = this;
+            prev.next = timeout;
+            prev = timeout;
+        }
+        
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+        }
+        
+        /**
+         * 摘下整条链表，返回以null结尾的单向链表
+         */
+        private Timeout<T> detachAll() {
+            if (next == this) {
+                return null;
+            }
+            Timeout<T> first = next;
+            prev.next = null;
+            for (Timeout<T> node = first; node != null; node = node.next) {
+                node.prev = null;
+            }
+            next = this;
+            prev = this;
+            return first;
+        }
+    }
+}
\ No newline at end of file
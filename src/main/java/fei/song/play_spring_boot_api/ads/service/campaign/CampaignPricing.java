@@ -0,0 +1,74 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+
+/**
+ * 广告活动的出价与预算金额（微元）
+ * 在快照构建时从BigDecimal换算一次，竞价与预算检查直接读取基本类型；未设置的金额为Money.UNSET
+ */
+public final class CampaignPricing {
+    
+    private final long baseBidMicros;
+    private final long maxBidMicros;
+    private final long dailyBudgetMicros;
+    private final long totalBudgetMicros;
+    private final long spentTodayMicros;
+    private final long spentTotalMicros;
+    private final boolean hasBudget;
+    
+    private CampaignPricing(boolean hasBudget, long baseBidMicros, long maxBidMicros, long dailyBudgetMicros,
+                            long totalBudgetMicros, long spentTodayMicros, long spentTotalMicros) {
+        this.hasBudget = hasBudget;
+        this.baseBidMicros = baseBidMicros;
+        this.maxBidMicros = maxBidMicros;
+        this.dailyBudgetMicros = dailyBudgetMicros;
+        this.totalBudgetMicros = totalBudgetMicros;
+        this.spentTodayMicros = spentTodayMicros;
+        this.spentTotalMicros = spentTotalMicros;
+    }
+    
+    public static CampaignPricing of(CampaignEntity campaign) {
+        CampaignEntity.Bidding bidding = campaign.getBidding();
+        CampaignEntity.Budget budget = campaign.getBudget();
+        return new CampaignPricing(
+            budget != null,
+            bidding != null ? Money.toMicros(bidding.getBaseBid(), Money.UNSET) : Money.UNSET,
+            bidding != null ? Money.toMicros(bidding.getMaxBid(), Money.UNSET) : Money.UNSET,
+            budget != null ? Money.toMicros(budget.getDailyBudget(), Money.UNSET) : Money.UNSET,
+            budget != null ? Money.toMicros(budget.getTotalBudget(), Money.UNSET) : Money.UNSET,
+            budget != null ? Money.toMicros(budget.getSpentToday(), 0L) : 0L,
+            budget != null ? Money.toMicros(budget.getSpentTotal(), 0L) : 0L);
+    }
+    
+    public long getBaseBidMicros() {
+        return baseBidMicros;
+    }
+    
+    public long getMaxBidMicros() {
+        return maxBidMicros;
+    }
+    
+    public long getDailyBudgetMicros() {
+        return dailyBudgetMicros;
+    }
+    
+    public long getTotalBudgetMicros() {
+        return totalBudgetMicros;
+    }
+    
+    public long getSpentTodayMicros() {
+        return spentTodayMicros;
+    }
+    
+    public long getSpentTotalMicros() {
+        return spentTotalMicros;
+    }
+    
+    /**
+     * 是否配置了预算（与CampaignEntity.getBudget()不为null一致）
+     */
+    public boolean hasBudget() {
+        return hasBudget;
+    }
+}
\ No newline at end of file
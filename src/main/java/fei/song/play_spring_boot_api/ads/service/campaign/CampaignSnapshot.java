@@ -0,0 +1,185 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 广告活动内存快照
+ * 不可变、带版本号，竞价路径上的所有查询都基于快照完成，不产生任何I/O
+ */
+public final class CampaignSnapshot {
+    
+    /**
+     * 尚未加载时使用的空快照
+     */
+    public static final CampaignSnapshot EMPTY = build(0L, List.of());
+    
+    private final long version;
+    private final LocalDateTime builtAt;
+    private final List<CampaignEntity> campaigns;
+    private final Map<String, CampaignEntity> campaignsById;
+    private final Map<String, CampaignEntity.Creative> creativesById;
+    private final Map<String, List<CampaignEntity>> campaignsByAdvertiserId;
+    private final CampaignTargetingIndex targetingIndex;
+    private final Map<String, CompiledTargeting> compiledTargeting;
+    private final Map<String, List<CreativeTemplate>> creativeTemplates;
+    private final Map<String, CampaignPricing> pricing;
+    private final Map<String, Integer> ordinals;
+    
+    private CampaignSnapshot(long version,
+                             List<CampaignEntity> campaigns,
+                             Map<String, CampaignEntity> campaignsById,
+                             Map<String, CampaignEntity.Creative> creativesById,
+                             Map<String, List<CampaignEntity>> campaignsByAdvertiserId) {
+        this.version = version;
+        this.builtAt = LocalDateTime.now();
+        this.campaigns = campaigns;
+        this.campaignsById = campaignsById;
+        this.creativesById = creativesById;
+        this.campaignsByAdvertiserId = campaignsByAdvertiserId;
+        this.targetingIndex = CampaignTargetingIndex.build(campaigns);
+        Map<String, CompiledTargeting> compiled = new HashMap<>();
+        Map<String, List<CreativeTemplate>> templates = new HashMap<>();
+        Map<String, CampaignPricing> prices = new HashMap<>();
+        Map<String, Integer> ordinalById = new HashMap<>();
+        for (CampaignEntity campaign : campaigns) {
+            ordinalById.put(campaign.getCampaignId(), ordinalById.size());
+            compiled.put(campaign.getCampaignId(), CompiledTargeting.compile(campaign));
+            templates.put(campaign.getCampaignId(), CreativeTemplate.forCampaign(campaign));
+            prices.put(campaign.getCampaignId(), CampaignPricing.of(campaign));
+        }
+        this.compiledTargeting = Collections.unmodifiableMap(compiled);
+        this.creativeTemplates = Collections.unmodifiableMap(templates);
+        this.pricing = Collections.unmodifiableMap(prices);
+        this.ordinals = Collections.unmodifiableMap(ordinalById);
+    }
+    
+    /**
+     * 根据活跃广告活动列表构建快照
+     */
+    public static CampaignSnapshot build(long version, List<CampaignEntity> source) {
+        List<CampaignEntity> campaigns = new ArrayList<>(source.size());
+        Map<String, CampaignEntity> campaignsById = new HashMap<>();
+        Map<String, CampaignEntity.Creative> creativesById = new HashMap<>();
+        Map<String, List<CampaignEntity>> campaignsByAdvertiserId = new HashMap<>();
+        
+        for (CampaignEntity campaign : source) {
+            if (campaign == null || campaign.getCampaignId() == null) {
+                continue;
+            }
+            // 同一campaignId只保留第一条记录
+            if (campaignsById.putIfAbsent(campaign.getCampaignId(), campaign) != null) {
+                continue;
+            }
+            campaigns.add(campaign);
+            
+            if (campaign.getAdvertiserId() != null) {
+                campaignsByAdvertiserId
+                    .computeIfAbsent(campaign.getAdvertiserId(), k -> new ArrayList<>())
+                    .add(campaign);
+            }
+            
+            if (campaign.getCreatives() != null) {
+                for (CampaignEntity.Creative creative : campaign.getCreatives()) {
+                    if (creative != null && creative.getCreativeId() != null) {
+                        creativesById.putIfAbsent(creative.getCreativeId(), creative);
+                    }
+                }
+            }
+        }
+        
+        Map<String, List<CampaignEntity>> advertiserIndex = new HashMap<>();
+        campaignsByAdvertiserId.forEach((advertiserId, list) -> advertiserIndex.put(advertiserId, List.copyOf(list)));
+        
+        return new CampaignSnapshot(
+            version,
+            Collections.unmodifiableList(campaigns),
+            Collections.unmodifiableMap(campaignsById),
+            Collections.unmodifiableMap(creativesById),
+            Collections.unmodifiableMap(advertiserIndex));
+    }
+    
+    public long getVersion() {
+        return version;
+    }
+    
+    public LocalDateTime getBuiltAt() {
+        return builtAt;
+    }
+    
+    public int size() {
+        return campaigns.size();
+    }
+    
+    /**
+     * 快照中的全部活跃广告活动
+     */
+    public List<CampaignEntity> getCampaigns() {
+        return campaigns;
+    }
+    
+    /**
+     * 定向倒排索引，位序号与getCampaigns()的下标一致
+     */
+    public CampaignTargetingIndex getTargetingIndex() {
+        return targetingIndex;
+    }
+    
+    /**
+     * 根据campaignId查找广告活动，不存在时返回null
+     */
+    public CampaignEntity getCampaign(String campaignId) {
+        return campaignId != null ? campaignsById.get(campaignId) : null;
+    }
+    
+    /**
+     * 获取广告活动预编译的时间与受众定向规则，不存在时返回null
+     */
+    public CompiledTargeting getCompiledTargeting(String campaignId) {
+        return campaignId != null ? compiledTargeting.get(campaignId) : null;
+    }
+    
+    /**
+     * 获取广告活动预生成的创意模板，不存在时返回空列表
+     */
+    public List<CreativeTemplate> getCreativeTemplates(String campaignId) {
+        if (campaignId == null) {
+            return List.of();
+        }
+        return creativeTemplates.getOrDefault(campaignId, List.of());
+    }
+    
+    /**
+     * 获取广告活动换算为微元的出价与预算，不存在时返回null
+     */
+    public CampaignPricing getPricing(String campaignId) {
+        return campaignId != null ? pricing.get(campaignId) : null;
+    }
+    
+    /**
+     * 广告活动在快照中的序号（getCampaigns()的下标），不存在时返回-1
+     */
+    public int ordinalOf(String campaignId) {
+        Integer ordinal = campaignId != null ? ordinals.get(campaignId) : null;
+        return ordinal != null ? ordinal : -1;
+    }
+    
+    /**
+     * 根据creativeId查找创意，不存在时返回null
+     */
+    public CampaignEntity.Creative getCreative(String creativeId) {
+        return creativeId != null ? creativesById.get(creativeId) : null;
+    }
+    
+    /**
+     * 根据advertiserId查找广告活动
+     */
+    public List<CampaignEntity> getCampaignsByAdvertiser(String advertiserId) {
+        if (advertiserId == null) {
+            return List.of();
+        }
+        return campaignsByAdvertiserId.getOrDefault(advertiserId, List.of());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,220 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.domain.model.CountryCodes;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+
+import java.util.*;
+
+/**
+ * 广告活动定向倒排索引
+ * 以快照中的广告活动序号(ordinal)为位，按国家、设备类型、操作系统和年龄段建立位图倒排表，
+ * 对未限制某一维度的广告活动单独维护"不限"位图。候选生成时按字(word)对各维度位图求交集，
+ * 并与预算的可投放位图求交集，预算耗尽的活动不会出现在结果中。
+ * 国家代码在建索引与查找时都换算为大写的alpha-2，请求中的alpha-3代码（如"USA"）可以匹配按"US"定向的活动。
+ */
+public final class CampaignTargetingIndex {
+    
+    /**
+     * 年龄段下界: [0,18) [18,25) [25,35) [35,45) [45,55) [55,65) [65,+∞)
+     */
+    private static final int[] AGE_BAND_LOWER_BOUNDS = {0, 18, 25, 35, 45, 55, 65};
+    
+    private final List<CampaignEntity> campaigns;
+    private final int words;
+    
+    private final Map<String, long[]> includedCountries;
+    private final Map<String, long[]> excludedCountries;
+    private final long[] countryUnrestricted;
+    
+    private final Map<Integer, long[]> deviceTypes;
+    private final long[] deviceTypeUnrestricted;
+    
+    private final Map<String, long[]> operatingSystems;
+    private final long[] osUnrestricted;
+    
+    private final long[][] ageBands;
+    private final long[] ageUnrestricted;
+    
+    // 按序号存放的最高出价(微元)，缺失时为Money.UNSET（不参与竞价）
+    private final long[] maxBidMicros;
+    
+    private CampaignTargetingIndex(List<CampaignEntity> campaigns) {
+        this.campaigns = campaigns;
+        int size = campaigns.size();
+        this.words = (size + 63) >>> 6;
+        
+        Map<String, long[]> included = new HashMap<>();
+        Map<String, long[]> excluded = new HashMap<>();
+        Map<Integer, long[]> devices = new HashMap<>();
+        Map<String, long[]> systems = new HashMap<>();
+        long[][] bands = new long[AGE_BAND_LOWER_BOUNDS.length][words];
+        long[] countryOpen = new long[words];
+        long[] deviceOpen = new long[words];
+        long[] osOpen = new long[words];
+        long[] ageOpen = new long[words];
+        long[] bids = new long[size];
+        
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            CampaignEntity campaign = campaigns.get(ordinal);
+            CampaignEntity.Targeting targeting = campaign.getTargeting();
+            
+            CampaignEntity.GeoTargeting geo = targeting != null ? targeting.getGeo() : null;
+            if (geo != null && geo.getIncludedCountries() != null && !geo.getIncludedCountries().isEmpty()) {
+                for (String country : geo.getIncludedCountries()) {
+                    if (country != null) {
+                        set(included.computeIfAbsent(CountryCodes.toAlpha2(country), k -> new long[words]), ordinal);
+                    }
+                }
+            } else {
+                set(countryOpen, ordinal);
+            }
+            if (geo != null && geo.getExcludedCountries() != null) {
+                for (String country : geo.getExcludedCountries()) {
+                    if (country != null) {
+                        set(excluded.computeIfAbsent(CountryCodes.toAlpha2(country), k -> new long[words]), ordinal);
+                    }
+                }
+            }
+            
+            CampaignEntity.DeviceTargeting device = targeting != null ? targeting.getDevice() : null;
+            if (device != null && device.getDeviceTypes() != null && !device.getDeviceTypes().isEmpty()) {
+                for (Integer deviceType : device.getDeviceTypes()) {
+                    if (deviceType != null) {
+                        set(devices.computeIfAbsent(deviceType, k -> new long[words]), ordinal);
+                    }
+                }
+            } else {
+                set(deviceOpen, ordinal);
+            }
+            if (device != null && device.getOperatingSystems() != null && !device.getOperatingSystems().isEmpty()) {
+                for (String os : device.getOperatingSystems()) {
+                    if (os != null) {
+                        set(systems.computeIfAbsent(os.toLowerCase(Locale.ROOT), k -> new long[words]), ordinal);
+                    }
+                }
+            } else {
+                set(osOpen, ordinal);
+            }
+            
+            CampaignEntity.AudienceTargeting audience = targeting != null ? targeting.getAudience() : null;
+            CampaignEntity.AgeRange ageRange = audience != null ? audience.getAgeRange() : null;
+            if (ageRange != null && (ageRange.getMin() != null || ageRange.getMax() != null)) {
+                int min = ageRange.getMin() != null ? ageRange.getMin() : 0;
+                int max = ageRange.getMax() != null ? ageRange.getMax() : Integer.MAX_VALUE;
+                for (int band = 0; band < AGE_BAND_LOWER_BOUNDS.length; band++) {
+                    int lower = AGE_BAND_LOWER_BOUNDS[band];
+                    int upper = band + 1 < AGE_BAND_LOWER_BOUNDS.length ? AGE_BAND_LOWER_BOUNDS[band + 1] - 1 : Integer.MAX_VALUE;
+                    if (min <= upper && max >= lower) {
+                        set(bands[band], ordinal);
+                    }
+                }
+            } else {
+                set(ageOpen, ordinal);
+            }
+            
+            // 未设置最高出价的活动为Money.UNSET，不会满足任何非负底价
+            CampaignEntity.Bidding bidding = campaign.getBidding();
+            bids[ordinal] = bidding != null ? Money.toMicros(bidding.getMaxBid(), Money.UNSET) : Money.UNSET;
+        }
+        
+        this.includedCountries = Map.copyOf(included);
+        this.excludedCountries = Map.copyOf(excluded);
+        this.countryUnrestricted = countryOpen;
+        this.deviceTypes = Map.copyOf(devices);
+        this.deviceTypeUnrestricted = deviceOpen;
+        this.operatingSystems = Map.copyOf(systems);
+        this.osUnrestricted = osOpen;
+        this.ageBands = bands;
+        this.ageUnrestricted = ageOpen;
+        this.maxBidMicros = bids;
+    }
+    
+    /**
+     * 基于快照中按序号排列的广告活动构建索引
+     */
+    public static CampaignTargetingIndex build(List<CampaignEntity> campaigns) {
+        return new CampaignTargetingIndex(campaigns);
+    }
+    
+    /**
+     * 查找匹配的广告活动
+     * country和deviceType与原线性过滤语义一致：活动限定了该维度而请求缺失该值时不匹配；
+     * os和age缺失时不做限制。年龄按年龄段粗筛，精确年龄范围由过滤阶段校验；底价以微元比较。
+     */
+    public List<CampaignEntity> match(String country, Integer deviceType, String os, Integer age, long minBidMicros) {
+        return match(country, deviceType, os, age, minBidMicros, null);
+    }
+    
+    /**
+     * 查找匹配且可投放的广告活动
+     *
+     * @param eligible 可投放位图，为null或与本索引的活动数量不一致时不做限制
+     */
+    public List<CampaignEntity> match(String country, Integer deviceType, String os, Integer age, long minBidMicros,
+                                      EligibleCampaigns eligible) {
+        if (eligible != null && eligible.size() != campaigns.size()) {
+            eligible = null;
+        }
+        String alpha2 = CountryCodes.toAlpha2(country);
+        long[] countryIncluded = alpha2 != null ? includedCountries.get(alpha2) : null;
+        long[] countryExcluded = alpha2 != null ? excludedCountries.get(alpha2) : null;
+        long[] device = deviceType != null ? deviceTypes.get(deviceType) : null;
+        long[] system = os != null ? operatingSystems.get(os.toLowerCase(Locale.ROOT)) : null;
+        long[] ageBand = age != null ? ageBands[ageBand(age)] : null;
+        boolean anyOs = os == null;
+        boolean anyAge = age == null;
+        
+        List<CampaignEntity> result = new ArrayList<>();
+        for (int w = 0; w < words; w++) {
+            long bits = (word(countryIncluded, w) | countryUnrestricted[w]) & ~word(countryExcluded, w);
+            if (eligible != null) {
+                bits &= eligible.word(w);
+            }
+            if (bits == 0) {
+                continue;
+            }
+            bits &= word(device, w) | deviceTypeUnrestricted[w];
+            if (bits == 0) {
+                continue;
+            }
+            if (!anyOs) {
+                bits &= word(system, w) | osUnrestricted[w];
+            }
+            if (!anyAge) {
+                bits &= word(ageBand, w) | ageUnrestricted[w];
+            }
+            while (bits != 0) {
+                int ordinal = (w << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (maxBidMicros[ordinal] >= minBidMicros) {
+                    result.add(campaigns.get(ordinal));
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 索引覆盖的广告活动数量
+     */
+    public int size() {
+        return campaigns.size();
+    }
+    
+    static int ageBand(int age) {
+        int band = 0;
+        while (band + 1 < AGE_BAND_LOWER_BOUNDS.length && age >= AGE_BAND_LOWER_BOUNDS[band + 1]) {
+            band++;
+        }
+        return band;
+    }
+    
+    private static long word(long[] bitmap, int index) {
+        return bitmap != null ? bitmap[index] : 0L;
+    }
+    
+    private static void set(long[] bitmap, int ordinal) {
+        bitmap[ordinal >>> 6] |= 1L << ordinal;
+    }
+}
\ No newline at end of file
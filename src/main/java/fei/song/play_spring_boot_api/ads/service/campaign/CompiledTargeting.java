@@ -0,0 +1,139 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * 预编译的广告活动时间与受众定向规则
+ * 在快照构建时为每个广告活动编译一次：星期和小时转换为位掩码，年龄范围转换为int上下界，
+ * 性别和兴趣转换为预先小写化的HashSet。过滤阶段只做位运算和哈希查找。
+ */
+public final class CompiledTargeting {
+    
+    private static final CompiledTargeting UNRESTRICTED = new CompiledTargeting(null);
+    
+    // 星期掩码，第1~7位对应周一~周日；-1表示不限
+    private final int daysOfWeekMask;
+    
+    // 小时掩码，第0~23位对应0~23点；-1表示不限
+    private final int hoursOfDayMask;
+    
+    private final LocalDateTime startDate;
+    private final LocalDateTime endDate;
+    
+    private final boolean hasAgeRange;
+    private final int minAge;
+    private final int maxAge;
+    
+    // 小写化后的性别集合，null表示不限
+    private final Set<String> genders;
+    
+    // 小写化后的兴趣集合，null表示不限
+    private final Set<String> interests;
+    
+    private CompiledTargeting(CampaignEntity campaign) {
+        CampaignEntity.Targeting targeting = campaign != null ? campaign.getTargeting() : null;
+        CampaignEntity.TimeTargeting time = targeting != null ? targeting.getTime() : null;
+        CampaignEntity.AudienceTargeting audience = targeting != null ? targeting.getAudience() : null;
+        CampaignEntity.Schedule schedule = campaign != null ? campaign.getSchedule() : null;
+        
+        this.daysOfWeekMask = time != null ? toMask(time.getDaysOfWeek()) : -1;
+        this.hoursOfDayMask = time != null ? toMask(time.getHoursOfDay()) : -1;
+        this.startDate = schedule != null ? schedule.getStartDate() : null;
+        this.endDate = schedule != null ? schedule.getEndDate() : null;
+        
+        CampaignEntity.AgeRange ageRange = audience != null ? audience.getAgeRange() : null;
+        this.hasAgeRange = ageRange != null;
+        this.minAge = ageRange != null && ageRange.getMin() != null ? ageRange.getMin() : Integer.MIN_VALUE;
+        this.maxAge = ageRange != null && ageRange.getMax() != null ? ageRange.getMax() : Integer.MAX_VALUE;
+        this.genders = audience != null ? toLowerCaseSet(audience.getGenders()) : null;
+        this.interests = audience != null ? toLowerCaseSet(audience.getInterests()) : null;
+    }
+    
+    /**
+     * 编译广告活动的定向规则
+     */
+    public static CompiledTargeting compile(CampaignEntity campaign) {
+        return campaign != null ? new CompiledTargeting(campaign) : UNRESTRICTED;
+    }
+    
+    /**
+     * 时间定向与投放时间安排匹配
+     *
+     * @param dayOfWeek 1=周一, 7=周日
+     * @param hour      0~23
+     */
+    public boolean matchesTime(int dayOfWeek, int hour, LocalDateTime now) {
+        if ((daysOfWeekMask & (1 << dayOfWeek)) == 0) {
+            return false;
+        }
+        if ((hoursOfDayMask & (1 << hour)) == 0) {
+            return false;
+        }
+        if (startDate != null && now.isBefore(startDate)) {
+            return false;
+        }
+        return endDate == null || !now.isAfter(endDate);
+    }
+    
+    /**
+     * 受众定向匹配，请求中缺失的用户属性不参与判断
+     *
+     * @param age       用户年龄，未知时为null
+     * @param gender    小写化后的性别，未知时为null
+     * @param keywords  小写化后的兴趣关键词集合，未知时为空集合
+     */
+    public boolean matchesUser(Integer age, String gender, Set<String> keywords) {
+        if (age != null && hasAgeRange && (age < minAge || age > maxAge)) {
+            return false;
+        }
+        if (gender != null && genders != null && !genders.contains(gender)) {
+            return false;
+        }
+        if (!keywords.isEmpty() && interests != null) {
+            for (String keyword : keywords) {
+                if (interests.contains(keyword)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return true;
+    }
+    
+    public int getDaysOfWeekMask() {
+        return daysOfWeekMask;
+    }
+    
+    public int getHoursOfDayMask() {
+        return hoursOfDayMask;
+    }
+    
+    private static int toMask(List<Integer> values) {
+        if (values == null || values.isEmpty()) {
+            return -1;
+        }
+        int mask = 0;
+        for (Integer value : values) {
+            if (value != null && value >= 0 && value < 31) {
+                mask |= 1 << value;
+            }
+        }
+        return mask;
+    }
+    
+    private static Set<String> toLowerCaseSet(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+        Set<String> result = new HashSet<>();
+        for (String value : values) {
+            if (value != null) {
+                result.add(value.toLowerCase(Locale.ROOT));
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+
+import java.util.List;
+
+/**
+ * 创意级别的不可变竞价模板
+ * URL、广告主域名、类目与广告素材在快照加载时一次性生成，构建BidCandidate时只做引用复制
+ */
+public final class CreativeTemplate {
+    
+    private static final String DEFAULT_AD_MARKUP = "<div>广告内容</div>";
+    private static final List<String> DEFAULT_CATEGORIES = List.of("IAB1", "IAB2");
+    private static final Integer DEFAULT_WIDTH = 300;
+    private static final Integer DEFAULT_HEIGHT = 250;
+    private static final Integer DEFAULT_PRIORITY = 1;
+    
+    private final String campaignId;
+    private final String creativeId;
+    private final String adId;
+    private final MacroTemplate adMarkup;
+    private final List<String> advertiserDomains;
+    private final List<String> categories;
+    private final String clickUrl;
+    private final String impressionUrl;
+    private final String notificationUrl;
+    private final String seatId;
+    
+    private CreativeTemplate(String campaignId, String creativeId, String adId, String adMarkup, String advertiserId) {
+        String domain = advertiserId + ".com";
+        this.campaignId = campaignId;
+        this.creativeId = creativeId;
+        this.adId = adId;
+        this.adMarkup = MacroTemplate.parse(adMarkup);
+        this.advertiserDomains = List.of(domain);
+        this.categories = DEFAULT_CATEGORIES;
+        this.clickUrl = "https://" + domain + "/click";
+        this.impressionUrl = "https://" + domain + "/impression";
+        this.notificationUrl = "https://" + domain + "/win";
+        this.seatId = "seat_" + advertiserId;
+    }
+    
+    /**
+     * 为广告活动的每个创意生成模板；没有创意的广告活动生成一个默认模板
+     */
+    public static List<CreativeTemplate> forCampaign(CampaignEntity campaign) {
+        if (campaign.getCreatives() == null) {
+            return List.of(new CreativeTemplate(campaign.getCampaignId(), "default_creative",
+                "ad_" + campaign.getCampaignId(), DEFAULT_AD_MARKUP, campaign.getAdvertiserId()));
+        }
+        return campaign.getCreatives().stream()
+            .filter(creative -> creative != null)
+            .map(creative -> new CreativeTemplate(campaign.getCampaignId(), creative.getCreativeId(),
+                creative.getCreativeId(), creative.getHtml() != null ? creative.getHtml() : DEFAULT_AD_MARKUP,
+                campaign.getAdvertiserId()))
+            .toList();
+    }
+    
+    /**
+     * 为广告位构建竞价候选
+     */
+    public BidCandidate newCandidate(String auctionId, Impression impression) {
+        BidCandidate candidate = new BidCandidate();
+        candidate.setImpressionId(impression.getId());
+        candidate.setAdId(adId);
+        candidate.setCreativeId(creativeId);
+        candidate.setCampaignId(campaignId);
+        candidate.setPriority(DEFAULT_PRIORITY);
+        candidate.setAdMarkup(adMarkup.render(auctionId, impression.getId()));
+        candidate.setAdvertiserDomains(advertiserDomains);
+        candidate.setCategories(categories);
+        candidate.setWidth(impression.getBanner() != null ? impression.getBanner().getW() : DEFAULT_WIDTH);
+        candidate.setHeight(impression.getBanner() != null ? impression.getBanner().getH() : DEFAULT_HEIGHT);
+        candidate.setClickUrl(clickUrl);
+        candidate.setImpressionUrl(impressionUrl);
+        candidate.setNotificationUrl(notificationUrl);
+        candidate.setSeatId(seatId);
+        candidate.setPassedFraudCheck(Boolean.TRUE);
+        candidate.setBudgetAvailable(Boolean.TRUE);
+        candidate.setTargetingMatched(Boolean.TRUE);
+        return candidate;
+    }
+    
+    public String getCampaignId() {
+        return campaignId;
+    }
+    
+    public String getCreativeId() {
+        return creativeId;
+    }
+    
+    public MacroTemplate getAdMarkup() {
+        return adMarkup;
+    }
+    
+    public List<String> getAdvertiserDomains() {
+        return advertiserDomains;
+    }
+    
+    public String getNotificationUrl() {
+        return notificationUrl;
+    }
+}
\ No newline at end of file
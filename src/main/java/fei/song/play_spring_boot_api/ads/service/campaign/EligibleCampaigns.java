@@ -0,0 +1,62 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按快照序号(ordinal)的广告活动可投放位图
+ * 与创建它的快照版本绑定，初始全部置位；置位与清位是单个字上的原子操作，
+ * 竞价路径上按字读取并与定向索引的结果求交集，清位的活动不再产生任何候选。
+ */
+public final class EligibleCampaigns {
+    
+    private final long snapshotVersion;
+    private final int size;
+    private final AtomicLongArray words;
+    
+    public EligibleCampaigns(long snapshotVersion, int size) {
+        this.snapshotVersion = snapshotVersion;
+        this.size = size;
+        this.words = new AtomicLongArray((size + 63) >>> 6);
+        for (int w = 0; w < words.length(); w++) {
+            int remaining = size - (w << 6);
+            words.set(w, remaining >= 64 ? -1L : (1L << remaining) - 1);
+        }
+    }
+    
+    public long getSnapshotVersion() {
+        return snapshotVersion;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean get(int ordinal) {
+        return (words.get(ordinal >>> 6) & (1L << ordinal)) != 0;
+    }
+    
+    public void set(int ordinal) {
+        long mask = 1L << ordinal;
+        words.accumulateAndGet(ordinal >>> 6, mask, (word, bit) -> word | bit);
+    }
+    
+    public void clear(int ordinal) {
+        long mask = ~(1L << ordinal);
+        words.accumulateAndGet(ordinal >>> 6, mask, (word, bits) -> word & bits);
+    }
+    
+    /**
+     * 可投放的广告活动数量
+     */
+    public int cardinality() {
+        int count = 0;
+        for (int w = 0; w < words.length(); w++) {
+            count += Long.bitCount(words.get(w));
+        }
+        return count;
+    }
+    
+    long word(int index) {
+        return words.get(index);
+    }
+}
\ No newline at end of file
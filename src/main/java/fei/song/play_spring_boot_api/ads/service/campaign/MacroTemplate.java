@@ -0,0 +1,103 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预解析的 ${MACRO} 模板
+ * 加载快照时把文本拆分为字面量片段与宏槽位，渲染时只替换竞价方已知的宏（请求ID、广告位ID），
+ * ${AUCTION_PRICE} 等由交易平台替换的宏原样保留。不含可替换宏的模板直接返回原字符串
+ */
+public final class MacroTemplate {
+    
+    public static final String AUCTION_ID = "AUCTION_ID";
+    public static final String AUCTION_IMP_ID = "AUCTION_IMP_ID";
+    
+    private final String source;
+    private final String[] literals;
+    private final String[] macros;
+    private final boolean hasBidderMacros;
+    
+    private MacroTemplate(String source, String[] literals, String[] macros) {
+        this.source = source;
+        this.literals = literals;
+        this.macros = macros;
+        boolean bidderMacros = false;
+        for (String macro : macros) {
+            bidderMacros |= isBidderMacro(macro);
+        }
+        this.hasBidderMacros = bidderMacros;
+    }
+    
+    /**
+     * 解析模板文本
+     */
+    public static MacroTemplate parse(String source) {
+        List<String> literals = new ArrayList<>();
+        List<String> macros = new ArrayList<>();
+        int literalStart = 0;
+        int index = source.indexOf("${");
+        while (index >= 0) {
+            int end = source.indexOf('}', index + 2);
+            if (end < 0) {
+                break;
+            }
+            literals.add(source.substring(literalStart, index));
+            macros.add(source.substring(index + 2, end));
+            literalStart = end + 1;
+            index = source.indexOf("${", literalStart);
+        }
+        literals.add(source.substring(literalStart));
+        return new MacroTemplate(source, literals.toArray(new String[0]), macros.toArray(new String[0]));
+    }
+    
+    /**
+     * 模板中的宏名称
+     */
+    public List<String> getMacros() {
+        return List.of(macros);
+    }
+    
+    public boolean hasMacro(String name) {
+        for (String macro : macros) {
+            if (macro.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * 渲染模板，替换请求ID与广告位ID，其余宏保持原样
+     */
+    public String render(String auctionId, String impressionId) {
+        if (!hasBidderMacros) {
+            return source;
+        }
+        StringBuilder sb = new StringBuilder(source.length() + 32);
+        for (int i = 0; i < macros.length; i++) {
+            sb.append(literals[i]);
+            String value = switch (macros[i]) {
+                case AUCTION_ID -> auctionId;
+                case AUCTION_IMP_ID -> impressionId;
+                default -> null;
+            };
+            if (value != null) {
+                sb.append(value);
+            } else {
+                sb.append("${").append(macros[i]).append('}');
+            }
+        }
+        sb.append(literals[macros.length]);
+        return sb.toString();
+    }
+    
+    @Override
+    public String toString() {
+        return source;
+    }
+    
+    private static boolean isBidderMacro(String macro) {
+        return AUCTION_ID.equals(macro) || AUCTION_IMP_ID.equals(macro);
+    }
+}
\ No newline at end of file
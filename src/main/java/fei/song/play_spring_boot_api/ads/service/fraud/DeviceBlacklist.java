@@ -0,0 +1,202 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 设备指纹黑名单
+ * 指纹存放在开放寻址（线性探测）的long数组中，装载因子不超过1/2；
+ * 前面是分块布隆过滤器：每个指纹只落在一个512位（一个缓存行）的块内，置位/检查6位，
+ * 绝大多数"不在黑名单中"的查询只访问一个缓存行即可返回。
+ * 查询无锁；添加由调用方串行执行（方法加锁），扩容时整体构建新表后替换。
+ */
+public final class DeviceBlacklist {
+    
+    private static final int BLOCK_LONGS = 8;
+    private static final int BLOOM_HASHES = 6;
+    private static final int BLOOM_BITS_PER_ENTRY = 10;
+    private static final int MIN_CAPACITY = 1024;
+    
+    private volatile Tables tables;
+    private int invalidCount;
+    
+    public DeviceBlacklist() {
+        this(MIN_CAPACITY);
+    }
+    
+    public DeviceBlacklist(int expectedEntries) {
+        this.tables = new Tables(Math.max(MIN_CAPACITY, expectedEntries));
+    }
+    
+    public boolean contains(long fingerprint) {
+        Tables current = tables;
+        return current.mightContain(fingerprint) && current.containsExact(fingerprint);
+    }
+    
+    /**
+     * 只检查布隆过滤器，用于测算误判率
+     */
+    boolean mightContain(long fingerprint) {
+        return tables.mightContain(fingerprint);
+    }
+    
+    /**
+     * 添加指纹，已存在时返回false
+     */
+    public synchronized boolean add(long fingerprint) {
+        if (fingerprint == 0) {
+            throw new IllegalArgumentException("设备指纹不能为0");
+        }
+        Tables current = tables;
+        if (current.containsExact(fingerprint)) {
+            return false;
+        }
+        if ((current.size + 1) * 2L > current.slots.length()) {
+            current = current.grow();
+            tables = current;
+        }
+        current.insert(fingerprint);
+        return true;
+    }
+    
+    /**
+     * 逐行读取十六进制指纹文件，忽略空行与 # 注释
+     */
+    public synchronized DeviceBlacklist addAll(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comment = line.indexOf('#');
+                String value = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                if (value.isEmpty()) {
+                    continue;
+                }
+                long fingerprint = parseHex(value);
+                if (fingerprint == 0) {
+                    invalidCount++;
+                } else {
+                    add(fingerprint);
+                }
+            }
+        }
+        return this;
+    }
+    
+    public int size() {
+        return tables.size;
+    }
+    
+    public int getInvalidCount() {
+        return invalidCount;
+    }
+    
+    /**
+     * 指纹表与布隆过滤器占用的内存（字节）
+     */
+    public long getMemoryBytes() {
+        Tables current = tables;
+        return ((long) current.slots.length() + current.bloom.length()) * Long.BYTES;
+    }
+    
+    /**
+     * 解析可带0x前缀的16位以内十六进制数，非法时返回0
+     */
+    static long parseHex(String value) {
+        int start = value.startsWith("0x") || value.startsWith("0X") ? 2 : 0;
+        if (value.length() == start || value.length() - start > 16) {
+            return 0L;
+        }
+        long result = 0;
+        for (int i = start; i < value.length(); i++) {
+            int digit = Character.digit(value.charAt(i), 16);
+            if (digit < 0) {
+                return 0L;
+            }
+            result = (result << 4) | digit;
+        }
+        return result;
+    }
+    
+    private static final class Tables {
+        private final AtomicLongArray slots;
+        private final int slotMask;
+        private final AtomicLongArray bloom;
+        private final int blocks;
+        private volatile int size;
+        
+        private Tables(int capacity) {
+            int slotCount = Integer.highestOneBit(capacity * 2 - 1) << 1;
+            this.slots = new AtomicLongArray(slotCount);
+            this.slotMask = slotCount - 1;
+            this.blocks = (int) Math.max(1, ((long) capacity * BLOOM_BITS_PER_ENTRY + 511) / 512);
+            this.bloom = new AtomicLongArray(blocks * BLOCK_LONGS);
+        }
+        
+        private boolean mightContain(long fingerprint) {
+            long bits = mix(fingerprint);
+            int base = blockIndex(fingerprint) * BLOCK_LONGS;
+            for (int i = 0; i < BLOOM_HASHES; i++, bits >>>= 9) {
+                int bit = (int) bits & 511;
+                if ((bloom.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        private boolean containsExact(long fingerprint) {
+            for (int slot = (int) mix(fingerprint >>> 7) & slotMask; ; slot = (slot + 1) & slotMask) {
+                long value = slots.get(slot);
+                if (value == fingerprint) {
+                    return true;
+                }
+                if (value == 0) {
+                    return false;
+                }
+            }
+        }
+        
+        /**
+         * 先写入指纹表再置位布隆过滤器，并发查询最多短暂地看不到新指纹
+         */
+        private void insert(long fingerprint) {
+            int slot = (int) mix(fingerprint >>> 7) & slotMask;
+            while (slots.get(slot) != 0) {
+                slot = (slot + 1) & slotMask;
+            }
+            slots.set(slot, fingerprint);
+            long bits = mix(fingerprint);
+            int base = blockIndex(fingerprint) * BLOCK_LONGS;
+            for (int i = 0; i < BLOOM_HASHES; i++, bits >>>= 9) {
+                int bit = (int) bits & 511;
+                // 只有一个写线程，读-改-写不会丢失置位
+                bloom.set(base + (bit >>> 6), bloom.get(base + (bit >>> 6)) | (1L << bit));
+            }
+            size++;
+        }
+        
+        private Tables grow() {
+            Tables grown = new Tables(slots.length());
+            for (int i = 0; i < slots.length(); i++) {
+                long value = slots.get(i);
+                if (value != 0) {
+                    grown.insert(value);
+                }
+            }
+            return grown;
+        }
+        
+        private int blockIndex(long fingerprint) {
+            return (int) (((fingerprint >>> 32) * blocks) >>> 32);
+        }
+        
+        private static long mix(long value) {
+            value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+            return value ^ (value >>> 29);
+        }
+    }
+}
\ No newline at end of file
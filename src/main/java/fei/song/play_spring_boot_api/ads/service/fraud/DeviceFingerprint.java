@@ -0,0 +1,91 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 64位设备指纹
+ * 依次对 ua/ip/devicetype/make/model/os/osv 做流式哈希：每4个字符组成一个64位块，按Murmur3 x64的块混合方式累加，
+ * 字段之间混入字段长度与分隔常量（null与空串可区分），不拼接字符串，不产生对象分配。
+ * 结果保证非0，0留作开放寻址集合的空槽标记。
+ */
+public final class DeviceFingerprint {
+    
+    private static final long C1 = 0x87C37B91114253D5L;
+    private static final long C2 = 0x4CF5AD432745937FL;
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long NULL_FIELD = 0xA0761D6478BD642FL;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.ISO_8859_1);
+    
+    private DeviceFingerprint() {
+    }
+    
+    public static long of(Device device) {
+        long h = SEED;
+        h = field(h, device.getUa());
+        h = field(h, device.getIp());
+        h = field(h, device.getDevicetype() != null ? device.getDevicetype().longValue() : NULL_FIELD);
+        h = field(h, device.getMake());
+        h = field(h, device.getModel());
+        h = field(h, device.getOs());
+        h = field(h, device.getOsv());
+        h = fmix(h);
+        return h != 0 ? h : SEED;
+    }
+    
+    /**
+     * 16位十六进制表示，与黑名单文件格式一致；也用作高频键统计中的设备键
+     */
+    public static String toHex(long fingerprint) {
+        byte[] digits = new byte[16];
+        for (int i = 15; i >= 0; i--, fingerprint >>>= 4) {
+            digits[i] = HEX_DIGITS[(int) fingerprint & 0xF];
+        }
+        return new String(digits, StandardCharsets.ISO_8859_1);
+    }
+    
+    private static long field(long h, CharSequence value) {
+        if (value == null) {
+            return block(h, NULL_FIELD);
+        }
+        int length = value.length();
+        int i = 0;
+        for (; i + 4 <= length; i += 4) {
+            h = block(h, chars(value, i));
+        }
+        long tail = 0;
+        for (int shift = 0; i < length; i++, shift += 16) {
+            tail |= (long) value.charAt(i) << shift;
+        }
+        // 尾块混入长度，使 "ab" + "c" 与 "a" + "bc" 这类字段边界不同的输入区分开
+        return block(h, tail ^ ((long) length << 56) ^ C2);
+    }
+    
+    private static long chars(CharSequence value, int i) {
+        return value.charAt(i) | (long) value.charAt(i + 1) << 16
+            | (long) value.charAt(i + 2) << 32 | (long) value.charAt(i + 3) << 48;
+    }
+    
+    private static long field(long h, long value) {
+        return block(h, value);
+    }
+    
+    private static long block(long h, long k) {
+        k *= C1;
+        k = Long.rotateLeft(k, 31);
+        k *= C2;
+        h ^= k;
+        h = Long.rotateLeft(h, 27);
+        return h * 5 + 0x52DCE729;
+    }
+    
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,202 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按(IP, IPv6, UA, 域名)缓存的反欺诈判断结果
+ * 只缓存由这几个字段决定的检查：IP黑名单、UA可疑性、域名白名单以及IP所在国家；
+ * 点击/展示频率、高频键和设备指纹等逐个请求变化的检查不进缓存，命中时仍照常计数。
+ * 固定容量的4路组相联缓存：按键的哈希定位到组，组满时淘汰最早写入的一路，内存只取决于容量。
+ * 条目带有效期与代数：黑名单、UA模式或地理位置库变化时代数加1，旧代数的条目全部视为失效，不需要逐个清除；
+ * 调用方在计算前读取代数，计算期间发生的变化会使写入的条目立即失效，不会缓存旧黑名单的结果。
+ */
+public final class FraudVerdictCache {
+    
+    /**
+     * IP或IPv6地址在黑名单中
+     */
+    public static final int IP_BLACKLISTED = 1;
+    
+    /**
+     * User Agent可疑
+     */
+    public static final int USER_AGENT_SUSPICIOUS = 1 << 1;
+    
+    /**
+     * 域名不在白名单中
+     */
+    public static final int DOMAIN_NOT_WHITELISTED = 1 << 2;
+    
+    private static final int WAYS = 4;
+    
+    private final AtomicReferenceArray<Verdict> verdicts;
+    private final int sets;
+    private final long ttlNanos;
+    private final AtomicLong generation = new AtomicLong();
+    
+    // 统计信息
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder savedNanos = new LongAdder();
+    
+    public FraudVerdictCache(int capacity, long ttlMillis) {
+        this.sets = Math.max(1, capacity / WAYS);
+        this.verdicts = new AtomicReferenceArray<>(sets * WAYS);
+        this.ttlNanos = ttlMillis * 1_000_000L;
+    }
+    
+    /**
+     * 当前代数，调用方在计算判断结果之前读取，写入时原样带回；
+     * 缓存之外的数据源（如地理位置库）可把自己的版本号加到代数上，任一方变化都使旧条目失效
+     */
+    public long generation() {
+        return generation.get();
+    }
+    
+    /**
+     * 查找未过期且代数一致的判断结果，未命中返回null
+     * 命中时把该条目当初的计算耗时计入节省的时间
+     */
+    public Verdict get(String ip, String ipv6, String userAgent, String domain, long currentGeneration, long nowNanos) {
+        int hash = hash(ip, ipv6, userAgent, domain);
+        int base = setBase(hash);
+        for (int way = 0; way < WAYS; way++) {
+            Verdict verdict = verdicts.get(base + way);
+            if (verdict != null && verdict.hash == hash && verdict.matches(ip, ipv6, userAgent, domain)) {
+                if (verdict.generation != currentGeneration) {
+                    break;
+                }
+                if (verdict.expiresAtNanos - nowNanos <= 0) {
+                    expirations.increment();
+                    break;
+                }
+                hits.increment();
+                savedNanos.add(verdict.computeNanos);
+                return verdict;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+    
+    /**
+     * 写入判断结果：优先占用空位、过期或代数不同的条目以及同键条目，组满时淘汰最早写入的一路
+     */
+    public void put(Verdict verdict, long nowNanos) {
+        verdict.expiresAtNanos = nowNanos + ttlNanos;
+        int base = setBase(verdict.hash);
+        int victim = -1;
+        long earliest = 0L;
+        for (int way = 0; way < WAYS; way++) {
+            Verdict current = verdicts.get(base + way);
+            if (current == null || current.generation != verdict.generation || current.expiresAtNanos - nowNanos <= 0
+                || (current.hash == verdict.hash && current.matches(verdict.ip, verdict.ipv6, verdict.userAgent, verdict.domain))) {
+                verdicts.set(base + way, verdict);
+                return;
+            }
+            if (victim < 0 || current.expiresAtNanos - earliest < 0) {
+                earliest = current.expiresAtNanos;
+                victim = base + way;
+            }
+        }
+        verdicts.set(victim, verdict);
+        evictions.increment();
+    }
+    
+    /**
+     * 使所有条目失效
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.increment();
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("capacity", verdicts.length());
+        stats.put("ttlMillis", ttlNanos / 1_000_000L);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRatio", hitCount + missCount > 0 ? (double) hitCount / (hitCount + missCount) : 0.0);
+        stats.put("expirations", expirations.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("savedMillis", savedNanos.sum() / 1_000_000L);
+        return stats;
+    }
+    
+    private int setBase(int hash) {
+        // 四个字段的哈希按31倍组合后低位分布不均，乘法哈希取高位再定位到组
+        return (int) (((hash * 0x9E3779B9) & 0xFFFFFFFFL) * sets >>> 32) * WAYS;
+    }
+    
+    static int hash(String ip, String ipv6, String userAgent, String domain) {
+        int hash = Objects.hashCode(ip);
+        hash = 31 * hash + Objects.hashCode(ipv6);
+        hash = 31 * hash + Objects.hashCode(userAgent);
+        return 31 * hash + Objects.hashCode(domain);
+    }
+    
+    /**
+     * 一个键的判断结果：命中的检查（位标志）、这些检查的风险分数之和与IP所在国家
+     */
+    public static final class Verdict {
+        private final String ip;
+        private final String ipv6;
+        private final String userAgent;
+        private final String domain;
+        private final int hash;
+        private final long generation;
+        private final int signals;
+        private final double riskScore;
+        private final String locatedCountry;
+        private final long computeNanos;
+        // 写入缓存时设置，之后只读
+        private long expiresAtNanos;
+        
+        public Verdict(String ip, String ipv6, String userAgent, String domain, long generation,
+                       int signals, double riskScore, String locatedCountry, long computeNanos) {
+            this.ip = ip;
+            this.ipv6 = ipv6;
+            this.userAgent = userAgent;
+            this.domain = domain;
+            this.hash = FraudVerdictCache.hash(ip, ipv6, userAgent, domain);
+            this.generation = generation;
+            this.signals = signals;
+            this.riskScore = riskScore;
+            this.locatedCountry = locatedCountry;
+            this.computeNanos = computeNanos;
+        }
+        
+        public boolean has(int signal) {
+            return (signals & signal) != 0;
+        }
+        
+        public int getSignals() {
+            return signals;
+        }
+        
+        public double getRiskScore() {
+            return riskScore;
+        }
+        
+        public String getLocatedCountry() {
+            return locatedCountry;
+        }
+        
+        private boolean matches(String ip, String ipv6, String userAgent, String domain) {
+            return Objects.equals(this.ip, ip) && Objects.equals(this.ipv6, ipv6)
+                && Objects.equals(this.userAgent, userAgent) && Objects.equals(this.domain, domain);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,354 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 内存映射的IP地理位置库
+ * 由CSV（起始地址,结束地址,国家[,地区]）编译为按起始地址排序、互不重叠的二进制文件，
+ * 地址统一为128位（IPv4映射到 ::ffff:0:0/96），起始地址、结束地址、国家/地区编号按列存放，
+ * 同一地址的高低64位相邻，二分查找的每次探测只访问一个缓存行。
+ * 打开时只把文件映射到内存，地址列不复制到堆上；查询对起始地址列做无分支二分查找，再比较结束地址。
+ * IPv4地址另有按高16位分段的索引（堆上256KB），先把查找范围缩小到一个 /16 内再二分，减少随机访问映射区的次数。
+ * 国家与地区字符串在文件末尾去重存放，打开时解码为小数组，查询直接返回已解码的字符串。
+ * 构建完成后不可变，可被多个线程共享，重新加载时整体替换；映射在对象不可达后由GC释放。
+ */
+public final class GeoIpDatabase {
+    
+    private static final int MAGIC = 0x47454F31; // "GEO1"
+    private static final int HEADER_BYTES = 16;
+    // 每条记录：起始、结束地址两列（各为相邻的高低64位） + 国家、地区两列int
+    private static final int RECORD_BYTES = 4 * Long.BYTES + 2 * Integer.BYTES;
+    private static final int ADDRESS_BYTES = 2 * Long.BYTES;
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int IPV4_SEGMENTS = 1 << 16;
+    
+    public static final GeoIpDatabase EMPTY = new GeoIpDatabase(
+        ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN), 0, new String[0], 0L);
+    
+    private final ByteBuffer data;
+    private final int count;
+    private final String[] names;
+    private final long fileBytes;
+    
+    // ipv4Index[p] 为起始地址小于IPv4段 p.0.0/16（高16位为p）的区间数，长度 IPV4_SEGMENTS + 1
+    private final int[] ipv4Index;
+    
+    // 各列在映射区中的起始偏移
+    private final int startOffset;
+    private final int endOffset;
+    private final int countryOffset;
+    private final int regionOffset;
+    
+    private GeoIpDatabase(ByteBuffer data, int count, String[] names, long fileBytes) {
+        this.data = data;
+        this.count = count;
+        this.names = names;
+        this.fileBytes = fileBytes;
+        this.startOffset = HEADER_BYTES;
+        this.endOffset = startOffset + count * ADDRESS_BYTES;
+        this.countryOffset = endOffset + count * ADDRESS_BYTES;
+        this.regionOffset = countryOffset + count * Integer.BYTES;
+        this.ipv4Index = buildIpv4Index();
+    }
+    
+    /**
+     * 映射编译好的二进制文件
+     */
+    public static GeoIpDatabase open(Path file) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("地理位置库文件过大: " + channel.size());
+            }
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.capacity() < HEADER_BYTES || data.getInt(0) != MAGIC) {
+            throw new IOException("不是地理位置库文件: " + file);
+        }
+        int count = data.getInt(4);
+        int nameCount = data.getInt(8);
+        long namesOffset = HEADER_BYTES + (long) count * RECORD_BYTES;
+        if (count < 0 || nameCount < 0 || namesOffset > data.capacity()) {
+            throw new IOException("地理位置库文件已损坏: " + file);
+        }
+        
+        String[] names = new String[nameCount];
+        ByteBuffer cursor = data.duplicate().order(ByteOrder.LITTLE_ENDIAN).position((int) namesOffset);
+        for (int i = 0; i < nameCount; i++) {
+            byte[] bytes = new byte[Short.toUnsignedInt(cursor.getShort())];
+            cursor.get(bytes);
+            names[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new GeoIpDatabase(data, count, names, data.capacity());
+    }
+    
+    /**
+     * 把CSV编译为二进制文件：先写临时文件再原子替换，正在映射旧文件的读者不受影响
+     * 每行 "起始地址,结束地址,国家[,地区]"，# 开头为注释；非法行与和前一区间重叠的行被跳过
+     *
+     * @return 跳过的行数
+     */
+    public static int compile(Path csv, Path output) throws IOException {
+        List<Range> ranges = new ArrayList<>();
+        int invalid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                Range range = Range.parse(trimmed);
+                if (range == null) {
+                    invalid++;
+                } else {
+                    ranges.add(range);
+                }
+            }
+        }
+        ranges.sort(Range::compareStart);
+        
+        List<Range> accepted = new ArrayList<>(ranges.size());
+        for (Range range : ranges) {
+            Range previous = accepted.isEmpty() ? null : accepted.get(accepted.size() - 1);
+            if (previous != null && compare(range.startHi, range.startLo, previous.endHi, previous.endLo) <= 0) {
+                invalid++;
+            } else {
+                accepted.add(range);
+            }
+        }
+        
+        Map<String, Integer> nameIndex = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        nameIndex.put("", 0);
+        names.add("");
+        
+        Path temp = Files.createTempFile(output.toAbsolutePath().getParent(), output.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+                int[] countries = new int[accepted.size()];
+                int[] regions = new int[accepted.size()];
+                for (int i = 0; i < accepted.size(); i++) {
+                    countries[i] = intern(accepted.get(i).country, nameIndex, names);
+                    regions[i] = intern(accepted.get(i).region, nameIndex, names);
+                }
+                writeInt(data, MAGIC);
+                writeInt(data, accepted.size());
+                writeInt(data, names.size());
+                writeInt(data, 0);
+                for (Range range : accepted) {
+                    writeLong(data, range.startHi);
+                    writeLong(data, range.startLo);
+                }
+                for (Range range : accepted) {
+                    writeLong(data, range.endHi);
+                    writeLong(data, range.endLo);
+                }
+                for (int country : countries) {
+                    writeInt(data, country);
+                }
+                for (int region : regions) {
+                    writeInt(data, region);
+                }
+                for (String name : names) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    data.writeShort(Short.reverseBytes((short) bytes.length));
+                    data.write(bytes);
+                }
+            }
+            Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return invalid;
+    }
+    
+    /**
+     * 查找地址所在区间
+     *
+     * @return 区间序号，不在任何区间内时返回-1
+     */
+    public int find(long hi, long lo) {
+        if (count == 0) {
+            return -1;
+        }
+        // 无符号比较转换为有符号比较
+        long keyHi = hi ^ Long.MIN_VALUE;
+        long keyLo = lo ^ Long.MIN_VALUE;
+        // 定位最后一个起始地址不大于key的区间：循环次数只取决于区间数，分支结果用条件赋值表达
+        int base = 0;
+        int n = count;
+        if (hi == 0L && (lo >>> 32) == (IpAddresses.IPV4_MAPPED_LO >>> 32)) {
+            int segment = (int) (lo >>> 16) & (IPV4_SEGMENTS - 1);
+            base = Math.max(ipv4Index[segment] - 1, 0);
+            n = Math.max(ipv4Index[segment + 1] - base, 1);
+        }
+        while (n > 1) {
+            int half = n >>> 1;
+            int probe = base + half;
+            int position = startOffset + probe * ADDRESS_BYTES;
+            long startHi = data.getLong(position) ^ Long.MIN_VALUE;
+            long startLo = data.getLong(position + Long.BYTES) ^ Long.MIN_VALUE;
+            boolean notAfter = startHi < keyHi | (startHi == keyHi & startLo <= keyLo);
+            base = notAfter ? probe : base;
+            n -= half;
+        }
+        int start = startOffset + base * ADDRESS_BYTES;
+        int end = endOffset + base * ADDRESS_BYTES;
+        if (compare(data.getLong(start), data.getLong(start + Long.BYTES), hi, lo) > 0
+            || compare(hi, lo, data.getLong(end), data.getLong(end + Long.BYTES)) > 0) {
+            return -1;
+        }
+        return base;
+    }
+    
+    /**
+     * 区间的国家代码，未知时返回null
+     */
+    public String country(int index) {
+        return name(data.getInt(countryOffset + index * Integer.BYTES));
+    }
+    
+    /**
+     * 区间的地区代码，未知时返回null
+     */
+    public String region(int index) {
+        return name(data.getInt(regionOffset + index * Integer.BYTES));
+    }
+    
+    /**
+     * 查找IPv4或IPv6地址所在的国家，未知或地址非法时返回null
+     */
+    public String lookupCountry(CharSequence ip) {
+        if (ip == null || count == 0) {
+            return null;
+        }
+        Lookup lookup = new Lookup();
+        return IpAddresses.parse(ip, 0, ip.length(), lookup) ? country(lookup.index) : null;
+    }
+    
+    public int size() {
+        return count;
+    }
+    
+    /**
+     * 映射文件的大小（字节），不占用堆内存
+     */
+    public long getMappedBytes() {
+        return fileBytes;
+    }
+    
+    private int[] buildIpv4Index() {
+        if (count == 0) {
+            return new int[0];
+        }
+        int[] index = new int[IPV4_SEGMENTS + 1];
+        int range = 0;
+        for (int segment = 0; segment <= IPV4_SEGMENTS; segment++) {
+            long bound = IpAddresses.IPV4_MAPPED_LO + ((long) segment << 16);
+            while (range < count) {
+                int position = startOffset + range * ADDRESS_BYTES;
+                if (compare(data.getLong(position), data.getLong(position + Long.BYTES), 0L, bound) >= 0) {
+                    break;
+                }
+                range++;
+            }
+            index[segment] = range;
+        }
+        return index;
+    }
+    
+    private String name(int nameIndex) {
+        String name = names[nameIndex];
+        return name.isEmpty() ? null : name;
+    }
+    
+    private static int compare(long aHi, long aLo, long bHi, long bLo) {
+        int result = Long.compareUnsigned(aHi, bHi);
+        return result != 0 ? result : Long.compareUnsigned(aLo, bLo);
+    }
+    
+    private static int intern(String name, Map<String, Integer> nameIndex, List<String> names) {
+        Integer index = nameIndex.get(name);
+        if (index == null) {
+            index = names.size();
+            nameIndex.put(name, index);
+            names.add(name);
+        }
+        return index;
+    }
+    
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        out.writeInt(Integer.reverseBytes(value));
+    }
+    
+    private static void writeLong(DataOutputStream out, long value) throws IOException {
+        out.writeLong(Long.reverseBytes(value));
+    }
+    
+    /**
+     * 解析回调：解析成功后查找区间，找不到时返回false
+     */
+    private final class Lookup implements IpAddresses.AddressSink {
+        private int index;
+        
+        @Override
+        public boolean accept(long hi, long lo) {
+            index = find(hi, lo);
+            return index >= 0;
+        }
+    }
+    
+    private static final class Range {
+        private long startHi;
+        private long startLo;
+        private long endHi;
+        private long endLo;
+        private String country;
+        private String region;
+        
+        private static Range parse(String line) {
+            String[] columns = line.split(",", -1);
+            if (columns.length < 3 || columns.length > 4) {
+                return null;
+            }
+            Range range = new Range();
+            String start = columns[0].trim();
+            String end = columns[1].trim();
+            if (!IpAddresses.parse(start, 0, start.length(), (hi, lo) -> { range.startHi = hi; range.startLo = lo; return true; })
+                || !IpAddresses.parse(end, 0, end.length(), (hi, lo) -> { range.endHi = hi; range.endLo = lo; return true; })
+                || compare(range.startHi, range.startLo, range.endHi, range.endLo) > 0) {
+                return null;
+            }
+            range.country = columns[2].trim();
+            range.region = columns.length > 3 ? columns[3].trim() : "";
+            if (range.country.isEmpty() || range.country.length() > MAX_NAME_LENGTH || range.region.length() > MAX_NAME_LENGTH) {
+                return null;
+            }
+            return range;
+        }
+        
+        private static int compareStart(Range a, Range b) {
+            return compare(a.startHi, a.startLo, b.startHi, b.startLo);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,156 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按IP、设备指纹、App bundle、网站域名四个维度统计每分钟的高频键，超过维度阈值的键自动封禁一段时间
+ * 封禁表只包含超过阈值的键，每分钟最多 总请求数 / 阈值 个，过期的封禁在查询或统计时清除。
+ */
+@Slf4j
+public final class HeavyHitterDetector {
+    
+    /**
+     * 统计维度
+     */
+    public enum Dimension {
+        IP, DEVICE, APP, SITE
+    }
+    
+    private final Clock clock;
+    private final long blockTtlMillis;
+    private final int topK;
+    private final EnumMap<Dimension, HeavyHitterTracker> trackers = new EnumMap<>(Dimension.class);
+    private final EnumMap<Dimension, Long> thresholds = new EnumMap<>(Dimension.class);
+    private final EnumMap<Dimension, Map<String, Long>> blockedUntil = new EnumMap<>(Dimension.class);
+    
+    // 统计信息
+    private final LongAdder autoBlocks = new LongAdder();
+    private final LongAdder blockedHits = new LongAdder();
+    
+    public HeavyHitterDetector(AdsConfiguration.HeavyHitters config, Clock clock) {
+        this.clock = clock;
+        this.blockTtlMillis = config.getBlockTtlSeconds() * 1000L;
+        this.topK = config.getTopK();
+        thresholds.put(Dimension.IP, config.getIpThresholdPerMinute());
+        thresholds.put(Dimension.DEVICE, config.getDeviceThresholdPerMinute());
+        thresholds.put(Dimension.APP, config.getAppThresholdPerMinute());
+        thresholds.put(Dimension.SITE, config.getSiteThresholdPerMinute());
+        for (Dimension dimension : Dimension.values()) {
+            trackers.put(dimension, new HeavyHitterTracker(config.getCapacity(), config.getStripes(), clock));
+            blockedUntil.put(dimension, new ConcurrentHashMap<>());
+        }
+    }
+    
+    /**
+     * 记录一个请求的四个维度，空键忽略；所有维度都会计数，时钟只读取一次
+     *
+     * @return 是否有任一维度处于自动封禁中
+     */
+    public boolean record(String ip, String device, String app, String site) {
+        long now = clock.millis();
+        return record(Dimension.IP, ip, now)
+            | record(Dimension.DEVICE, device, now)
+            | record(Dimension.APP, app, now)
+            | record(Dimension.SITE, site, now);
+    }
+    
+    /**
+     * 记录键出现一次，空键忽略
+     *
+     * @return 该键是否处于自动封禁中（含本次超过阈值而新封禁的情况）
+     */
+    public boolean record(Dimension dimension, String key) {
+        return record(dimension, key, clock.millis());
+    }
+    
+    private boolean record(Dimension dimension, String key, long now) {
+        if (key == null || key.isEmpty()) {
+            return false;
+        }
+        if (isBlocked(dimension, key, now)) {
+            blockedHits.increment();
+            return true;
+        }
+        long count = trackers.get(dimension).offer(key, now);
+        long threshold = thresholds.get(dimension);
+        if (threshold > 0 && count > threshold) {
+            blockedUntil.get(dimension).put(key, now + blockTtlMillis);
+            autoBlocks.increment();
+            log.warn("高频键已自动封禁: dimension={}, key={}, countPerMinute={}, ttlMs={}", dimension, key, count, blockTtlMillis);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * 键是否处于自动封禁中，过期的封禁随之清除
+     */
+    public boolean isBlocked(Dimension dimension, String key) {
+        return isBlocked(dimension, key, clock.millis());
+    }
+    
+    private boolean isBlocked(Dimension dimension, String key, long now) {
+        Map<String, Long> blocked = blockedUntil.get(dimension);
+        if (blocked.isEmpty()) {
+            return false;
+        }
+        Long until = blocked.get(key);
+        if (until == null) {
+            return false;
+        }
+        if (until <= now) {
+            blocked.remove(key, until);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * 解除封禁
+     */
+    public boolean unblock(Dimension dimension, String key) {
+        return blockedUntil.get(dimension).remove(key) != null;
+    }
+    
+    /**
+     * 各维度当前分钟与上一分钟的Top-K
+     */
+    public Map<String, Object> getTopHitters() {
+        Map<String, Object> result = new HashMap<>();
+        for (Dimension dimension : Dimension.values()) {
+            HeavyHitterTracker tracker = trackers.get(dimension);
+            Map<String, List<HeavyHitterTracker.HeavyHitter>> minutes = new HashMap<>();
+            minutes.put("currentMinute", tracker.currentTopK(topK));
+            minutes.put("previousMinute", tracker.previousTopK(topK));
+            result.put(dimension.name().toLowerCase(Locale.ROOT), minutes);
+        }
+        return result;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        long now = clock.millis();
+        Map<String, Object> blocked = new HashMap<>();
+        for (Dimension dimension : Dimension.values()) {
+            Map<String, Long> keys = blockedUntil.get(dimension);
+            keys.values().removeIf(until -> until <= now);
+            blocked.put(dimension.name().toLowerCase(Locale.ROOT), keys.size());
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("capacityPerDimension", trackers.get(Dimension.IP).capacity());
+        stats.put("blockedKeys", blocked);
+        stats.put("autoBlocks", autoBlocks.sum());
+        stats.put("blockedHits", blockedHits.sum());
+        stats.put("topHitters", getTopHitters());
+        return stats;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,301 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 按分钟统计的高频键（Space-Saving算法）
+ * 键按哈希分到若干段，每段是一个容量固定的Space-Saving摘要：已跟踪的键计数加1，
+ * 未跟踪的键替换计数最小的键并继承其计数（记为误差）；为使替换的代价固定，只在轮转起点的若干槽位中取最小值，
+ * 热点键计数远高于其他键，不会被选中替换。
+ * 各段的键互不相交，合并各段的计数即得到全局Top-K；每个键的真实次数介于 count - error 与 count 之间。
+ * 已跟踪键的查找与自增不加锁，热点键之间不互相阻塞；只有新键的加入与替换锁住所在的一段，且不产生对象分配。
+ * 分钟切换时各段在下一次更新时保存上一分钟的摘要并清空。
+ * 总内存只取决于容量，与键的数量无关。
+ */
+public final class HeavyHitterTracker {
+    
+    private static final long MINUTE_MILLIS = 60_000L;
+    private static final long UNTRACKED = Long.MIN_VALUE;
+    private static final int SAMPLE_SLOTS = 8;
+    
+    private final Clock clock;
+    private final Stripe[] stripes;
+    
+    public HeavyHitterTracker(int capacity, int stripes, Clock clock) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes必须大于0");
+        }
+        this.clock = clock;
+        this.stripes = new Stripe[stripes];
+        int stripeCapacity = Math.max(1, capacity / stripes);
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+    
+    /**
+     * 记录键出现一次
+     *
+     * @return 该键在当前分钟内确定出现的次数下限（count - error）
+     */
+    public long offer(String key) {
+        return offer(key, clock.millis());
+    }
+    
+    /**
+     * 记录键在给定时刻出现一次，调用方一次读取时钟后可用于多个维度
+     *
+     * @return 该键在当前分钟内确定出现的次数下限（count - error）
+     */
+    public long offer(String key, long nowMillis) {
+        int hash = key.hashCode();
+        // 用乘法哈希的高32位选段，段内索引表用低位定位，两者互不相关
+        Stripe stripe = stripes[(int) (((hash * 0x9E3779B9) & 0xFFFFFFFFL) * stripes.length >>> 32)];
+        long minute = nowMillis / MINUTE_MILLIS;
+        long count = stripe.tryIncrement(key, hash, minute);
+        if (count != UNTRACKED) {
+            return count;
+        }
+        synchronized (stripe) {
+            return stripe.offer(key, hash, minute);
+        }
+    }
+    
+    /**
+     * 当前分钟计数最高的k个键
+     */
+    public List<HeavyHitter> currentTopK(int k) {
+        return topK(k, clock.millis() / MINUTE_MILLIS);
+    }
+    
+    /**
+     * 上一个完整分钟计数最高的k个键
+     */
+    public List<HeavyHitter> previousTopK(int k) {
+        return topK(k, clock.millis() / MINUTE_MILLIS - 1);
+    }
+    
+    /**
+     * 已跟踪的计数器总容量
+     */
+    public int capacity() {
+        return stripes.length * stripes[0].capacity();
+    }
+    
+    private List<HeavyHitter> topK(int k, long minute) {
+        List<HeavyHitter> all = new ArrayList<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.collect(minute, all);
+            }
+        }
+        all.sort(Comparator.comparingLong(HeavyHitter::getCount).reversed());
+        return all.size() > k ? new ArrayList<>(all.subList(0, k)) : all;
+    }
+    
+    /**
+     * 高频键及其计数
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class HeavyHitter {
+        private final String key;
+        /**
+         * 估计次数（不低于真实次数）
+         */
+        private final long count;
+        /**
+         * 估计误差，真实次数不低于 count - error
+         */
+        private final long error;
+    }
+    
+    /**
+     * 一段Space-Saving摘要
+     * 键到槽位的索引是线性探测的开放寻址表（装载因子不超过1/4），删除时后移补位，不留墓碑；
+     * 已跟踪键的查找与计数自增不加锁，新键的加入、替换与分钟切换在段锁内进行；
+     * 锁内的写入用setRelease发布（不需要完整的内存屏障），无锁读取按acquire语义即可看到完整写入的槽位。
+     * 无锁查找与补位并发时可能暂时找不到键，此时转入加锁路径重新查找，不会重复跟踪同一个键。
+     */
+    private static final class Stripe {
+        private final AtomicReferenceArray<String> keys;
+        private final AtomicIntegerArray keyHashes;
+        private final AtomicLongArray counts;
+        private final AtomicLongArray errors;
+        // 槽位序号 + 1，0 表示空
+        private final AtomicIntegerArray table;
+        private final int tableMask;
+        private int size;
+        private int nextVictim;
+        private volatile long minute = Long.MIN_VALUE;
+        
+        // 上一分钟的摘要，分钟切换时保存
+        private List<HeavyHitter> previous = List.of();
+        private long previousMinute = Long.MIN_VALUE;
+        
+        private Stripe(int capacity) {
+            this.keys = new AtomicReferenceArray<>(capacity);
+            this.keyHashes = new AtomicIntegerArray(capacity);
+            this.counts = new AtomicLongArray(capacity);
+            this.errors = new AtomicLongArray(capacity);
+            int tableSize = Integer.highestOneBit(capacity * 4 - 1) << 1;
+            this.table = new AtomicIntegerArray(tableSize);
+            this.tableMask = tableSize - 1;
+        }
+        
+        private int capacity() {
+            return keys.length();
+        }
+        
+        /**
+         * 无锁路径：当前分钟内已跟踪的键直接自增，否则返回UNTRACKED交给加锁路径
+         * 与替换并发时可能把个别次数计到替换后的新键上，只影响估计值，不影响内存上界
+         */
+        private long tryIncrement(String key, int hash, long now) {
+            if (minute != now) {
+                return UNTRACKED;
+            }
+            int slot = find(key, hash);
+            if (slot < 0) {
+                return UNTRACKED;
+            }
+            return Math.max(0L, counts.incrementAndGet(slot) - errors.get(slot));
+        }
+        
+        private long offer(String key, int hash, long now) {
+            if (now != minute) {
+                rotate(now);
+            }
+            int slot = find(key, hash);
+            if (slot >= 0) {
+                return counts.incrementAndGet(slot) - errors.get(slot);
+            }
+            if (size < capacity()) {
+                slot = size++;
+                errors.setRelease(slot, 0);
+                counts.setRelease(slot, 1);
+            } else {
+                // 替换计数最小的键，新键继承其计数作为误差
+                slot = minSlot();
+                unlink(slot);
+                long inherited = counts.get(slot);
+                errors.setRelease(slot, inherited);
+                counts.setRelease(slot, inherited + 1);
+            }
+            keys.setRelease(slot, key);
+            keyHashes.setRelease(slot, hash);
+            link(slot, hash);
+            return counts.get(slot) - errors.get(slot);
+        }
+        
+        private int find(String key, int hash) {
+            for (int i = home(hash), probes = 0; probes <= tableMask; i = (i + 1) & tableMask, probes++) {
+                int entry = table.get(i);
+                if (entry == 0) {
+                    return -1;
+                }
+                int slot = entry - 1;
+                if (keyHashes.get(slot) == hash && key.equals(keys.get(slot))) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+        
+        private void link(int slot, int hash) {
+            int i = home(hash);
+            while (table.get(i) != 0) {
+                i = (i + 1) & tableMask;
+            }
+            table.setRelease(i, slot + 1);
+        }
+        
+        /**
+         * 从索引表中删除槽位，后续探测链上的条目后移补位
+         */
+        private void unlink(int slot) {
+            int i = home(keyHashes.get(slot));
+            while (table.get(i) != slot + 1) {
+                i = (i + 1) & tableMask;
+            }
+            for (int j = (i + 1) & tableMask; ; j = (j + 1) & tableMask) {
+                int entry = table.get(j);
+                if (entry == 0) {
+                    break;
+                }
+                int entryHome = home(keyHashes.get(entry - 1));
+                // 条目的起始位置不在 (i, j] 之间时才能移到 i
+                if (((j - entryHome) & tableMask) >= ((j - i) & tableMask)) {
+                    table.setRelease(i, entry);
+                    i = j;
+                }
+            }
+            table.setRelease(i, 0);
+        }
+        
+        private int home(int hash) {
+            return (hash ^ (hash >>> 16)) & tableMask;
+        }
+        
+        /**
+         * 从 nextVictim 开始的连续 SAMPLE_SLOTS 个槽位中取计数最小的一个，起点每次后移
+         */
+        private int minSlot() {
+            int slot = nextVictim;
+            long min = counts.get(slot);
+            int candidate = slot;
+            for (int i = 1; i < SAMPLE_SLOTS; i++) {
+                if (++candidate == size) {
+                    candidate = 0;
+                }
+                long count = counts.get(candidate);
+                if (count < min) {
+                    min = count;
+                    slot = candidate;
+                }
+            }
+            nextVictim = candidate + 1 == size ? 0 : candidate + 1;
+            return slot;
+        }
+        
+        private void rotate(long now) {
+            if (minute == now - 1) {
+                previous = new ArrayList<>(size);
+                collectCurrent(previous);
+                previousMinute = minute;
+            }
+            for (int i = 0; i <= tableMask; i++) {
+                table.setRelease(i, 0);
+            }
+            for (int slot = 0; slot < size; slot++) {
+                keys.setRelease(slot, null);
+            }
+            size = 0;
+            nextVictim = 0;
+            minute = now;
+        }
+        
+        private void collect(long target, List<HeavyHitter> out) {
+            if (target == minute) {
+                collectCurrent(out);
+            } else if (target == previousMinute) {
+                out.addAll(previous);
+            }
+        }
+        
+        private void collectCurrent(List<HeavyHitter> out) {
+            for (int slot = 0; slot < size; slot++) {
+                out.add(new HeavyHitter(keys.get(slot), counts.get(slot), errors.get(slot)));
+            }
+        }
+    }
+}
\ No newline at end of file
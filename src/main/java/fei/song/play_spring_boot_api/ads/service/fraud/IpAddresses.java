@@ -0,0 +1,199 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+/**
+ * IP地址解析
+ * 地址统一表示为128位（高64位 + 低64位），IPv4映射到 ::ffff:0:0/96；
+ * 直接扫描字符，不创建中间对象，解析结果通过回调传出，回调对象可由调用方复用。
+ */
+public final class IpAddresses {
+    
+    /**
+     * IPv4映射地址的低64位前缀（::ffff:a.b.c.d）
+     */
+    public static final long IPV4_MAPPED_LO = 0x0000FFFF00000000L;
+    
+    /**
+     * IPv4前缀长度换算到128位地址空间时的偏移
+     */
+    public static final int IPV4_PREFIX_OFFSET = 96;
+    
+    private IpAddresses() {
+    }
+    
+    /**
+     * 接收解析得到的128位地址
+     */
+    @FunctionalInterface
+    public interface AddressSink {
+        boolean accept(long hi, long lo);
+    }
+    
+    /**
+     * 解析 s[from, to) 中的IPv4或IPv6地址（忽略 %zone 后缀）
+     *
+     * @return 地址非法时返回false，否则返回sink的结果
+     */
+    public static boolean parse(CharSequence s, int from, int to, AddressSink sink) {
+        // 先按IPv4解析，IPv6地址通常在前几个字符遇到 ':' 即失败
+        long v4 = parseIpv4(s, from, to);
+        if (v4 >= 0) {
+            return sink.accept(0L, IPV4_MAPPED_LO | v4);
+        }
+        boolean ipv6 = false;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                ipv6 = true;
+            } else if (c == '%') {
+                to = i;
+                break;
+            }
+        }
+        return ipv6 && parseIpv6(s, from, to, sink);
+    }
+    
+    /**
+     * 解析点分十进制IPv4地址
+     *
+     * @return 32位地址，非法时返回-1
+     */
+    public static long parseIpv4(CharSequence s, int from, int to) {
+        long value = 0;
+        int octets = 0;
+        int octet = 0;
+        int digits = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet * 10 + (c - '0');
+                if (++digits > 3 || octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && digits > 0 && octets < 3) {
+                value = (value << 8) | octet;
+                octets++;
+                octet = 0;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (digits == 0 || octets != 3) {
+            return -1;
+        }
+        return (value << 8) | octet;
+    }
+    
+    /**
+     * "::" 前后的分组分别累加，结束时把前半部分左移到高位
+     */
+    private static boolean parseIpv6(CharSequence s, int from, int to, AddressSink sink) {
+        long headHi = 0;
+        long headLo = 0;
+        int headGroups = 0;
+        long tailHi = 0;
+        long tailLo = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+        
+        int i = from;
+        if (to - from >= 2 && s.charAt(from) == ':') {
+            if (s.charAt(from + 1) != ':') {
+                return false;
+            }
+            compressed = true;
+            i = from + 2;
+        }
+        while (i < to) {
+            int end = i;
+            boolean dotted = false;
+            while (end < to && s.charAt(end) != ':') {
+                dotted |= s.charAt(end) == '.';
+                end++;
+            }
+            
+            int groups;
+            long bits;
+            if (dotted) {
+                // 末尾内嵌的IPv4地址占两个分组
+                long v4 = end == to ? parseIpv4(s, i, end) : -1;
+                if (v4 < 0) {
+                    return false;
+                }
+                groups = 2;
+                bits = v4;
+            } else {
+                int group = parseHexGroup(s, i, end);
+                if (group < 0) {
+                    return false;
+                }
+                groups = 1;
+                bits = group;
+            }
+            if (headGroups + tailGroups + groups > 8) {
+                return false;
+            }
+            int shift = 16 * groups;
+            if (compressed) {
+                tailHi = (tailHi << shift) | (tailLo >>> (64 - shift));
+                tailLo = (tailLo << shift) | bits;
+                tailGroups += groups;
+            } else {
+                headHi = (headHi << shift) | (headLo >>> (64 - shift));
+                headLo = (headLo << shift) | bits;
+                headGroups += groups;
+            }
+            
+            i = end;
+            if (i < to) {
+                i++;
+                if (i < to && s.charAt(i) == ':') {
+                    if (compressed) {
+                        return false;
+                    }
+                    compressed = true;
+                    i++;
+                } else if (i == to) {
+                    return false;
+                }
+            }
+        }
+        
+        int groups = headGroups + tailGroups;
+        if (compressed ? groups > 7 : groups != 8) {
+            return false;
+        }
+        int shift = 16 * (8 - headGroups);
+        long hi;
+        long lo;
+        if (shift == 0) {
+            hi = headHi;
+            lo = headLo;
+        } else if (shift < 64) {
+            hi = (headHi << shift) | (headLo >>> (64 - shift));
+            lo = headLo << shift;
+        } else if (shift < 128) {
+            hi = headLo << (shift - 64);
+            lo = 0L;
+        } else {
+            hi = 0L;
+            lo = 0L;
+        }
+        return sink.accept(hi | tailHi, lo | tailLo);
+    }
+    
+    private static int parseHexGroup(CharSequence s, int from, int to) {
+        if (to <= from || to - from > 4) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(s.charAt(i), 16);
+            if (digit < 0) {
+                return -1;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
\ No newline at end of file
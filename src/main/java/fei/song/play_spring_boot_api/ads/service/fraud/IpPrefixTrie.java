@@ -0,0 +1,340 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * IP网段前缀树
+ * 路径压缩的二叉基数树（Patricia），IPv4与IPv6网段统一存放在128位地址空间中；
+ * 构建完成后节点紧凑存放在一个long数组中（每个节点4个long，同一缓存行内），不可变，可被多个线程无锁读取；
+ * IPv4地址先按高位查一级直接索引表（位数随网段数量在8~20之间取值），跳过前缀树的上层节点，再沿树下降。
+ * 查询直接从字符串解析地址，命中任意覆盖该地址的网段即返回true，不产生对象分配。
+ */
+public final class IpPrefixTrie {
+    
+    public static final IpPrefixTrie EMPTY = new Builder().build();
+    
+    private static final int TERMINAL = 1 << 8;
+    private static final int LENGTH_MASK = 0xFF;
+    
+    // 节点布局：[地址高64位, 地址低64位, meta, 左子节点<<32 | 右子节点]
+    private static final int NODE_LONGS = 4;
+    
+    // IPv4一级索引的位数范围，约每个索引项对应一个网段时树的剩余深度最小
+    private static final int MIN_STRIDE_BITS = 8;
+    private static final int MAX_STRIDE_BITS = 20;
+    private static final int COVERED = -1;
+    
+    // meta低8位为前缀长度，TERMINAL位表示该节点本身是一个网段；子节点0表示无（根节点不会成为子节点）
+    private final long[] nodes;
+    // 每个IPv4高位块对应的起始节点：COVERED表示已被更短网段覆盖，0表示没有网段
+    private final int[] ipv4Stride;
+    private final int strideShift;
+    private final int nodeCount;
+    private final int prefixCount;
+    private final IpAddresses.AddressSink lookup = this::containsAddress;
+    
+    private IpPrefixTrie(Builder builder) {
+        this.nodeCount = builder.nodeCount;
+        this.prefixCount = builder.prefixCount;
+        this.nodes = new long[nodeCount * NODE_LONGS];
+        for (int node = 0; node < nodeCount; node++) {
+            int base = node * NODE_LONGS;
+            nodes[base] = builder.keyHi[node];
+            nodes[base + 1] = builder.keyLo[node];
+            nodes[base + 2] = builder.meta[node];
+            nodes[base + 3] = ((long) builder.left[node] << 32) | (builder.right[node] & 0xFFFFFFFFL);
+        }
+        int strideBits = Math.min(MAX_STRIDE_BITS, Math.max(MIN_STRIDE_BITS, 32 - Integer.numberOfLeadingZeros(prefixCount)));
+        this.strideShift = 32 - strideBits;
+        this.ipv4Stride = nodeCount > 1 ? buildIpv4Stride(strideBits) : null;
+    }
+    
+    public static Builder builder() {
+        return new Builder();
+    }
+    
+    /**
+     * 地址是否落在任一网段内，地址为空或非法时返回false
+     */
+    public boolean contains(CharSequence ip) {
+        return ip != null && IpAddresses.parse(ip, 0, ip.length(), lookup);
+    }
+    
+    /**
+     * 128位地址是否落在任一网段内
+     */
+    public boolean containsAddress(long hi, long lo) {
+        int node = 0;
+        if (ipv4Stride != null && hi == 0L && (lo & 0xFFFFFFFF00000000L) == IpAddresses.IPV4_MAPPED_LO) {
+            node = ipv4Stride[(int) ((lo & 0xFFFFFFFFL) >>> strideShift)];
+            if (node <= 0) {
+                return node == COVERED;
+            }
+        }
+        while (true) {
+            int base = node * NODE_LONGS;
+            int meta = (int) nodes[base + 2];
+            int length = meta & LENGTH_MASK;
+            if (commonPrefix(nodes[base], nodes[base + 1], hi, lo, length) < length) {
+                return false;
+            }
+            if ((meta & TERMINAL) != 0) {
+                return true;
+            }
+            if (length == 128) {
+                return false;
+            }
+            long children = nodes[base + 3];
+            node = bit(hi, lo, length) == 0 ? (int) (children >>> 32) : (int) children;
+            if (node == 0) {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * 网段数量（添加时已被更短网段覆盖的网段不计入）
+     */
+    public int size() {
+        return prefixCount;
+    }
+    
+    public int getNodeCount() {
+        return nodeCount;
+    }
+    
+    public long getMemoryBytes() {
+        return (long) nodes.length * Long.BYTES + (ipv4Stride != null ? (long) ipv4Stride.length * Integer.BYTES : 0L);
+    }
+    
+    /**
+     * 对每个IPv4高位块沿树下降到第一个前缀长度不小于块长度的节点，查询时从该节点继续
+     */
+    private int[] buildIpv4Stride(int strideBits) {
+        int strideLength = IpAddresses.IPV4_PREFIX_OFFSET + strideBits;
+        int[] stride = new int[1 << strideBits];
+        for (int block = 0; block < stride.length; block++) {
+            long lo = IpAddresses.IPV4_MAPPED_LO | ((long) block << strideShift);
+            int node = 0;
+            while (true) {
+                int base = node * NODE_LONGS;
+                int meta = (int) nodes[base + 2];
+                int length = meta & LENGTH_MASK;
+                int checked = Math.min(length, strideLength);
+                if (commonPrefix(nodes[base], nodes[base + 1], 0L, lo, checked) < checked) {
+                    node = 0;
+                    break;
+                }
+                if (length >= strideLength) {
+                    break;
+                }
+                if ((meta & TERMINAL) != 0) {
+                    node = COVERED;
+                    break;
+                }
+                long children = nodes[base + 3];
+                node = bit(0L, lo, length) == 0 ? (int) (children >>> 32) : (int) children;
+                if (node == 0) {
+                    break;
+                }
+            }
+            stride[block] = node;
+        }
+        return stride;
+    }
+    
+    private static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int limit) {
+        long diff = aHi ^ bHi;
+        int common = diff != 0 ? Long.numberOfLeadingZeros(diff) : 64 + Long.numberOfLeadingZeros(aLo ^ bLo);
+        return Math.min(common, limit);
+    }
+    
+    private static int bit(long hi, long lo, int index) {
+        return (int) (index < 64 ? (hi >>> (63 - index)) & 1 : (lo >>> (127 - index)) & 1);
+    }
+    
+    private static long maskHi(long hi, int length) {
+        return length >= 64 ? hi : length == 0 ? 0L : hi & (-1L << (64 - length));
+    }
+    
+    private static long maskLo(long lo, int length) {
+        return length <= 64 ? 0L : length == 128 ? lo : lo & (-1L << (128 - length));
+    }
+    
+    /**
+     * 前缀树构建器，非线程安全
+     */
+    public static final class Builder {
+        private long[] keyHi = new long[16];
+        private long[] keyLo = new long[16];
+        private int[] meta = new int[16];
+        private int[] left = new int[16];
+        private int[] right = new int[16];
+        private int nodeCount = 1;
+        private int prefixCount;
+        private int invalidCount;
+        
+        private Builder() {
+        }
+        
+        /**
+         * 添加 "地址/前缀长度" 或单个地址，非法时返回false并计入invalidCount
+         */
+        public boolean add(CharSequence cidr) {
+            int slash = -1;
+            for (int i = 0; i < cidr.length(); i++) {
+                if (cidr.charAt(i) == '/') {
+                    slash = i;
+                    break;
+                }
+            }
+            int end = slash >= 0 ? slash : cidr.length();
+            int length = slash >= 0 ? parseLength(cidr, slash + 1) : -1;
+            boolean added = (slash < 0 || length >= 0) && IpAddresses.parse(cidr, 0, end, (hi, lo) -> {
+                boolean ipv4 = hi == 0L && (lo & 0xFFFFFFFF00000000L) == IpAddresses.IPV4_MAPPED_LO
+                    && !containsColon(cidr, end);
+                int maxLength = ipv4 ? 32 : 128;
+                int prefix = length < 0 ? maxLength : length;
+                if (prefix > maxLength) {
+                    return false;
+                }
+                add(hi, lo, ipv4 ? prefix + IpAddresses.IPV4_PREFIX_OFFSET : prefix);
+                return true;
+            });
+            if (!added) {
+                invalidCount++;
+            }
+            return added;
+        }
+        
+        /**
+         * 逐行读取网段文件，忽略空行与 # 注释
+         */
+        public Builder addAll(Path file) throws IOException {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    String cidr = (comment >= 0 ? line.substring(0, comment) : line).trim();
+                    if (!cidr.isEmpty()) {
+                        add(cidr);
+                    }
+                }
+            }
+            return this;
+        }
+        
+        /**
+         * 添加128位地址空间中的网段，已被更短网段覆盖时忽略
+         */
+        public void add(long hi, long lo, int length) {
+            if (length < 0 || length > 128) {
+                throw new IllegalArgumentException("前缀长度超出范围: " + length);
+            }
+            hi = maskHi(hi, length);
+            lo = maskLo(lo, length);
+            
+            int node = 0;
+            while (true) {
+                int nodeLength = meta[node] & LENGTH_MASK;
+                int common = commonPrefix(keyHi[node], keyLo[node], hi, lo, Math.min(nodeLength, length));
+                if (common < nodeLength) {
+                    split(node, common, hi, lo, length);
+                    prefixCount++;
+                    return;
+                }
+                if ((meta[node] & TERMINAL) != 0) {
+                    return;
+                }
+                if (nodeLength == length) {
+                    meta[node] |= TERMINAL;
+                    prefixCount++;
+                    return;
+                }
+                boolean toLeft = bit(hi, lo, nodeLength) == 0;
+                int child = toLeft ? left[node] : right[node];
+                if (child == 0) {
+                    // newNode可能扩容数组，先分配再写入
+                    child = newNode(hi, lo, length | TERMINAL);
+                    (toLeft ? left : right)[node] = child;
+                    prefixCount++;
+                    return;
+                }
+                node = child;
+            }
+        }
+        
+        public int getInvalidCount() {
+            return invalidCount;
+        }
+        
+        public IpPrefixTrie build() {
+            return new IpPrefixTrie(this);
+        }
+        
+        /**
+         * 在公共前缀处拆分节点：原节点内容移到新下标，原下标改为公共前缀节点，父节点指针无需修改
+         */
+        private void split(int node, int common, long hi, long lo, int length) {
+            int moved = newNode(keyHi[node], keyLo[node], meta[node]);
+            left[moved] = left[node];
+            right[moved] = right[node];
+            
+            keyHi[node] = maskHi(hi, common);
+            keyLo[node] = maskLo(lo, common);
+            meta[node] = common == length ? common | TERMINAL : common;
+            left[node] = 0;
+            right[node] = 0;
+            (bit(keyHi[moved], keyLo[moved], common) == 0 ? left : right)[node] = moved;
+            if (common < length) {
+                int leaf = newNode(hi, lo, length | TERMINAL);
+                (bit(hi, lo, common) == 0 ? left : right)[node] = leaf;
+            }
+        }
+        
+        private int newNode(long hi, long lo, int nodeMeta) {
+            if (nodeCount == meta.length) {
+                int capacity = meta.length * 2;
+                keyHi = Arrays.copyOf(keyHi, capacity);
+                keyLo = Arrays.copyOf(keyLo, capacity);
+                meta = Arrays.copyOf(meta, capacity);
+                left = Arrays.copyOf(left, capacity);
+                right = Arrays.copyOf(right, capacity);
+            }
+            int node = nodeCount++;
+            keyHi[node] = hi;
+            keyLo[node] = lo;
+            meta[node] = nodeMeta;
+            return node;
+        }
+        
+        private static int parseLength(CharSequence s, int from) {
+            int value = 0;
+            if (from >= s.length() || s.length() - from > 3) {
+                return -1;
+            }
+            for (int i = from; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+        
+        private static boolean containsColon(CharSequence s, int end) {
+            for (int i = 0; i < end; i++) {
+                if (s.charAt(i) == ':') {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
\ No newline at end of file
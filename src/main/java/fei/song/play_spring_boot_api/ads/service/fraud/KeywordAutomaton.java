@@ -0,0 +1,123 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * 多关键词匹配自动机（Aho-Corasick）
+ * 构建时把失败链接展开为完整的状态转移表，扫描文本时每个字符只做一次查表，不回溯；
+ * 只处理ASCII字符，大写字母按小写匹配，非ASCII字符使状态回到初始状态。
+ * 构建完成后不可变，可被多个线程共享。
+ */
+public final class KeywordAutomaton {
+    
+    private static final int ALPHABET = 128;
+    private static final int ALPHABET_BITS = 7;
+    
+    // transitions[state << 7 | c] 为下一状态
+    private final int[] transitions;
+    private final boolean[] accepting;
+    private final int keywordCount;
+    
+    private KeywordAutomaton(int[] transitions, boolean[] accepting, int keywordCount) {
+        this.transitions = transitions;
+        this.accepting = accepting;
+        this.keywordCount = keywordCount;
+    }
+    
+    /**
+     * 由关键词构建自动机，关键词只能包含ASCII字符
+     */
+    public static KeywordAutomaton build(Collection<String> keywords) {
+        List<int[]> gotos = new ArrayList<>();
+        List<Boolean> outputs = new ArrayList<>();
+        gotos.add(newState());
+        outputs.add(false);
+        for (String keyword : keywords) {
+            String folded = keyword.toLowerCase(Locale.ROOT);
+            int state = 0;
+            for (int i = 0; i < folded.length(); i++) {
+                char c = folded.charAt(i);
+                if (c >= ALPHABET) {
+                    throw new IllegalArgumentException("关键词只能包含ASCII字符: " + keyword);
+                }
+                if (gotos.get(state)[c] < 0) {
+                    gotos.get(state)[c] = gotos.size();
+                    gotos.add(newState());
+                    outputs.add(false);
+                }
+                state = gotos.get(state)[c];
+            }
+            outputs.set(state, true);
+        }
+        
+        // 按广度优先计算失败链接，并把缺失的转移指向失败状态的对应转移
+        int states = gotos.size();
+        int[] transitions = new int[states << ALPHABET_BITS];
+        boolean[] accepting = new boolean[states];
+        int[] fail = new int[states];
+        accepting[0] = outputs.get(0);
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.add(0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] next = gotos.get(state);
+            for (int c = 0; c < ALPHABET; c++) {
+                int target = next[c];
+                if (target >= 0) {
+                    fail[target] = state == 0 ? 0 : transitions[fail[state] << ALPHABET_BITS | c];
+                    accepting[target] = outputs.get(target) || accepting[fail[target]];
+                    transitions[state << ALPHABET_BITS | c] = target;
+                    queue.add(target);
+                } else {
+                    transitions[state << ALPHABET_BITS | c] = state == 0 ? 0 : transitions[fail[state] << ALPHABET_BITS | c];
+                }
+            }
+        }
+        return new KeywordAutomaton(transitions, accepting, keywords.size());
+    }
+    
+    /**
+     * 文本中是否出现任一关键词
+     */
+    public boolean containsAny(CharSequence text) {
+        int state = 0;
+        if (accepting[state]) {
+            return true;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= ALPHABET) {
+                state = 0;
+                continue;
+            }
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            state = transitions[state << ALPHABET_BITS | c];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int getKeywordCount() {
+        return keywordCount;
+    }
+    
+    public int getStateCount() {
+        return accepting.length;
+    }
+    
+    private static int[] newState() {
+        int[] next = new int[ALPHABET];
+        Arrays.fill(next, -1);
+        return next;
+    }
+}
\ No newline at end of file
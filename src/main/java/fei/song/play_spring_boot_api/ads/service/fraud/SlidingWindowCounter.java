@@ -0,0 +1,337 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+
+import java.time.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内存有界的滑动窗口计数器
+ * 两级结构：
+ * 1. 精确层：固定容量的槽位，每个槽位是按时间分桶的环形缓冲区，桶值把"桶序号<<32 | 计数"打包在一个long中，
+ *    计数与过期判断都是单个long上的CAS，不需要锁，也不需要遍历清理；
+ * 2. 长尾层：保守更新的Count-Min Sketch，保留当前与上一代两代计数，所有键的事件先计入这里，
+ *    近两代内的估计值达到晋升阈值的键才分配精确层槽位，只出现一两次的长尾键不占用槽位。
+ *    各行下标由键字符上的两个64位哈希（每个实例随机种子，与String.hashCode无关）双重哈希得到，
+ *    hashCode相同的键不会在所有行上同时碰撞。
+ * 精确层满时回收超过空闲时间没有事件的槽位；无法分配槽位的键按Sketch估计值计数。
+ * 总内存在构造时即确定，与键的数量无关。
+ */
+public final class SlidingWindowCounter {
+    
+    private static final long[] ROW_SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L,
+        0xFF51AFD7ED558CCDL, 0xC4CEB9FE1A85EC53L, 0x27D4EB2F165667C5L, 0x94D049BB133111EBL
+    };
+    
+    private final Clock clock;
+    private final int maxTrackedKeys;
+    private final int buckets;
+    private final long bucketMillis;
+    private final long idleEvictMillis;
+    private final int promoteThreshold;
+    
+    // 精确层
+    private final AtomicLongArray cells;
+    private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private final Queue<Integer> freeSlots = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger nextUnusedSlot = new AtomicInteger();
+    private final AtomicLong lastSweepBucket = new AtomicLong(Long.MIN_VALUE);
+    
+    // 长尾层
+    private final int sketchDepth;
+    private final int sketchWidthMask;
+    private final long generationMillis;
+    private final long hashSeed = ThreadLocalRandom.current().nextLong();
+    private final long stepSeed = ThreadLocalRandom.current().nextLong();
+    private volatile AtomicIntegerArray currentGeneration;
+    private volatile AtomicIntegerArray previousGeneration;
+    private volatile long generation;
+    
+    // 统计信息
+    private final LongAdder promotions = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder untrackedEvents = new LongAdder();
+    
+    public SlidingWindowCounter(AdsConfiguration.FrequencyCounter config, Clock clock) {
+        if (config.getWindowSeconds() % config.getBucketSeconds() != 0) {
+            throw new IllegalArgumentException("windowSeconds必须是bucketSeconds的整数倍");
+        }
+        if (Integer.bitCount(config.getSketchWidth()) != 1 || config.getSketchDepth() > ROW_SEEDS.length) {
+            throw new IllegalArgumentException("sketchWidth必须是2的幂，sketchDepth不能超过" + ROW_SEEDS.length);
+        }
+        this.clock = clock;
+        this.maxTrackedKeys = config.getMaxTrackedKeys();
+        this.buckets = (int) (config.getWindowSeconds() / config.getBucketSeconds());
+        this.bucketMillis = config.getBucketSeconds() * 1000L;
+        this.idleEvictMillis = config.getIdleEvictSeconds() * 1000L;
+        this.promoteThreshold = config.getPromoteThreshold();
+        this.cells = new AtomicLongArray(maxTrackedKeys * buckets);
+        
+        this.sketchDepth = config.getSketchDepth();
+        this.sketchWidthMask = config.getSketchWidth() - 1;
+        this.generationMillis = config.getSketchGenerationSeconds() * 1000L;
+        this.currentGeneration = new AtomicIntegerArray(sketchDepth * config.getSketchWidth());
+        this.previousGeneration = new AtomicIntegerArray(sketchDepth * config.getSketchWidth());
+        this.generation = clock.millis() / generationMillis;
+    }
+    
+    /**
+     * 记录一次事件并返回窗口内的计数
+     */
+    public int incrementAndGet(String key) {
+        long now = clock.millis();
+        int bucket = (int) (now / bucketMillis);
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            increment(slot, bucket, 1);
+            return sum(slot, bucket);
+        }
+        
+        int estimate = sketchIncrementAndEstimate(key, now);
+        if (estimate >= promoteThreshold) {
+            slot = promote(key, bucket, estimate);
+            if (slot != null) {
+                return sum(slot, bucket);
+            }
+        }
+        untrackedEvents.increment();
+        return estimate;
+    }
+    
+    /**
+     * 窗口内的计数（不记录事件）
+     */
+    public int count(String key) {
+        long now = clock.millis();
+        Integer slot = slots.get(key);
+        if (slot != null) {
+            return sum(slot, (int) (now / bucketMillis));
+        }
+        rotateIfNeeded(now);
+        return sketchEstimate(key);
+    }
+    
+    /**
+     * 精确层中的键数量
+     */
+    public int trackedKeys() {
+        return slots.size();
+    }
+    
+    /**
+     * 计数数组占用的内存（字节），不含键映射
+     */
+    public long getCellBytes() {
+        return (long) cells.length() * Long.BYTES + 2L * currentGeneration.length() * Integer.BYTES;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("trackedKeys", slots.size());
+        stats.put("maxTrackedKeys", maxTrackedKeys);
+        stats.put("promotions", promotions.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("untrackedEvents", untrackedEvents.sum());
+        stats.put("cellBytes", getCellBytes());
+        return stats;
+    }
+    
+    private void increment(int slot, int bucket, int amount) {
+        int index = slot * buckets + Math.floorMod(bucket, buckets);
+        long current;
+        long next;
+        do {
+            current = cells.get(index);
+            next = (int) (current >>> 32) == bucket ? current + amount : ((long) bucket << 32) | amount;
+        } while (!cells.compareAndSet(index, current, next));
+    }
+    
+    private int sum(int slot, int bucket) {
+        int base = slot * buckets;
+        int total = 0;
+        for (int i = 0; i < buckets; i++) {
+            long cell = cells.get(base + i);
+            int age = bucket - (int) (cell >>> 32);
+            if (age >= 0 && age < buckets) {
+                total += (int) cell;
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * 槽位最近一次事件所在的桶序号
+     */
+    private int lastBucket(int slot) {
+        int base = slot * buckets;
+        int last = Integer.MIN_VALUE;
+        for (int i = 0; i < buckets; i++) {
+            long cell = cells.get(base + i);
+            if (cell != 0) {
+                last = Math.max(last, (int) (cell >>> 32));
+            }
+        }
+        return last;
+    }
+    
+    /**
+     * 为键分配精确层槽位，以Sketch估计值作为当前桶的初始计数
+     */
+    private Integer promote(String key, int bucket, int estimate) {
+        int slot = allocateSlot(bucket);
+        if (slot < 0) {
+            return null;
+        }
+        Integer existing = slots.putIfAbsent(key, slot);
+        if (existing != null) {
+            freeSlots.add(slot);
+            increment(existing, bucket, 1);
+            return existing;
+        }
+        increment(slot, bucket, estimate);
+        promotions.increment();
+        return slot;
+    }
+    
+    private int allocateSlot(int bucket) {
+        Integer free = freeSlots.poll();
+        if (free != null) {
+            return free;
+        }
+        int next = nextUnusedSlot.get();
+        while (next < maxTrackedKeys) {
+            if (nextUnusedSlot.compareAndSet(next, next + 1)) {
+                return next;
+            }
+            next = nextUnusedSlot.get();
+        }
+        // 槽位用尽时每个桶周期最多回收一次
+        long lastSweep = lastSweepBucket.get();
+        if (lastSweep != bucket && lastSweepBucket.compareAndSet(lastSweep, bucket)) {
+            evictIdle(bucket);
+            free = freeSlots.poll();
+            if (free != null) {
+                return free;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * 回收空闲超过idleEvictMillis的槽位
+     * 并发计数可能在回收瞬间记到被复用的槽位上，误差不超过同时命中该键的线程数
+     */
+    private void evictIdle(int bucket) {
+        int idleBuckets = (int) Math.max(1, idleEvictMillis / bucketMillis);
+        for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+            int slot = entry.getValue();
+            if ((long) bucket - lastBucket(slot) >= idleBuckets && slots.remove(entry.getKey(), slot)) {
+                int base = slot * buckets;
+                for (int i = 0; i < buckets; i++) {
+                    cells.set(base + i, 0L);
+                }
+                freeSlots.add(slot);
+                evictions.increment();
+            }
+        }
+    }
+    
+    /**
+     * 保守更新：只增加当前最小的计数器，返回更新后的估计值（两代之和的最小值）
+     */
+    private int sketchIncrementAndEstimate(String key, long now) {
+        rotateIfNeeded(now);
+        AtomicIntegerArray current = currentGeneration;
+        AtomicIntegerArray previous = previousGeneration;
+        long hash = hash(key, hashSeed);
+        long step = hash(key, stepSeed);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < sketchDepth; row++) {
+            int index = sketchIndex(hash, step, row);
+            min = Math.min(min, current.get(index) + previous.get(index));
+        }
+        for (int row = 0; row < sketchDepth; row++) {
+            int index = sketchIndex(hash, step, row);
+            if (current.get(index) + previous.get(index) == min) {
+                current.incrementAndGet(index);
+            }
+        }
+        return min + 1;
+    }
+    
+    private int sketchEstimate(String key) {
+        AtomicIntegerArray current = currentGeneration;
+        AtomicIntegerArray previous = previousGeneration;
+        long hash = hash(key, hashSeed);
+        long step = hash(key, stepSeed);
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < sketchDepth; row++) {
+            int index = sketchIndex(hash, step, row);
+            min = Math.min(min, current.get(index) + previous.get(index));
+        }
+        return min;
+    }
+    
+    /**
+     * 第row行的下标：hash + row * step 经过混合后取低位，两个哈希都相同的键才会在所有行上碰撞
+     */
+    private int sketchIndex(long hash, long step, int row) {
+        return row * (sketchWidthMask + 1) + (int) (mix((hash + row * step) ^ ROW_SEEDS[row]) & sketchWidthMask);
+    }
+    
+    /**
+     * 进入新一代时，当前代成为上一代，上一代清零后作为新的当前代
+     */
+    private void rotateIfNeeded(long now) {
+        long target = now / generationMillis;
+        if (target <= generation) {
+            return;
+        }
+        synchronized (this) {
+            if (target <= generation) {
+                return;
+            }
+            AtomicIntegerArray recycled = previousGeneration;
+            for (int i = 0; i < recycled.length(); i++) {
+                recycled.set(i, 0);
+            }
+            if (target - generation > 1) {
+                AtomicIntegerArray stale = currentGeneration;
+                for (int i = 0; i < stale.length(); i++) {
+                    stale.set(i, 0);
+                }
+            }
+            previousGeneration = currentGeneration;
+            currentGeneration = recycled;
+            generation = target;
+        }
+    }
+    
+    /**
+     * 按字符计算的64位哈希（FNV-1a，以种子代替固定的初始值），结果再经过混合
+     */
+    private static long hash(String key, long seed) {
+        long hash = seed;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(hash ^ key.length());
+    }
+    
+    private static long mix(long value) {
+        value = (value ^ (value >>> 33)) * 0xFF51AFD7ED558CCDL;
+        value = (value ^ (value >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return value ^ (value >>> 33);
+    }
+}
\ No newline at end of file
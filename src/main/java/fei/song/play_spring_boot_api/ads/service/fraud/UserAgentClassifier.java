@@ -0,0 +1,171 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * User Agent可疑性判断
+ * 形如 ".*bot.*" 的配置模式提取为关键词，合并成一个Aho-Corasick自动机，每个UA只扫描一遍；
+ * 其余无法化为关键词的模式仍按正则整体匹配。
+ * 判断结果缓存在固定容量的组相联缓存中：按UA的hashCode定位到2路组，equals确认后命中，
+ * 组满时淘汰命中次数较少的一路，使热门UA常驻而一次性的UA只在另一路中轮换；
+ * 每经过容量的若干倍次未命中，所有命中次数减半，让不再出现的UA逐渐失去优势。
+ * 实际流量中不同UA的数量很少，多数请求在缓存中命中。构建完成后不可变，重新加载时整体替换。
+ */
+public final class UserAgentClassifier {
+    
+    private static final int WAYS = 2;
+    private static final int AGING_FACTOR = 8;
+    
+    private final List<String> patterns;
+    private final KeywordAutomaton automaton;
+    private final List<Pattern> regexPatterns;
+    
+    private final AtomicReferenceArray<Verdict> verdicts;
+    private final int setMask;
+    private final AtomicInteger missesSinceAging = new AtomicInteger();
+    
+    // 统计信息
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    
+    public UserAgentClassifier(List<String> patterns, int cacheSize) {
+        this.patterns = List.copyOf(patterns);
+        List<String> keywords = new ArrayList<>();
+        List<Pattern> regexes = new ArrayList<>();
+        for (String pattern : patterns) {
+            String keyword = toKeyword(pattern);
+            if (keyword != null) {
+                keywords.add(keyword);
+            } else {
+                regexes.add(Pattern.compile(pattern, Pattern.CASE_INSENSITIVE));
+            }
+        }
+        this.automaton = KeywordAutomaton.build(keywords);
+        this.regexPatterns = List.copyOf(regexes);
+        
+        int sets = Integer.highestOneBit(Math.max(1, cacheSize / WAYS));
+        this.verdicts = new AtomicReferenceArray<>(sets * WAYS);
+        this.setMask = sets - 1;
+    }
+    
+    /**
+     * UA是否可疑，空UA视为可疑
+     */
+    public boolean isSuspicious(String userAgent) {
+        if (userAgent == null || userAgent.isBlank()) {
+            return true;
+        }
+        int hash = userAgent.hashCode();
+        int base = ((hash ^ (hash >>> 16)) & setMask) * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            Verdict verdict = verdicts.get(base + way);
+            if (verdict != null && verdict.hash == hash && verdict.userAgent.equals(userAgent)) {
+                // 命中计数允许并发丢失更新，只用于淘汰决策
+                verdict.hits++;
+                hits.increment();
+                return verdict.suspicious;
+            }
+        }
+        
+        misses.increment();
+        boolean suspicious = classify(userAgent);
+        admit(base, new Verdict(userAgent, hash, suspicious));
+        return suspicious;
+    }
+    
+    /**
+     * 不经过缓存直接判断
+     */
+    boolean classify(String userAgent) {
+        if (automaton.containsAny(userAgent)) {
+            return true;
+        }
+        for (Pattern pattern : regexPatterns) {
+            if (pattern.matcher(userAgent).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public List<String> getPatterns() {
+        return patterns;
+    }
+    
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("keywords", automaton.getKeywordCount());
+        stats.put("automatonStates", automaton.getStateCount());
+        stats.put("regexPatterns", regexPatterns.size());
+        stats.put("cacheCapacity", verdicts.length());
+        stats.put("cacheHits", hits.sum());
+        stats.put("cacheMisses", misses.sum());
+        stats.put("cacheEvictions", evictions.sum());
+        return stats;
+    }
+    
+    private void admit(int base, Verdict verdict) {
+        int victim = base;
+        int fewestHits = Integer.MAX_VALUE;
+        for (int way = 0; way < WAYS; way++) {
+            Verdict current = verdicts.get(base + way);
+            if (current == null) {
+                verdicts.set(base + way, verdict);
+                return;
+            }
+            if (current.hits < fewestHits) {
+                fewestHits = current.hits;
+                victim = base + way;
+            }
+        }
+        verdicts.set(victim, verdict);
+        evictions.increment();
+        if (missesSinceAging.incrementAndGet() >= verdicts.length() * AGING_FACTOR) {
+            missesSinceAging.set(0);
+            for (int i = 0; i < verdicts.length(); i++) {
+                Verdict current = verdicts.get(i);
+                if (current != null) {
+                    current.hits >>>= 1;
+                }
+            }
+        }
+    }
+    
+    /**
+     * ".*keyword.*" 且中间不含正则元字符、只含ASCII时返回关键词，否则返回null
+     */
+    static String toKeyword(String pattern) {
+        if (pattern.length() < 4 || !pattern.startsWith(".*") || !pattern.endsWith(".*")) {
+            return null;
+        }
+        String keyword = pattern.substring(2, pattern.length() - 2);
+        for (int i = 0; i < keyword.length(); i++) {
+            char c = keyword.charAt(i);
+            if (c >= 128 || "\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                return null;
+            }
+        }
+        return keyword;
+    }
+    
+    private static final class Verdict {
+        private final String userAgent;
+        private final int hash;
+        private final boolean suspicious;
+        private int hits;
+        
+        private Verdict(String userAgent, int hash, boolean suspicious) {
+            this.userAgent = userAgent;
+            this.hash = hash;
+            this.suspicious = suspicious;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,226 @@
+package fei.song.play_spring_boot_api.ads.service.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 竞价请求统计的内存聚合
+ * 按(小时, 广告位类型, DSP来源)分格，每格是几个LongAdder；请求线程只做无锁累加，不做任何I/O。
+ * 写入线程定期取出各格的增量并清零，增量以$inc累加到MongoDB，写入失败的增量放回格中等下次重试。
+ * 已过去的小时中连续两次取出都没有增量的格被移除，内存只取决于最近活跃的组合数量。
+ * 移除时先把格标记为已移除再做最后一次取出；累加后发现格已移除的请求线程把最后一次取出之后的余量转入新格，
+ * 每次累加恰好被取出一次，不会因与移除并发而丢失。
+ */
+public final class BidRequestMetricsAggregator {
+    
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+    private static final String UNKNOWN = "unknown";
+    private static final long MINUTE_MILLIS = 60_000L;
+    
+    private final Clock clock;
+    private final Map<Key, Cell> cells = new ConcurrentHashMap<>();
+    
+    // 当前分钟对应的小时与日期，时区偏移都是15分钟的整数倍，按分钟缓存不会跨过本地小时的边界
+    private volatile Period period = new Period(Long.MIN_VALUE, null, null);
+    
+    public BidRequestMetricsAggregator(Clock clock) {
+        this.clock = clock;
+    }
+    
+    /**
+     * 累加一次竞价请求，空的广告位类型或DSP来源记为 unknown
+     */
+    public void record(String adSlotType, String dspSource, boolean success, long responseTime) {
+        Period current = currentPeriod();
+        Key key = new Key(current.hour, adSlotType != null ? adSlotType : UNKNOWN, dspSource != null ? dspSource : UNKNOWN);
+        add(key, current.date, 1, success ? 1 : 0, success ? 0 : 1, responseTime);
+    }
+    
+    /**
+     * 取出所有格的增量并清零，只返回有增量的格
+     * 每个计数单元的取出与清零是原子的，并发的累加要么计入本次，要么留给下次，不会丢失
+     */
+    public List<Delta> drain() {
+        String currentHour = currentPeriod().hour;
+        List<Delta> deltas = new ArrayList<>();
+        for (Map.Entry<Key, Cell> entry : cells.entrySet()) {
+            Key key = entry.getKey();
+            Cell cell = entry.getValue();
+            Delta delta = take(key, cell);
+            if (delta != null) {
+                cell.idle = false;
+                deltas.add(delta);
+            } else if (!key.hour.equals(currentHour)) {
+                // 连续两次没有增量才移除，留出一个写入间隔给跨小时边界时仍在累加的请求
+                if (!cell.idle) {
+                    cell.idle = true;
+                    continue;
+                }
+                // 标记之前完成的累加都由这次取出取到，之后的累加由请求线程转入新格
+                cell.retired = true;
+                cells.remove(key, cell);
+                Delta last = take(key, cell);
+                if (last != null) {
+                    deltas.add(last);
+                }
+            }
+        }
+        return deltas;
+    }
+    
+    /**
+     * 把写入失败的增量放回，下次取出时一并写入
+     */
+    public void restore(Delta delta) {
+        add(new Key(delta.hour, delta.adSlotType, delta.dspSource), delta.date,
+            delta.requests, delta.successes, delta.failures, delta.totalResponseTime);
+    }
+    
+    /**
+     * 累加到键对应的格；格已被移除时取出其余量（写入线程最后一次取出之后的累加）转入新格
+     */
+    private void add(Key key, String date, long requests, long successes, long failures, long totalResponseTime) {
+        while (true) {
+            Cell cell = cells.get(key);
+            if (cell == null) {
+                cell = cells.computeIfAbsent(key, k -> new Cell(date));
+            }
+            cell.requests.add(requests);
+            cell.successes.add(successes);
+            cell.failures.add(failures);
+            cell.totalResponseTime.add(totalResponseTime);
+            if (!cell.retired) {
+                return;
+            }
+            cells.remove(key, cell);
+            Delta leftover = take(key, cell);
+            if (leftover == null) {
+                return;
+            }
+            requests = leftover.requests;
+            successes = leftover.successes;
+            failures = leftover.failures;
+            totalResponseTime = leftover.totalResponseTime;
+        }
+    }
+    
+    /**
+     * 取出格中的增量并清零，没有增量时返回null
+     * 每个计数单元的取出与清零是原子的，同一次累加只会被一次取出取到
+     */
+    private static Delta take(Key key, Cell cell) {
+        long requests = cell.requests.sumThenReset();
+        long successes = cell.successes.sumThenReset();
+        long failures = cell.failures.sumThenReset();
+        long totalResponseTime = cell.totalResponseTime.sumThenReset();
+        if (requests == 0 && successes == 0 && failures == 0 && totalResponseTime == 0) {
+            return null;
+        }
+        return new Delta(key.hour, cell.date, key.adSlotType, key.dspSource,
+            requests, successes, failures, totalResponseTime);
+    }
+    
+    /**
+     * 当前在内存中聚合的格数
+     */
+    public int size() {
+        return cells.size();
+    }
+    
+    private Period currentPeriod() {
+        long millis = clock.millis();
+        Period current = period;
+        if (millis / MINUTE_MILLIS == current.minute) {
+            return current;
+        }
+        LocalDateTime now = LocalDateTime.now(clock);
+        current = new Period(millis / MINUTE_MILLIS, now.format(HOUR_FORMATTER), now.format(DATE_FORMATTER));
+        period = current;
+        return current;
+    }
+    
+    /**
+     * 一个格在两次取出之间的增量
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Delta {
+        private final String hour;
+        private final String date;
+        private final String adSlotType;
+        private final String dspSource;
+        private final long requests;
+        private final long successes;
+        private final long failures;
+        private final long totalResponseTime;
+    }
+    
+    private static final class Key {
+        private final String hour;
+        private final String adSlotType;
+        private final String dspSource;
+        private final int hash;
+        
+        private Key(String hour, String adSlotType, String dspSource) {
+            this.hour = hour;
+            this.adSlotType = adSlotType;
+            this.dspSource = dspSource;
+            this.hash = (31 * hour.hashCode() + adSlotType.hashCode()) * 31 + dspSource.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key other)) {
+                return false;
+            }
+            return hash == other.hash && hour.equals(other.hour)
+                && adSlotType.equals(other.adSlotType) && dspSource.equals(other.dspSource);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+    
+    private static final class Cell {
+        private final String date;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder totalResponseTime = new LongAdder();
+        // 只由写入线程读写
+        private boolean idle;
+        // 已从映射中移除，由写入线程设置
+        private volatile boolean retired;
+        
+        private Cell(String date) {
+            this.date = date;
+        }
+    }
+    
+    private static final class Period {
+        private final long minute;
+        private final String hour;
+        private final String date;
+        
+        private Period(long minute, String hour, String date) {
+            this.minute = minute;
+            this.hour = hour;
+            this.date = date;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,253 @@
+package fei.song.play_spring_boot_api.ads.service.metrics;
+
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+
+/**
+ * 竞价流水线各阶段的耗时分布（HdrHistogram）
+ * 每个阶段一个Recorder：请求线程以纳秒记录耗时，无锁且不分配对象；
+ * 采样线程定期取出各Recorder的区间直方图（双缓冲交换，取出的直方图回收复用），
+ * 累加到所在小时的展示直方图与待写入直方图。展示直方图只保留当前小时，
+ * 待写入直方图按小时分开，写入MongoDB后清空，写入失败时放回。
+ * 直方图按最大可记录值与有效位数定长分配，超过最大值的耗时按最大值记录，内存与请求量无关。
+ */
+public final class StageLatencyRecorder {
+    
+    /**
+     * 响应序列化阶段，不属于竞价流水线的截止时间预算，单独记录
+     */
+    public static final String SERIALIZATION = "SERIALIZATION";
+    
+    private static final DateTimeFormatter HOUR_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd-HH");
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+    
+    private final Clock clock;
+    private final long highestTrackableNanos;
+    private final int significantDigits;
+    private final List<String> stages;
+    private final Recorder[] recorders;
+    
+    // 以下字段只在持有本对象锁时访问
+    private final Histogram[] intervals;
+    private String currentHour;
+    private Histogram[] currentHourTotals;
+    private final Map<String, Histogram[]> pending = new TreeMap<>();
+    
+    public StageLatencyRecorder(long highestTrackableNanos, int significantDigits, Clock clock) {
+        this.clock = clock;
+        this.highestTrackableNanos = highestTrackableNanos;
+        this.significantDigits = significantDigits;
+        List<String> names = new ArrayList<>();
+        for (BidStage stage : BidStage.values()) {
+            names.add(stage.name());
+        }
+        names.add(SERIALIZATION);
+        this.stages = Collections.unmodifiableList(names);
+        this.recorders = new Recorder[names.size()];
+        for (int i = 0; i < recorders.length; i++) {
+            recorders[i] = new Recorder(1, highestTrackableNanos, significantDigits);
+        }
+        this.intervals = new Histogram[recorders.length];
+        this.currentHourTotals = newHistograms();
+    }
+    
+    /**
+     * 记录流水线阶段的耗时(纳秒)
+     */
+    public void record(BidStage stage, long nanos) {
+        record(stage.ordinal(), nanos);
+    }
+    
+    /**
+     * 记录响应序列化的耗时(纳秒)
+     */
+    public void recordSerialization(long nanos) {
+        record(recorders.length - 1, nanos);
+    }
+    
+    private void record(int index, long nanos) {
+        recorders[index].recordValue(Math.min(Math.max(nanos, 0L), highestTrackableNanos));
+    }
+    
+    /**
+     * 阶段名称，依次为各流水线阶段与 SERIALIZATION
+     */
+    public List<String> stages() {
+        return stages;
+    }
+    
+    /**
+     * 取出各Recorder自上次采样以来的区间直方图，累加到当前小时
+     * 区间内的耗时全部计入采样时所在的小时，跨小时边界的误差不超过一个采样间隔
+     */
+    public synchronized void sample() {
+        String hour = LocalDateTime.now(clock).format(HOUR_FORMATTER);
+        if (!hour.equals(currentHour)) {
+            currentHour = hour;
+            for (Histogram histogram : currentHourTotals) {
+                histogram.reset();
+            }
+        }
+        Histogram[] hourPending = null;
+        for (int i = 0; i < recorders.length; i++) {
+            Histogram interval = recorders[i].getIntervalHistogram(intervals[i]);
+            intervals[i] = interval;
+            if (interval.getTotalCount() == 0) {
+                continue;
+            }
+            currentHourTotals[i].add(interval);
+            if (hourPending == null) {
+                hourPending = pending.computeIfAbsent(hour, h -> newHistograms());
+            }
+            hourPending[i].add(interval);
+        }
+    }
+    
+    /**
+     * 当前小时各阶段的耗时分位数，调用方需先采样才能包含最新的记录
+     */
+    public synchronized Map<String, Object> currentHourSummary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        for (int i = 0; i < stages.size(); i++) {
+            summary.put(stages.get(i), summarize(currentHourTotals[i]));
+        }
+        return summary;
+    }
+    
+    /**
+     * 当前小时的小时标签，尚未采样时为null
+     */
+    public synchronized String currentHour() {
+        return currentHour;
+    }
+    
+    /**
+     * 当前小时某阶段耗时的分位数(毫秒)，percentile 取 0-100，100 即最大值
+     */
+    public synchronized double percentileMillis(int stageIndex, double percentile) {
+        Histogram histogram = currentHourTotals[stageIndex];
+        long nanos = percentile >= 100.0 ? histogram.getMaxValue() : histogram.getValueAtPercentile(percentile);
+        return nanos / NANOS_PER_MILLI;
+    }
+    
+    /**
+     * 采样后取出所有待写入的小时直方图并清空，只返回有记录的阶段
+     */
+    public synchronized List<HourlyHistogram> drain() {
+        sample();
+        List<HourlyHistogram> drained = new ArrayList<>();
+        for (Map.Entry<String, Histogram[]> entry : pending.entrySet()) {
+            Histogram[] histograms = entry.getValue();
+            for (int i = 0; i < histograms.length; i++) {
+                if (histograms[i].getTotalCount() > 0) {
+                    drained.add(new HourlyHistogram(entry.getKey(), stages.get(i), histograms[i]));
+                }
+            }
+        }
+        pending.clear();
+        return drained;
+    }
+    
+    /**
+     * 某小时尚未写入的直方图副本，只返回有记录的阶段
+     */
+    public synchronized List<HourlyHistogram> pending(String hour) {
+        List<HourlyHistogram> copies = new ArrayList<>();
+        Histogram[] histograms = pending.get(hour);
+        if (histograms != null) {
+            for (int i = 0; i < histograms.length; i++) {
+                if (histograms[i].getTotalCount() > 0) {
+                    copies.add(new HourlyHistogram(hour, stages.get(i), histograms[i].copy()));
+                }
+            }
+        }
+        return copies;
+    }
+    
+    /**
+     * 把写入失败的小时直方图放回，下次取出时一并写入
+     */
+    public synchronized void restore(HourlyHistogram hourly) {
+        int index = stages.indexOf(hourly.stage);
+        if (index < 0) {
+            return;
+        }
+        pending.computeIfAbsent(hourly.hour, h -> newHistograms())[index].add(hourly.histogram);
+    }
+    
+    private Histogram[] newHistograms() {
+        Histogram[] histograms = new Histogram[recorders.length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram(1, highestTrackableNanos, significantDigits);
+        }
+        return histograms;
+    }
+    
+    /**
+     * 耗时分布摘要：记录数与 p50/p90/p99/p999/max/mean(毫秒)
+     */
+    public static Map<String, Object> summarize(Histogram histogram) {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", histogram.getTotalCount());
+        summary.put("p50Ms", histogram.getValueAtPercentile(50.0) / NANOS_PER_MILLI);
+        summary.put("p90Ms", histogram.getValueAtPercentile(90.0) / NANOS_PER_MILLI);
+        summary.put("p99Ms", histogram.getValueAtPercentile(99.0) / NANOS_PER_MILLI);
+        summary.put("p999Ms", histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI);
+        summary.put("maxMs", histogram.getMaxValue() / NANOS_PER_MILLI);
+        summary.put("meanMs", histogram.getTotalCount() > 0 ? histogram.getMean() / NANOS_PER_MILLI : 0.0);
+        return summary;
+    }
+    
+    /**
+     * 压缩编码直方图，用于写入MongoDB
+     */
+    public static byte[] encode(Histogram histogram) {
+        ByteBuffer buffer = ByteBuffer.allocate(histogram.getNeededByteBufferCapacity());
+        int length = histogram.encodeIntoCompressedByteBuffer(buffer);
+        return Arrays.copyOf(buffer.array(), length);
+    }
+    
+    /**
+     * 解码压缩编码的直方图
+     */
+    public static Histogram decode(byte[] encoded) throws DataFormatException {
+        return Histogram.decodeFromCompressedByteBuffer(ByteBuffer.wrap(encoded), 0);
+    }
+    
+    /**
+     * 一个小时内某阶段尚未写入的耗时直方图
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class HourlyHistogram {
+        /**
+         * 小时维度 格式: "2024-01-15-10"
+         */
+        private final String hour;
+        private final String stage;
+        private final Histogram histogram;
+        
+        /**
+         * 日期维度 格式: "2024-01-15"
+         */
+        public String getDate() {
+            return hour.substring(0, 10);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,141 @@
+package fei.song.play_spring_boot_api.ads.service.pipeline;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 基于延迟梯度的自适应并发限制器
+ * 以目标延迟与平滑后的实测延迟之比作为梯度：实测延迟低于目标时按 sqrt(limit) 探测增长，
+ * 高于目标时按梯度收缩；请求超时或失败时乘性退避。
+ * 使用显式目标延迟而不是最小延迟基线，快速返回的无竞价请求不会把限制压到最低
+ */
+public class AdaptiveConcurrencyLimiter {
+    
+    private static final double MIN_GRADIENT = 0.5;
+    private static final double DROP_BACKOFF = 0.9;
+    private static final int MIN_WINDOW_SAMPLES = 10;
+    
+    private final int minLimit;
+    private final int maxLimit;
+    private final double targetRttNanos;
+    private final double smoothing;
+    
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final LongAdder shedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    
+    // 当前限制，仅在synchronized的采样更新中写入
+    private volatile double limit;
+    
+    // 当前采样窗口
+    private int windowSamples;
+    private long windowRttSumNanos;
+    private int windowMaxInflight;
+    private boolean windowDropped;
+    
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long targetLatencyNanos, double smoothing) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.targetRttNanos = targetLatencyNanos;
+        this.smoothing = smoothing;
+        this.limit = clamp(initialLimit);
+    }
+    
+    public static AdaptiveConcurrencyLimiter from(AdsConfiguration configuration) {
+        AdsConfiguration.Server server = configuration.getServer();
+        AdsConfiguration.ConcurrencyLimit config = server.getConcurrencyLimit();
+        return new AdaptiveConcurrencyLimiter(config.getInitialLimit(), config.getMinLimit(),
+            server.getMaxConcurrentRequests(), TimeUnit.MILLISECONDS.toNanos(config.getTargetLatencyMs()),
+            config.getSmoothing());
+    }
+    
+    /**
+     * 尝试获取一个并发许可，超过当前限制时立即返回false
+     */
+    public boolean tryAcquire() {
+        int current;
+        do {
+            current = inflight.get();
+            if (current >= (int) limit) {
+                shedCount.increment();
+                return false;
+            }
+        } while (!inflight.compareAndSet(current, current + 1));
+        return true;
+    }
+    
+    /**
+     * 释放许可并提交延迟样本
+     *
+     * @param latencyNanos 请求处理耗时
+     * @param dropped      请求是否超时或失败
+     */
+    public void release(long latencyNanos, boolean dropped) {
+        int inflightAtRelease = inflight.getAndDecrement();
+        onSample(latencyNanos, inflightAtRelease, dropped);
+    }
+    
+    /**
+     * 样本按窗口聚合（窗口大小约等于当前限制，即大约每个往返周期调整一次），避免逐个样本调整带来的振荡
+     */
+    private synchronized void onSample(long latencyNanos, int inflightAtRelease, boolean dropped) {
+        windowSamples++;
+        windowRttSumNanos += latencyNanos;
+        windowMaxInflight = Math.max(windowMaxInflight, inflightAtRelease);
+        if (dropped) {
+            droppedCount.increment();
+            windowDropped = true;
+        }
+        if (windowSamples < Math.max(MIN_WINDOW_SAMPLES, (int) limit)) {
+            return;
+        }
+        
+        double rttNanos = (double) windowRttSumNanos / windowSamples;
+        boolean anyDropped = windowDropped;
+        boolean appLimited = windowMaxInflight * 2 < limit;
+        windowSamples = 0;
+        windowRttSumNanos = 0;
+        windowMaxInflight = 0;
+        windowDropped = false;
+        
+        double newLimit;
+        if (anyDropped) {
+            newLimit = limit * DROP_BACKOFF;
+        } else {
+            double gradient = Math.max(MIN_GRADIENT, Math.min(1.0, targetRttNanos / rttNanos));
+            if (gradient >= 1.0) {
+                // 应用未充分使用并发时，延迟不能反映容量，不增长限制
+                if (appLimited) {
+                    return;
+                }
+                newLimit = limit + Math.sqrt(limit);
+            } else {
+                newLimit = limit * gradient;
+            }
+        }
+        limit = clamp(limit * (1 - smoothing) + newLimit * smoothing);
+    }
+    
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+    
+    public int getLimit() {
+        return (int) limit;
+    }
+    
+    public int getInflight() {
+        return inflight.get();
+    }
+    
+    public long getShedCount() {
+        return shedCount.sum();
+    }
+    
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+}
\ No newline at end of file
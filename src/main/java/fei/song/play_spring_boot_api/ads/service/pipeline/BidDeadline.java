@@ -0,0 +1,63 @@
+package fei.song.play_spring_boot_api.ads.service.pipeline;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单次竞价请求的截止时间
+ * 取 BidRequest.tmax（扣除网络安全余量）、Server.requestTimeoutMs 与 Bidding.timeoutMs 中的最小值
+ */
+public final class BidDeadline {
+    
+    private final long startNanos;
+    private final long deadlineNanos;
+    
+    private BidDeadline(long startNanos, long budgetMs) {
+        this.startNanos = startNanos;
+        this.deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(budgetMs, 0));
+    }
+    
+    /**
+     * 从当前时刻开始计时，给定总时间预算
+     */
+    public static BidDeadline start(long budgetMs) {
+        return new BidDeadline(System.nanoTime(), budgetMs);
+    }
+    
+    /**
+     * 根据竞价请求与配置计算截止时间
+     */
+    public static BidDeadline forRequest(BidRequest bidRequest, AdsConfiguration configuration) {
+        AdsConfiguration.Server server = configuration.getServer();
+        long budgetMs = Math.min(server.getRequestTimeoutMs(), configuration.getBidding().getTimeoutMs());
+        if (bidRequest.getTimeoutMs() != null && bidRequest.getTimeoutMs() > 0) {
+            budgetMs = Math.min(budgetMs, bidRequest.getTimeoutMs() - server.getDeadlineSafetyMarginMs());
+        }
+        return start(budgetMs);
+    }
+    
+    public long remainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+    
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(remainingNanos());
+    }
+    
+    public long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+    
+    public boolean isExpired() {
+        return remainingNanos() <= 0;
+    }
+    
+    /**
+     * 剩余时间是否至少还有指定毫秒数
+     */
+    public boolean hasAtLeast(long millis) {
+        return remainingNanos() >= TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
\ No newline at end of file
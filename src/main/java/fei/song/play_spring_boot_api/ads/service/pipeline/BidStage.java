@@ -0,0 +1,59 @@
+package fei.song.play_spring_boot_api.ads.service.pipeline;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+
+/**
+ * 竞价流水线阶段
+ */
+public enum BidStage {
+    
+    /**
+     * 反欺诈检测
+     */
+    FRAUD,
+    
+    /**
+     * 候选生成
+     */
+    CANDIDATES,
+    
+    /**
+     * 候选过滤
+     */
+    FILTER,
+    
+    /**
+     * 预算检查与预扣
+     */
+    BUDGET,
+    
+    /**
+     * 排序与拍卖
+     */
+    AUCTION;
+    
+    /**
+     * 阶段时间预算(毫秒)
+     */
+    public long budgetMs(AdsConfiguration.StageBudgets budgets) {
+        return switch (this) {
+            case FRAUD -> budgets.getFraudMs();
+            case CANDIDATES -> budgets.getCandidatesMs();
+            case FILTER -> budgets.getFilterMs();
+            case BUDGET -> budgets.getBudgetMs();
+            case AUCTION -> budgets.getAuctionMs();
+        };
+    }
+    
+    /**
+     * 从当前阶段（含）到流水线结束所需的时间预算之和(毫秒)
+     */
+    public long remainingBudgetMs(AdsConfiguration.StageBudgets budgets) {
+        long total = 0;
+        BidStage[] stages = values();
+        for (int i = ordinal(); i < stages.length; i++) {
+            total += stages[i].budgetMs(budgets);
+        }
+        return total;
+    }
+}
\ No newline at end of file
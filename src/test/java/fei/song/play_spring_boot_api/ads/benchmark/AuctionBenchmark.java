@@ -0,0 +1,71 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.service.auction.SecondPriceAuction;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 拍卖基准：三键比较器整体排序后取前两名 vs 线性扫描前两名
+ * 分配量使用GC profiler观察: just bench "AuctionBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuctionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int candidates;
+
+    private List<BidCandidate> pool;
+    private Impression impression;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42L);
+        pool = new ArrayList<>(candidates);
+        for (int i = 0; i < candidates; i++) {
+            pool.add(BidCandidate.builder()
+                .adId("ad" + i)
+                .priority(random.nextInt(3))
+                .finalScore(random.nextDouble())
+                .bidPriceMicros(Money.toMicros(0.5 + random.nextDouble() * 5))
+                .build());
+        }
+        impression = Impression.builder().id("imp1").bidfloor(0.5).build();
+    }
+
+    @Benchmark
+    public BidCandidate sortThenSelect() {
+        List<BidCandidate> sorted = pool.stream()
+            .sorted((c1, c2) -> {
+                int priorityCompare = Integer.compare(c2.getPriority(), c1.getPriority());
+                if (priorityCompare != 0) {
+                    return priorityCompare;
+                }
+                int scoreCompare = Double.compare(c2.getFinalScore(), c1.getFinalScore());
+                if (scoreCompare != 0) {
+                    return scoreCompare;
+                }
+                return Long.compare(c2.getBidPriceMicros(), c1.getBidPriceMicros());
+            })
+            .collect(Collectors.toList());
+        return sorted.size() > 1 ? sorted.get(1) : sorted.get(0);
+    }
+
+    @Benchmark
+    public BidCandidate linearAuction() {
+        // 拍卖会把获胜者的bidPriceMicros改写为成交价；排名先按优先级与分数，获胜者稳定，重复执行结果不变
+        return SecondPriceAuction.INSTANCE.selectWinner(pool, impression);
+    }
+}
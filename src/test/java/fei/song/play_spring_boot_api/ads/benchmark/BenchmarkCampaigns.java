@@ -0,0 +1,81 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 基准测试用的合成广告活动数据
+ */
+public final class BenchmarkCampaigns {
+
+    public static final String[] COUNTRIES = {"US", "CN", "JP", "DE", "GB", "FR", "BR", "IN", "CA", "AU"};
+    public static final String[] OPERATING_SYSTEMS = {"iOS", "Android", "Windows", "macOS"};
+
+    private BenchmarkCampaigns() {
+    }
+
+    /**
+     * 生成指定数量的广告活动，约一半限定国家、一半限定设备类型，使用固定种子保证可重复
+     */
+    public static List<CampaignEntity> generate(int count, long seed) {
+        Random random = new Random(seed);
+        List<CampaignEntity> campaigns = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CampaignEntity.GeoTargeting geo = null;
+            if (random.nextBoolean()) {
+                geo = CampaignEntity.GeoTargeting.builder()
+                    .includedCountries(List.of(COUNTRIES[random.nextInt(COUNTRIES.length)],
+                        COUNTRIES[random.nextInt(COUNTRIES.length)]))
+                    .build();
+            } else if (random.nextInt(10) == 0) {
+                geo = CampaignEntity.GeoTargeting.builder()
+                    .excludedCountries(List.of(COUNTRIES[random.nextInt(COUNTRIES.length)]))
+                    .build();
+            }
+
+            CampaignEntity.DeviceTargeting device = null;
+            if (random.nextBoolean()) {
+                device = CampaignEntity.DeviceTargeting.builder()
+                    .deviceTypes(List.of(1 + random.nextInt(7)))
+                    .operatingSystems(random.nextInt(3) == 0
+                        ? List.of(OPERATING_SYSTEMS[random.nextInt(OPERATING_SYSTEMS.length)]) : null)
+                    .build();
+            }
+
+            CampaignEntity.AudienceTargeting audience = null;
+            if (random.nextInt(4) == 0) {
+                int min = 18 + random.nextInt(30);
+                audience = CampaignEntity.AudienceTargeting.builder()
+                    .ageRange(CampaignEntity.AgeRange.builder().min(min).max(min + 10 + random.nextInt(20)).build())
+                    .build();
+            }
+
+            String campaignId = "campaign_" + i;
+            campaigns.add(CampaignEntity.builder()
+                .campaignId(campaignId)
+                .advertiserId("advertiser_" + (i % 500))
+                .status("active")
+                .targeting(CampaignEntity.Targeting.builder().geo(geo).device(device).audience(audience).build())
+                .bidding(CampaignEntity.Bidding.builder()
+                    .baseBid(BigDecimal.valueOf(0.5 + random.nextInt(300) / 100.0))
+                    .maxBid(BigDecimal.valueOf(1 + random.nextInt(500) / 100.0))
+                    .build())
+                .budget(CampaignEntity.Budget.builder()
+                    .dailyBudget(BigDecimal.valueOf(1000))
+                    .totalBudget(BigDecimal.valueOf(30000))
+                    .build())
+                .creatives(List.of(CampaignEntity.Creative.builder()
+                    .creativeId(campaignId + "_creative")
+                    .width(300)
+                    .height(250)
+                    .html("<div>" + campaignId + "</div>")
+                    .build()))
+                .build());
+        }
+        return campaigns;
+    }
+}
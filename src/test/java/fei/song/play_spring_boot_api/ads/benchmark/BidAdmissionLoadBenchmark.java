@@ -0,0 +1,94 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.service.pipeline.AdaptiveConcurrencyLimiter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 入口限流负载测试：模拟容量为8个并发、单次处理1ms、截止时间3ms的竞价服务
+ * 分别以1倍与3倍容量的闭环客户端施压，比较有无自适应并发限制时的有效吞吐(goodput)
+ * 限制器的目标延迟取截止时间的一半
+ * 运行: just bench BidAdmissionLoadBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BidAdmissionLoadBenchmark {
+
+    private static final int CAPACITY = 8;
+    private static final long SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long DEADLINE_NANOS = TimeUnit.MILLISECONDS.toNanos(3);
+
+    @Param({"none", "adaptive"})
+    private String limiterType;
+
+    private Semaphore workers;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @Setup
+    public void setUp() {
+        workers = new Semaphore(CAPACITY, true);
+        limiter = "adaptive".equals(limiterType)
+            ? new AdaptiveConcurrencyLimiter(CAPACITY, 1, CAPACITY * 8, DEADLINE_NANOS / 2, 0.2)
+            : null;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Outcome {
+        public long goodput;
+        public long late;
+        public long shed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            goodput = 0;
+            late = 0;
+            shed = 0;
+        }
+    }
+
+    @Benchmark
+    @Threads(CAPACITY)
+    public void atCapacity(Outcome outcome) throws InterruptedException {
+        handle(outcome);
+    }
+
+    @Benchmark
+    @Threads(CAPACITY * 3)
+    public void atTripleCapacity(Outcome outcome) throws InterruptedException {
+        handle(outcome);
+    }
+
+    private void handle(Outcome outcome) throws InterruptedException {
+        if (limiter != null && !limiter.tryAcquire()) {
+            outcome.shed++;
+            // 被拒绝的交易平台在下一次请求前的间隔
+            LockSupport.parkNanos(SERVICE_NANOS);
+            return;
+        }
+        long start = System.nanoTime();
+        workers.acquire();
+        try {
+            LockSupport.parkNanos(SERVICE_NANOS);
+        } finally {
+            workers.release();
+        }
+        long latency = System.nanoTime() - start;
+        boolean late = latency > DEADLINE_NANOS;
+        if (limiter != null) {
+            limiter.release(latency, late);
+        }
+        if (late) {
+            outcome.late++;
+        } else {
+            outcome.goodput++;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.service.metrics.BidRequestMetricsAggregator;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 竞价请求统计内存聚合基准：请求线程上 recordBidRequest 的开销
+ * 4种广告位类型 × 8个DSP来源；可用 -t 指定并发线程数
+ * 运行: just bench BidRequestMetricsAggregatorBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BidRequestMetricsAggregatorBenchmark {
+
+    private static final String[] SLOT_TYPES = {"banner", "video", "native", "audio"};
+    private static final String[] DSP_SOURCES = {"google", "facebook", "amazon", "microsoft", "apple", "baidu", "tencent", "unknown"};
+
+    private BidRequestMetricsAggregator aggregator;
+
+    @Setup
+    public void setUp() {
+        aggregator = new BidRequestMetricsAggregator(Clock.systemDefaultZone());
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = new Random().nextInt();
+    }
+
+    @Benchmark
+    public void record(Cursor cursor) {
+        int i = cursor.next++;
+        aggregator.record(SLOT_TYPES[i & 3], DSP_SOURCES[(i >>> 2) & 7], (i & 31) != 0, 20 + (i & 63));
+    }
+}
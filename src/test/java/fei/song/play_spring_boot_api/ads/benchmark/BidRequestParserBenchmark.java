@@ -0,0 +1,51 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.infrastructure.openrtb.StreamingBidRequestParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 竞价请求解析基准：Jackson databind vs 流式解析器
+ * 分配量使用GC profiler观察: just bench "BidRequestParserBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BidRequestParserBenchmark {
+
+    private byte[] body;
+    private ObjectMapper objectMapper;
+    private StreamingBidRequestParser streamingParser;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = BidRequestParserBenchmark.class.getResourceAsStream("/sample-bid-request.json")) {
+            body = in.readAllBytes();
+        }
+        // 与Spring Boot的配置一致：忽略未知字段；样例中video.companionad为单元素数组
+        objectMapper = new ObjectMapper()
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .enable(DeserializationFeature.UNWRAP_SINGLE_VALUE_ARRAYS);
+        streamingParser = new StreamingBidRequestParser();
+    }
+
+    @Benchmark
+    public BidRequest jacksonDatabind() throws IOException {
+        return objectMapper.readValue(new ByteArrayInputStream(body), BidRequest.class);
+    }
+
+    @Benchmark
+    public BidRequest streamingParser() throws IOException {
+        return streamingParser.parse(new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,133 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.BidResponse;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.service.AdSlotFilterService;
+import fei.song.play_spring_boot_api.ads.service.BidServer;
+import fei.song.play_spring_boot_api.ads.service.BiddingAlgorithm;
+import fei.song.play_spring_boot_api.ads.service.auction.AuctionEngineSelector;
+import fei.song.play_spring_boot_api.ads.service.BudgetService;
+import fei.song.play_spring_boot_api.ads.service.FraudDetectionService;
+import fei.song.play_spring_boot_api.ads.service.GeoLocationService;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 多广告位请求延迟基准：顺序处理 vs 虚拟线程并行处理
+ * 候选生成模拟一次约200µs的阻塞调用（特征/模型服务），SampleTime模式输出p50/p99
+ * 运行: just bench BidServerFanoutBenchmark
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BidServerFanoutBenchmark {
+
+    private static final long CANDIDATE_LATENCY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    @Param({"1", "4", "16"})
+    private int impressions;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private BidServer bidServer;
+    private BidRequest bidRequest;
+
+    @Setup
+    public void setUp() {
+        AdsConfiguration configuration = new AdsConfiguration();
+        configuration.getServer().setParallelImpressions(parallel);
+        configuration.getServer().setMaxImpressionFanout(16);
+        configuration.getServer().setRequestTimeoutMs(1_000);
+        configuration.getBidding().setTimeoutMs(1_000);
+
+        bidServer = new BidServer(new PassThroughFraudDetection(), new PassThroughFilter(),
+            new SimulatedBiddingAlgorithm(configuration), new UnlimitedBudget(), configuration,
+            new StageLatencyService(configuration, null, Clock.systemUTC()));
+
+        List<Impression> imps = new ArrayList<>();
+        for (int i = 0; i < impressions; i++) {
+            imps.add(Impression.builder().id("imp" + i).bidfloor(0.5).build());
+        }
+        bidRequest = BidRequest.builder().id("bench").imp(imps).build();
+    }
+
+    @Benchmark
+    public BidResponse processBidRequest() {
+        return bidServer.processBidRequest(bidRequest);
+    }
+
+    private static final class PassThroughFraudDetection extends FraudDetectionService {
+        PassThroughFraudDetection() {
+            super(new AdsConfiguration(), new GeoLocationService(new AdsConfiguration()));
+        }
+
+        @Override
+        public boolean isFraudulent(BidRequest bidRequest) {
+            return false;
+        }
+    }
+
+    private static final class PassThroughFilter extends AdSlotFilterService {
+        PassThroughFilter() {
+            super(null);
+        }
+
+        @Override
+        public List<BidCandidate> filterCandidatesForImpression(Impression impression, BidRequest bidRequest,
+                                                                List<BidCandidate> candidates) {
+            return candidates;
+        }
+    }
+
+    private static final class SimulatedBiddingAlgorithm extends BiddingAlgorithm {
+        SimulatedBiddingAlgorithm(AdsConfiguration configuration) {
+            super(null, new AuctionEngineSelector(configuration), null, null);
+        }
+
+        @Override
+        public List<BidCandidate> generateBidCandidates(Impression impression, BidRequest bidRequest, boolean degraded) {
+            LockSupport.parkNanos(CANDIDATE_LATENCY_NANOS);
+            return List.of(BidCandidate.builder()
+                .adId("ad_" + impression.getId())
+                .campaignId("campaign_" + impression.getId())
+                .bidPriceMicros(Money.MICROS_PER_UNIT)
+                .build());
+        }
+    }
+
+    private static final class UnlimitedBudget extends BudgetService {
+        UnlimitedBudget() {
+            super(new AdsConfiguration(), null, null, null);
+        }
+
+        @Override
+        public boolean checkBudget(String campaignId, long bidPriceMicros) {
+            return true;
+        }
+
+        @Override
+        public String reserveBudget(String campaignId, long amountMicros, String bidId) {
+            return bidId;
+        }
+
+        @Override
+        public Map<String, Object> getBudgetStatistics() {
+            return Map.of();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.service.OpenRTBDataService;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignTargetingIndex;
+import fei.song.play_spring_boot_api.ads.service.campaign.EligibleCampaigns;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 候选生成基准：定向倒排索引 vs 原线性过滤，以及半数活动预算耗尽时与可投放位图求交集
+ * 运行: just bench CampaignTargetingIndexBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CampaignTargetingIndexBenchmark {
+
+    private static final long MIN_BID_MICROS = Money.toMicros(2.0);
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int campaignCount;
+
+    private List<CampaignEntity> campaigns;
+    private CampaignTargetingIndex index;
+    private EligibleCampaigns halfExhausted;
+    private OpenRTBDataService openRTBDataService;
+    private int query;
+
+    @Setup
+    public void setUp() {
+        campaigns = BenchmarkCampaigns.generate(campaignCount, 42L);
+        index = CampaignTargetingIndex.build(campaigns);
+        halfExhausted = new EligibleCampaigns(1L, campaignCount);
+        for (int ordinal = 0; ordinal < campaignCount; ordinal += 2) {
+            halfExhausted.clear(ordinal);
+        }
+        openRTBDataService = new OpenRTBDataService(null, null, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public List<CampaignEntity> linearFilter() {
+        String country = BenchmarkCampaigns.COUNTRIES[query++ % BenchmarkCampaigns.COUNTRIES.length];
+        return openRTBDataService.filterMatchingCampaigns(campaigns, country, 1 + (query % 7), BigDecimal.valueOf(2.0));
+    }
+
+    @Benchmark
+    public List<CampaignEntity> invertedIndex() {
+        String country = BenchmarkCampaigns.COUNTRIES[query++ % BenchmarkCampaigns.COUNTRIES.length];
+        return index.match(country, 1 + (query % 7), null, null, MIN_BID_MICROS);
+    }
+
+    @Benchmark
+    public List<CampaignEntity> invertedIndexHalfExhausted() {
+        String country = BenchmarkCampaigns.COUNTRIES[query++ % BenchmarkCampaigns.COUNTRIES.length];
+        return index.match(country, 1 + (query % 7), null, null, MIN_BID_MICROS, halfExhausted);
+    }
+}
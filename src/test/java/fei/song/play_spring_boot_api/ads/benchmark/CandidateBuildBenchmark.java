@@ -0,0 +1,75 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Banner;
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.service.campaign.CreativeTemplate;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 候选构建基准：逐次拼接字符串 vs 预生成创意模板
+ * 分配量使用GC profiler观察: just bench "CandidateBuildBenchmark -prof gc"
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CandidateBuildBenchmark {
+
+    private CampaignEntity campaign;
+    private List<CreativeTemplate> templates;
+    private Impression impression;
+
+    @Setup
+    public void setUp() {
+        campaign = BenchmarkCampaigns.generate(1, 42L).get(0);
+        templates = CreativeTemplate.forCampaign(campaign);
+        impression = Impression.builder()
+            .id("imp1")
+            .banner(Banner.builder().w(300).h(250).build())
+            .build();
+    }
+
+    /**
+     * 原实现：每个候选都拼接URL、域名并创建列表
+     */
+    @Benchmark
+    public void stringBuilding(Blackhole blackhole) {
+        for (CampaignEntity.Creative creative : campaign.getCreatives()) {
+            blackhole.consume(BidCandidate.builder()
+                .impressionId(impression.getId())
+                .adId(creative.getCreativeId())
+                .creativeId(creative.getCreativeId())
+                .campaignId(campaign.getCampaignId())
+                .priority(1)
+                .adMarkup(creative.getHtml() != null ? creative.getHtml() : "<div>广告内容</div>")
+                .advertiserDomains(Arrays.asList(campaign.getAdvertiserId() + ".com"))
+                .categories(Arrays.asList("IAB1", "IAB2"))
+                .width(impression.getBanner() != null ? impression.getBanner().getW() : 300)
+                .height(impression.getBanner() != null ? impression.getBanner().getH() : 250)
+                .clickUrl("https://" + campaign.getAdvertiserId() + ".com/click")
+                .impressionUrl("https://" + campaign.getAdvertiserId() + ".com/impression")
+                .notificationUrl("https://" + campaign.getAdvertiserId() + ".com/win")
+                .seatId("seat_" + campaign.getAdvertiserId())
+                .passedFraudCheck(true)
+                .budgetAvailable(true)
+                .targetingMatched(true)
+                .build());
+        }
+    }
+
+    @Benchmark
+    public void prebuiltTemplate(Blackhole blackhole) {
+        for (CreativeTemplate template : templates) {
+            blackhole.consume(template.newCandidate("req1", impression));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import fei.song.play_spring_boot_api.ads.service.fraud.DeviceBlacklist;
+import fei.song.play_spring_boot_api.ads.service.fraud.DeviceFingerprint;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备黑名单查询基准：原拼接字符串取32位hashCode + HashSet<String> vs 64位流式指纹 + 布隆过滤器 + 开放寻址long集合
+ * 黑名单100万条，查询设备均不在黑名单中（线上的常见情况）
+ * 运行: just bench DeviceBlacklistBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class DeviceBlacklistBenchmark {
+
+    private static final int ENTRIES = 1_000_000;
+    private static final int QUERIES = 1 << 12;
+
+    private Set<String> legacyBlacklist;
+    private DeviceBlacklist blacklist;
+    private Device[] queries;
+    private int query;
+
+    @Setup
+    public void setUp() {
+        legacyBlacklist = new HashSet<>();
+        blacklist = new DeviceBlacklist(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++) {
+            Device device = device(i);
+            legacyBlacklist.add(legacyFingerprint(device));
+            blacklist.add(DeviceFingerprint.of(device));
+        }
+        queries = new Device[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = device(ENTRIES + i);
+        }
+    }
+
+    @Benchmark
+    public boolean legacyStringHash() {
+        return legacyBlacklist.contains(legacyFingerprint(queries[query++ & (QUERIES - 1)]));
+    }
+
+    @Benchmark
+    public boolean fingerprintBloom() {
+        return blacklist.contains(DeviceFingerprint.of(queries[query++ & (QUERIES - 1)]));
+    }
+
+    private static Device device(int i) {
+        return Device.builder()
+            .ua("Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 Chrome/119.0." + (i % 5000) + " Mobile Safari/537.36")
+            .ip("10." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF))
+            .devicetype(4).make("Samsung").model("SM-S918B").os("Android").osv("14").build();
+    }
+
+    /**
+     * 原 FraudDetectionService.generateDeviceFingerprint
+     */
+    private static String legacyFingerprint(Device device) {
+        StringBuilder fingerprint = new StringBuilder();
+        if (device.getUa() != null) fingerprint.append(device.getUa());
+        if (device.getIp() != null) fingerprint.append("|").append(device.getIp());
+        if (device.getDevicetype() != null) fingerprint.append("|").append(device.getDevicetype());
+        if (device.getMake() != null) fingerprint.append("|").append(device.getMake());
+        if (device.getModel() != null) fingerprint.append("|").append(device.getModel());
+        if (device.getOs() != null) fingerprint.append("|").append(device.getOs());
+        if (device.getOsv() != null) fingerprint.append("|").append(device.getOsv());
+        return Integer.toString(fingerprint.toString().hashCode());
+    }
+}
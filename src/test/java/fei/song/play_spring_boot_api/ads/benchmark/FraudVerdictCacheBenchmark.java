@@ -0,0 +1,122 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import fei.song.play_spring_boot_api.ads.domain.model.Geo;
+import fei.song.play_spring_boot_api.ads.domain.model.Site;
+import fei.song.play_spring_boot_api.ads.service.FraudDetectionService;
+import fei.song.play_spring_boot_api.ads.service.GeoLocationService;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 反欺诈判断结果缓存基准：开启与关闭缓存时 isFraudulent 的耗时
+ * 2万条IP网段黑名单、100万个区间的IP地理位置库，4096个(IP, UA, 域名)组合按80/20分布重复出现；
+ * 频率类检查在两种情况下都逐个请求执行
+ * 运行: just bench FraudVerdictCacheBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FraudVerdictCacheBenchmark {
+
+    private static final int REQUESTS = 1 << 16;
+    private static final int TUPLES = 4096;
+
+    private static final String[] USER_AGENTS = {
+        "Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.6099.144 Mobile Safari/537.36",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 17_2 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.2 Mobile/15E148 Safari/604.1",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36",
+        "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)"
+    };
+
+    @Param({"true", "false"})
+    public boolean cacheEnabled;
+
+    private Path directory;
+    private FraudDetectionService service;
+    private BidRequest[] requests;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("verdict-bench");
+        Path csv = directory.resolve("geo.csv");
+        long step = (1L << 32) / 1_000_000;
+        try (Writer writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < 1_000_000; i++) {
+                long start = i * step;
+                writer.write(ipv4(start) + "," + ipv4(start + step - 1) + "," + (i % 3 == 0 ? "USA" : "CAN") + "\n");
+            }
+        }
+        AdsConfiguration configuration = new AdsConfiguration();
+        configuration.getFraudDetection().setGeoIpSourceFile(csv.toString());
+        configuration.getFraudDetection().setGeoIpDatabaseFile(directory.resolve("geo.bin").toString());
+        Random random = new Random(42);
+        List<String> blacklist = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            blacklist.add((random.nextInt(223) + 1) + "." + random.nextInt(256) + "." + random.nextInt(256) + ".0/24");
+        }
+        configuration.getFraudDetection().setIpBlacklist(blacklist);
+        configuration.getFraudDetection().getVerdictCache().setEnabled(cacheEnabled);
+        // 关闭自动封禁，避免热点键在测量期间被封禁后走另一条路径
+        configuration.getFraudDetection().getHeavyHitters().setIpThresholdPerMinute(0);
+        configuration.getFraudDetection().getHeavyHitters().setDeviceThresholdPerMinute(0);
+        service = new FraudDetectionService(configuration, new GeoLocationService(configuration));
+        // 热点IP很快超过每小时点击/展示上限，屏蔽逐个请求的欺诈告警日志，只测量检查本身
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(FraudDetectionService.class))
+            .setLevel(ch.qos.logback.classic.Level.ERROR);
+
+        requests = new BidRequest[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            int tuple = random.nextInt(5) < 4 ? random.nextInt(TUPLES / 5) : random.nextInt(TUPLES);
+            Device device = Device.builder()
+                .ip(ipv4(tuple * 0x9E3779B1L & 0xFFFFFFFFL))
+                .ua(USER_AGENTS[tuple % USER_AGENTS.length])
+                .make("Samsung").model("SM-S918B").os("Android")
+                .geo(Geo.builder().country("USA").build())
+                .build();
+            Site site = Site.builder().domain("site" + (tuple % 300) + ".example").build();
+            requests[i] = BidRequest.builder().id("req-" + i).device(device).site(site).build();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = new Random().nextInt(REQUESTS);
+    }
+
+    @Benchmark
+    public boolean isFraudulent(Cursor cursor) {
+        return service.isFraudulent(requests[cursor.next++ & (REQUESTS - 1)]);
+    }
+
+    private static String ipv4(long address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
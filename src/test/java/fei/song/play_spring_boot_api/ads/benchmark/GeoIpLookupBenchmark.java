@@ -0,0 +1,77 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.service.fraud.GeoIpDatabase;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IP地理位置查询基准：内存映射的地理位置库，随机IPv4地址落在约一半的区间覆盖范围内
+ * 运行: just bench GeoIpLookupBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeoIpLookupBenchmark {
+
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"10000", "1000000"})
+    private int ranges;
+
+    private Path directory;
+    private GeoIpDatabase database;
+    private String[] queries;
+    private int query;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("geo-bench");
+        Path csv = directory.resolve("geo.csv");
+        long step = (1L << 32) / ranges;
+        try (Writer writer = Files.newBufferedWriter(csv)) {
+            for (int i = 0; i < ranges; i++) {
+                long start = i * step;
+                writer.write(ipv4(start) + "," + ipv4(start + step / 2) + ",C" + (i % 250) + "\n");
+            }
+        }
+        GeoIpDatabase.compile(csv, directory.resolve("geo.bin"));
+        database = GeoIpDatabase.open(directory.resolve("geo.bin"));
+
+        Random random = new Random(42);
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = ipv4(random.nextInt() & 0xFFFFFFFFL);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Benchmark
+    public String lookupCountry() {
+        return database.lookupCountry(queries[query++ & (QUERIES - 1)]);
+    }
+
+    private static String ipv4(long address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
@@ -0,0 +1,60 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.service.fraud.HeavyHitterDetector;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 高频键统计基准：每个请求计入IP、设备、App、网站四个维度
+ * 键分布为20%热点键 + 80%长尾键；可用 -t 指定并发线程数
+ * 运行: just bench HeavyHitterBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HeavyHitterBenchmark {
+
+    private static final int QUERIES = 1 << 16;
+
+    private HeavyHitterDetector detector;
+    private String[] ips;
+    private String[] devices;
+    private String[] apps;
+    private String[] sites;
+
+    @Setup
+    public void setUp() {
+        detector = new HeavyHitterDetector(new AdsConfiguration.HeavyHitters(), Clock.systemUTC());
+        Random random = new Random(42);
+        ips = new String[QUERIES];
+        devices = new String[QUERIES];
+        apps = new String[QUERIES];
+        sites = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            boolean hot = random.nextInt(5) == 0;
+            int key = hot ? random.nextInt(50) : random.nextInt(1_000_000);
+            ips[i] = "10." + (key >>> 16) + "." + ((key >>> 8) & 0xFF) + "." + (key & 0xFF);
+            devices[i] = String.format("%016x", (long) key * 0x9E3779B97F4A7C15L);
+            apps[i] = "com.example.app" + (key % 5000);
+            sites[i] = "site" + (key % 20000) + ".example";
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = new Random().nextInt(QUERIES);
+    }
+
+    @Benchmark
+    public boolean recordRequest(Cursor cursor) {
+        int i = cursor.next++ & (QUERIES - 1);
+        return detector.record(ips[i], devices[i], apps[i], sites[i]);
+    }
+}
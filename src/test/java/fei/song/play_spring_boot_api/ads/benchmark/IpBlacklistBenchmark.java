@@ -0,0 +1,70 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.service.fraud.IpPrefixTrie;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * IP黑名单查询基准：原精确匹配的HashSet vs 网段前缀树
+ * 两者装入相同的单IP条目，前缀树另外装入1%的/24网段；查询一半命中一半未命中
+ * 运行: just bench IpBlacklistBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class IpBlacklistBenchmark {
+
+    private static final int QUERIES = 1 << 16;
+
+    @Param({"10000", "1000000"})
+    private int entries;
+
+    private Set<String> hashSet;
+    private IpPrefixTrie trie;
+    private String[] queries;
+    private int query;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        hashSet = new HashSet<>();
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        String[] listed = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            int address = random.nextInt();
+            listed[i] = ipv4(address);
+            hashSet.add(listed[i]);
+            builder.add(listed[i]);
+            if (i % 100 == 0) {
+                builder.add(ipv4(random.nextInt() & 0xFFFFFF00) + "/24");
+            }
+        }
+        trie = builder.build();
+
+        queries = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            queries[i] = i % 2 == 0 ? listed[random.nextInt(entries)] : ipv4(random.nextInt());
+        }
+    }
+
+    @Benchmark
+    public boolean hashSet() {
+        return hashSet.contains(queries[query++ & (QUERIES - 1)]);
+    }
+
+    @Benchmark
+    public boolean prefixTrie() {
+        return trie.contains(queries[query++ & (QUERIES - 1)]);
+    }
+
+    private static String ipv4(int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
@@ -0,0 +1,148 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.service.budget.BudgetPacer;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+/**
+ * 匀速投放仿真：按一天的流量曲线逐秒回放竞价请求，输出每小时实际消费与目标消费的对比
+ * 流量在凌晨最低、晚间最高，全天可消费量约为日预算的5倍；不启用匀速投放时预算在上午即耗尽。
+ * 运行 main 打印每小时消费曲线。
+ */
+public final class PacingSimulation {
+
+    static final String CAMPAIGN = "campaign_paced";
+    static final Instant DAY_START = Instant.parse("2024-05-15T00:00:00Z");
+
+    // 各小时流量相对峰值的比例
+    private static final double[] TRAFFIC_CURVE = {
+        0.35, 0.30, 0.30, 0.30, 0.32, 0.36, 0.45, 0.55, 0.65, 0.70, 0.72, 0.75,
+        0.78, 0.75, 0.72, 0.72, 0.75, 0.80, 0.90, 0.98, 1.00, 0.90, 0.70, 0.50
+    };
+    private static final int PEAK_REQUESTS_PER_SECOND = 30;
+    private static final double WIN_RATE = 0.3;
+    private static final long PRICE_PER_WIN_MICROS = Money.toMicros(0.01);
+    private static final long DAILY_BUDGET_MICROS = Money.toMicros(1000.0);
+
+    private PacingSimulation() {
+    }
+
+    /**
+     * 仿真结果：每小时的实际消费与按小时初目标速率折算的目标消费（微元）
+     */
+    public record Result(long[] hourlySpendMicros, long[] hourlyTargetMicros, long dailyBudgetMicros) {
+        public long totalSpendMicros() {
+            long total = 0;
+            for (long spend : hourlySpendMicros) {
+                total += spend;
+            }
+            return total;
+        }
+    }
+
+    public static Result simulate(boolean pacingEnabled) {
+        SimulatedClock clock = new SimulatedClock(DAY_START, ZoneOffset.UTC);
+        BudgetPacer pacer = new BudgetPacer(new AdsConfiguration.Pacing(), clock);
+        Random random = new Random(42L);
+        long[] hourlySpend = new long[24];
+        long[] hourlyTarget = new long[24];
+        long spent = 0;
+
+        for (int second = 0; second < 24 * 3600; second++) {
+            int hour = second / 3600;
+            clock.setMillis(DAY_START.toEpochMilli() + second * 1000L);
+            int requests = (int) Math.round(PEAK_REQUESTS_PER_SECOND * TRAFFIC_CURVE[hour]);
+            for (int i = 0; i < requests; i++) {
+                long remaining = DAILY_BUDGET_MICROS - spent;
+                if (remaining < PRICE_PER_WIN_MICROS) {
+                    break;
+                }
+                if (pacingEnabled && !pacer.allows(CAMPAIGN, () -> DAILY_BUDGET_MICROS - spentSnapshot(hourlySpend))) {
+                    continue;
+                }
+                if (random.nextDouble() < WIN_RATE) {
+                    spent += PRICE_PER_WIN_MICROS;
+                    hourlySpend[hour] += PRICE_PER_WIN_MICROS;
+                    pacer.onSpend(CAMPAIGN, PRICE_PER_WIN_MICROS);
+                }
+            }
+            if (second % 3600 == 0) {
+                long rate = pacingEnabled ? pacer.getTargetRate(CAMPAIGN) : DAILY_BUDGET_MICROS / 86_400;
+                hourlyTarget[hour] = Math.max(rate, 0L) * 3600;
+            }
+        }
+        return new Result(hourlySpend, hourlyTarget, DAILY_BUDGET_MICROS);
+    }
+
+    private static long spentSnapshot(long[] hourlySpend) {
+        long total = 0;
+        for (long spend : hourlySpend) {
+            total += spend;
+        }
+        return total;
+    }
+
+    public static void main(String[] args) {
+        for (boolean pacing : new boolean[]{false, true}) {
+            Result result = simulate(pacing);
+            System.out.printf("%n匀速投放=%s 总消费=%.2f 日预算=%.2f%n", pacing,
+                Money.toDouble(result.totalSpendMicros()), Money.toDouble(result.dailyBudgetMicros()));
+            System.out.println("小时     消费    目标");
+            double scale = 60.0 / Money.toDouble(result.dailyBudgetMicros() / 6);
+            for (int hour = 0; hour < 24; hour++) {
+                double spend = Money.toDouble(result.hourlySpendMicros()[hour]);
+                double target = Money.toDouble(result.hourlyTargetMicros()[hour]);
+                StringBuilder bar = new StringBuilder("*".repeat((int) Math.round(spend * scale)));
+                int targetColumn = (int) Math.round(target * scale);
+                while (bar.length() <= targetColumn) {
+                    bar.append(' ');
+                }
+                bar.setCharAt(targetColumn, '|');
+                System.out.printf("%02d  %7.2f %7.2f  %s%n", hour, spend, target, bar);
+            }
+        }
+    }
+
+    /**
+     * 由仿真循环推进的时钟
+     */
+    static final class SimulatedClock extends Clock {
+        private final ZoneId zone;
+        private long millis;
+
+        SimulatedClock(Instant start, ZoneId zone) {
+            this.zone = zone;
+            this.millis = start.toEpochMilli();
+        }
+
+        void setMillis(long millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return zone;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new SimulatedClock(Instant.ofEpochMilli(millis), zone);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.service.budget.TimingWheel;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预扣到期基准：100万在途预扣下，全量扫描LocalDateTime vs 时间轮插入/取消/推进一个tick
+ * 在途预扣的到期时间均匀分布在TTL内，时间轮推进时把到期项按新的TTL重新插入以保持在途数量不变
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class ReservationExpiryBenchmark {
+
+    private static final long TTL_MS = 300_000L;
+    private static final long TICK_MS = 200L;
+
+    @Param({"1000000"})
+    private int outstanding;
+
+    private Map<String, LocalDateTime> expiresAtByBidId;
+    private LocalDateTime scanNow;
+
+    private TimingWheel<Long> wheel;
+    private long now;
+
+    @Setup
+    public void setUp() {
+        LocalDateTime base = LocalDateTime.now();
+        long start = System.currentTimeMillis();
+        expiresAtByBidId = new ConcurrentHashMap<>(outstanding * 2);
+        wheel = new TimingWheel<>(TICK_MS, start);
+        for (int i = 0; i < outstanding; i++) {
+            long offset = (long) i * TTL_MS / outstanding;
+            expiresAtByBidId.put("bid_" + i, base.plusNanos(offset * 1_000_000L));
+            wheel.schedule(start + offset, start + offset);
+        }
+        scanNow = base.minusSeconds(1);
+        now = start;
+    }
+
+    @Benchmark
+    public int fullScan() {
+        // 原实现：每次清理遍历全部预扣记录
+        int expired = 0;
+        for (Map.Entry<String, LocalDateTime> entry : expiresAtByBidId.entrySet()) {
+            if (entry.getValue().isBefore(scanNow)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    @Benchmark
+    public boolean wheelScheduleThenCancel() {
+        TimingWheel.Timeout<Long> timeout = wheel.schedule(now, now + TTL_MS);
+        return wheel.cancel(timeout);
+    }
+
+    @Benchmark
+    public int wheelAdvanceOneTick() {
+        now += TICK_MS;
+        int expired = 0;
+        for (Long deadline : wheel.advance(now)) {
+            wheel.schedule(deadline + TTL_MS, deadline + TTL_MS);
+            expired++;
+        }
+        return expired;
+    }
+}
@@ -0,0 +1,99 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.service.budget.SpendJournal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 预算消费日志基准：赢价路径上一次追加的开销，以及崩溃后回放100万条记录（未压缩分段）的启动耗时
+ */
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SpendJournalBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Append {
+        private Path directory;
+        private SpendJournal journal;
+        private long sequence;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("spend-journal-append");
+            AdsConfiguration.BudgetJournal config = new AdsConfiguration.BudgetJournal();
+            config.setDirectory(directory.toString());
+            journal = SpendJournal.open(config);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            journal.close();
+            delete(directory);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Replay {
+        @Param({"1000000"})
+        private int records;
+
+        private Path directory;
+        private AdsConfiguration.BudgetJournal config;
+
+        @Setup(Level.Invocation)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("spend-journal-replay");
+            config = new AdsConfiguration.BudgetJournal();
+            config.setDirectory(directory.toString());
+            // 不关闭日志，模拟进程崩溃：重启时需要回放全部分段
+            SpendJournal crashed = SpendJournal.open(config);
+            for (int i = 0; i < records / 2; i++) {
+                String bidId = "bid_" + i;
+                String campaignId = "campaign_" + (i % 1000);
+                crashed.recordReserve(bidId, campaignId, 500_000L, Long.MAX_VALUE);
+                crashed.recordConfirm(bidId, campaignId, 500_000L, 420_000L);
+            }
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            delete(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void appendConfirm(Append state) {
+        long seq = state.sequence++;
+        state.journal.recordConfirm("bid_" + seq, "campaign_" + (seq & 1023), 500_000L, 420_000L);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public Object recover(Replay state) throws IOException {
+        SpendJournal journal = SpendJournal.open(state.config);
+        Object recovered = journal.takeRecoveredState();
+        journal.close();
+        return recovered;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.service.metrics.StageLatencyRecorder;
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Clock;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 竞价阶段耗时记录基准：请求线程上每个阶段 record 的开销，以及采样线程取出区间直方图的开销
+ * 耗时取 1µs-1s 的对数分布；可用 -t 指定并发线程数
+ * 运行: just bench StageLatencyRecorderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StageLatencyRecorderBenchmark {
+
+    private static final BidStage[] STAGES = BidStage.values();
+
+    private StageLatencyRecorder recorder;
+    private long[] latencies;
+
+    @Setup
+    public void setUp() {
+        recorder = new StageLatencyRecorder(TimeUnit.SECONDS.toNanos(10), 2, Clock.systemDefaultZone());
+        Random random = new Random(42);
+        latencies = new long[4096];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = (long) Math.pow(10, 3 + random.nextDouble() * 6);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = new Random().nextInt();
+    }
+
+    @Benchmark
+    public void record(Cursor cursor) {
+        int i = cursor.next++;
+        recorder.record(STAGES[(i & 0x7FFFFFFF) % STAGES.length], latencies[i & 4095]);
+    }
+
+    @Benchmark
+    public void recordWithPeriodicSample(Cursor cursor) {
+        int i = cursor.next++;
+        recorder.record(STAGES[(i & 0x7FFFFFFF) % STAGES.length], latencies[i & 4095]);
+        if ((i & 1023) == 0) {
+            recorder.sample();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package fei.song.play_spring_boot_api.ads.benchmark;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.service.fraud.KeywordAutomaton;
+import fei.song.play_spring_boot_api.ads.service.fraud.UserAgentClassifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * User Agent判断基准：原逐个正则整体匹配 vs 关键词自动机 vs 带判断结果缓存的分类器
+ * 每次查询使用新的String对象，与反序列化得到的请求字段一致（hashCode未缓存）
+ * 运行: just bench UserAgentClassifierBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserAgentClassifierBenchmark {
+
+    private static final String[] USER_AGENTS = {
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36",
+        "Mozilla/5.0 (iPhone; CPU iPhone OS 17_1 like Mac OS X) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Mobile/15E148 Safari/604.1",
+        "Mozilla/5.0 (Linux; Android 14; SM-S918B) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/119.0.6045.163 Mobile Safari/537.36",
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/17.1 Safari/605.1.15",
+        "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+        "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) HeadlessChrome/120.0.0.0 Safari/537.36",
+        "Dalvik/2.1.0 (Linux; U; Android 13; Pixel 7 Build/TQ3A.230901.001)",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:120.0) Gecko/20100101 Firefox/120.0"
+    };
+
+    private List<Pattern> regexPatterns;
+    private KeywordAutomaton automaton;
+    private UserAgentClassifier classifier;
+    private int query;
+
+    @Setup
+    public void setUp() {
+        List<String> patterns = List.of(".*bot.*", ".*crawler.*", ".*spider.*", ".*scraper.*", ".*headless.*");
+        regexPatterns = patterns.stream().map(p -> Pattern.compile(p, Pattern.CASE_INSENSITIVE)).toList();
+        automaton = KeywordAutomaton.build(List.of("bot", "crawler", "spider", "scraper", "headless"));
+        classifier = new UserAgentClassifier(patterns, new AdsConfiguration.FraudDetection().getUserAgentCacheSize());
+    }
+
+    @Benchmark
+    public boolean regexList() {
+        String userAgent = nextUserAgent();
+        return regexPatterns.stream().anyMatch(pattern -> pattern.matcher(userAgent).matches());
+    }
+
+    @Benchmark
+    public boolean keywordAutomaton() {
+        return automaton.containsAny(nextUserAgent());
+    }
+
+    @Benchmark
+    public boolean cachedClassifier() {
+        return classifier.isSuspicious(nextUserAgent());
+    }
+
+    private String nextUserAgent() {
+        return new String(USER_AGENTS[query++ & (USER_AGENTS.length - 1)]);
+    }
+}
@@ -0,0 +1,48 @@
+package fei.song.play_spring_boot_api.ads.controller;
+
+import fei.song.play_spring_boot_api.ads.service.pipeline.AdaptiveConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * BidAdmissionFilter 单体测试
+ */
+class BidAdmissionFilterTest {
+
+    @Test
+    void testDoFilter_AdmittedRequestReleasesPermit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10, 100_000_000L, 0.2);
+        BidAdmissionFilter filter = new BidAdmissionFilter(limiter, 200);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/v1/bid/request"), response, chain);
+
+        assertNotNull(chain.getRequest());
+        assertEquals(200, response.getStatus());
+        assertEquals(0, limiter.getInflight());
+        assertEquals(0, limiter.getShedCount());
+    }
+
+    @Test
+    void testDoFilter_ShedsRequestOverLimitWithoutInvokingChain() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10, 100_000_000L, 0.2);
+        assertTrue(limiter.tryAcquire());
+        BidAdmissionFilter filter = new BidAdmissionFilter(limiter, 200);
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/v1/bid/request"), response, chain);
+
+        assertNull(chain.getRequest());
+        assertEquals(204, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+        assertNull(response.getContentType());
+        assertEquals(1, limiter.getShedCount());
+        assertEquals(1, limiter.getInflight());
+    }
+}
@@ -0,0 +1,78 @@
+package fei.song.play_spring_boot_api.ads.controller;
+
+import fei.song.play_spring_boot_api.ads.service.BidRequestMetricsService;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * BidRequestMetricsController 单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class BidRequestMetricsControllerTest {
+
+    @Mock
+    private BidRequestMetricsService metricsService;
+
+    @Mock
+    private StageLatencyService stageLatencyService;
+
+    @InjectMocks
+    private BidRequestMetricsController bidRequestMetricsController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(bidRequestMetricsController).build();
+    }
+
+    @Test
+    void testGetStageLatency_CurrentHour() throws Exception {
+        when(stageLatencyService.getCurrentHourLatency()).thenReturn(Map.of(
+            "hour", "2024-01-15-10",
+            "stages", Map.of("AUCTION", Map.of("count", 3, "p99Ms", 1.5))));
+
+        mockMvc.perform(get("/api/v1/bid-request-metrics/latency"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.hour").value("2024-01-15-10"))
+            .andExpect(jsonPath("$.stages.AUCTION.p99Ms").value(1.5));
+        verify(stageLatencyService, never()).getHourLatency(anyString());
+    }
+
+    @Test
+    void testGetStageLatency_GivenHour() throws Exception {
+        when(stageLatencyService.getHourLatency("2024-01-15-09")).thenReturn(Map.of("hour", "2024-01-15-09"));
+
+        mockMvc.perform(get("/api/v1/bid-request-metrics/latency").param("hour", "2024-01-15-09"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.hour").value("2024-01-15-09"));
+    }
+
+    @Test
+    void testGetStageLatency_InvalidHour() throws Exception {
+        mockMvc.perform(get("/api/v1/bid-request-metrics/latency").param("hour", "2024-01-15"))
+            .andExpect(status().isBadRequest());
+        verifyNoInteractions(stageLatencyService);
+    }
+
+    @Test
+    void testGetStageLatency_Error() throws Exception {
+        when(stageLatencyService.getHourLatency("2024-01-15-09")).thenThrow(new RuntimeException("Database error"));
+
+        mockMvc.perform(get("/api/v1/bid-request-metrics/latency").param("hour", "2024-01-15-09"))
+            .andExpect(status().isInternalServerError());
+    }
+}
@@ -0,0 +1,69 @@
+package fei.song.play_spring_boot_api.ads.controller;
+
+import fei.song.play_spring_boot_api.ads.service.FraudDetectionService;
+import fei.song.play_spring_boot_api.ads.service.fraud.HeavyHitterDetector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+/**
+ * FraudController 单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class FraudControllerTest {
+
+    @Mock
+    private FraudDetectionService fraudDetectionService;
+
+    @InjectMocks
+    private FraudController fraudController;
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(fraudController).build();
+    }
+
+    @Test
+    void testGetHeavyHitters() throws Exception {
+        when(fraudDetectionService.getHeavyHitters()).thenReturn(Map.of("ip", Map.of("currentMinute", List.of())));
+
+        mockMvc.perform(get("/api/v1/fraud/heavy-hitters"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.ip.currentMinute").isArray());
+    }
+
+    @Test
+    void testUnblockHeavyHitter() throws Exception {
+        when(fraudDetectionService.unblockHeavyHitter(HeavyHitterDetector.Dimension.IP, "192.0.2.1")).thenReturn(true);
+
+        mockMvc.perform(delete("/api/v1/fraud/heavy-hitters/ip/blocks").param("key", "192.0.2.1"))
+            .andExpect(status().isNoContent());
+        mockMvc.perform(delete("/api/v1/fraud/heavy-hitters/device/blocks").param("key", "0000000000000001"))
+            .andExpect(status().isNotFound());
+        mockMvc.perform(delete("/api/v1/fraud/heavy-hitters/planet/blocks").param("key", "x"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testGetStatisticsFailure() throws Exception {
+        when(fraudDetectionService.getFraudStatistics()).thenThrow(new RuntimeException("boom"));
+
+        mockMvc.perform(get("/api/v1/fraud/statistics"))
+            .andExpect(status().isInternalServerError());
+    }
+}
@@ -0,0 +1,105 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BidContextTest {
+
+    private static final LocalDateTime WEDNESDAY_EVENING = LocalDateTime.of(2024, 5, 15, 20, 30);
+
+    @Test
+    void testOf_CachedOnRequest() {
+        BidRequest bidRequest = BidRequest.builder().id("r1").build();
+
+        BidContext first = BidContext.of(bidRequest);
+
+        assertSame(first, BidContext.of(bidRequest));
+        assertSame(first, bidRequest.getBidContext());
+    }
+
+    @Test
+    void testParseKeywords() {
+        assertEquals(Set.of("sports", "travel", "music"), BidContext.parseKeywords(" Sports,Travel  music,,"));
+        assertTrue(BidContext.parseKeywords("   ").isEmpty());
+        assertTrue(BidContext.parseKeywords(null).isEmpty());
+    }
+
+    @Test
+    void testAttach_SharedWithOf() {
+        BidRequest bidRequest = BidRequest.builder().id("r1").build();
+
+        BidContext attached = BidContext.attach(bidRequest);
+
+        assertSame(attached, bidRequest.getBidContext());
+        assertSame(attached, BidContext.of(bidRequest));
+    }
+
+    @Test
+    void testRequestFeatures() {
+        BidRequest bidRequest = BidRequest.builder()
+            .id("r1")
+            .user(User.builder().yob(1990).gender("M").keywords("Sports, travel").build())
+            .device(Device.builder().devicetype(4).os("iOS").ip("10.0.0.1").ua("Mozilla/5.0").build())
+            .site(Site.builder().domain("example.com").cat(List.of("IAB1", "IAB12-3", "custom")).build())
+            .build();
+
+        BidContext context = BidContext.of(bidRequest, WEDNESDAY_EVENING);
+
+        assertEquals(3, context.getDayOfWeek());
+        assertEquals(20, context.getHour());
+        assertEquals(BidContext.HourBucket.PRIME_TIME, context.getHourBucket());
+        assertTrue(context.hasUser());
+        assertEquals(34, context.getAge());
+        assertEquals("m", context.getGender());
+        assertEquals(Set.of("sports", "travel"), context.getKeywords());
+        assertEquals(1.45, context.getUserValue(), 1e-9);
+        assertEquals(BidContext.DeviceClass.MOBILE, context.getDeviceClass());
+        assertTrue(context.isMobile());
+        assertEquals("10.0.0.1", context.getIp());
+        assertEquals("example.com", context.getSiteDomain());
+    }
+
+    @Test
+    void testMatchesSiteCategory() {
+        BidRequest bidRequest = BidRequest.builder()
+            .id("r1")
+            .site(Site.builder().cat(List.of("IAB1", "IAB12-3", "custom")).build())
+            .build();
+
+        BidContext context = BidContext.of(bidRequest, WEDNESDAY_EVENING);
+
+        assertTrue(context.matchesSiteCategory(List.of("IAB2", "IAB1")));
+        assertTrue(context.matchesSiteCategory(List.of("IAB12-3")));
+        assertTrue(context.matchesSiteCategory(List.of("custom")));
+        assertFalse(context.matchesSiteCategory(List.of("IAB12", "IAB1-1", "IAB12-30")));
+        assertFalse(context.matchesSiteCategory(null));
+    }
+
+    @Test
+    void testEmptyRequest() {
+        BidContext context = BidContext.of(BidRequest.builder().id("r1").build(), WEDNESDAY_EVENING);
+
+        assertFalse(context.hasUser());
+        assertNull(context.getAge());
+        assertTrue(context.getKeywords().isEmpty());
+        assertEquals(1.0, context.getUserValue(), 1e-9);
+        assertEquals(BidContext.DeviceClass.UNKNOWN, context.getDeviceClass());
+        assertFalse(context.matchesSiteCategory(List.of("IAB1")));
+    }
+
+    @Test
+    void testIabCategoryIndex() {
+        assertTrue(BidContext.iabCategoryIndex("IAB1") >= 0);
+        assertNotEquals(BidContext.iabCategoryIndex("IAB1-2"), BidContext.iabCategoryIndex("IAB12"));
+        assertEquals(-1, BidContext.iabCategoryIndex("IAB"));
+        assertEquals(-1, BidContext.iabCategoryIndex("IAB01"));
+        assertEquals(-1, BidContext.iabCategoryIndex("IAB1-"));
+        assertEquals(-1, BidContext.iabCategoryIndex("IAB1-x"));
+        assertEquals(-1, BidContext.iabCategoryIndex("iab1"));
+    }
+}
@@ -0,0 +1,27 @@
+package fei.song.play_spring_boot_api.ads.domain.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void testDoubleConversionRoundsToNearestMicro() {
+        assertEquals(2_010_000L, Money.toMicros(2.01));
+        assertEquals(100_000L, Money.toMicros(0.1));
+        assertEquals(1L, Money.toMicros(0.0000005));
+        assertEquals(Money.UNSET, Money.toMicros((Double) null, Money.UNSET));
+    }
+
+    @Test
+    void testBigDecimalConversionIsExact() {
+        assertEquals(123_456_789L, Money.toMicros(new BigDecimal("123.456789"), 0L));
+        assertEquals(1_500_000L, Money.toMicros(new BigDecimal("1.5"), 0L));
+        assertEquals(0L, Money.toMicros((BigDecimal) null, 0L));
+        assertEquals(new BigDecimal("1.500000"), Money.toBigDecimal(1_500_000L));
+        assertEquals(0.25, Money.toDouble(250_000L));
+    }
+}
@@ -0,0 +1,38 @@
+package fei.song.play_spring_boot_api.ads.infrastructure.openrtb;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.BidResponse;
+import fei.song.play_spring_boot_api.ads.service.StageLatencyService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class BidResponseHttpMessageConverterTest {
+
+    @Test
+    void testWritesJsonAndRecordsSerializationLatency() throws Exception {
+        StageLatencyService stageLatencyService = mock(StageLatencyService.class);
+        ObjectMapper objectMapper = new ObjectMapper();
+        BidResponseHttpMessageConverter converter = new BidResponseHttpMessageConverter(objectMapper, stageLatencyService);
+        BidResponse response = BidResponse.builder().id("resp-1").bidid("bid-1").build();
+
+        assertTrue(converter.canWrite(BidResponse.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canRead(BidResponse.class, MediaType.APPLICATION_JSON));
+        assertFalse(converter.canWrite(BidRequest.class, MediaType.APPLICATION_JSON));
+
+        MockHttpOutputMessage output = new MockHttpOutputMessage();
+        converter.write(response, MediaType.APPLICATION_JSON, output);
+
+        String body = output.getBodyAsString(StandardCharsets.UTF_8);
+        assertEquals(objectMapper.writeValueAsString(response), body);
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, output.getHeaders().getContentLength());
+        verify(stageLatencyService).recordSerialization(anyLong());
+    }
+}
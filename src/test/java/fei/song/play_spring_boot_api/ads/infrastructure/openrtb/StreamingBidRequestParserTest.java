@@ -0,0 +1,164 @@
+package fei.song.play_spring_boot_api.ads.infrastructure.openrtb;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Pmp;
+import fei.song.play_spring_boot_api.ads.domain.model.RawJson;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * StreamingBidRequestParser 单体测试
+ */
+class StreamingBidRequestParserTest {
+
+    private final StreamingBidRequestParser parser = new StreamingBidRequestParser();
+
+    @Test
+    void testParse_SampleBidRequest() throws Exception {
+        BidRequest request;
+        try (InputStream in = getClass().getResourceAsStream("/sample-bid-request.json")) {
+            request = parser.parse(in);
+        }
+
+        assertEquals("sample-request-123", request.getId());
+        assertEquals(120, request.getTimeoutMs());
+        assertEquals(2, request.getAuctionType());
+        assertEquals(List.of("IAB7-39", "IAB8-18", "IAB8-5"), request.getBlacklistedCategories());
+        assertEquals(List.of("USD"), request.getCurrencies());
+
+        assertEquals(2, request.getImp().size());
+        Impression banner = request.getImp().get(0);
+        assertEquals("imp-1", banner.getId());
+        assertEquals(0.5, banner.getBidfloor());
+        assertEquals("USD", banner.getBidfloorCurrency());
+        assertEquals(300, banner.getBanner().getW());
+        assertEquals(2, banner.getBanner().getFormat().size());
+        assertEquals(240, banner.getBanner().getFormat().get(1).getH());
+        assertEquals(List.of("image/jpeg", "image/png", "image/gif"), banner.getBanner().getMimes());
+
+        Impression video = request.getImp().get(1);
+        assertEquals(30, video.getVideo().getMaxDuration());
+        assertEquals(List.of(2, 3, 5, 6), video.getVideo().getProtocols());
+        assertNull(video.getBanner());
+
+        assertEquals("example.com", request.getSite().getDomain());
+        assertEquals(List.of("IAB1", "IAB2"), request.getSite().getCat());
+        assertEquals("pub-123", request.getSite().getPublisher().getId());
+        assertNull(request.getSite().getContent());
+
+        assertEquals("192.168.1.100", request.getDevice().getIp());
+        assertEquals(2, request.getDevice().getDevicetype());
+        assertEquals("iOS", request.getDevice().getOs());
+        assertEquals("USA", request.getDevice().getGeo().getCountry());
+        assertEquals(37.7749, request.getDevice().getGeo().getLat());
+        assertTrue(request.getDevice().getUa().startsWith("Mozilla/5.0"));
+
+        assertEquals(1985, request.getUser().getYob());
+        assertEquals("M", request.getUser().getGender());
+        assertEquals("sports,technology,travel", request.getUser().getKeywords());
+        assertNull(request.getUser().getData());
+
+        assertEquals(1, request.getRegs().getGdpr());
+        assertEquals("transaction-123", request.getSource().getTransactionId());
+    }
+
+    @Test
+    void testParse_KeepsExtAsRawBytes() throws Exception {
+        String json = "{\"id\":\"r1\",\"imp\":[{\"id\":\"i1\",\"ext\":{\"prebid\":{\"bidder\":[1,2]}}}],"
+            + "\"ext\":{\"schain\":{\"ver\":\"1.0\"}}}";
+        // 在前后添加填充字节，验证片段偏移按输入的起始位置计算
+        byte[] padded = ("xx" + json + "yy").getBytes(StandardCharsets.UTF_8);
+
+        BidRequest request = parser.parse(padded, 2, padded.length - 4);
+
+        assertInstanceOf(RawJson.class, request.getExt());
+        assertEquals("{\"schain\":{\"ver\":\"1.0\"}}", request.getExt().toString());
+        assertEquals("{\"prebid\":{\"bidder\":[1,2]}}", request.getImp().get(0).getExt().toString());
+
+        // 原始片段序列化时原样输出
+        String serialized = new ObjectMapper().writeValueAsString(request.getImp().get(0));
+        assertTrue(serialized.contains("\"ext\":{\"prebid\":{\"bidder\":[1,2]}}"));
+    }
+
+    @Test
+    void testParse_SkipsUnknownFieldsAndTolerantOfTypes() throws Exception {
+        String json = "{\"id\":\"r1\",\"unknown\":{\"a\":[1,{\"b\":2}]},\"tmax\":\"80\","
+            + "\"imp\":[null,{\"id\":\"i1\",\"bidfloor\":1,\"banner\":{\"format\":[null,{\"w\":320,\"h\":50,\"x\":{}}]}}],"
+            + "\"device\":null,\"user\":{\"yob\":null,\"gender\":\"F\"}}";
+
+        BidRequest request = parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("r1", request.getId());
+        assertEquals(80, request.getTimeoutMs());
+        assertEquals(1, request.getImp().size());
+        assertEquals(1.0, request.getImp().get(0).getBidfloor());
+        assertEquals(1, request.getImp().get(0).getBanner().getFormat().size());
+        assertEquals(320, request.getImp().get(0).getBanner().getFormat().get(0).getW());
+        assertNull(request.getDevice());
+        assertNull(request.getUser().getYob());
+        assertEquals("F", request.getUser().getGender());
+    }
+
+    @Test
+    void testParse_ImpressionPmpDeals() throws Exception {
+        String json = "{\"id\":\"r1\",\"imp\":[{\"id\":\"i1\",\"pmp\":{\"private_auction\":1,\"deals\":["
+            + "{\"id\":\"deal1\",\"bidfloor\":2.5,\"bidfloorcur\":\"USD\",\"at\":3,\"wseat\":[\"seat1\",\"seat2\"],\"x\":{}},"
+            + "null,{\"id\":\"deal2\",\"bidfloor\":\"1\"}]}},{\"id\":\"i2\",\"pmp\":null}]}";
+
+        BidRequest request = parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        Pmp pmp = request.getImp().get(0).getPmp();
+        assertEquals(1, pmp.getPrivateAuction());
+        assertEquals(2, pmp.getDeals().size());
+        Pmp.Deal deal = pmp.getDeals().get(0);
+        assertEquals("deal1", deal.getId());
+        assertEquals(2.5, deal.getBidfloor());
+        assertEquals("USD", deal.getBidfloorCurrency());
+        assertEquals(3, deal.getAuctionType());
+        assertEquals(List.of("seat1", "seat2"), deal.getWhitelistedSeats());
+        assertEquals("deal2", pmp.getDeals().get(1).getId());
+        assertEquals(1.0, pmp.getDeals().get(1).getBidfloor());
+        assertNull(request.getImp().get(1).getPmp());
+    }
+
+    @Test
+    void testParse_DeviceIpv6() throws Exception {
+        String json = "{\"id\":\"r1\",\"device\":{\"ipv6\":\"2001:db8::1\",\"ua\":\"UA\"}}";
+
+        BidRequest request = parser.parse(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals("2001:db8::1", request.getDevice().getIpv6());
+        assertNull(request.getDevice().getIp());
+    }
+
+    @Test
+    void testParse_LargeBodyGrowsBuffer() throws Exception {
+        StringBuilder json = new StringBuilder("{\"id\":\"big\",\"imp\":[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":\"imp").append(i).append("\",\"bidfloor\":0.1}");
+        }
+        json.append("]}");
+
+        BidRequest request = parser.parse(new ByteArrayInputStream(json.toString().getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2000, request.getImp().size());
+        assertEquals("imp1999", request.getImp().get(1999).getId());
+    }
+
+    @Test
+    void testParse_MalformedJsonThrows() {
+        byte[] json = "{\"id\":\"r1\",\"imp\":[".getBytes(StandardCharsets.UTF_8);
+
+        assertThrows(JsonProcessingException.class, () -> parser.parse(json, 0, json.length));
+        assertThrows(JsonProcessingException.class, () -> parser.parse("[]".getBytes(StandardCharsets.UTF_8), 0, 2));
+    }
+}
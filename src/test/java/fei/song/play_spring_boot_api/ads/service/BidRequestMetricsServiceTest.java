@@ -1,20 +1,32 @@
 package fei.song.play_spring_boot_api.ads.service;
 
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import fei.song.play_spring_boot_api.ads.domain.model.*;
 import fei.song.play_spring_boot_api.ads.infrastructure.persistence.repository.BidRequestMetricsRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.ValueOperations;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -36,6 +48,12 @@ class BidRequestMetricsServiceTest {
     @Mock
     private ValueOperations<String, Object> valueOperations;
 
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
     @InjectMocks
     private BidRequestMetricsService bidRequestMetricsService;
 
@@ -59,63 +77,117 @@ class BidRequestMetricsServiceTest {
 
     @Test
     void testRecordBidRequest_Success() {
-        // 准备测试数据
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(metricsRepository.findByHourAndAdSlotTypeAndDspSource(anyString(), anyString(), anyString()))
-            .thenReturn(Optional.empty());
-        when(metricsRepository.save(any(BidRequestMetrics.class))).thenReturn(testMetrics);
-
-        // 执行测试
+        // 记录时只在内存中累加
         bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, 150L);
+        verifyNoInteractions(metricsRepository, redisTemplate, mongoTemplate);
 
-        // 验证方法调用
-        verify(metricsRepository).save(any(BidRequestMetrics.class));
-        verify(valueOperations).increment(anyString());
+        // 写入时一次批量$inc upsert，Redis计数器按请求数累加
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        bidRequestMetricsService.flushMetrics();
+
+        verify(bulkOperations).upsert(any(Query.class), any(Update.class));
+        verify(bulkOperations).execute();
+        verify(valueOperations).increment(anyString(), eq(1L));
         verify(redisTemplate).expire(anyString(), eq(30L), eq(TimeUnit.DAYS));
+        verify(metricsRepository, never()).save(any(BidRequestMetrics.class));
     }
 
     @Test
     void testRecordBidRequest_Failed() {
-        // 准备测试数据
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(metricsRepository.findByHourAndAdSlotTypeAndDspSource(anyString(), anyString(), anyString()))
-            .thenReturn(Optional.empty());
-        when(metricsRepository.save(any(BidRequestMetrics.class))).thenReturn(testMetrics);
 
-        // 执行测试
+        bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, 150L);
         bidRequestMetricsService.recordBidRequest("banner", "test-dsp", false, 50L);
+        bidRequestMetricsService.flushMetrics();
+
+        // 同一小时、广告位类型、DSP来源的请求合并为一个upsert
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations).upsert(query.capture(), update.capture());
+        assertEquals("banner", query.getValue().getQueryObject().get("adSlotType"));
+        assertEquals("test-dsp", query.getValue().getQueryObject().get("dspSource"));
+        Document inc = (Document) update.getValue().getUpdateObject().get("$inc");
+        assertEquals(2L, inc.get("requestCount"));
+        assertEquals(1L, inc.get("successCount"));
+        assertEquals(1L, inc.get("failureCount"));
+        assertEquals(200L, inc.get("totalResponseTime"));
+        verify(valueOperations).increment(anyString(), eq(2L));
+    }
 
-        // 验证方法调用
-        verify(metricsRepository).save(any(BidRequestMetrics.class));
-        verify(valueOperations).increment(anyString());
+    @Test
+    void testFlushMetrics_RestoresDeltasWhenWriteFails() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
+        when(bulkOperations.execute())
+            .thenThrow(new RuntimeException("Database error"))
+            .thenReturn(null);
+        BidRequestMetricsService serviceWithoutRedis = new BidRequestMetricsService(metricsRepository, null, mongoTemplate);
+
+        serviceWithoutRedis.recordBidRequest("video", "test-dsp", true, 100L);
+        assertDoesNotThrow(serviceWithoutRedis::flushMetrics);
+
+        // 失败的增量与之后的请求在下次写入时合并
+        serviceWithoutRedis.recordBidRequest("video", "test-dsp", true, 100L);
+        serviceWithoutRedis.flushMetrics();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(2)).upsert(any(Query.class), update.capture());
+        Document inc = (Document) update.getAllValues().get(1).getUpdateObject().get("$inc");
+        assertEquals(2L, inc.get("requestCount"));
+        assertEquals(200L, inc.get("totalResponseTime"));
     }
 
     @Test
-    void testRecordBidRequest_ExistingMetrics() {
-        // 准备测试数据 - 已存在的统计记录
+    void testFlushMetrics_RedisCountsOnlyPersistedRequests() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        BidRequestMetrics existingMetrics = BidRequestMetrics.builder()
-            .id("existing1")
-            .hour("2024-01-15-10")
-            .date("2024-01-15")
-            .adSlotType("banner")
-            .dspSource("test-dsp")
-            .requestCount(5L)
-            .successCount(4L)
-            .failureCount(1L)
-            .avgResponseTime(120.0)
-            .build();
+        BulkWriteError error = new BulkWriteError(11000, "duplicate key", new BsonDocument(), 0);
+        MongoBulkWriteException source = new MongoBulkWriteException(
+            BulkWriteResult.unacknowledged(), List.of(error), null, new ServerAddress(), Set.of());
+        when(bulkOperations.execute())
+            .thenThrow(new BulkOperationException("partial failure", source))
+            .thenThrow(new RuntimeException("Database error"))
+            .thenReturn(null);
+
+        bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, 100L);
+        bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, 100L);
+        bidRequestMetricsService.recordBidRequest("video", "test-dsp", true, 100L);
+        bidRequestMetricsService.flushMetrics();
+
+        // 第一个增量写入失败，只累加其余增量的请求数
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(2)).upsert(any(Query.class), update.capture());
+        long failed = (long) ((Document) update.getAllValues().get(0).getUpdateObject().get("$inc")).get("requestCount");
+        verify(valueOperations).increment(anyString(), eq(3L - failed));
+
+        // 整体写入失败时不累加
+        bidRequestMetricsService.flushMetrics();
+        verify(valueOperations, times(1)).increment(anyString(), anyLong());
+
+        // 放回的增量写入成功后再计数
+        bidRequestMetricsService.flushMetrics();
+        ArgumentCaptor<Long> counted = ArgumentCaptor.forClass(Long.class);
+        verify(valueOperations, times(2)).increment(anyString(), counted.capture());
+        assertEquals(List.of(3L - failed, failed), counted.getAllValues());
+    }
 
-        when(metricsRepository.findByHourAndAdSlotTypeAndDspSource(anyString(), anyString(), anyString()))
-            .thenReturn(Optional.of(existingMetrics));
-        when(metricsRepository.save(any(BidRequestMetrics.class))).thenReturn(existingMetrics);
+    @Test
+    void testFlushMetrics_NothingRecorded() {
+        bidRequestMetricsService.flushMetrics();
 
-        // 执行测试
-        bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, 180L);
+        verifyNoInteractions(mongoTemplate, redisTemplate);
+    }
 
-        // 验证方法调用
-        verify(metricsRepository).save(any(BidRequestMetrics.class));
-        verify(valueOperations).increment(anyString());
+    @Test
+    void testShutdown_FlushesPendingMetrics() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        bidRequestMetricsService.recordBidRequest("native", "test-dsp", true, 80L);
+
+        bidRequestMetricsService.shutdown();
+
+        verify(bulkOperations).execute();
     }
 
     @Test
@@ -144,10 +216,31 @@ class BidRequestMetricsServiceTest {
         verify(metricsRepository).findByHourBetweenOrderByTimestampDesc(anyString(), anyString());
     }
 
+    @Test
+    void testGetRealTimeStats_AverageFromTotalResponseTime() {
+        BidRequestMetricsService serviceWithoutRedis = new BidRequestMetricsService(metricsRepository, null, mongoTemplate);
+        // 按$inc累加的新记录与只有平均值的旧记录一起按请求数加权平均
+        BidRequestMetrics accumulated = BidRequestMetrics.builder()
+            .requestCount(3L)
+            .successCount(3L)
+            .totalResponseTime(90L)
+            .build();
+        when(metricsRepository.findByDateBetweenOrderByTimestampDesc(anyString(), anyString()))
+            .thenReturn(Arrays.asList(testMetrics, accumulated));
+        when(metricsRepository.findByHourBetweenOrderByTimestampDesc(anyString(), anyString()))
+            .thenReturn(Arrays.asList(accumulated));
+
+        BidRequestStatsDTO result = serviceWithoutRedis.getRealTimeStats();
+
+        assertEquals(4L, result.getTodayRequests());
+        assertEquals(3L, result.getCurrentHourRequests());
+        assertEquals((150.0 + 90.0) / 4, result.getAvgResponseTime(), 1e-9);
+    }
+
     @Test
     void testGetRealTimeStats_WithoutRedis() {
         // 创建没有Redis的服务实例
-        BidRequestMetricsService serviceWithoutRedis = new BidRequestMetricsService(metricsRepository, null);
+        BidRequestMetricsService serviceWithoutRedis = new BidRequestMetricsService(metricsRepository, null, mongoTemplate);
         
         when(metricsRepository.findByDateBetweenOrderByTimestampDesc(anyString(), anyString()))
             .thenReturn(Arrays.asList(testMetrics));
@@ -217,6 +310,9 @@ class BidRequestMetricsServiceTest {
 
     @Test
     void testRecordBidRequest_WithNullParameters() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
         // 执行测试 - 测试空参数处理
         assertDoesNotThrow(() -> {
             bidRequestMetricsService.recordBidRequest(null, "test-dsp", true, 150L);
@@ -225,36 +321,39 @@ class BidRequestMetricsServiceTest {
         assertDoesNotThrow(() -> {
             bidRequestMetricsService.recordBidRequest("banner", null, true, 150L);
         });
+
+        // 空的广告位类型与DSP来源记为 unknown
+        bidRequestMetricsService.flushMetrics();
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(bulkOperations, times(2)).upsert(query.capture(), any(Update.class));
+        assertTrue(query.getAllValues().stream().anyMatch(q -> "unknown".equals(q.getQueryObject().get("adSlotType"))));
+        assertTrue(query.getAllValues().stream().anyMatch(q -> "unknown".equals(q.getQueryObject().get("dspSource"))));
     }
 
     @Test
     void testRecordBidRequest_WithZeroResponseTime() {
-        // 准备测试数据
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(metricsRepository.findByHourAndAdSlotTypeAndDspSource(anyString(), anyString(), anyString()))
-            .thenReturn(Optional.empty());
-        when(metricsRepository.save(any(BidRequestMetrics.class))).thenReturn(testMetrics);
 
         // 执行测试
         bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, 0L);
+        bidRequestMetricsService.flushMetrics();
 
         // 验证方法调用
-        verify(metricsRepository).save(any(BidRequestMetrics.class));
+        verify(bulkOperations).upsert(any(Query.class), any(Update.class));
     }
 
     @Test
     void testRecordBidRequest_WithNegativeResponseTime() {
-        // 准备测试数据
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BidRequestMetrics.class)).thenReturn(bulkOperations);
         when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-        when(metricsRepository.findByHourAndAdSlotTypeAndDspSource(anyString(), anyString(), anyString()))
-            .thenReturn(Optional.empty());
-        when(metricsRepository.save(any(BidRequestMetrics.class))).thenReturn(testMetrics);
 
         // 执行测试
         bidRequestMetricsService.recordBidRequest("banner", "test-dsp", true, -1L);
+        bidRequestMetricsService.flushMetrics();
 
         // 验证方法调用
-        verify(metricsRepository).save(any(BidRequestMetrics.class));
+        verify(bulkOperations).upsert(any(Query.class), any(Update.class));
     }
 
     @Test
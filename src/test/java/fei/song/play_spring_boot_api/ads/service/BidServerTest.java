@@ -1,14 +1,20 @@
 package fei.song.play_spring_boot_api.ads.service;
 
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
 import fei.song.play_spring_boot_api.ads.domain.model.*;
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -32,6 +38,12 @@ class BidServerTest {
     @Mock
     private BudgetService budgetService;
 
+    @Spy
+    private AdsConfiguration adsConfiguration = new AdsConfiguration();
+
+    @Mock
+    private StageLatencyService stageLatencyService;
+
     @InjectMocks
     private BidServer bidServer;
 
@@ -41,6 +53,10 @@ class BidServerTest {
 
     @BeforeEach
     void setUp() {
+        // 测试环境冷启动较慢，放宽服务端超时，由各用例通过tmax控制截止时间
+        adsConfiguration.getServer().setRequestTimeoutMs(10_000);
+        adsConfiguration.getBidding().setTimeoutMs(10_000);
+
         // 创建测试用的竞价请求
         testImpression = Impression.builder()
             .id("imp1")
@@ -58,7 +74,7 @@ class BidServerTest {
             .adId("ad1")
             .campaignId("campaign1")
             .creativeId("creative1")
-            .bidPrice(2.0)
+            .bidPriceMicros(Money.toMicros(2.0))
             .width(300)
             .height(250)
             .adMarkup("<div>Test Ad</div>")
@@ -77,12 +93,10 @@ class BidServerTest {
             .thenReturn(Arrays.asList(testCandidate));
         when(adSlotFilterService.filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList()))
             .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.sortCandidates(anyList()))
-            .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.selectWinningBid(anyList(), eq(testImpression)))
+        when(biddingAlgorithm.runAuction(anyList(), eq(testImpression), eq(testBidRequest)))
             .thenReturn(testCandidate);
-        when(budgetService.checkBudget("campaign1", 2.0)).thenReturn(true);
-        when(budgetService.reserveBudget("campaign1", 2.0, "ad1")).thenReturn("reservation1");
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenReturn("reservation1");
 
         // 执行测试
         BidResponse response = bidServer.processBidRequest(testBidRequest);
@@ -95,7 +109,8 @@ class BidServerTest {
         assertEquals(1, response.getSeatbid().get(0).getBid().size());
         
         BidResponse.Bid bid = response.getSeatbid().get(0).getBid().get(0);
-        assertEquals("ad1", bid.getId());
+        assertEquals("request1:imp1", bid.getId());
+        assertEquals("ad1", bid.getAdid());
         assertEquals("imp1", bid.getImpid());
         assertEquals(2.0, bid.getPrice());
         assertEquals("campaign1", bid.getCid());
@@ -104,8 +119,13 @@ class BidServerTest {
         verify(fraudDetectionService).isFraudulent(testBidRequest);
         verify(biddingAlgorithm).generateBidCandidates(testImpression, testBidRequest);
         verify(adSlotFilterService).filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList());
-        verify(budgetService).checkBudget("campaign1", 2.0);
-        verify(budgetService).reserveBudget("campaign1", 2.0, "ad1");
+        verify(budgetService).checkBudget("campaign1", Money.toMicros(2.0));
+        verify(budgetService).reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1");
+
+        // 每个阶段的耗时都记录一次
+        for (BidStage stage : BidStage.values()) {
+            verify(stageLatencyService).record(eq(stage), anyLong());
+        }
     }
 
     @Test
@@ -127,6 +147,8 @@ class BidServerTest {
         verifyNoInteractions(biddingAlgorithm);
         verifyNoInteractions(adSlotFilterService);
         verifyNoInteractions(budgetService);
+        verify(stageLatencyService).record(eq(BidStage.FRAUD), anyLong());
+        verifyNoMoreInteractions(stageLatencyService);
     }
 
     @Test
@@ -185,11 +207,9 @@ class BidServerTest {
             .thenReturn(Arrays.asList(testCandidate));
         when(adSlotFilterService.filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList()))
             .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.sortCandidates(anyList()))
-            .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.selectWinningBid(anyList(), eq(testImpression)))
+        when(biddingAlgorithm.runAuction(anyList(), eq(testImpression), eq(testBidRequest)))
             .thenReturn(testCandidate);
-        when(budgetService.checkBudget("campaign1", 2.0)).thenReturn(false);
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(false);
 
         // 执行测试
         BidResponse response = bidServer.processBidRequest(testBidRequest);
@@ -201,8 +221,8 @@ class BidServerTest {
         assertEquals(0, response.getNbr());
 
         // 验证方法调用
-        verify(budgetService).checkBudget("campaign1", 2.0);
-        verify(budgetService, never()).reserveBudget(anyString(), anyDouble(), anyString());
+        verify(budgetService).checkBudget("campaign1", Money.toMicros(2.0));
+        verify(budgetService, never()).reserveBudget(anyString(), anyLong(), anyString());
     }
 
     @Test
@@ -213,12 +233,10 @@ class BidServerTest {
             .thenReturn(Arrays.asList(testCandidate));
         when(adSlotFilterService.filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList()))
             .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.sortCandidates(anyList()))
-            .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.selectWinningBid(anyList(), eq(testImpression)))
+        when(biddingAlgorithm.runAuction(anyList(), eq(testImpression), eq(testBidRequest)))
             .thenReturn(testCandidate);
-        when(budgetService.checkBudget("campaign1", 2.0)).thenReturn(true);
-        when(budgetService.reserveBudget("campaign1", 2.0, "ad1")).thenReturn(null);
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenReturn(null);
 
         // 执行测试
         BidResponse response = bidServer.processBidRequest(testBidRequest);
@@ -230,8 +248,8 @@ class BidServerTest {
         assertEquals(0, response.getNbr());
 
         // 验证方法调用
-        verify(budgetService).checkBudget("campaign1", 2.0);
-        verify(budgetService).reserveBudget("campaign1", 2.0, "ad1");
+        verify(budgetService).checkBudget("campaign1", Money.toMicros(2.0));
+        verify(budgetService).reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1");
     }
 
     @Test
@@ -259,7 +277,7 @@ class BidServerTest {
         bidServer.handleWinNotification("bid1", 2.5);
 
         // 验证方法调用
-        verify(budgetService).confirmBudgetSpend("bid1", 2.5);
+        verify(budgetService).confirmBudgetSpend("bid1", Money.toMicros(2.5));
     }
 
     @Test
@@ -268,7 +286,7 @@ class BidServerTest {
         bidServer.handleWinNotification("bid1", null);
 
         // 验证方法调用
-        verify(budgetService, never()).confirmBudgetSpend(anyString(), anyDouble());
+        verify(budgetService, never()).confirmBudgetSpend(anyString(), anyLong());
     }
 
     @Test
@@ -311,6 +329,7 @@ class BidServerTest {
         assertEquals(filterStats, stats.get("filtering"));
         assertEquals(biddingStats, stats.get("bidding"));
         assertEquals(budgetStats, stats.get("budgetStats"));
+        assertNotNull(stats.get("deadline"));
 
         // 验证方法调用
         verify(fraudDetectionService).getFraudStatistics();
@@ -337,7 +356,7 @@ class BidServerTest {
             .adId("ad2")
             .campaignId("campaign2")
             .creativeId("creative2")
-            .bidPrice(3.0)
+            .bidPriceMicros(Money.toMicros(3.0))
             .width(728)
             .height(90)
             .adMarkup("<div>Test Ad 2</div>")
@@ -354,24 +373,20 @@ class BidServerTest {
             .thenReturn(Arrays.asList(testCandidate));
         when(adSlotFilterService.filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList()))
             .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.sortCandidates(Arrays.asList(testCandidate)))
-            .thenReturn(Arrays.asList(testCandidate));
-        when(biddingAlgorithm.selectWinningBid(Arrays.asList(testCandidate), testImpression))
+        when(biddingAlgorithm.runAuction(Arrays.asList(testCandidate), testImpression, testBidRequest))
             .thenReturn(testCandidate);
-        when(budgetService.checkBudget("campaign1", 2.0)).thenReturn(true);
-        when(budgetService.reserveBudget("campaign1", 2.0, "ad1")).thenReturn("reservation1");
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenReturn("reservation1");
         
         // 为第二个广告位设置mock
         when(biddingAlgorithm.generateBidCandidates(impression2, testBidRequest))
             .thenReturn(Arrays.asList(candidate2));
         when(adSlotFilterService.filterCandidatesForImpression(eq(impression2), eq(testBidRequest), anyList()))
             .thenReturn(Arrays.asList(candidate2));
-        when(biddingAlgorithm.sortCandidates(Arrays.asList(candidate2)))
-            .thenReturn(Arrays.asList(candidate2));
-        when(biddingAlgorithm.selectWinningBid(Arrays.asList(candidate2), impression2))
+        when(biddingAlgorithm.runAuction(Arrays.asList(candidate2), impression2, testBidRequest))
             .thenReturn(candidate2);
-        when(budgetService.checkBudget("campaign2", 3.0)).thenReturn(true);
-        when(budgetService.reserveBudget("campaign2", 3.0, "ad2")).thenReturn("reservation2");
+        when(budgetService.checkBudget("campaign2", Money.toMicros(3.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign2", Money.toMicros(3.0), "request1:imp2")).thenReturn("reservation2");
 
         // 执行测试
         BidResponse response = bidServer.processBidRequest(testBidRequest);
@@ -385,7 +400,226 @@ class BidServerTest {
         // 验证方法调用
         verify(biddingAlgorithm).generateBidCandidates(testImpression, testBidRequest);
         verify(biddingAlgorithm).generateBidCandidates(impression2, testBidRequest);
-        verify(budgetService).checkBudget("campaign1", 2.0);
-        verify(budgetService).checkBudget("campaign2", 3.0);
+        verify(budgetService).checkBudget("campaign1", Money.toMicros(2.0));
+        verify(budgetService).checkBudget("campaign2", Money.toMicros(3.0));
+    }
+
+    @Test
+    void testProcessBidRequest_DeadlineExceeded() {
+        // tmax扣除安全余量后只剩5ms，反欺诈检测耗时超过截止时间
+        testBidRequest.setTimeoutMs(15);
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenAnswer(invocation -> {
+            Thread.sleep(20);
+            return false;
+        });
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals("request1", response.getId());
+        assertTrue(response.getSeatbid().isEmpty());
+        assertEquals(NoBidReason.DEADLINE_EXCEEDED, response.getNbr());
+        verifyNoInteractions(biddingAlgorithm);
+        verifyNoInteractions(budgetService);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> deadlineStats = (Map<String, Object>) bidServer.getServerStatistics().get("deadline");
+        assertEquals(1L, deadlineStats.get("deadlineNoBids"));
+    }
+
+    @Test
+    void testProcessBidRequest_DeadlineExceededReleasesReservations() {
+        // 第一个广告位预扣预算后截止时间到期，已预扣的预算需要释放
+        Impression impression2 = Impression.builder()
+            .id("imp2")
+            .bidfloor(1.0)
+            .build();
+        testBidRequest.setImp(Arrays.asList(testImpression, impression2));
+        testBidRequest.setTimeoutMs(40);
+        adsConfiguration.getServer().setParallelImpressions(false);
+
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(eq(testImpression), eq(testBidRequest), anyBoolean()))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(adSlotFilterService.filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList()))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(biddingAlgorithm.runAuction(anyList(), eq(testImpression), eq(testBidRequest)))
+            .thenReturn(testCandidate);
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenAnswer(invocation -> {
+            Thread.sleep(40);
+            return "reservation1";
+        });
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals(NoBidReason.DEADLINE_EXCEEDED, response.getNbr());
+        assertTrue(response.getSeatbid().isEmpty());
+        verify(budgetService).releaseBudgetReservation("request1:imp1");
+        verify(biddingAlgorithm, never()).generateBidCandidates(eq(impression2), any(), anyBoolean());
+    }
+
+    @Test
+    void testProcessBidRequest_SameCreativeWinningTwoImpressionsReservesEach() {
+        // 同一创意赢得同一请求的两个广告位，两次预扣使用不同的竞价ID，互不覆盖
+        Impression impression2 = Impression.builder()
+            .id("imp2")
+            .bidfloor(1.0)
+            .build();
+        testBidRequest.setImp(Arrays.asList(testImpression, impression2));
+        adsConfiguration.getServer().setParallelImpressions(false);
+
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(any(Impression.class), eq(testBidRequest)))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(adSlotFilterService.filterCandidatesForImpression(any(Impression.class), eq(testBidRequest), anyList()))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(biddingAlgorithm.runAuction(anyList(), any(Impression.class), eq(testBidRequest)))
+            .thenReturn(testCandidate);
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget(eq("campaign1"), eq(Money.toMicros(2.0)), anyString()))
+            .thenAnswer(invocation -> invocation.getArgument(2));
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals(2, response.getSeatbid().size());
+        BidResponse.Bid first = response.getSeatbid().get(0).getBid().get(0);
+        BidResponse.Bid second = response.getSeatbid().get(1).getBid().get(0);
+        assertEquals("request1:imp1", first.getId());
+        assertEquals("request1:imp2", second.getId());
+        assertEquals("ad1", first.getAdid());
+        assertEquals("ad1", second.getAdid());
+        verify(budgetService).reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1");
+        verify(budgetService).reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp2");
+    }
+
+    @Test
+    void testProcessBidRequest_DeadlineExceededReleasesEveryImpressionReservation() {
+        // 同一创意的两次预扣在截止时间到期后都要释放
+        Impression impression2 = Impression.builder()
+            .id("imp2")
+            .bidfloor(1.0)
+            .build();
+        testBidRequest.setImp(Arrays.asList(testImpression, impression2));
+        testBidRequest.setTimeoutMs(60);
+        adsConfiguration.getServer().setParallelImpressions(false);
+
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(any(Impression.class), eq(testBidRequest), anyBoolean()))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(adSlotFilterService.filterCandidatesForImpression(any(Impression.class), eq(testBidRequest), anyList()))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(biddingAlgorithm.runAuction(anyList(), any(Impression.class), eq(testBidRequest)))
+            .thenReturn(testCandidate);
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenReturn("request1:imp1");
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp2")).thenAnswer(invocation -> {
+            Thread.sleep(60);
+            return "request1:imp2";
+        });
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals(NoBidReason.DEADLINE_EXCEEDED, response.getNbr());
+        verify(budgetService).releaseBudgetReservation("request1:imp1");
+        verify(budgetService).releaseBudgetReservation("request1:imp2");
+    }
+
+    @Test
+    void testProcessBidRequest_DegradedWhenDeadlineTight() {
+        // tmax=50时剩余40ms，小于各阶段预算之和，候选生成进入降级模式
+        testBidRequest.setTimeoutMs(50);
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(testImpression, testBidRequest, true))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(adSlotFilterService.filterCandidatesForImpression(eq(testImpression), eq(testBidRequest), anyList()))
+            .thenReturn(Arrays.asList(testCandidate));
+        when(biddingAlgorithm.runAuction(anyList(), eq(testImpression), eq(testBidRequest)))
+            .thenReturn(testCandidate);
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenReturn("reservation1");
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals(1, response.getSeatbid().size());
+        verify(biddingAlgorithm).generateBidCandidates(testImpression, testBidRequest, true);
+        verify(biddingAlgorithm, never()).generateBidCandidates(testImpression, testBidRequest);
+    }
+
+    @Test
+    void testProcessBidRequest_ImpressionsEvaluatedConcurrently() throws Exception {
+        // 两个广告位互相等待对方开始，只有并行处理时才能在超时前完成
+        Impression impression2 = Impression.builder().id("imp2").bidfloor(1.0).build();
+        testBidRequest.setImp(Arrays.asList(testImpression, impression2));
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(any(Impression.class), eq(testBidRequest))).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+            return Collections.emptyList();
+        });
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals(NoBidReason.UNKNOWN, response.getNbr());
+        assertEquals(0, bothStarted.getCount());
+        verify(biddingAlgorithm, times(2)).generateBidCandidates(any(Impression.class), eq(testBidRequest));
+    }
+
+    @Test
+    void testProcessBidRequest_FanoutCapLimitsConcurrency() {
+        adsConfiguration.getServer().setMaxImpressionFanout(2);
+        List<Impression> impressions = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            impressions.add(Impression.builder().id("imp" + i).bidfloor(1.0).build());
+        }
+        testBidRequest.setImp(impressions);
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(any(Impression.class), eq(testBidRequest))).thenAnswer(invocation -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inFlight.decrementAndGet();
+            return Collections.emptyList();
+        });
+
+        bidServer.processBidRequest(testBidRequest);
+
+        assertTrue(maxInFlight.get() <= 2);
+        verify(biddingAlgorithm, times(6)).generateBidCandidates(any(Impression.class), eq(testBidRequest));
+    }
+
+    @Test
+    void testProcessBidRequest_ParallelReservesBudgetInImpressionOrder() {
+        Impression impression2 = Impression.builder().id("imp2").bidfloor(1.0).build();
+        testBidRequest.setImp(Arrays.asList(testImpression, impression2));
+        BidCandidate candidate2 = BidCandidate.builder()
+            .adId("ad2")
+            .campaignId("campaign1")
+            .bidPriceMicros(Money.toMicros(2.0))
+            .build();
+
+        when(fraudDetectionService.isFraudulent(testBidRequest)).thenReturn(false);
+        when(biddingAlgorithm.generateBidCandidates(testImpression, testBidRequest)).thenAnswer(invocation -> {
+            // 第一个广告位较慢，预算预扣仍应按广告位顺序进行
+            Thread.sleep(30);
+            return Arrays.asList(testCandidate);
+        });
+        when(biddingAlgorithm.generateBidCandidates(impression2, testBidRequest)).thenReturn(Arrays.asList(candidate2));
+        when(adSlotFilterService.filterCandidatesForImpression(any(Impression.class), eq(testBidRequest), anyList()))
+            .thenAnswer(invocation -> invocation.getArgument(2));
+        when(biddingAlgorithm.runAuction(anyList(), any(Impression.class), eq(testBidRequest)))
+            .thenAnswer(invocation -> ((List<?>) invocation.getArgument(0)).get(0));
+        // 预算只够一次竞价：先预扣的广告位获胜
+        when(budgetService.checkBudget("campaign1", Money.toMicros(2.0))).thenReturn(true, false);
+        when(budgetService.reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp1")).thenReturn("reservation1");
+
+        BidResponse response = bidServer.processBidRequest(testBidRequest);
+
+        assertEquals(1, response.getSeatbid().size());
+        assertEquals("imp1", response.getSeatbid().get(0).getBid().get(0).getImpid());
+        verify(budgetService, never()).reserveBudget("campaign1", Money.toMicros(2.0), "request1:imp2");
     }
-}
\ No newline at end of file
+}
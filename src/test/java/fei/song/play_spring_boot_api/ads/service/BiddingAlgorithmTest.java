@@ -0,0 +1,98 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import fei.song.play_spring_boot_api.ads.domain.model.Geo;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.service.OpenRTBDataService;
+import fei.song.play_spring_boot_api.ads.service.auction.AuctionEngineSelector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * BiddingAlgorithm 单体测试
+ */
+@ExtendWith(MockitoExtension.class)
+class BiddingAlgorithmTest {
+
+    @Mock
+    private OpenRTBDataService openRTBDataService;
+
+    private BiddingAlgorithm biddingAlgorithm;
+
+    @BeforeEach
+    void setUp() {
+        CampaignEntity campaign = CampaignEntity.builder()
+            .campaignId("campaign1")
+            .advertiserId("acme")
+            .status("active")
+            .budget(CampaignEntity.Budget.builder()
+                .dailyBudget(new BigDecimal("100.00"))
+                .totalBudget(new BigDecimal("1000.00"))
+                .spentToday(BigDecimal.ZERO)
+                .spentTotal(BigDecimal.ZERO)
+                .build())
+            .targeting(CampaignEntity.Targeting.builder()
+                .geo(CampaignEntity.GeoTargeting.builder().includedCountries(List.of("US")).build())
+                .build())
+            .bidding(CampaignEntity.Bidding.builder()
+                .maxBid(new BigDecimal("5.00"))
+                .baseBid(new BigDecimal("1.00"))
+                .build())
+            .creatives(List.of(CampaignEntity.Creative.builder().creativeId("cr1").html("<div/>").build()))
+            .build();
+        when(openRTBDataService.getActiveCampaigns()).thenReturn(List.of(campaign));
+        CampaignService campaignService = new CampaignService(openRTBDataService);
+        campaignService.refreshSnapshot();
+        AdsConfiguration configuration = new AdsConfiguration();
+        biddingAlgorithm = new BiddingAlgorithm(campaignService, new AuctionEngineSelector(configuration),
+            new BudgetService(configuration, campaignService, null, null), new GeoLocationService(configuration));
+    }
+
+    @Test
+    void testDegradedModeScoresCandidatesWithNeutralQuality() {
+        Impression impression = Impression.builder().id("imp1").bidfloor(0.1).build();
+
+        List<BidCandidate> candidates = biddingAlgorithm.generateBidCandidates(impression, request("US", impression), true);
+
+        assertEquals(1, candidates.size());
+        BidCandidate candidate = candidates.get(0);
+        assertEquals("campaign1", candidate.getCampaignId());
+        assertEquals(0.5, candidate.getQualityScore());
+        assertNotNull(candidate.getFinalScore());
+        assertTrue(candidate.getBidPriceMicros() > 0);
+        assertSame(candidate, biddingAlgorithm.runAuction(candidates, impression, request("US", impression)));
+    }
+
+    @Test
+    void testAlpha3RequestCountryMatchesAlpha2Campaign() {
+        Impression impression = Impression.builder().id("imp1").bidfloor(0.1).build();
+
+        List<BidCandidate> usa = biddingAlgorithm.generateBidCandidates(impression, request("USA", impression));
+        List<BidCandidate> chn = biddingAlgorithm.generateBidCandidates(impression, request("CHN", impression));
+
+        assertEquals(1, usa.size());
+        assertEquals("campaign1", usa.get(0).getCampaignId());
+        assertTrue(chn.isEmpty());
+    }
+
+    private static BidRequest request(String country, Impression impression) {
+        return BidRequest.builder()
+            .id("request1")
+            .imp(List.of(impression))
+            .device(Device.builder().devicetype(2).geo(Geo.builder().country(country).build()).build())
+            .build();
+    }
+}
@@ -0,0 +1,144 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.service.OpenRTBDataService;
+import fei.song.play_spring_boot_api.ads.service.budget.SpendJournal;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignSnapshot;
+import fei.song.play_spring_boot_api.ads.service.campaign.EligibleCampaigns;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * BudgetService 单体测试
+ */
+@ExtendWith(MockitoExtension.class)
+class BudgetServiceTest {
+
+    @Mock
+    private OpenRTBDataService openRTBDataService;
+
+    private CampaignService campaignService;
+
+    private BudgetService budgetService;
+
+    @BeforeEach
+    void setUp() {
+        CampaignEntity campaign = CampaignEntity.builder()
+            .campaignId("campaign1")
+            .status("active")
+            .budget(CampaignEntity.Budget.builder()
+                .dailyBudget(new BigDecimal("10.00"))
+                .totalBudget(new BigDecimal("100.00"))
+                .spentToday(new BigDecimal("9.70"))
+                .spentTotal(new BigDecimal("50.00"))
+                .build())
+            .build();
+        lenient().when(openRTBDataService.getActiveCampaigns()).thenReturn(List.of(campaign));
+        campaignService = new CampaignService(openRTBDataService);
+        campaignService.refreshSnapshot();
+        budgetService = new BudgetService(new AdsConfiguration(), campaignService, null, null);
+    }
+
+    @Test
+    void testDailyBudgetComparedInExactMicros() {
+        // 9.70 + 0.30 恰好等于日预算，double累加会得到 10.000000000000002
+        assertTrue(budgetService.checkBudget("campaign1", Money.toMicros(0.3)));
+        assertFalse(budgetService.checkBudget("campaign1", Money.toMicros(0.300001)));
+    }
+
+    @Test
+    void testReserveAndReleaseReturnReservedAmountToZero() {
+        for (int i = 0; i < 1000; i++) {
+            budgetService.reserveBudget("campaign1", Money.toMicros(0.1), "bid" + i);
+        }
+        assertEquals(Money.toMicros(100.0), budgetService.getCampaignBudget("campaign1").getReservedMicros());
+
+        for (int i = 0; i < 1000; i++) {
+            budgetService.releaseBudgetReservation("bid" + i);
+        }
+        assertEquals(0L, budgetService.getCampaignBudget("campaign1").getReservedMicros());
+    }
+
+    @Test
+    void testConfirmedSpendCountsAgainstDailyBudget() {
+        assertEquals("bid1", budgetService.reserveBudget("campaign1", Money.toMicros(0.2), "bid1"));
+        budgetService.confirmBudgetSpend("bid1", Money.toMicros(0.1));
+
+        assertEquals(Money.toMicros(0.1), budgetService.getCampaignBudget("campaign1").getDailySpentMicros());
+        assertEquals(0L, budgetService.getCampaignBudget("campaign1").getReservedMicros());
+        assertTrue(budgetService.checkBudget("campaign1", Money.toMicros(0.2)));
+        assertFalse(budgetService.checkBudget("campaign1", Money.toMicros(0.21)));
+        assertEquals(0.1, (double) budgetService.getBudgetStatistics().get("totalSpent"), 1e-9);
+    }
+
+    @Test
+    void testEligibilityBitClearedWhenSpendPlusReservationsReachCap() {
+        CampaignSnapshot snapshot = campaignService.getSnapshot();
+        EligibleCampaigns eligible = budgetService.getEligibleCampaigns(snapshot);
+        int ordinal = snapshot.ordinalOf("campaign1");
+        assertTrue(eligible.get(ordinal));
+
+        // 9.70 已消费 + 0.30 预扣 恰好达到日预算
+        budgetService.reserveBudget("campaign1", Money.toMicros(0.3), "bid1");
+        assertFalse(eligible.get(ordinal));
+        assertTrue(snapshot.getTargetingIndex().match("US", 1, null, null, 0L, eligible).isEmpty());
+
+        budgetService.releaseBudgetReservation("bid1");
+        assertTrue(eligible.get(ordinal));
+        assertSame(eligible, budgetService.getEligibleCampaigns(snapshot));
+    }
+
+    @Test
+    void testExpiredReservationReleasedByTimingWheel() {
+        budgetService.reserveBudget("campaign1", Money.toMicros(0.2), "bid1");
+        budgetService.reserveBudget("campaign1", Money.toMicros(0.3), "bid2");
+        budgetService.releaseBudgetReservation("bid2");
+        long ttlMillis = new AdsConfiguration().getBudget().getReservationTtlSeconds() * 1000L;
+
+        assertEquals(0, budgetService.cleanupExpiredReservations(System.currentTimeMillis()));
+        assertEquals(1, budgetService.cleanupExpiredReservations(System.currentTimeMillis() + ttlMillis + 1_000));
+        assertEquals(0L, budgetService.getCampaignBudget("campaign1").getReservedMicros());
+        assertEquals(0, budgetService.getBudgetStatistics().get("activeReservations"));
+        assertEquals(0, budgetService.getBudgetStatistics().get("pendingExpirations"));
+    }
+
+    @Test
+    void testBudgetStateRestoredFromSpendJournal(@TempDir Path directory) throws IOException {
+        AdsConfiguration config = new AdsConfiguration();
+        config.getBudget().getJournal().setDirectory(directory.toString());
+        CampaignService campaignService = new CampaignService(openRTBDataService);
+        campaignService.refreshSnapshot();
+
+        try (SpendJournal journal = SpendJournal.open(config.getBudget().getJournal())) {
+            BudgetService before = new BudgetService(config, campaignService, null, journal);
+            before.reserveBudget("campaign1", Money.toMicros(0.2), "bid1");
+            before.confirmBudgetSpend("bid1", Money.toMicros(0.15));
+            before.reserveBudget("campaign1", Money.toMicros(0.1), "bid2");
+        }
+
+        try (SpendJournal journal = SpendJournal.open(config.getBudget().getJournal())) {
+            BudgetService after = new BudgetService(config, campaignService, null, journal);
+            assertEquals(Money.toMicros(0.15), after.getCampaignBudget("campaign1").getDailySpentMicros());
+            assertEquals(Money.toMicros(0.1), after.getCampaignBudget("campaign1").getReservedMicros());
+
+            // 重启前的在途预扣仍可确认
+            after.confirmBudgetSpend("bid2", Money.toMicros(0.1));
+            assertEquals(Money.toMicros(0.25), after.getCampaignBudget("campaign1").getDailySpentMicros());
+            assertEquals(0L, after.getCampaignBudget("campaign1").getReservedMicros());
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.service.OpenRTBDataService;
+import fei.song.play_spring_boot_api.ads.service.campaign.CampaignSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * CampaignService 单体测试
+ */
+@ExtendWith(MockitoExtension.class)
+class CampaignServiceTest {
+
+    @Mock
+    private OpenRTBDataService openRTBDataService;
+
+    @InjectMocks
+    private CampaignService campaignService;
+
+    private CampaignEntity campaign1;
+    private CampaignEntity campaign2;
+
+    @BeforeEach
+    void setUp() {
+        campaign1 = CampaignEntity.builder()
+            .campaignId("campaign1")
+            .advertiserId("advertiser1")
+            .status("active")
+            .budget(CampaignEntity.Budget.builder().dailyBudget(new BigDecimal("100")).build())
+            .bidding(CampaignEntity.Bidding.builder().baseBid(new BigDecimal("1.5")).maxBid(new BigDecimal("5")).build())
+            .creatives(List.of(CampaignEntity.Creative.builder().creativeId("creative1").build()))
+            .build();
+
+        campaign2 = CampaignEntity.builder()
+            .campaignId("campaign2")
+            .advertiserId("advertiser1")
+            .status("active")
+            .build();
+    }
+
+    @Test
+    void testLookupsBeforeFirstLoadSeeNoCampaignsWithoutIo() {
+        assertSame(CampaignSnapshot.EMPTY, campaignService.getSnapshot());
+        assertFalse(campaignService.getCampaignById("campaign1").isPresent());
+        assertTrue(campaignService.getActiveCampaigns().isEmpty());
+
+        // 竞价路径不触发加载，快照只由后台任务构建
+        verifyNoInteractions(openRTBDataService);
+    }
+
+    @Test
+    void testLookupsBeforeFirstSuccessfulLoadDoNotRetryLoad() {
+        when(openRTBDataService.getActiveCampaigns()).thenThrow(new RuntimeException("redis down"));
+
+        assertSame(CampaignSnapshot.EMPTY, campaignService.refreshSnapshot());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(campaignService.getCampaignById("campaign1").isPresent());
+        }
+
+        verify(openRTBDataService, times(1)).getActiveCampaigns();
+    }
+
+    @Test
+    void testSnapshotLoadedOnceForRepeatedLookups() {
+        when(openRTBDataService.getActiveCampaigns()).thenReturn(List.of(campaign1, campaign2));
+        campaignService.refreshSnapshot();
+
+        assertTrue(campaignService.getCampaignById("campaign1").isPresent());
+        assertNotNull(campaignService.getCampaignBudget("campaign1"));
+        assertNotNull(campaignService.getCampaignBidding("campaign1"));
+        assertTrue(campaignService.isCampaignActive("campaign2"));
+        assertFalse(campaignService.getCampaignById("missing").isPresent());
+
+        // 快照只构建一次，后续查询不再访问infrastructure层
+        verify(openRTBDataService, times(1)).getActiveCampaigns();
+    }
+
+    @Test
+    void testSnapshotIndexesByCreativeAndAdvertiser() {
+        when(openRTBDataService.getActiveCampaigns()).thenReturn(List.of(campaign1, campaign2));
+        campaignService.refreshSnapshot();
+
+        assertTrue(campaignService.getCreativeById("creative1").isPresent());
+        assertEquals(2, campaignService.getCampaignsByAdvertiser("advertiser1").size());
+        assertTrue(campaignService.getCampaignsByAdvertiser("unknown").isEmpty());
+    }
+
+    @Test
+    void testRefreshSnapshotSwapsVersion() {
+        when(openRTBDataService.getActiveCampaigns())
+            .thenReturn(List.of(campaign1))
+            .thenReturn(List.of(campaign1, campaign2));
+
+        CampaignSnapshot first = campaignService.refreshSnapshot();
+        CampaignSnapshot second = campaignService.refreshSnapshot();
+
+        assertEquals(1, first.size());
+        assertEquals(2, second.size());
+        assertTrue(second.getVersion() > first.getVersion());
+        assertSame(second, campaignService.getSnapshot());
+    }
+
+    @Test
+    void testRefreshFailureKeepsPreviousSnapshot() {
+        when(openRTBDataService.getActiveCampaigns())
+            .thenReturn(List.of(campaign1))
+            .thenThrow(new RuntimeException("redis down"));
+
+        CampaignSnapshot first = campaignService.refreshSnapshot();
+        CampaignSnapshot afterFailure = campaignService.refreshSnapshot();
+
+        assertSame(first, afterFailure);
+        assertTrue(campaignService.getCampaignById("campaign1").isPresent());
+    }
+}
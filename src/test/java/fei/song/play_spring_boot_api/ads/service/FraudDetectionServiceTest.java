@@ -0,0 +1,231 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import fei.song.play_spring_boot_api.ads.domain.model.Geo;
+import fei.song.play_spring_boot_api.ads.infrastructure.openrtb.StreamingBidRequestParser;
+import fei.song.play_spring_boot_api.ads.service.fraud.DeviceFingerprint;
+import fei.song.play_spring_boot_api.ads.service.fraud.HeavyHitterDetector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FraudDetectionService 单体测试
+ */
+class FraudDetectionServiceTest {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) Chrome/120.0";
+
+    private AdsConfiguration adsConfiguration;
+
+    @BeforeEach
+    void setUp() {
+        adsConfiguration = new AdsConfiguration();
+        adsConfiguration.getFraudDetection().setIpBlacklist(List.of("198.51.100.0/24", "2001:db8::/32"));
+    }
+
+    @Test
+    void testCidrBlacklistCoversIpv4AndIpv6() {
+        FraudDetectionService service = newService();
+
+        assertTrue(service.isFraudulent(request("198.51.100.77", null)));
+        assertTrue(service.isFraudulent(request(null, "2001:db8:1::5")));
+        assertFalse(service.isFraudulent(request("198.51.101.1", "2001:db9::1")));
+        assertEquals(2, service.getFraudStatistics().get("ipBlacklistSize"));
+    }
+
+    @Test
+    void testIpv6OnlyRequestParsedFromJsonIsBlacklisted() throws IOException {
+        FraudDetectionService service = newService();
+        String json = "{\"id\":\"r1\",\"device\":{\"ipv6\":\"2001:db8:1::5\",\"ua\":\"" + USER_AGENT + "\"}}";
+
+        BidRequest request = new StreamingBidRequestParser().parse(json.getBytes(StandardCharsets.UTF_8), 0, json.length());
+
+        assertTrue(service.isFraudulent(request));
+    }
+
+    @Test
+    void testManualBlacklistAcceptsRanges() {
+        FraudDetectionService service = newService();
+        assertFalse(service.isFraudulent(request("192.0.2.10", null)));
+
+        service.addIpToBlacklist("192.0.2.0/28");
+        assertTrue(service.isFraudulent(request("192.0.2.10", null)));
+        assertFalse(service.isFraudulent(request("192.0.2.16", null)));
+    }
+
+    @Test
+    void testBlacklistFileReloadedWhenModified(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("ip-blacklist.txt");
+        Files.writeString(file, "203.0.113.0/24\n");
+        adsConfiguration.getFraudDetection().setIpBlacklistFile(file.toString());
+        FraudDetectionService service = newService();
+        assertTrue(service.isFraudulent(request("203.0.113.5", null)));
+
+        Files.writeString(file, "203.0.114.0/24\n");
+        Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        service.refreshIpBlacklist();
+        assertFalse(service.isFraudulent(request("203.0.113.5", null)));
+        assertTrue(service.isFraudulent(request("203.0.114.5", null)));
+    }
+
+    @Test
+    void testUserAgentPatternsReloadedFromConfig() {
+        FraudDetectionService service = newService();
+        assertEquals(4, userAgentStatistics(service).get("keywords"));
+
+        adsConfiguration.getFraudDetection().setSuspiciousUserAgentPatterns(List.of(".*headless.*", "^curl/.*"));
+        service.refreshUserAgentClassifier();
+        assertEquals(1, userAgentStatistics(service).get("keywords"));
+        assertEquals(1, userAgentStatistics(service).get("regexPatterns"));
+
+        // 判断结果被缓存，同一UA第二次命中缓存（换一个IP，绕过按(IP, UA, 域名)的判断结果缓存）
+        service.isFraudulent(request("192.0.2.1", null));
+        service.isFraudulent(request("192.0.2.2", null));
+        assertEquals(1L, userAgentStatistics(service).get("cacheHits"));
+    }
+
+    @Test
+    void testDeviceBlacklistFromFileAndManualAdds(@TempDir Path dir) throws IOException {
+        Device listed = Device.builder().ua(USER_AGENT).ip("192.0.2.1").make("Samsung").model("SM-S918B").build();
+        Device manual = Device.builder().ua(USER_AGENT).ip("192.0.2.2").make("Google").model("Pixel 7").build();
+        Path file = dir.resolve("device-blacklist.txt");
+        Files.writeString(file, DeviceFingerprint.toHex(DeviceFingerprint.of(listed)) + "\n");
+        adsConfiguration.getFraudDetection().setDeviceBlacklistFile(file.toString());
+        FraudDetectionService service = newService();
+
+        assertTrue(service.isFraudulent(BidRequest.builder().id("req").device(listed).build()));
+        assertFalse(service.isFraudulent(BidRequest.builder().id("req").device(manual).build()));
+
+        service.addDeviceToBlacklist(manual);
+        Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+        service.refreshDeviceBlacklist();
+        assertTrue(service.isFraudulent(BidRequest.builder().id("req").device(manual).build()), "重新加载后保留手动添加的设备");
+        assertEquals(2, service.getFraudStatistics().get("deviceBlacklistSize"));
+        assertTrue((double) service.getFraudStatistics().get("deviceBlacklistBytesPerEntry") > 0);
+    }
+
+    @Test
+    void testGeoLocationInconsistencyRaisesRisk(@TempDir Path dir) throws IOException {
+        Path csv = dir.resolve("geo.csv");
+        Files.writeString(csv, "192.0.2.0,192.0.2.255,USA,US-CA\n2001:db8:aa::,2001:db8:aa::ffff,DEU\n");
+        adsConfiguration.getFraudDetection().setGeoIpSourceFile(csv.toString());
+        adsConfiguration.getFraudDetection().setGeoIpDatabaseFile(dir.resolve("geo.bin").toString());
+        FraudDetectionService service = newService();
+
+        // 可疑UA单独不足以判定欺诈，叠加国家不一致后超过阈值
+        assertFalse(service.isFraudulent(geoRequest("curl-bot/1.0", "192.0.2.9", "USA")));
+        assertTrue(service.isFraudulent(geoRequest("curl-bot/1.0", "192.0.2.9", "CHN")));
+        assertTrue(service.isFraudulent(geoRequest("curl-bot/1.0", "192.0.2.9", "chn")));
+        // 编码长度不同或IP不在库中时不判定为不一致
+        assertFalse(service.isFraudulent(geoRequest("curl-bot/1.0", "192.0.2.9", "CN")));
+        assertFalse(service.isFraudulent(geoRequest("curl-bot/1.0", "198.51.200.1", "CHN")));
+        assertEquals(2, ((Map<?, ?>) service.getFraudStatistics().get("geoIpDatabase")).get("ranges"));
+    }
+
+    @Test
+    void testResolveCountryPrefersDeclaredGeo(@TempDir Path dir) throws IOException {
+        Files.writeString(dir.resolve("geo.csv"), "192.0.2.0,192.0.2.255,USA\n2001:db8::,2001:db8::ffff,FRA\n");
+        adsConfiguration.getFraudDetection().setGeoIpSourceFile(dir.resolve("geo.csv").toString());
+        adsConfiguration.getFraudDetection().setGeoIpDatabaseFile(dir.resolve("geo.bin").toString());
+        GeoLocationService geoLocationService = new GeoLocationService(adsConfiguration);
+
+        assertEquals("JPN", geoLocationService.resolveCountry(
+            Device.builder().ip("192.0.2.1").geo(Geo.builder().country("JPN").build()).build()));
+        assertEquals("USA", geoLocationService.resolveCountry(Device.builder().ip("192.0.2.1").build()));
+        assertEquals("FRA", geoLocationService.resolveCountry(Device.builder().ip("198.51.100.1").ipv6("2001:db8::1").build()));
+        assertNull(geoLocationService.resolveCountry(Device.builder().ip("198.51.100.1").build()));
+        assertNull(geoLocationService.resolveCountry(null));
+    }
+
+    @Test
+    void testHeavyHitterIpAutoBlocked() {
+        adsConfiguration.getFraudDetection().getHeavyHitters().setIpThresholdPerMinute(5);
+        FraudDetectionService service = newService();
+
+        for (int i = 0; i < 5; i++) {
+            assertFalse(service.isFraudulent(request("192.0.2.50", null)));
+        }
+        assertTrue(service.isFraudulent(request("192.0.2.50", null)));
+        assertFalse(service.isFraudulent(request("192.0.2.51", null)));
+
+        Map<?, ?> ip = (Map<?, ?>) service.getHeavyHitters().get("ip");
+        assertFalse(((List<?>) ip.get("currentMinute")).isEmpty());
+        assertTrue(service.unblockHeavyHitter(HeavyHitterDetector.Dimension.IP, "192.0.2.50"));
+        assertTrue(service.getFraudStatistics().containsKey("heavyHitters"));
+    }
+
+    @Test
+    void testVerdictCacheInvalidatedWhenBlacklistChanges() {
+        FraudDetectionService service = newService();
+        assertFalse(service.isFraudulent(request("192.0.2.60", null)));
+        assertFalse(service.isFraudulent(request("192.0.2.60", null)));
+        assertEquals(1L, verdictCacheStatistics(service).get("hits"));
+
+        // 手动加入黑名单后缓存的判断结果失效
+        long invalidations = (long) verdictCacheStatistics(service).get("invalidations");
+        service.addIpToBlacklist("192.0.2.60");
+        assertTrue(service.isFraudulent(request("192.0.2.60", null)));
+        assertEquals(1L, verdictCacheStatistics(service).get("hits"));
+        assertEquals(invalidations + 1, verdictCacheStatistics(service).get("invalidations"));
+    }
+
+    @Test
+    void testVerdictCacheHitsStillCountFrequencies() {
+        adsConfiguration.getFraudDetection().getHeavyHitters().setIpThresholdPerMinute(3);
+        FraudDetectionService service = newService();
+
+        for (int i = 0; i < 3; i++) {
+            assertFalse(service.isFraudulent(request("192.0.2.70", null)));
+        }
+        assertTrue(service.isFraudulent(request("192.0.2.70", null)));
+        assertEquals(3L, verdictCacheStatistics(service).get("hits"));
+        assertEquals(0.75, (double) verdictCacheStatistics(service).get("hitRatio"), 1e-9);
+    }
+
+    @Test
+    void testVerdictCacheBypass() {
+        adsConfiguration.getFraudDetection().getVerdictCache().setEnabled(false);
+        FraudDetectionService service = newService();
+
+        assertTrue(service.isFraudulent(request("198.51.100.7", null)));
+        assertTrue(service.isFraudulent(request("198.51.100.7", null)));
+        assertFalse(service.isFraudulent(request("192.0.2.80", null)));
+        assertEquals(0L, verdictCacheStatistics(service).get("hits"));
+        assertEquals(0L, verdictCacheStatistics(service).get("misses"));
+        assertEquals(false, verdictCacheStatistics(service).get("enabled"));
+    }
+
+    private FraudDetectionService newService() {
+        return new FraudDetectionService(adsConfiguration, new GeoLocationService(adsConfiguration));
+    }
+
+    private static BidRequest geoRequest(String userAgent, String ip, String country) {
+        Device device = Device.builder().ua(userAgent).ip(ip).geo(Geo.builder().country(country).build()).build();
+        return BidRequest.builder().id("req").device(device).build();
+    }
+
+    private static Map<?, ?> verdictCacheStatistics(FraudDetectionService service) {
+        return (Map<?, ?>) service.getFraudStatistics().get("verdictCache");
+    }
+
+    private static Map<?, ?> userAgentStatistics(FraudDetectionService service) {
+        return (Map<?, ?>) service.getFraudStatistics().get("userAgentClassifier");
+    }
+
+    private static BidRequest request(String ip, String ipv6) {
+        Device device = Device.builder().ua(USER_AGENT).ip(ip).ipv6(ipv6).build();
+        return BidRequest.builder().id("req").device(device).build();
+    }
+}
@@ -0,0 +1,145 @@
+package fei.song.play_spring_boot_api.ads.service;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.StageLatencyHistogram;
+import fei.song.play_spring_boot_api.ads.service.metrics.StageLatencyRecorder;
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
+import org.HdrHistogram.Histogram;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * StageLatencyService 单体测试
+ */
+@ExtendWith(MockitoExtension.class)
+class StageLatencyServiceTest {
+
+    private static final String COLLECTION = "stage_latency_histograms";
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BulkOperations bulkOperations;
+
+    private StageLatencyService stageLatencyService;
+
+    @BeforeEach
+    void setUp() {
+        Clock clock = Clock.fixed(Instant.parse("2024-01-15T10:30:00Z"), ZoneOffset.UTC);
+        stageLatencyService = new StageLatencyService(new AdsConfiguration(), mongoTemplate, clock);
+    }
+
+    @Test
+    void testCurrentHourLatencyIncludesLatestRecords() {
+        stageLatencyService.record(BidStage.FRAUD, 2_000_000L);
+        stageLatencyService.recordSerialization(300_000L);
+
+        Map<String, Object> latency = stageLatencyService.getCurrentHourLatency();
+
+        assertEquals("2024-01-15-10", latency.get("hour"));
+        Map<String, Object> fraud = stage(latency, "FRAUD");
+        assertEquals(1L, fraud.get("count"));
+        assertEquals(2.0, (double) fraud.get("p999Ms"), 0.02);
+        assertEquals(0.3, (double) stage(latency, "SERIALIZATION").get("maxMs"), 0.003);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testPersistAppendsCompressedHistogramPerHourAndStage() throws Exception {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StageLatencyHistogram.class, COLLECTION))
+            .thenReturn(bulkOperations);
+        stageLatencyService.record(BidStage.AUCTION, 1_000_000L);
+        stageLatencyService.record(BidStage.AUCTION, 3_000_000L);
+
+        stageLatencyService.persist();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations).upsert(query.capture(), update.capture());
+        verify(bulkOperations).execute();
+        assertEquals("2024-01-15-10", query.getValue().getQueryObject().get("hour"));
+        assertEquals("AUCTION", query.getValue().getQueryObject().get("stage"));
+        Document updateObject = update.getValue().getUpdateObject();
+        assertEquals(2L, ((Document) updateObject.get("$inc")).get("totalCount"));
+        assertEquals("2024-01-15", ((Document) updateObject.get("$setOnInsert")).get("date"));
+        byte[] encoded = (byte[]) ((Document) updateObject.get("$push")).get("histograms");
+        Histogram histogram = StageLatencyRecorder.decode(encoded);
+        assertEquals(2, histogram.getTotalCount());
+        assertEquals(3_000_000L, histogram.getMaxValue(), 30_000L);
+
+        // 已写入的直方图不再重复写入
+        stageLatencyService.persist();
+        verify(bulkOperations).execute();
+    }
+
+    @Test
+    void testPersistRestoresHistogramsWhenWriteFails() {
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, StageLatencyHistogram.class, COLLECTION))
+            .thenReturn(bulkOperations);
+        when(bulkOperations.execute())
+            .thenThrow(new RuntimeException("Database error"))
+            .thenReturn(null);
+        stageLatencyService.record(BidStage.BUDGET, 1_000_000L);
+        assertDoesNotThrow(stageLatencyService::persist);
+
+        // 失败的直方图与之后的记录在下次写入时合并
+        stageLatencyService.record(BidStage.BUDGET, 1_000_000L);
+        stageLatencyService.persist();
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOperations, times(2)).upsert(any(Query.class), update.capture());
+        Document inc = (Document) update.getAllValues().get(1).getUpdateObject().get("$inc");
+        assertEquals(2L, inc.get("totalCount"));
+    }
+
+    @Test
+    void testHourLatencyMergesStoredAndPendingHistograms() {
+        Histogram stored = new Histogram(3);
+        stored.recordValue(10_000_000L);
+        Histogram otherInstance = new Histogram(3);
+        otherInstance.recordValue(20_000_000L);
+        StageLatencyHistogram document = StageLatencyHistogram.builder()
+            .hour("2024-01-15-10")
+            .stage("CANDIDATES")
+            .totalCount(2L)
+            .histograms(List.of(StageLatencyRecorder.encode(stored), StageLatencyRecorder.encode(otherInstance)))
+            .build();
+        when(mongoTemplate.find(any(Query.class), eq(StageLatencyHistogram.class), eq(COLLECTION)))
+            .thenReturn(List.of(document));
+        stageLatencyService.record(BidStage.CANDIDATES, 30_000_000L);
+
+        Map<String, Object> latency = stageLatencyService.getHourLatency("2024-01-15-10");
+
+        assertEquals(true, latency.get("current"));
+        Map<String, Object> candidates = stage(latency, "CANDIDATES");
+        assertEquals(3L, candidates.get("count"));
+        assertEquals(20.0, (double) candidates.get("p50Ms"), 0.2);
+        assertEquals(30.0, (double) candidates.get("maxMs"), 0.3);
+        assertEquals(0L, stage(latency, "AUCTION").get("count"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> stage(Map<String, Object> latency, String stage) {
+        return (Map<String, Object>) ((Map<String, Object>) latency.get("stages")).get(stage);
+    }
+}
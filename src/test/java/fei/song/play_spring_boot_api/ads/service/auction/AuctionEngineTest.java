@@ -0,0 +1,193 @@
+package fei.song.play_spring_boot_api.ads.service.auction;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.BidRequest;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.domain.model.Pmp;
+import fei.song.play_spring_boot_api.ads.infrastructure.openrtb.StreamingBidRequestParser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AuctionEngineTest {
+
+    private AdsConfiguration configuration;
+    private AuctionEngineSelector selector;
+    private Impression impression;
+
+    @BeforeEach
+    void setUp() {
+        configuration = new AdsConfiguration();
+        selector = new AuctionEngineSelector(configuration);
+        impression = Impression.builder().id("imp1").bidfloor(0.5).build();
+    }
+
+    @Test
+    void testSecondPrice_WinnerPaysRunnerUpPlusIncrement() {
+        BidCandidate low = candidate("low", 1.0, 1, 0.4);
+        BidCandidate high = candidate("high", 3.0, 1, 0.9);
+        BidCandidate mid = candidate("mid", 2.0, 1, 0.6);
+
+        BidCandidate winner = SecondPriceAuction.INSTANCE.selectWinner(List.of(low, high, mid), impression);
+
+        assertSame(high, winner);
+        assertEquals(Money.toMicros(2.01), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testSecondPrice_SingleBidderRaisedToFloor() {
+        BidCandidate only = candidate("only", 0.3, 1, 0.5);
+
+        BidCandidate winner = SecondPriceAuction.INSTANCE.selectWinner(List.of(only), impression);
+
+        assertEquals(Money.toMicros(0.5), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testSecondPrice_NeverChargesAboveOwnBid() {
+        // 高优先级候选出价低于第二名时，成交价不应超过自身出价
+        BidCandidate priority = candidate("priority", 1.0, 5, 0.1);
+        BidCandidate richer = candidate("richer", 4.0, 1, 0.9);
+
+        BidCandidate winner = SecondPriceAuction.INSTANCE.selectWinner(List.of(richer, priority), impression);
+
+        assertSame(priority, winner);
+        assertEquals(Money.toMicros(1.0), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testFirstPrice_WinnerPaysOwnBid() {
+        BidCandidate low = candidate("low", 1.0, 1, 0.4);
+        BidCandidate high = candidate("high", 3.0, 1, 0.9);
+
+        BidCandidate winner = FirstPriceAuction.INSTANCE.selectWinner(List.of(low, high), impression);
+
+        assertSame(high, winner);
+        assertEquals(Money.toMicros(3.0), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testRanking_PriorityThenScoreThenPriceAndStableOnTies() {
+        BidCandidate first = candidate("first", 2.0, 2, 0.5);
+        BidCandidate tie = candidate("tie", 2.0, 2, 0.5);
+        BidCandidate betterScore = candidate("betterScore", 1.0, 1, 0.99);
+
+        BidCandidate winner = FirstPriceAuction.INSTANCE.selectWinner(List.of(betterScore, first, tie), impression);
+
+        assertSame(first, winner);
+    }
+
+    @Test
+    void testEmptyCandidates() {
+        assertNull(SecondPriceAuction.INSTANCE.selectWinner(Collections.emptyList(), impression));
+        assertNull(FirstPriceAuction.INSTANCE.selectWinner(null, impression));
+    }
+
+    @Test
+    void testDealPriority_DealBeatsHigherOpenMarketBid() {
+        impression.setPmp(pmp(0, deal("deal1", 1.5, null)));
+        BidCandidate open = candidate("open", 5.0, 3, 0.9);
+        BidCandidate deal = candidate("deal", 2.0, 1, 0.1);
+        deal.setDealId("deal1");
+
+        BidCandidate winner = DealPriorityAuction.SECOND_PRICE.selectWinner(List.of(open, deal), impression);
+
+        assertSame(deal, winner);
+        // 交易层没有第二名，按交易底价与自身出价中的较大者成交
+        assertEquals(Money.toMicros(2.0), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testDealPriority_FixedPriceDealClearsAtDealFloor() {
+        impression.setPmp(pmp(0, deal("deal1", 1.5, 3)));
+        BidCandidate deal = candidate("deal", 2.5, 1, 0.5);
+        deal.setDealId("deal1");
+
+        BidCandidate winner = DealPriorityAuction.SECOND_PRICE.selectWinner(List.of(deal), impression);
+
+        assertEquals(Money.toMicros(1.5), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testDealPriority_BelowDealFloorOrUnknownDealExcluded() {
+        impression.setPmp(pmp(0, deal("deal1", 1.5, null)));
+        BidCandidate belowFloor = candidate("belowFloor", 1.0, 1, 0.5);
+        belowFloor.setDealId("deal1");
+        BidCandidate unknownDeal = candidate("unknownDeal", 9.0, 1, 0.5);
+        unknownDeal.setDealId("other");
+        BidCandidate open = candidate("open", 0.8, 1, 0.5);
+
+        BidCandidate winner = DealPriorityAuction.SECOND_PRICE.selectWinner(List.of(belowFloor, unknownDeal, open), impression);
+
+        assertSame(open, winner);
+        assertEquals(Money.toMicros(0.8), winner.getBidPriceMicros());
+    }
+
+    @Test
+    void testDealPriority_PrivateAuctionRejectsOpenMarket() {
+        impression.setPmp(pmp(1, deal("deal1", 1.5, null)));
+        BidCandidate open = candidate("open", 5.0, 1, 0.9);
+
+        assertNull(DealPriorityAuction.SECOND_PRICE.selectWinner(List.of(open), impression));
+    }
+
+    @Test
+    void testSelector_UsesRequestAuctionTypeThenConfig() {
+        BidRequest firstPriceRequest = BidRequest.builder().id("r1").auctionType(1).build();
+        BidRequest unspecified = BidRequest.builder().id("r2").build();
+
+        assertSame(FirstPriceAuction.INSTANCE, selector.select(firstPriceRequest, impression));
+        assertSame(SecondPriceAuction.INSTANCE, selector.select(unspecified, impression));
+
+        configuration.getBidding().setAuctionType(1);
+        assertSame(FirstPriceAuction.INSTANCE, selector.select(unspecified, impression));
+    }
+
+    @Test
+    void testSelector_PmpUsesDealPriority() {
+        BidRequest request = BidRequest.builder().id("r1").auctionType(1).build();
+        impression.setPmp(pmp(0, deal("deal1", 1.0, null)));
+
+        assertSame(DealPriorityAuction.FIRST_PRICE, selector.select(request, impression));
+    }
+
+    @Test
+    void testSelector_ParsedPmpUsesDealPriority() throws Exception {
+        String json = "{\"id\":\"r1\",\"imp\":[{\"id\":\"imp1\",\"bidfloor\":0.5,"
+            + "\"pmp\":{\"private_auction\":0,\"deals\":[{\"id\":\"deal1\",\"bidfloor\":1.5,\"wseat\":[\"seat1\"]}]}}]}";
+        BidRequest request = new StreamingBidRequestParser().parse(json.getBytes(StandardCharsets.UTF_8), 0, json.length());
+        Impression parsed = request.getImp().get(0);
+
+        AuctionEngine engine = selector.select(request, parsed);
+
+        assertSame(DealPriorityAuction.SECOND_PRICE, engine);
+        BidCandidate open = candidate("open", 5.0, 3, 0.9);
+        BidCandidate deal = candidate("deal", 2.0, 1, 0.1);
+        deal.setDealId("deal1");
+        assertSame(deal, engine.selectWinner(List.of(open, deal), parsed));
+    }
+
+    private static BidCandidate candidate(String adId, double bidPrice, int priority, double finalScore) {
+        return BidCandidate.builder()
+            .adId(adId)
+            .bidPriceMicros(Money.toMicros(bidPrice))
+            .priority(priority)
+            .finalScore(finalScore)
+            .build();
+    }
+
+    private static Pmp pmp(int privateAuction, Pmp.Deal... deals) {
+        return Pmp.builder().privateAuction(privateAuction).deals(List.of(deals)).build();
+    }
+
+    private static Pmp.Deal deal(String id, double bidfloor, Integer auctionType) {
+        return Pmp.Deal.builder().id(id).bidfloor(bidfloor).auctionType(auctionType).build();
+    }
+}
@@ -0,0 +1,302 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BudgetLeaseManagerTest {
+
+    private static final String CAMPAIGN = "campaign1";
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2024-05-15T10:00:00Z"), ZoneOffset.UTC);
+    private static final LocalDate TODAY = LocalDate.now(CLOCK);
+    private static final long CAP = Money.toMicros(100.0);
+    private static final long BID = Money.toMicros(0.5);
+
+    private InMemoryBudgetLeaseStore store;
+    private AdsConfiguration.BudgetLease config;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryBudgetLeaseStore();
+        config = new AdsConfiguration.BudgetLease();
+        config.setMinChunk(1.0);
+        config.setMaxChunkFraction(0.05);
+        config.setTtlMs(30_000);
+    }
+
+    @Test
+    void testReserveServedFromLocalLeaseWithoutStoreCalls() {
+        BudgetLeaseManager node = node("node-1");
+
+        // 首次没有租约：预扣失败并触发申领
+        assertFalse(node.tryReserve(CAMPAIGN, BID, CAP));
+        assertEquals(1, store.claimCalls());
+        assertEquals(Money.toMicros(1.0), node.getAvailableMicros(CAMPAIGN));
+
+        // 余额充足时预扣只操作本地余额
+        assertTrue(node.hasBudget(CAMPAIGN, BID, CAP));
+        assertTrue(node.tryReserve(CAMPAIGN, BID, CAP));
+        assertEquals(1, store.claimCalls());
+    }
+
+    @Test
+    void testConfirmAndReleaseReturnDifferenceToLease() {
+        BudgetLeaseManager node = node("node-1");
+        node.tryReserve(CAMPAIGN, BID, CAP);
+        long lease = node.getAvailableMicros(CAMPAIGN);
+
+        assertTrue(node.tryReserve(CAMPAIGN, BID, CAP));
+        node.confirm(CAMPAIGN, BID, Money.toMicros(0.2));
+        assertEquals(lease - Money.toMicros(0.2), node.getAvailableMicros(CAMPAIGN));
+
+        assertTrue(node.tryReserve(CAMPAIGN, BID, CAP));
+        node.release(CAMPAIGN, BID);
+        assertEquals(lease - Money.toMicros(0.2), node.getAvailableMicros(CAMPAIGN));
+
+        // 同步时上报实际消耗
+        node.syncAll();
+        assertEquals(Money.toMicros(0.2), store.spent(CAMPAIGN, TODAY));
+    }
+
+    @Test
+    void testSeveralNodesNeverExceedSharedDailyBudget() throws Exception {
+        int nodeCount = 4;
+        List<BudgetLeaseManager> nodes = new ArrayList<>();
+        for (int i = 0; i < nodeCount; i++) {
+            nodes.add(node("node-" + i));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(nodeCount);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> spentPerNode = new ArrayList<>();
+        for (BudgetLeaseManager node : nodes) {
+            spentPerNode.add(pool.submit(() -> {
+                start.await();
+                long spent = 0;
+                int consecutiveFailures = 0;
+                while (consecutiveFailures < 3) {
+                    if (node.tryReserve(CAMPAIGN, BID, CAP)) {
+                        node.confirm(CAMPAIGN, BID, BID);
+                        spent += BID;
+                        consecutiveFailures = 0;
+                    } else {
+                        consecutiveFailures++;
+                    }
+                }
+                return spent;
+            }));
+        }
+        start.countDown();
+
+        long totalSpent = 0;
+        for (Future<Long> future : spentPerNode) {
+            totalSpent += future.get(10, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        nodes.forEach(BudgetLeaseManager::shutdown);
+
+        assertEquals(CAP, totalSpent);
+        assertEquals(CAP, store.spent(CAMPAIGN, TODAY));
+    }
+
+    @Test
+    void testShutdownReturnsUnusedLease() {
+        config.setMinChunk(60.0);
+        config.setMaxChunkFraction(1.0);
+        BudgetLeaseManager first = node("node-1");
+        BudgetLeaseManager second = node("node-2");
+
+        first.tryReserve(CAMPAIGN, BID, CAP);
+        assertEquals(Money.toMicros(60.0), first.getAvailableMicros(CAMPAIGN));
+        second.tryReserve(CAMPAIGN, BID, CAP);
+        assertEquals(Money.toMicros(40.0), second.getAvailableMicros(CAMPAIGN));
+
+        first.shutdown();
+        assertEquals(0L, store.lease(CAMPAIGN, TODAY, "node-1"));
+
+        second.syncAll();
+        assertEquals(Money.toMicros(60.0), second.getAvailableMicros(CAMPAIGN));
+    }
+
+    @Test
+    void testExpiredLeaseReclaimedByOtherNodes() {
+        config.setMinChunk(100.0);
+        config.setMaxChunkFraction(1.0);
+        BudgetLeaseManager crashed = node("node-1");
+        BudgetLeaseManager survivor = node("node-2");
+
+        crashed.tryReserve(CAMPAIGN, BID, CAP);
+        assertEquals(CAP, crashed.getAvailableMicros(CAMPAIGN));
+        assertFalse(survivor.tryReserve(CAMPAIGN, BID, CAP));
+        assertEquals(0L, survivor.getAvailableMicros(CAMPAIGN));
+
+        // node-1 不再续期，租约过期后被回收
+        store.advanceMillis(config.getTtlMs() + 1);
+        survivor.syncAll();
+        assertEquals(CAP, survivor.getAvailableMicros(CAMPAIGN));
+    }
+
+    @Test
+    void testPartitionedNodeStopsSpendingBeforeLeaseIsReclaimed() {
+        config.setMinChunk(60.0);
+        config.setMaxChunkFraction(1.0);
+        config.setExpiryMarginMs(5_000);
+        MutableClock clock = new MutableClock(CLOCK.instant());
+        FailingBudgetLeaseStore partitionedStore = new FailingBudgetLeaseStore(store);
+        BudgetLeaseManager partitioned = new BudgetLeaseManager(partitionedStore, "node-1", config, Runnable::run, null, clock);
+        BudgetLeaseManager survivor = new BudgetLeaseManager(store, "node-2", config, Runnable::run, null, clock);
+
+        partitioned.tryReserve(CAMPAIGN, BID, CAP);
+        survivor.tryReserve(CAMPAIGN, BID, CAP);
+        long totalSpent = spend(partitioned, 20) + spendAll(survivor);
+        partitioned.syncAll();
+        assertEquals(Money.toMicros(50.0), partitioned.getAvailableMicros(CAMPAIGN));
+
+        // node-1 与共享存储断开，本地租约先于共享存储中的租约过期
+        partitionedStore.failing = true;
+        clock.advanceMillis(config.getTtlMs() - config.getExpiryMarginMs());
+        assertFalse(partitioned.tryReserve(CAMPAIGN, BID, CAP));
+        assertEquals(0L, partitioned.getAvailableMicros(CAMPAIGN));
+
+        // 共享存储中的租约过期后由 node-2 回收
+        clock.advanceMillis(config.getExpiryMarginMs() + 1);
+        store.advanceMillis(config.getTtlMs() + 1);
+        survivor.syncAll();
+        totalSpent += spendAll(survivor) + spendAll(partitioned);
+        assertEquals(CAP, totalSpent);
+
+        // 恢复连接后放弃过期的租约，不会再使用已被回收的额度
+        partitionedStore.failing = false;
+        partitioned.syncAll();
+        assertEquals(0L, store.lease(CAMPAIGN, TODAY, "node-1"));
+        totalSpent += spendAll(partitioned);
+        assertEquals(CAP, totalSpent);
+        assertEquals(CAP, store.spent(CAMPAIGN, TODAY));
+    }
+
+    @Test
+    void testLeaseSizeAdaptsToDemand() throws Exception {
+        BudgetLeaseManager node = node("node-1");
+        node.tryReserve(CAMPAIGN, BID, CAP);
+        long initialLease = node.getAvailableMicros(CAMPAIGN);
+        assertEquals(Money.toMicros(1.0), initialLease);
+
+        // 高速预扣后，同步时按速率申领更大的额度，上限为日预算的5%
+        for (int i = 0; i < 8; i++) {
+            assertTrue(node.tryReserve(CAMPAIGN, BID, CAP));
+            node.confirm(CAMPAIGN, BID, BID);
+        }
+        Thread.sleep(5);
+        node.syncAll();
+
+        assertEquals(Money.toMicros(5.0), node.getAvailableMicros(CAMPAIGN));
+    }
+
+    private static long spend(BudgetLeaseManager node, int bids) {
+        long spent = 0;
+        for (int i = 0; i < bids; i++) {
+            assertTrue(node.tryReserve(CAMPAIGN, BID, CAP));
+            node.confirm(CAMPAIGN, BID, BID);
+            spent += BID;
+        }
+        return spent;
+    }
+
+    private static long spendAll(BudgetLeaseManager node) {
+        long spent = 0;
+        int consecutiveFailures = 0;
+        while (consecutiveFailures < 3) {
+            if (node.tryReserve(CAMPAIGN, BID, CAP)) {
+                node.confirm(CAMPAIGN, BID, BID);
+                spent += BID;
+                consecutiveFailures = 0;
+            } else {
+                consecutiveFailures++;
+            }
+        }
+        node.syncAll();
+        return spent;
+    }
+
+    private BudgetLeaseManager node(String nodeId) {
+        // 补充在调用线程上同步执行，便于断言
+        return new BudgetLeaseManager(store, nodeId, config, Runnable::run, null, CLOCK);
+    }
+
+    /**
+     * 可模拟单个节点与共享存储断开的租约存储
+     */
+    private static final class FailingBudgetLeaseStore implements BudgetLeaseStore {
+        private final BudgetLeaseStore delegate;
+        private volatile boolean failing;
+
+        private FailingBudgetLeaseStore(BudgetLeaseStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public long claim(String campaignId, LocalDate day, String nodeId,
+                          long usedMicros, long requestedMicros, long capMicros, long ttlMillis) {
+            if (failing) {
+                throw new IllegalStateException("store unavailable");
+            }
+            return delegate.claim(campaignId, day, nodeId, usedMicros, requestedMicros, capMicros, ttlMillis);
+        }
+
+        @Override
+        public void release(String campaignId, LocalDate day, String nodeId, long usedMicros) {
+            if (failing) {
+                throw new IllegalStateException("store unavailable");
+            }
+            delegate.release(campaignId, day, nodeId, usedMicros);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        private void advanceMillis(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import fei.song.play_spring_boot_api.ads.benchmark.PacingSimulation;
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BudgetPacerTest {
+
+    private static final String CAMPAIGN = "campaign1";
+
+    private MutableClock clock;
+    private BudgetPacer pacer;
+
+    @BeforeEach
+    void setUp() {
+        // 当日剩余12小时
+        clock = new MutableClock(Instant.parse("2024-05-15T12:00:00Z"));
+        pacer = new BudgetPacer(new AdsConfiguration.Pacing(), clock);
+    }
+
+    @Test
+    void testTargetRateSpreadsRemainingBudgetOverRestOfDay() {
+        assertEquals(Money.toMicros(432.0) / 43_200, pacer.targetRateMicrosPerSecond(Money.toMicros(432.0)));
+        assertEquals(0L, pacer.targetRateMicrosPerSecond(0L));
+
+        // 临近午夜按最小剩余时间计算
+        clock.advanceSeconds(43_199);
+        assertEquals(Money.toMicros(300.0) / 300, pacer.targetRateMicrosPerSecond(Money.toMicros(300.0)));
+    }
+
+    @Test
+    void testOverspendThrottledUntilRepaidAtTargetRate() {
+        // 目标速率 0.01元/秒，桶容量60秒即0.6元
+        long remaining = Money.toMicros(0.01) * 43_200;
+        assertTrue(pacer.allows(CAMPAIGN, () -> remaining));
+
+        pacer.onSpend(CAMPAIGN, Money.toMicros(0.6));
+        assertTrue(pacer.allows(CAMPAIGN, () -> remaining), "桶满时可以消费一个突发额度");
+        pacer.onSpend(CAMPAIGN, Money.toMicros(0.1));
+        assertFalse(pacer.allows(CAMPAIGN, () -> remaining));
+
+        // 超出的0.1元按0.01元/秒需要10秒还清
+        clock.advanceSeconds(9);
+        assertFalse(pacer.allows(CAMPAIGN, () -> remaining));
+        clock.advanceSeconds(1);
+        assertTrue(pacer.allows(CAMPAIGN, () -> remaining));
+        assertEquals(1, pacer.getStatistics().get("pacedCampaigns"));
+    }
+
+    @Test
+    void testExhaustedBudgetThrottlesCampaign() {
+        assertFalse(pacer.allows(CAMPAIGN, () -> 0L));
+        assertEquals(0L, pacer.getTargetRate(CAMPAIGN));
+    }
+
+    @Test
+    void testSimulatedDaySpendTracksTarget() {
+        PacingSimulation.Result unpaced = PacingSimulation.simulate(false);
+        assertEquals(0L, unpaced.hourlySpendMicros()[12], "不做匀速投放时预算在上午耗尽");
+
+        PacingSimulation.Result paced = PacingSimulation.simulate(true);
+        long hourlyTarget = paced.dailyBudgetMicros() / 24;
+        for (int hour = 0; hour < 24; hour++) {
+            long spend = paced.hourlySpendMicros()[hour];
+            assertTrue(Math.abs(spend - hourlyTarget) < hourlyTarget / 10,
+                "第" + hour + "小时消费偏离目标: " + Money.toDouble(spend));
+        }
+        assertTrue(paced.totalSpendMicros() > paced.dailyBudgetMicros() * 99 / 100);
+        assertTrue(paced.totalSpendMicros() <= paced.dailyBudgetMicros());
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        private void advanceSeconds(long seconds) {
+            millis += seconds * 1000L;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
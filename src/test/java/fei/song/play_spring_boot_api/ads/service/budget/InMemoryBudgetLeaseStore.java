@@ -0,0 +1,78 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 测试用的预算租约存储，语义与RedisBudgetLeaseStore的Lua脚本一致，所有操作串行执行
+ */
+class InMemoryBudgetLeaseStore implements BudgetLeaseStore {
+
+    private final Map<String, Record> records = new HashMap<>();
+    private final AtomicLong nowMillis = new AtomicLong(1_000_000L);
+    private final AtomicLong claimCalls = new AtomicLong();
+
+    @Override
+    public synchronized long claim(String campaignId, LocalDate day, String nodeId,
+                                   long usedMicros, long requestedMicros, long capMicros, long ttlMillis) {
+        claimCalls.incrementAndGet();
+        Record record = records.computeIfAbsent(campaignId + ":" + day, k -> new Record());
+        long now = nowMillis.get();
+
+        record.spent += usedMicros;
+        record.leases.merge(nodeId, -usedMicros, Long::sum);
+
+        long outstanding = 0;
+        Iterator<Map.Entry<String, Long>> it = record.leases.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> lease = it.next();
+            Long expiresAt = record.expiries.get(lease.getKey());
+            if (!lease.getKey().equals(nodeId) && expiresAt != null && expiresAt < now) {
+                it.remove();
+                record.expiries.remove(lease.getKey());
+            } else if (lease.getValue() > 0) {
+                outstanding += lease.getValue();
+            }
+        }
+
+        long grant = Math.max(0L, Math.min(requestedMicros, capMicros - record.spent - outstanding));
+        record.leases.merge(nodeId, grant, Long::sum);
+        record.expiries.put(nodeId, now + ttlMillis);
+        return grant;
+    }
+
+    @Override
+    public synchronized void release(String campaignId, LocalDate day, String nodeId, long usedMicros) {
+        Record record = records.computeIfAbsent(campaignId + ":" + day, k -> new Record());
+        record.spent += usedMicros;
+        record.leases.remove(nodeId);
+        record.expiries.remove(nodeId);
+    }
+
+    synchronized long spent(String campaignId, LocalDate day) {
+        Record record = records.get(campaignId + ":" + day);
+        return record != null ? record.spent : 0L;
+    }
+
+    synchronized long lease(String campaignId, LocalDate day, String nodeId) {
+        Record record = records.get(campaignId + ":" + day);
+        return record != null ? record.leases.getOrDefault(nodeId, 0L) : 0L;
+    }
+
+    long claimCalls() {
+        return claimCalls.get();
+    }
+
+    void advanceMillis(long millis) {
+        nowMillis.addAndGet(millis);
+    }
+
+    private static final class Record {
+        private long spent;
+        private final Map<String, Long> leases = new HashMap<>();
+        private final Map<String, Long> expiries = new HashMap<>();
+    }
+}
@@ -0,0 +1,136 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpendJournalTest {
+
+    private static final Instant NOW = Instant.parse("2024-05-15T10:00:00Z");
+    private static final Clock CLOCK = Clock.fixed(NOW, ZoneOffset.UTC);
+    private static final long EXPIRES_AT = NOW.toEpochMilli() + 300_000L;
+
+    @TempDir
+    Path directory;
+
+    private AdsConfiguration.BudgetJournal config;
+
+    @BeforeEach
+    void setUp() {
+        config = new AdsConfiguration.BudgetJournal();
+        config.setSegmentBytes(64 * 1024);
+    }
+
+    @Test
+    void testReplayAfterCrashRestoresSpendAndOpenReservations() throws IOException {
+        SpendJournal journal = SpendJournal.open(directory, config, CLOCK, null);
+        journal.recordReserve("bid1", "campaign1", Money.toMicros(0.5), EXPIRES_AT);
+        journal.recordReserve("bid2", "campaign1", Money.toMicros(0.5), EXPIRES_AT);
+        journal.recordReserve("bid3", "campaign2", Money.toMicros(0.7), EXPIRES_AT);
+        journal.recordConfirm("bid1", "campaign1", Money.toMicros(0.5), Money.toMicros(0.3));
+        journal.recordRelease("bid2", "campaign1", Money.toMicros(0.5));
+        journal.flush();
+
+        // 不关闭日志，模拟进程崩溃后重启
+        SpendJournalState state = SpendJournal.open(directory, config, CLOCK, null).takeRecoveredState();
+
+        Map<String, SpendJournalState.CampaignSpend> spend = campaigns(state);
+        assertEquals(Money.toMicros(0.3), spend.get("campaign1").getDailySpentMicros());
+        assertEquals(Money.toMicros(0.3), spend.get("campaign1").getTotalSpentMicros());
+        assertEquals(LocalDate.of(2024, 5, 15), spend.get("campaign1").getDay());
+        assertFalse(spend.containsKey("campaign2"));
+        assertEquals(List.of("bid3"), state.getReservations().stream().map(SpendJournalState.OpenReservation::getBidId).toList());
+    }
+
+    @Test
+    void testTornTailRecordIsIgnored() throws IOException {
+        SpendJournal journal = SpendJournal.open(directory, config, CLOCK, null);
+        journal.recordReserve("bid1", "campaign1", Money.toMicros(0.5), EXPIRES_AT);
+        journal.recordConfirm("bid1", "campaign1", Money.toMicros(0.5), Money.toMicros(0.5));
+        journal.recordConfirm("bid2", "campaign1", Money.toMicros(0.5), Money.toMicros(0.2));
+        int end = (int) journal.getStatistics().get("activeSegmentBytes");
+        journal.flush();
+
+        // 最后一条记录只写了一半
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0x7f}), end - 6);
+        }
+
+        SpendJournalState state = SpendJournal.open(directory, config, CLOCK, null).takeRecoveredState();
+        assertEquals(Money.toMicros(0.5), campaigns(state).get("campaign1").getTotalSpentMicros());
+    }
+
+    @Test
+    void testSegmentsCompactedIntoSingleCheckpoint() throws IOException {
+        SpendJournal journal = SpendJournal.open(directory, config, CLOCK, null);
+        // 每个分段只能容纳数百条记录，写入过程中多次切换分段并压缩
+        for (int i = 0; i < 5_000; i++) {
+            journal.recordReserve("bid" + i, "campaign" + (i % 10), Money.toMicros(0.01), EXPIRES_AT);
+            journal.recordConfirm("bid" + i, "campaign" + (i % 10), Money.toMicros(0.01), Money.toMicros(0.01));
+        }
+        journal.recordReserve("open", "campaign1", Money.toMicros(0.5), EXPIRES_AT);
+        assertTrue((long) journal.getStatistics().get("checkpoints") > 1);
+        journal.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.count(), "关闭后只保留一个检查点");
+        }
+        SpendJournalState state = SpendJournal.open(directory, config, CLOCK, null).takeRecoveredState();
+        assertEquals(10, state.getCampaigns().size());
+        for (SpendJournalState.CampaignSpend spend : state.getCampaigns()) {
+            assertEquals(Money.toMicros(5.0), spend.getTotalSpentMicros());
+        }
+        assertEquals(1, state.getReservations().size());
+    }
+
+    @Test
+    void testExpiredReservationsAndPreviousDaySpendAfterRestart() throws IOException {
+        SpendJournal journal = SpendJournal.open(directory, config, CLOCK, null);
+        journal.recordReserve("bid1", "campaign1", Money.toMicros(0.5), EXPIRES_AT);
+        journal.recordConfirm("bid0", "campaign1", Money.toMicros(0.5), Money.toMicros(0.4));
+        journal.flush();
+
+        Clock nextDay = Clock.offset(CLOCK, Duration.ofDays(1));
+        SpendJournal reopened = SpendJournal.open(directory, config, nextDay, null);
+        reopened.recordConfirm("bid2", "campaign1", Money.toMicros(0.5), Money.toMicros(0.1));
+        reopened.close();
+
+        SpendJournalState state = SpendJournal.open(directory, config, nextDay, null).takeRecoveredState();
+        SpendJournalState.CampaignSpend spend = campaigns(state).get("campaign1");
+        assertTrue(state.getReservations().isEmpty(), "过期预扣在回放时丢弃");
+        assertEquals(LocalDate.of(2024, 5, 16), spend.getDay());
+        assertEquals(Money.toMicros(0.1), spend.getDailySpentMicros());
+        assertEquals(Money.toMicros(0.5), spend.getTotalSpentMicros());
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".journal")).sorted().toList();
+        }
+    }
+
+    private static Map<String, SpendJournalState.CampaignSpend> campaigns(SpendJournalState state) {
+        return state.getCampaigns().stream()
+            .collect(Collectors.toMap(SpendJournalState.CampaignSpend::getCampaignId, spend -> spend));
+    }
+}
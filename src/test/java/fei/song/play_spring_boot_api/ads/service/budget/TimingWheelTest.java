@@ -0,0 +1,69 @@
+package fei.song.play_spring_boot_api.ads.service.budget;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long TICK = 100L;
+
+    @Test
+    void testExpiresWithinOneTickOfDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, START);
+        wheel.schedule("a", START + 250);
+
+        assertTrue(wheel.advance(START + 199).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(START + 300));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testCancelledTimeoutNeverFires() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, START);
+        TimingWheel.Timeout<String> timeout = wheel.schedule("a", START + 500);
+        wheel.schedule("b", START + 500);
+
+        assertTrue(wheel.cancel(timeout));
+        assertFalse(wheel.cancel(timeout));
+        assertEquals(List.of("b"), wheel.advance(START + 1_000));
+    }
+
+    @Test
+    void testPastDeadlineFiresOnNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, START);
+        wheel.schedule("late", START - 10_000);
+
+        assertEquals(List.of("late"), wheel.advance(START + TICK));
+    }
+
+    @Test
+    void testLongDeadlinesCascadeThroughHigherLevels() {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, START);
+        Random random = new Random(7L);
+        List<Long> deadlines = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            // 覆盖第0层到第2层：最长约 256 * 256 * 2 个tick
+            long deadline = START + (long) (random.nextDouble() * TICK * 256 * 256 * 2);
+            deadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        long now = START;
+        int fired = 0;
+        while (wheel.size() > 0) {
+            now += TICK * 37;
+            for (long deadline : wheel.advance(now)) {
+                assertTrue(deadline <= now, "不能提前到期");
+                assertTrue(deadline > now - TICK * 38, "到期延迟不能超过一次推进间隔");
+                fired++;
+            }
+        }
+        assertEquals(deadlines.size(), fired);
+    }
+}
@@ -0,0 +1,138 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.benchmark.BenchmarkCampaigns;
+import fei.song.play_spring_boot_api.ads.domain.model.Money;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.service.OpenRTBDataService;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CampaignTargetingIndex 单体测试
+ */
+class CampaignTargetingIndexTest {
+
+    private final OpenRTBDataService openRTBDataService =
+        new OpenRTBDataService(null, null, null, null, null, null, null);
+
+    @Test
+    void testMatchesLinearFilter() {
+        List<CampaignEntity> campaigns = BenchmarkCampaigns.generate(2000, 7L);
+        CampaignTargetingIndex index = CampaignTargetingIndex.build(campaigns);
+
+        for (String country : BenchmarkCampaigns.COUNTRIES) {
+            for (int deviceType = 1; deviceType <= 7; deviceType++) {
+                List<CampaignEntity> expected = openRTBDataService.filterMatchingCampaigns(
+                    campaigns, country, deviceType, BigDecimal.valueOf(2.5));
+                List<CampaignEntity> actual = index.match(country, deviceType, null, null, Money.toMicros(2.5));
+                assertEquals(expected, actual, "country=" + country + ", deviceType=" + deviceType);
+            }
+        }
+    }
+
+    @Test
+    void testUnrestrictedAndExcludedCountries() {
+        CampaignEntity open = campaign("open", null, null, null);
+        CampaignEntity usOnly = campaign("usOnly", List.of("US"), null, null);
+        CampaignEntity notUs = campaign("notUs", null, List.of("US"), null);
+        CampaignTargetingIndex index = CampaignTargetingIndex.build(List.of(open, usOnly, notUs));
+
+        assertEquals(List.of(open, usOnly), index.match("US", 1, null, null, Money.toMicros(0.0)));
+        assertEquals(List.of(open, notUs), index.match("JP", 1, null, null, Money.toMicros(0.0)));
+        assertEquals(List.of(open, notUs), index.match(null, 1, null, null, Money.toMicros(0.0)));
+    }
+
+    @Test
+    void testAlpha3CountryMatchesAlpha2Targeting() {
+        CampaignEntity usOnly = campaign("usOnly", List.of("US"), null, null);
+        CampaignEntity notCn = campaign("notCn", null, List.of("chn"), null);
+        CampaignTargetingIndex index = CampaignTargetingIndex.build(List.of(usOnly, notCn));
+
+        assertEquals(List.of(usOnly, notCn), index.match("USA", 1, null, null, Money.toMicros(0.0)));
+        assertEquals(List.of(usOnly, notCn), index.match("us", 1, null, null, Money.toMicros(0.0)));
+        assertTrue(index.match("CN", 1, null, null, Money.toMicros(0.0)).isEmpty());
+        assertEquals(List.of(notCn), index.match("XKX", 1, null, null, Money.toMicros(0.0)));
+    }
+
+    @Test
+    void testOsAndAgeBandFiltering() {
+        CampaignEntity iosAdults = campaign("iosAdults", null, null, CampaignEntity.Targeting.builder()
+            .device(CampaignEntity.DeviceTargeting.builder().operatingSystems(List.of("iOS")).build())
+            .audience(CampaignEntity.AudienceTargeting.builder()
+                .ageRange(CampaignEntity.AgeRange.builder().min(25).max(40).build())
+                .build())
+            .build());
+        CampaignEntity open = campaign("open", null, null, null);
+        CampaignTargetingIndex index = CampaignTargetingIndex.build(List.of(iosAdults, open));
+
+        assertEquals(List.of(iosAdults, open), index.match("US", 1, "ios", 30, Money.toMicros(0.0)));
+        assertEquals(List.of(open), index.match("US", 1, "Android", 30, Money.toMicros(0.0)));
+        assertEquals(List.of(open), index.match("US", 1, "iOS", 16, Money.toMicros(0.0)));
+        assertEquals(List.of(iosAdults, open), index.match("US", 1, null, null, Money.toMicros(0.0)));
+    }
+
+    @Test
+    void testMaxBidBelowFloorIsSkipped() {
+        CampaignEntity cheap = campaign("cheap", null, null, null);
+        cheap.getBidding().setMaxBid(new BigDecimal("0.5"));
+        CampaignEntity noBidding = CampaignEntity.builder().campaignId("noBidding").build();
+        CampaignTargetingIndex index = CampaignTargetingIndex.build(List.of(cheap, noBidding));
+
+        assertTrue(index.match("US", 1, null, null, Money.toMicros(1.0)).isEmpty());
+        assertEquals(List.of(cheap), index.match("US", 1, null, null, Money.toMicros(0.1)));
+    }
+
+    @Test
+    void testIneligibleCampaignsExcludedFromMatch() {
+        List<CampaignEntity> campaigns = BenchmarkCampaigns.generate(200, 11L);
+        CampaignTargetingIndex index = CampaignTargetingIndex.build(campaigns);
+        EligibleCampaigns eligible = new EligibleCampaigns(1L, campaigns.size());
+        assertEquals(200, eligible.cardinality());
+        for (int ordinal = 0; ordinal < campaigns.size(); ordinal += 3) {
+            eligible.clear(ordinal);
+        }
+
+        for (String country : BenchmarkCampaigns.COUNTRIES) {
+            List<CampaignEntity> expected = index.match(country, 1, null, null, Money.toMicros(1.0)).stream()
+                .filter(campaign -> campaigns.indexOf(campaign) % 3 != 0)
+                .toList();
+            assertEquals(expected, index.match(country, 1, null, null, Money.toMicros(1.0), eligible));
+        }
+
+        eligible.set(0);
+        assertTrue(eligible.get(0));
+        assertFalse(eligible.get(3));
+        // 与索引不一致的位图不做限制
+        assertEquals(index.match("US", 1, null, null, 0L),
+            index.match("US", 1, null, null, 0L, new EligibleCampaigns(1L, 10)));
+    }
+
+    @Test
+    void testAgeBandBoundaries() {
+        assertEquals(0, CampaignTargetingIndex.ageBand(17));
+        assertEquals(1, CampaignTargetingIndex.ageBand(18));
+        assertEquals(2, CampaignTargetingIndex.ageBand(34));
+        assertEquals(6, CampaignTargetingIndex.ageBand(90));
+    }
+
+    private CampaignEntity campaign(String id, List<String> included, List<String> excluded,
+                                    CampaignEntity.Targeting targeting) {
+        if (targeting == null && (included != null || excluded != null)) {
+            targeting = CampaignEntity.Targeting.builder()
+                .geo(CampaignEntity.GeoTargeting.builder()
+                    .includedCountries(included)
+                    .excludedCountries(excluded)
+                    .build())
+                .build();
+        }
+        return CampaignEntity.builder()
+            .campaignId(id)
+            .targeting(targeting)
+            .bidding(CampaignEntity.Bidding.builder().maxBid(new BigDecimal("5")).build())
+            .build();
+    }
+}
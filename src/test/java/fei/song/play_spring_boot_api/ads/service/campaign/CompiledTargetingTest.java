@@ -0,0 +1,76 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CompiledTargeting 单体测试
+ */
+class CompiledTargetingTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 5, 14, 30); // 周三
+
+    @Test
+    void testUnrestrictedCampaignMatchesEverything() {
+        CompiledTargeting targeting = CompiledTargeting.compile(CampaignEntity.builder().campaignId("c1").build());
+
+        assertTrue(targeting.matchesTime(3, 14, NOW));
+        assertTrue(targeting.matchesUser(30, "m", Set.of("sports")));
+        assertEquals(-1, targeting.getDaysOfWeekMask());
+        assertEquals(-1, targeting.getHoursOfDayMask());
+    }
+
+    @Test
+    void testDayAndHourMasks() {
+        CompiledTargeting targeting = CompiledTargeting.compile(campaign(
+            CampaignEntity.TimeTargeting.builder().daysOfWeek(List.of(1, 3)).hoursOfDay(List.of(14, 15)).build(),
+            null, null));
+
+        assertTrue(targeting.matchesTime(3, 14, NOW));
+        assertFalse(targeting.matchesTime(2, 14, NOW));
+        assertFalse(targeting.matchesTime(3, 16, NOW));
+    }
+
+    @Test
+    void testScheduleWindow() {
+        CompiledTargeting targeting = CompiledTargeting.compile(campaign(null, null,
+            CampaignEntity.Schedule.builder().startDate(NOW.minusDays(1)).endDate(NOW.plusDays(1)).build()));
+
+        assertTrue(targeting.matchesTime(3, 14, NOW));
+        assertFalse(targeting.matchesTime(3, 14, NOW.minusDays(2)));
+        assertFalse(targeting.matchesTime(3, 14, NOW.plusDays(2)));
+    }
+
+    @Test
+    void testAudienceRules() {
+        CompiledTargeting targeting = CompiledTargeting.compile(campaign(null,
+            CampaignEntity.AudienceTargeting.builder()
+                .ageRange(CampaignEntity.AgeRange.builder().min(25).max(40).build())
+                .genders(List.of("F"))
+                .interests(List.of("Sports", "Travel"))
+                .build(),
+            null));
+
+        assertTrue(targeting.matchesUser(30, "f", Set.of("travel")));
+        assertFalse(targeting.matchesUser(20, "f", Set.of("travel")));
+        assertFalse(targeting.matchesUser(30, "m", Set.of("travel")));
+        assertFalse(targeting.matchesUser(30, "f", Set.of("cooking")));
+        // 缺失的用户属性不参与判断
+        assertTrue(targeting.matchesUser(null, null, Set.of()));
+    }
+
+    private CampaignEntity campaign(CampaignEntity.TimeTargeting time, CampaignEntity.AudienceTargeting audience,
+                                    CampaignEntity.Schedule schedule) {
+        return CampaignEntity.builder()
+            .campaignId("c1")
+            .targeting(CampaignEntity.Targeting.builder().time(time).audience(audience).build())
+            .schedule(schedule)
+            .build();
+    }
+}
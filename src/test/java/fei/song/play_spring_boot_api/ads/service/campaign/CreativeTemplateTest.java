@@ -0,0 +1,101 @@
+package fei.song.play_spring_boot_api.ads.service.campaign;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Banner;
+import fei.song.play_spring_boot_api.ads.domain.model.BidCandidate;
+import fei.song.play_spring_boot_api.ads.domain.model.Impression;
+import fei.song.play_spring_boot_api.ads.infrastructure.persistence.entity.CampaignEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * CreativeTemplate / MacroTemplate 单体测试
+ */
+class CreativeTemplateTest {
+
+    @Test
+    void testForCampaign_OneTemplatePerCreative() {
+        CampaignEntity campaign = CampaignEntity.builder()
+            .campaignId("c1")
+            .advertiserId("acme")
+            .creatives(List.of(
+                CampaignEntity.Creative.builder().creativeId("cr1").html("<img src=a>").build(),
+                CampaignEntity.Creative.builder().creativeId("cr2").build()))
+            .build();
+
+        List<CreativeTemplate> templates = CreativeTemplate.forCampaign(campaign);
+
+        assertEquals(2, templates.size());
+        assertEquals("cr1", templates.get(0).getCreativeId());
+        assertEquals("<img src=a>", templates.get(0).getAdMarkup().toString());
+        assertEquals("<div>广告内容</div>", templates.get(1).getAdMarkup().toString());
+        assertEquals(List.of("acme.com"), templates.get(0).getAdvertiserDomains());
+        assertEquals("https://acme.com/win", templates.get(0).getNotificationUrl());
+    }
+
+    @Test
+    void testForCampaign_DefaultTemplateWithoutCreatives() {
+        CampaignEntity campaign = CampaignEntity.builder().campaignId("c1").advertiserId("acme").build();
+
+        List<CreativeTemplate> templates = CreativeTemplate.forCampaign(campaign);
+
+        assertEquals(1, templates.size());
+        BidCandidate candidate = templates.get(0).newCandidate("req1", Impression.builder().id("imp1").build());
+        assertEquals("ad_c1", candidate.getAdId());
+        assertEquals("default_creative", candidate.getCreativeId());
+        assertEquals(300, candidate.getWidth());
+        assertEquals(250, candidate.getHeight());
+    }
+
+    @Test
+    void testNewCandidate_SharesPrebuiltValues() {
+        CreativeTemplate template = CreativeTemplate.forCampaign(CampaignEntity.builder()
+            .campaignId("c1")
+            .advertiserId("acme")
+            .creatives(List.of(CampaignEntity.Creative.builder().creativeId("cr1").html("<div/>").build()))
+            .build()).get(0);
+        Impression impression = Impression.builder()
+            .id("imp1")
+            .banner(Banner.builder().w(728).h(90).build())
+            .build();
+
+        BidCandidate first = template.newCandidate("req1", impression);
+        BidCandidate second = template.newCandidate("req2", impression);
+
+        assertEquals("imp1", first.getImpressionId());
+        assertEquals("cr1", first.getAdId());
+        assertEquals("c1", first.getCampaignId());
+        assertEquals(728, first.getWidth());
+        assertEquals(90, first.getHeight());
+        assertEquals("seat_acme", first.getSeatId());
+        assertEquals("https://acme.com/click", first.getClickUrl());
+        assertEquals("https://acme.com/impression", first.getImpressionUrl());
+        assertEquals(List.of("IAB1", "IAB2"), first.getCategories());
+        assertTrue(first.getPassedFraudCheck());
+        assertSame(first.getAdMarkup(), second.getAdMarkup());
+        assertSame(first.getAdvertiserDomains(), second.getAdvertiserDomains());
+        assertSame(first.getNotificationUrl(), second.getNotificationUrl());
+    }
+
+    @Test
+    void testMacroTemplate_RendersBidderMacrosAndKeepsExchangeMacros() {
+        MacroTemplate template = MacroTemplate.parse(
+            "<img src=\"https://t.example/?a=${AUCTION_ID}&i=${AUCTION_IMP_ID}&p=${AUCTION_PRICE}\">");
+
+        assertEquals(List.of("AUCTION_ID", "AUCTION_IMP_ID", "AUCTION_PRICE"), template.getMacros());
+        assertTrue(template.hasMacro("AUCTION_PRICE"));
+        assertEquals("<img src=\"https://t.example/?a=req1&i=imp1&p=${AUCTION_PRICE}\">", template.render("req1", "imp1"));
+    }
+
+    @Test
+    void testMacroTemplate_StaticTemplateReturnsSameInstance() {
+        String source = "<div>price=${AUCTION_PRICE}</div>";
+        MacroTemplate template = MacroTemplate.parse(source);
+
+        assertSame(source, template.render("req1", "imp1"));
+        assertEquals("plain", MacroTemplate.parse("plain").render("r", "i"));
+        assertEquals("broken ${AUCTION_ID", MacroTemplate.parse("broken ${AUCTION_ID").render("r", "i"));
+    }
+}
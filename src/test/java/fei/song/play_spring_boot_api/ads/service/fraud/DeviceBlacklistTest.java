@@ -0,0 +1,91 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import fei.song.play_spring_boot_api.ads.domain.model.Device;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceBlacklistTest {
+
+    @Test
+    void testFingerprintCoversAllFields() {
+        long fingerprint = DeviceFingerprint.of(device("Apple", "iPhone", 4, "17.1"));
+
+        assertEquals(fingerprint, DeviceFingerprint.of(device("Apple", "iPhone", 4, "17.1")));
+        assertNotEquals(fingerprint, DeviceFingerprint.of(device("Apple", "iPhone", 4, "17.2")));
+        assertNotEquals(fingerprint, DeviceFingerprint.of(device("Apple", "iPhone", 5, "17.1")));
+        assertNotEquals(fingerprint, DeviceFingerprint.of(device("Apple", "iPhone", null, "17.1")));
+        assertNotEquals(DeviceFingerprint.of(device("", "iPhone", 4, "17.1")),
+            DeviceFingerprint.of(device(null, "iPhone", 4, "17.1")), "null与空串可区分");
+        assertNotEquals(fingerprint, DeviceFingerprint.of(device("AppleiPhone", "", 4, "17.1")), "字段边界参与哈希");
+        assertEquals(16, DeviceFingerprint.toHex(fingerprint).length());
+    }
+
+    @Test
+    void testFingerprintsDoNotCollideAcrossMillionDevices() {
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 1_000_000; i++) {
+            Device device = Device.builder().ua("Mozilla/5.0 build " + (i % 1000)).ip("10." + (i >>> 16) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF))
+                .make("Samsung").model("SM-" + (i % 97)).os("Android").osv("14").build();
+            assertTrue(seen.add(DeviceFingerprint.of(device)));
+        }
+    }
+
+    @Test
+    void testAddGrowAndContains() {
+        DeviceBlacklist blacklist = new DeviceBlacklist();
+        Random random = new Random(3);
+        long[] members = new long[50_000];
+        for (int i = 0; i < members.length; i++) {
+            members[i] = random.nextLong() | 1L;
+            assertTrue(blacklist.add(members[i]));
+        }
+        assertFalse(blacklist.add(members[0]));
+        assertEquals(members.length, blacklist.size());
+        for (long member : members) {
+            assertTrue(blacklist.contains(member));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            long other = random.nextLong() | 1L;
+            assertFalse(blacklist.contains(other));
+            if (blacklist.mightContain(other)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 3_000, "布隆过滤器误判率过高: " + falsePositives);
+        assertTrue(blacklist.getMemoryBytes() / blacklist.size() < 40);
+        assertThrows(IllegalArgumentException.class, () -> blacklist.add(0L));
+    }
+
+    @Test
+    void testLoadFromFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("devices.txt");
+        Files.writeString(file, """
+            # 设备指纹
+            0x00000000000000ff
+            a1b2c3d4e5f60718  # 注释
+            not-hex
+            """);
+        DeviceBlacklist blacklist = new DeviceBlacklist().addAll(file);
+
+        assertEquals(2, blacklist.size());
+        assertEquals(1, blacklist.getInvalidCount());
+        assertTrue(blacklist.contains(0xFFL));
+        assertTrue(blacklist.contains(0xA1B2C3D4E5F60718L));
+    }
+
+    private static Device device(String make, String model, Integer devicetype, String osv) {
+        return Device.builder().ua("Mozilla/5.0").ip("1.2.3.4").make(make).model(model).devicetype(devicetype)
+            .os("iOS").osv(osv).build();
+    }
+}
@@ -0,0 +1,69 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FraudVerdictCacheTest {
+
+    private static final String UA = "Mozilla/5.0 (Linux; Android 14) Chrome/120.0 Mobile";
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void testHitRequiresSameKeyGenerationAndUnexpiredEntry() {
+        FraudVerdictCache cache = new FraudVerdictCache(64, 1000);
+        long generation = cache.generation();
+        cache.put(verdict("192.0.2.1", null, "news.example", generation, FraudVerdictCache.IP_BLACKLISTED, 0.8), 0L);
+
+        FraudVerdictCache.Verdict hit = cache.get("192.0.2.1", null, UA, "news.example", generation, SECOND / 2);
+        assertNotNull(hit);
+        assertTrue(hit.has(FraudVerdictCache.IP_BLACKLISTED));
+        assertFalse(hit.has(FraudVerdictCache.USER_AGENT_SUSPICIOUS));
+        assertEquals(0.8, hit.getRiskScore());
+        assertEquals("USA", hit.getLocatedCountry());
+
+        assertNull(cache.get("192.0.2.1", "2001:db8::1", UA, "news.example", generation, SECOND / 2), "IPv6不同视为不同的键");
+        assertNull(cache.get("192.0.2.1", null, UA, null, generation, SECOND / 2));
+        assertNull(cache.get("192.0.2.1", null, UA, "news.example", generation, SECOND), "过期");
+        assertEquals(1L, cache.getStatistics().get("hits"));
+        assertEquals(3L, cache.getStatistics().get("misses"));
+        assertEquals(1L, cache.getStatistics().get("expirations"));
+    }
+
+    @Test
+    void testInvalidateAllMakesOlderGenerationsStale() {
+        FraudVerdictCache cache = new FraudVerdictCache(64, 10_000);
+        long before = cache.generation();
+        cache.put(verdict("192.0.2.2", null, null, before, 0, 0.0), 0L);
+
+        cache.invalidateAll();
+        assertNull(cache.get("192.0.2.2", null, UA, null, cache.generation(), 1L));
+        // 计算期间发生失效时，按旧代数写入的结果不会被新代数的查找命中
+        cache.put(verdict("192.0.2.2", null, null, before, 0, 0.0), 2L);
+        assertNull(cache.get("192.0.2.2", null, UA, null, cache.generation(), 3L));
+        cache.put(verdict("192.0.2.2", null, null, cache.generation(), 0, 0.0), 4L);
+        assertNotNull(cache.get("192.0.2.2", null, UA, null, cache.generation(), 5L));
+        assertEquals(1L, cache.getStatistics().get("invalidations"));
+    }
+
+    @Test
+    void testFullSetEvictsOldestEntryAndTracksSavedTime() {
+        // 容量4即一个4路组，所有键落在同一组
+        FraudVerdictCache cache = new FraudVerdictCache(4, 60_000);
+        for (int i = 0; i < 5; i++) {
+            cache.put(verdict("192.0.2." + i, null, null, 0L, 0, 0.0), i);
+        }
+        assertNull(cache.get("192.0.2.0", null, UA, null, 0L, 10L), "最早写入的一路被淘汰");
+        for (int i = 1; i < 5; i++) {
+            assertNotNull(cache.get("192.0.2." + i, null, UA, null, 0L, 10L));
+        }
+        assertEquals(1L, cache.getStatistics().get("evictions"));
+        assertEquals(0.8, (double) cache.getStatistics().get("hitRatio"), 1e-9);
+        // 每次命中节省当初的计算耗时
+        assertEquals(4L * 3, cache.getStatistics().get("savedMillis"));
+    }
+
+    private static FraudVerdictCache.Verdict verdict(String ip, String ipv6, String domain, long generation, int signals, double score) {
+        return new FraudVerdictCache.Verdict(ip, ipv6, UA, domain, generation, signals, score, "USA", 3_000_000L);
+    }
+}
@@ -0,0 +1,132 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * GeoIpDatabase 单体测试
+ */
+class GeoIpDatabaseTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testLookupIpv4AndIpv6Ranges() throws IOException {
+        GeoIpDatabase database = build(
+            "# start,end,country,region",
+            "1.0.0.0,1.0.0.255,AUS,AU-QLD",
+            "8.8.8.0,8.8.8.255,USA,US-CA",
+            "2001:db8::,2001:db8:ffff:ffff:ffff:ffff:ffff:ffff,DEU",
+            "::ffff:9.9.9.0,::ffff:9.9.9.255,CHE");
+
+        assertEquals(4, database.size());
+        assertEquals("AUS", database.lookupCountry("1.0.0.0"));
+        assertEquals("AUS", database.lookupCountry("1.0.0.255"));
+        assertNull(database.lookupCountry("1.0.1.0"));
+        assertEquals("USA", database.lookupCountry("8.8.8.8"));
+        assertEquals("DEU", database.lookupCountry("2001:db8:1234::1"));
+        assertEquals("CHE", database.lookupCountry("9.9.9.9"), "IPv4映射地址与IPv4地址统一查找");
+        assertEquals("USA", database.lookupCountry("::ffff:8.8.8.8"));
+        assertNull(database.lookupCountry("2001:db9::1"));
+        assertNull(database.lookupCountry("0.0.0.1"));
+        assertNull(database.lookupCountry("not-an-ip"));
+        assertNull(database.lookupCountry(null));
+
+        int index = database.find(0L, IpAddresses.IPV4_MAPPED_LO | 0x08080808L);
+        assertEquals("US-CA", database.region(index));
+        assertNull(database.region(database.find(0x20010DB800000000L, 1L)), "未提供地区时返回null");
+    }
+
+    @Test
+    void testInvalidAndOverlappingLinesSkipped() throws IOException {
+        Path csv = dir.resolve("geo.csv");
+        Files.write(csv, List.of(
+            "10.0.0.0,10.0.0.255,AAA",
+            "10.0.0.128,10.0.1.0,BBB",
+            "10.0.2.0,10.0.1.0,CCC",
+            "bad,10.0.3.0,DDD",
+            "10.0.4.0,10.0.4.255,",
+            "10.0.5.0,10.0.5.255,EEE"));
+        int skipped = GeoIpDatabase.compile(csv, dir.resolve("geo.bin"));
+        GeoIpDatabase database = GeoIpDatabase.open(dir.resolve("geo.bin"));
+
+        assertEquals(4, skipped);
+        assertEquals(2, database.size());
+        assertEquals("AAA", database.lookupCountry("10.0.0.200"));
+        assertEquals("EEE", database.lookupCountry("10.0.5.1"));
+    }
+
+    @Test
+    void testMatchesLinearScanOnRandomRanges() throws IOException {
+        Random random = new Random(42);
+        int ranges = 5000;
+        long[] starts = new long[ranges];
+        long[] ends = new long[ranges];
+        StringBuilder csv = new StringBuilder();
+        long next = 0;
+        for (int i = 0; i < ranges; i++) {
+            starts[i] = next + random.nextInt(1000);
+            ends[i] = starts[i] + random.nextInt(1000);
+            next = ends[i] + 1;
+            csv.append(ipv4(starts[i])).append(',').append(ipv4(ends[i])).append(",C").append(i % 100).append('\n');
+        }
+        Files.writeString(dir.resolve("geo.csv"), csv);
+        GeoIpDatabase.compile(dir.resolve("geo.csv"), dir.resolve("geo.bin"));
+        GeoIpDatabase database = GeoIpDatabase.open(dir.resolve("geo.bin"));
+
+        for (int probe = 0; probe < 20000; probe++) {
+            long address = (long) (random.nextDouble() * (next + 500));
+            String expected = null;
+            for (int i = 0; i < ranges; i++) {
+                if (address >= starts[i] && address <= ends[i]) {
+                    expected = "C" + (i % 100);
+                    break;
+                }
+            }
+            assertEquals(expected, database.lookupCountry(ipv4(address)), ipv4(address));
+        }
+    }
+
+    @Test
+    void testRecompileReplacesFileWithoutAffectingOpenedDatabase() throws IOException {
+        Path bin = dir.resolve("geo.bin");
+        GeoIpDatabase first = build("192.0.2.0,192.0.2.255,USA");
+
+        Files.writeString(dir.resolve("geo.csv"), "192.0.2.0,192.0.2.255,CAN\n");
+        GeoIpDatabase.compile(dir.resolve("geo.csv"), bin);
+        GeoIpDatabase second = GeoIpDatabase.open(bin);
+
+        assertEquals("USA", first.lookupCountry("192.0.2.1"), "已映射的旧文件不受替换影响");
+        assertEquals("CAN", second.lookupCountry("192.0.2.1"));
+        assertTrue(second.getMappedBytes() > 0);
+    }
+
+    @Test
+    void testRejectsForeignFile() throws IOException {
+        Path file = dir.resolve("other.bin");
+        Files.writeString(file, "definitely not a geo database");
+        assertThrows(IOException.class, () -> GeoIpDatabase.open(file));
+        assertEquals(-1, GeoIpDatabase.EMPTY.find(0L, 1L));
+        assertNull(GeoIpDatabase.EMPTY.lookupCountry("192.0.2.1"));
+    }
+
+    private GeoIpDatabase build(String... lines) throws IOException {
+        Path csv = dir.resolve("geo.csv");
+        Files.write(csv, List.of(lines));
+        GeoIpDatabase.compile(csv, dir.resolve("geo.bin"));
+        return GeoIpDatabase.open(dir.resolve("geo.bin"));
+    }
+
+    private static String ipv4(long address) {
+        return (address >>> 24 & 255) + "." + (address >>> 16 & 255) + "." + (address >>> 8 & 255) + "." + (address & 255);
+    }
+}
@@ -0,0 +1,186 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HeavyHitterTrackerTest {
+
+    private MutableClock clock;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-05-15T12:00:00Z"));
+    }
+
+    @Test
+    void testHeavyHittersSurviveLongTailWithBoundedError() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(256, 4, clock);
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            // 三个热点键占约30%，其余是从不重复的长尾键
+            int roll = random.nextInt(100);
+            if (roll < 15) {
+                tracker.offer("10.0.0.1");
+            } else if (roll < 25) {
+                tracker.offer("10.0.0.2");
+            } else if (roll < 30) {
+                tracker.offer("10.0.0.3");
+            } else {
+                tracker.offer("tail-" + i);
+            }
+        }
+
+        List<HeavyHitterTracker.HeavyHitter> top = tracker.currentTopK(3);
+        assertEquals(List.of("10.0.0.1", "10.0.0.2", "10.0.0.3"), top.stream().map(HeavyHitterTracker.HeavyHitter::getKey).toList());
+        for (HeavyHitterTracker.HeavyHitter hitter : top) {
+            // 估计值不低于真实值，误差不超过 N / 每段容量
+            assertTrue(hitter.getError() <= 200_000 / 64, hitter.getKey() + " error=" + hitter.getError());
+        }
+        assertTrue(top.get(0).getCount() - top.get(0).getError() >= 29_000);
+        assertEquals(256, tracker.capacity());
+    }
+
+    @Test
+    void testOfferReturnsGuaranteedCount() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(2, 1, clock);
+        assertEquals(1, tracker.offer("a"));
+        assertEquals(2, tracker.offer("a"));
+        assertEquals(1, tracker.offer("b"));
+        // c 替换计数最小的 b，继承其计数作为误差，下限仍为1
+        assertEquals(1, tracker.offer("c"));
+        Map<String, Long> errors = Map.of("a", 0L, "c", 1L);
+        for (HeavyHitterTracker.HeavyHitter hitter : tracker.currentTopK(10)) {
+            assertEquals(errors.get(hitter.getKey()), hitter.getError());
+        }
+    }
+
+    @Test
+    void testMinutesRotate() {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(64, 4, clock);
+        for (int i = 0; i < 5; i++) {
+            tracker.offer("198.51.100.1");
+        }
+        tracker.offer("198.51.100.2");
+
+        clock.advanceMillis(60_000);
+        assertTrue(tracker.currentTopK(5).isEmpty());
+        assertEquals("198.51.100.1", tracker.previousTopK(5).get(0).getKey());
+        assertEquals(5, tracker.previousTopK(5).get(0).getCount());
+
+        // 新一分钟重新计数，上一分钟的摘要在更新后仍然可读
+        assertEquals(1, tracker.offer("198.51.100.1"));
+        assertEquals(2, tracker.previousTopK(5).size());
+
+        clock.advanceMillis(120_000);
+        assertTrue(tracker.previousTopK(5).isEmpty());
+    }
+
+    @Test
+    void testConcurrentOffersAreNotLost() throws Exception {
+        HeavyHitterTracker tracker = new HeavyHitterTracker(1024, 16, clock);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] futures = new Future<?>[8];
+            for (int t = 0; t < futures.length; t++) {
+                futures[t] = executor.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        tracker.offer("key-" + (i % 100));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        List<HeavyHitterTracker.HeavyHitter> top = tracker.currentTopK(100);
+        assertEquals(100, top.size());
+        top.forEach(hitter -> assertEquals(4_000, hitter.getCount()));
+    }
+
+    @Test
+    void testDetectorBlocksKeysAboveThresholdForTtl() {
+        AdsConfiguration.HeavyHitters config = new AdsConfiguration.HeavyHitters();
+        config.setIpThresholdPerMinute(10);
+        config.setBlockTtlSeconds(300);
+        HeavyHitterDetector detector = new HeavyHitterDetector(config, clock);
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(detector.record(HeavyHitterDetector.Dimension.IP, "203.0.113.9"));
+            assertFalse(detector.record(HeavyHitterDetector.Dimension.SITE, "popular.example"), "阈值为0的维度只统计不封禁");
+        }
+        assertTrue(detector.record(HeavyHitterDetector.Dimension.IP, "203.0.113.9"));
+        assertTrue(detector.isBlocked(HeavyHitterDetector.Dimension.IP, "203.0.113.9"));
+        assertFalse(detector.isBlocked(HeavyHitterDetector.Dimension.DEVICE, "203.0.113.9"), "封禁按维度区分");
+        assertFalse(detector.record(HeavyHitterDetector.Dimension.IP, null));
+
+        clock.advanceMillis(299_000);
+        assertTrue(detector.record(HeavyHitterDetector.Dimension.IP, "203.0.113.9"));
+        clock.advanceMillis(1_000);
+        assertFalse(detector.isBlocked(HeavyHitterDetector.Dimension.IP, "203.0.113.9"));
+        assertEquals(1L, detector.getStatistics().get("autoBlocks"));
+        assertEquals(Map.of("ip", 0, "device", 0, "app", 0, "site", 0), detector.getStatistics().get("blockedKeys"));
+    }
+
+    @Test
+    void testDetectorUnblock() {
+        AdsConfiguration.HeavyHitters config = new AdsConfiguration.HeavyHitters();
+        config.setAppThresholdPerMinute(1);
+        HeavyHitterDetector detector = new HeavyHitterDetector(config, clock);
+        detector.record(HeavyHitterDetector.Dimension.APP, "com.example.game");
+        assertTrue(detector.record(HeavyHitterDetector.Dimension.APP, "com.example.game"));
+
+        assertTrue(detector.unblock(HeavyHitterDetector.Dimension.APP, "com.example.game"));
+        assertFalse(detector.unblock(HeavyHitterDetector.Dimension.APP, "com.example.game"));
+        assertFalse(detector.isBlocked(HeavyHitterDetector.Dimension.APP, "com.example.game"));
+        Map<?, ?> app = (Map<?, ?>) detector.getTopHitters().get("app");
+        assertEquals(1, ((List<?>) app.get("currentMinute")).size());
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        private void advanceMillis(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
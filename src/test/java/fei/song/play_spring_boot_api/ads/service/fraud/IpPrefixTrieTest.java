@@ -0,0 +1,137 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpPrefixTrieTest {
+
+    @Test
+    void testIpv4Ranges() {
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        assertTrue(builder.add("192.168.1.0/24"));
+        assertTrue(builder.add("10.0.0.50"));
+        assertTrue(builder.add("172.16.0.0/12"));
+        IpPrefixTrie trie = builder.build();
+
+        assertTrue(trie.contains("192.168.1.0"));
+        assertTrue(trie.contains("192.168.1.255"));
+        assertFalse(trie.contains("192.168.2.1"));
+        assertTrue(trie.contains("10.0.0.50"));
+        assertFalse(trie.contains("10.0.0.51"));
+        assertTrue(trie.contains("172.31.255.255"));
+        assertFalse(trie.contains("172.32.0.0"));
+        assertTrue(trie.contains("::ffff:192.168.1.7"), "IPv4映射地址与IPv4地址等价");
+        assertEquals(3, trie.size());
+    }
+
+    @Test
+    void testIpv6Ranges() {
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        builder.add("2001:db8::/32");
+        builder.add("fe80::1");
+        IpPrefixTrie trie = builder.build();
+
+        assertTrue(trie.contains("2001:db8::1"));
+        assertTrue(trie.contains("2001:0DB8:ffff:0:0:0:0:1"));
+        assertFalse(trie.contains("2001:db9::1"));
+        assertTrue(trie.contains("fe80::1%eth0"));
+        assertTrue(trie.contains("fe80:0:0:0:0:0:0:1"));
+        assertFalse(trie.contains("fe80::2"));
+        assertFalse(trie.contains("1.2.3.4"));
+    }
+
+    @Test
+    void testInvalidInputs() {
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        assertFalse(builder.add("1.2.3.4/33"));
+        assertFalse(builder.add("1.2.3/8"));
+        assertFalse(builder.add("::1/129"));
+        assertFalse(builder.add("not-an-ip"));
+        assertEquals(4, builder.getInvalidCount());
+
+        builder.add("0.0.0.0/0");
+        IpPrefixTrie trie = builder.build();
+        assertTrue(trie.contains("8.8.8.8"));
+        assertFalse(trie.contains(null));
+        for (String ip : new String[]{"", "1.2.3", "1.2.3.4.5", "256.1.1.1", "1..2.3", "1:2:3:4:5:6:7:8:9",
+            "1::2::3", "12345::", ":1:2:3:4:5:6:7", "1:2:3:4:5:6:7:", "::1.2.3"}) {
+            assertFalse(trie.contains(ip), ip);
+        }
+    }
+
+    @Test
+    void testCoveredPrefixesIgnored() {
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        builder.add("10.1.2.3");
+        builder.add("10.1.0.0/16");
+        builder.add("10.1.5.0/24");
+        builder.add("10.0.0.0/8");
+        IpPrefixTrie trie = builder.build();
+
+        assertEquals(3, trie.size(), "已被覆盖的网段不计入");
+        assertTrue(trie.contains("10.200.0.1"));
+    }
+
+    @Test
+    void testMatchesLinearScanOnRandomPrefixes() {
+        Random random = new Random(7);
+        List<long[]> prefixes = new ArrayList<>();
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder();
+        for (int i = 0; i < 2_000; i++) {
+            long address = random.nextInt() & 0xFFFFFFFFL;
+            int length = 8 + random.nextInt(25);
+            long network = address & (0xFFFFFFFFL << (32 - length)) & 0xFFFFFFFFL;
+            prefixes.add(new long[]{network, length});
+            builder.add(toString(network) + "/" + length);
+        }
+        IpPrefixTrie trie = builder.build();
+
+        for (int i = 0; i < 20_000; i++) {
+            long address = random.nextInt() & 0xFFFFFFFFL;
+            if (i % 2 == 0) {
+                // 一半查询落在已有网段附近
+                long[] prefix = prefixes.get(random.nextInt(prefixes.size()));
+                address = prefix[0] | (address & (0xFFFFFFFFL >>> prefix[1]));
+            }
+            boolean expected = false;
+            for (long[] prefix : prefixes) {
+                long mask = (0xFFFFFFFFL << (32 - prefix[1])) & 0xFFFFFFFFL;
+                expected |= (address & mask) == prefix[0];
+            }
+            assertEquals(expected, trie.contains(toString(address)), toString(address));
+        }
+    }
+
+    @Test
+    void testLoadFromFile(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("blacklist.txt");
+        Files.writeString(file, """
+            # 云服务商网段
+            203.0.113.0/24
+            2001:db8:abcd::/48   # 注释
+
+            bad-line
+            """);
+        IpPrefixTrie.Builder builder = IpPrefixTrie.builder().addAll(file);
+        IpPrefixTrie trie = builder.build();
+
+        assertEquals(2, trie.size());
+        assertEquals(1, builder.getInvalidCount());
+        assertTrue(trie.contains("203.0.113.9"));
+        assertTrue(trie.contains("2001:db8:abcd:12::1"));
+        assertTrue(trie.getMemoryBytes() > 0);
+    }
+
+    private static String toString(long address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
@@ -0,0 +1,167 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlidingWindowCounterTest {
+
+    private MutableClock clock;
+    private AdsConfiguration.FrequencyCounter config;
+
+    @BeforeEach
+    void setUp() {
+        clock = new MutableClock(Instant.parse("2024-05-15T12:00:00Z"));
+        config = new AdsConfiguration.FrequencyCounter();
+    }
+
+    @Test
+    void testCountsExpireAfterWindow() {
+        config.setPromoteThreshold(1);
+        SlidingWindowCounter counter = new SlidingWindowCounter(config, clock);
+
+        for (int i = 0; i < 10; i++) {
+            counter.incrementAndGet("1.1.1.1");
+        }
+        clock.advanceMillis(1_800_000);
+        for (int i = 0; i < 5; i++) {
+            counter.incrementAndGet("1.1.1.1");
+        }
+        assertEquals(15, counter.count("1.1.1.1"));
+
+        // 第一批事件滑出窗口
+        clock.advanceMillis(1_860_000);
+        assertEquals(5, counter.count("1.1.1.1"));
+        clock.advanceMillis(1_800_000);
+        assertEquals(0, counter.count("1.1.1.1"));
+    }
+
+    @Test
+    void testHeavyKeysPromotedToExactTier() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(config, clock);
+
+        for (int i = 1; i < config.getPromoteThreshold(); i++) {
+            assertEquals(i, counter.incrementAndGet("2.2.2.2"));
+        }
+        assertEquals(0, counter.trackedKeys(), "未达到晋升阈值前只在Sketch中计数");
+
+        for (int i = config.getPromoteThreshold(); i <= 200; i++) {
+            assertEquals(i, counter.incrementAndGet("2.2.2.2"));
+        }
+        assertEquals(1, counter.trackedKeys());
+        assertEquals(1L, counter.getStatistics().get("promotions"));
+    }
+
+    @Test
+    void testKeysWithCollidingHashCodesCountedSeparately() {
+        config.setPromoteThreshold(Integer.MAX_VALUE);
+        SlidingWindowCounter counter = new SlidingWindowCounter(config, clock);
+        // "Aa" 与 "BB" 的 String.hashCode 相同
+        assertEquals("10.0.0.Aa".hashCode(), "10.0.0.BB".hashCode());
+
+        for (int i = 0; i < 50; i++) {
+            counter.incrementAndGet("10.0.0.Aa");
+        }
+
+        assertEquals(50, counter.count("10.0.0.Aa"));
+        assertEquals(0, counter.count("10.0.0.BB"));
+        assertEquals(1, counter.incrementAndGet("10.0.0.BB"));
+    }
+
+    @Test
+    void testIdleKeysEvictedWhenFull() {
+        config.setPromoteThreshold(1);
+        config.setMaxTrackedKeys(2);
+        config.setSketchGenerationSeconds(3600);
+        SlidingWindowCounter counter = new SlidingWindowCounter(config, clock);
+
+        counter.incrementAndGet("a");
+        counter.incrementAndGet("b");
+        counter.incrementAndGet("c");
+        assertEquals(2, counter.trackedKeys());
+        assertEquals(1, counter.count("c"), "槽位用尽时按Sketch估计值计数");
+
+        clock.advanceMillis(config.getIdleEvictSeconds() * 1000L);
+        counter.incrementAndGet("c");
+        assertEquals(2, counter.count("c"));
+        assertEquals(1, counter.trackedKeys());
+        assertEquals(2L, counter.getStatistics().get("evictions"));
+    }
+
+    @Test
+    void testTenMillionDistinctIpsStayWithinBoundedHeap() {
+        SlidingWindowCounter counter = new SlidingWindowCounter(config, clock);
+        String[] abusive = {"203.0.113.1", "203.0.113.2", "203.0.113.3"};
+        long heapBefore = usedHeap();
+
+        int maxDistinctEstimate = 0;
+        for (int i = 0; i < 10_000_000; i++) {
+            String ip = (i >>> 24) + "." + ((i >>> 16) & 0xFF) + "." + ((i >>> 8) & 0xFF) + "." + (i & 0xFF);
+            maxDistinctEstimate = Math.max(maxDistinctEstimate, counter.incrementAndGet(ip));
+            if (i % 20_000 == 0) {
+                for (String key : abusive) {
+                    counter.incrementAndGet(key);
+                }
+            }
+            // 约55分钟内均匀到达
+            if (i % 3 == 0) {
+                clock.advanceMillis(1);
+            }
+        }
+
+        long heapGrowth = usedHeap() - heapBefore;
+        assertTrue(counter.trackedKeys() <= config.getMaxTrackedKeys());
+        assertTrue(maxDistinctEstimate < 100, "长尾键估计值过高: " + maxDistinctEstimate);
+        for (String key : abusive) {
+            assertEquals(500, counter.count(key));
+        }
+        assertTrue(heapGrowth < 64L * 1024 * 1024, "堆内存增长: " + heapGrowth);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        private void advanceMillis(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package fei.song.play_spring_boot_api.ads.service.fraud;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserAgentClassifierTest {
+
+    private static final String CHROME = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 Chrome/120.0 Safari/537.36";
+
+    @Test
+    void testAutomatonFollowsFailureLinks() {
+        KeywordAutomaton automaton = KeywordAutomaton.build(List.of("he", "she", "hers", "crawler"));
+
+        assertTrue(automaton.containsAny("ushers"));
+        assertTrue(automaton.containsAny("xxSHExx"));
+        assertTrue(automaton.containsAny("a web CRAWLER"));
+        assertTrue(automaton.containsAny("crawcrawler"), "部分匹配失败后沿失败链接继续");
+        assertFalse(automaton.containsAny("crawle r"));
+        assertFalse(automaton.containsAny("hé"));
+        assertFalse(KeywordAutomaton.build(List.of()).containsAny(CHROME));
+        assertTrue(KeywordAutomaton.build(List.of("")).containsAny("anything"));
+    }
+
+    @Test
+    void testKeywordAndRegexPatterns() {
+        UserAgentClassifier classifier = new UserAgentClassifier(
+            List.of(".*bot.*", ".*headless.*", "^curl/\\d+.*", ".*python-requests.*"), 64);
+
+        assertTrue(classifier.isSuspicious("Googlebot/2.1 (+http://www.google.com/bot.html)"));
+        assertTrue(classifier.isSuspicious("Mozilla/5.0 HeadlessChrome/120.0"));
+        assertTrue(classifier.isSuspicious("curl/8.4.0"));
+        assertTrue(classifier.isSuspicious("python-requests/2.31"));
+        assertTrue(classifier.isSuspicious(null));
+        assertTrue(classifier.isSuspicious("  "));
+        assertFalse(classifier.isSuspicious(CHROME));
+        assertFalse(classifier.isSuspicious("libcurl-agent"));
+
+        assertEquals(3, classifier.getStatistics().get("keywords"));
+        assertEquals(1, classifier.getStatistics().get("regexPatterns"));
+    }
+
+    @Test
+    void testToKeyword() {
+        assertEquals("bot", UserAgentClassifier.toKeyword(".*bot.*"));
+        assertEquals("python-requests", UserAgentClassifier.toKeyword(".*python-requests.*"));
+        assertNull(UserAgentClassifier.toKeyword("bot"));
+        assertNull(UserAgentClassifier.toKeyword(".*bot|spider.*"));
+        assertNull(UserAgentClassifier.toKeyword(".*"));
+    }
+
+    @Test
+    void testVerdictCacheKeepsFrequentUserAgents() {
+        UserAgentClassifier classifier = new UserAgentClassifier(List.of(".*bot.*"), 2);
+
+        for (int i = 0; i < 100; i++) {
+            assertFalse(classifier.isSuspicious(CHROME));
+        }
+        // 一次性的UA轮流占用另一路，不会挤掉热门UA（期间命中次数经过数次减半）
+        for (int i = 0; i < 100; i++) {
+            classifier.isSuspicious("one-off-agent-" + i);
+        }
+        long hitsBefore = (long) classifier.getStatistics().get("cacheHits");
+        assertFalse(classifier.isSuspicious(CHROME));
+        assertEquals(hitsBefore + 1, (long) classifier.getStatistics().get("cacheHits"));
+        assertTrue((long) classifier.getStatistics().get("cacheEvictions") > 0);
+    }
+}
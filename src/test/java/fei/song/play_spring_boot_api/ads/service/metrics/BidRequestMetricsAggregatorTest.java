@@ -0,0 +1,210 @@
+package fei.song.play_spring_boot_api.ads.service.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BidRequestMetricsAggregatorTest {
+
+    @Test
+    void testRecordsAggregateByHourSlotTypeAndDsp() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-15T10:59:30Z"));
+        BidRequestMetricsAggregator aggregator = new BidRequestMetricsAggregator(clock);
+        aggregator.record("banner", "google", true, 100);
+        aggregator.record("banner", "google", false, 300);
+        aggregator.record("video", "google", true, 50);
+        clock.advanceMillis(60_000);
+        aggregator.record("banner", "google", true, 10);
+
+        List<BidRequestMetricsAggregator.Delta> deltas = aggregator.drain();
+        assertEquals(3, deltas.size());
+        BidRequestMetricsAggregator.Delta banner = find(deltas, "2024-01-15-10", "banner");
+        assertEquals("2024-01-15", banner.getDate());
+        assertEquals("google", banner.getDspSource());
+        assertEquals(2, banner.getRequests());
+        assertEquals(1, banner.getSuccesses());
+        assertEquals(1, banner.getFailures());
+        assertEquals(400, banner.getTotalResponseTime());
+        assertEquals(1, find(deltas, "2024-01-15-11", "banner").getRequests());
+
+        // 取出后清零
+        assertTrue(aggregator.drain().isEmpty());
+    }
+
+    @Test
+    void testIdleCellsOfPastHoursAreRemoved() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-15T10:30:00Z"));
+        BidRequestMetricsAggregator aggregator = new BidRequestMetricsAggregator(clock);
+        aggregator.record("banner", "google", true, 100);
+        aggregator.drain();
+        aggregator.drain();
+        assertEquals(1, aggregator.size(), "当前小时的格保留");
+
+        clock.advanceMillis(3_600_000);
+        aggregator.drain();
+        assertEquals(1, aggregator.size(), "第一次没有增量时先标记");
+        aggregator.drain();
+        assertEquals(0, aggregator.size());
+    }
+
+    @Test
+    void testRestoredDeltasAreDrainedAgain() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-15T10:30:00Z"));
+        BidRequestMetricsAggregator aggregator = new BidRequestMetricsAggregator(clock);
+        aggregator.record("banner", null, true, 100);
+        BidRequestMetricsAggregator.Delta failed = aggregator.drain().get(0);
+        assertEquals("unknown", failed.getDspSource());
+
+        aggregator.record("banner", null, false, 20);
+        aggregator.restore(failed);
+        BidRequestMetricsAggregator.Delta retried = aggregator.drain().get(0);
+        assertEquals(2, retried.getRequests());
+        assertEquals(1, retried.getSuccesses());
+        assertEquals(1, retried.getFailures());
+        assertEquals(120, retried.getTotalResponseTime());
+    }
+
+    @Test
+    void testConcurrentRecordsAreNotLostWhileDraining() throws Exception {
+        BidRequestMetricsAggregator aggregator = new BidRequestMetricsAggregator(Clock.systemUTC());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<BidRequestMetricsAggregator.Delta> drained = new ArrayList<>();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 50_000; i++) {
+                        aggregator.record(i % 2 == 0 ? "banner" : "video", "dsp-" + (i % 3), i % 5 != 0, 2);
+                    }
+                }));
+            }
+            while (!futures.stream().allMatch(Future::isDone)) {
+                drained.addAll(aggregator.drain());
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        drained.addAll(aggregator.drain());
+
+        assertEquals(200_000, drained.stream().mapToLong(BidRequestMetricsAggregator.Delta::getRequests).sum());
+        assertEquals(160_000, drained.stream().mapToLong(BidRequestMetricsAggregator.Delta::getSuccesses).sum());
+        assertEquals(40_000, drained.stream().mapToLong(BidRequestMetricsAggregator.Delta::getFailures).sum());
+        assertEquals(400_000, drained.stream().mapToLong(BidRequestMetricsAggregator.Delta::getTotalResponseTime).sum());
+    }
+
+    @Test
+    void testRecordsRacingWithIdleCellRemovalAreNotLost() throws Exception {
+        // 请求线程在已过去的小时累加，写入线程处于下一个小时，格在两次取出之间没有增量时即被移除
+        long pastHour = Instant.parse("2024-01-15T10:30:00Z").toEpochMilli();
+        ThreadLocal<Long> now = ThreadLocal.withInitial(() -> pastHour);
+        now.set(pastHour + 3_600_000);
+        BidRequestMetricsAggregator aggregator = new BidRequestMetricsAggregator(new ThreadLocalClock(now));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<BidRequestMetricsAggregator.Delta> drained = new ArrayList<>();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        aggregator.record("banner", "dsp", true, 1);
+                        for (int spin = 0; spin < (i % 7) * 200; spin++) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                }));
+            }
+            while (!futures.stream().allMatch(Future::isDone)) {
+                drained.addAll(aggregator.drain());
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        drained.addAll(aggregator.drain());
+        drained.addAll(aggregator.drain());
+
+        assertEquals(80_000, drained.stream().mapToLong(BidRequestMetricsAggregator.Delta::getRequests).sum());
+    }
+
+    private static BidRequestMetricsAggregator.Delta find(List<BidRequestMetricsAggregator.Delta> deltas, String hour, String adSlotType) {
+        return deltas.stream()
+            .filter(delta -> delta.getHour().equals(hour) && delta.getAdSlotType().equals(adSlotType))
+            .findFirst()
+            .orElseThrow();
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        private void advanceMillis(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+    private static final class ThreadLocalClock extends Clock {
+        private final ThreadLocal<Long> millis;
+
+        private ThreadLocalClock(ThreadLocal<Long> millis) {
+            this.millis = millis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis.get());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package fei.song.play_spring_boot_api.ads.service.metrics;
+
+import fei.song.play_spring_boot_api.ads.service.pipeline.BidStage;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageLatencyRecorderTest {
+
+    private static final long HIGHEST_NANOS = 10_000_000_000L;
+
+    @Test
+    void testPercentilesPerStage() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-15T10:30:00Z"));
+        StageLatencyRecorder recorder = new StageLatencyRecorder(HIGHEST_NANOS, 2, clock);
+        for (int i = 1; i <= 1000; i++) {
+            recorder.record(BidStage.AUCTION, i * 1_000L);
+        }
+        recorder.recordSerialization(5_000_000L);
+        recorder.sample();
+
+        assertEquals("2024-01-15-10", recorder.currentHour());
+        Map<String, Object> summary = recorder.currentHourSummary();
+        assertEquals(List.of("FRAUD", "CANDIDATES", "FILTER", "BUDGET", "AUCTION", "SERIALIZATION"),
+            List.copyOf(summary.keySet()));
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> auction = (Map<String, Object>) summary.get("AUCTION");
+        assertEquals(1000L, auction.get("count"));
+        // 2位有效数字，相对误差不超过1%
+        assertEquals(0.5, (double) auction.get("p50Ms"), 0.005);
+        assertEquals(0.99, (double) auction.get("p99Ms"), 0.01);
+        assertEquals(1.0, (double) auction.get("maxMs"), 0.01);
+        assertEquals(1.0, recorder.percentileMillis(4, 100.0), 0.01);
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> fraud = (Map<String, Object>) summary.get("FRAUD");
+        assertEquals(0L, fraud.get("count"));
+        assertEquals(5.0, recorder.percentileMillis(5, 50.0), 0.05);
+    }
+
+    @Test
+    void testValuesBeyondRangeAreClamped() {
+        StageLatencyRecorder recorder = new StageLatencyRecorder(1_000_000L, 2,
+            new MutableClock(Instant.parse("2024-01-15T10:30:00Z")));
+        recorder.record(BidStage.FRAUD, 50_000_000L);
+        recorder.record(BidStage.FRAUD, -1L);
+        recorder.sample();
+
+        assertEquals(1.0, recorder.percentileMillis(0, 100.0), 0.01);
+        assertEquals(0.0, recorder.percentileMillis(0, 0.0));
+    }
+
+    @Test
+    void testDrainSeparatesHoursAndRestoreRequeues() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-01-15T10:59:00Z"));
+        StageLatencyRecorder recorder = new StageLatencyRecorder(HIGHEST_NANOS, 2, clock);
+        recorder.record(BidStage.FILTER, 100_000L);
+        recorder.sample();
+        clock.advanceMillis(120_000);
+        recorder.record(BidStage.FILTER, 200_000L);
+        recorder.record(BidStage.FILTER, 300_000L);
+
+        List<StageLatencyRecorder.HourlyHistogram> drained = recorder.drain();
+        assertEquals(2, drained.size());
+        assertEquals("2024-01-15-10", drained.get(0).getHour());
+        assertEquals("2024-01-15", drained.get(0).getDate());
+        assertEquals("FILTER", drained.get(0).getStage());
+        assertEquals(1, drained.get(0).getHistogram().getTotalCount());
+        assertEquals("2024-01-15-11", drained.get(1).getHour());
+        assertEquals(2, drained.get(1).getHistogram().getTotalCount());
+
+        // 跨小时后展示直方图只包含当前小时
+        assertEquals("2024-01-15-11", recorder.currentHour());
+        @SuppressWarnings("unchecked")
+        Map<String, Object> filter = (Map<String, Object>) recorder.currentHourSummary().get("FILTER");
+        assertEquals(2L, filter.get("count"));
+
+        assertTrue(recorder.drain().isEmpty());
+        assertTrue(recorder.pending("2024-01-15-10").isEmpty());
+
+        recorder.restore(drained.get(0));
+        assertEquals(1, recorder.pending("2024-01-15-10").get(0).getHistogram().getTotalCount());
+        List<StageLatencyRecorder.HourlyHistogram> retried = recorder.drain();
+        assertEquals(1, retried.size());
+        assertEquals("2024-01-15-10", retried.get(0).getHour());
+    }
+
+    @Test
+    void testCompressedEncodingRoundTrip() throws Exception {
+        Histogram histogram = new Histogram(1, HIGHEST_NANOS, 2);
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.recordValue(i * 997L);
+        }
+
+        byte[] encoded = StageLatencyRecorder.encode(histogram);
+        assertTrue(encoded.length < histogram.getEstimatedFootprintInBytes());
+        Histogram decoded = StageLatencyRecorder.decode(encoded);
+        assertEquals(histogram, decoded);
+    }
+
+    private static final class MutableClock extends Clock {
+        private long millis;
+
+        private MutableClock(Instant start) {
+            this.millis = start.toEpochMilli();
+        }
+
+        private void advanceMillis(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package fei.song.play_spring_boot_api.ads.service.pipeline;
+
+import fei.song.play_spring_boot_api.ads.config.AdsConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * AdaptiveConcurrencyLimiter 单体测试
+ */
+class AdaptiveConcurrencyLimiterTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(20);
+
+    @Test
+    void testTryAcquire_ShedsWhenAtLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, TARGET, 0.2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        assertEquals(2, limiter.getInflight());
+        assertEquals(1, limiter.getShedCount());
+    }
+
+    @Test
+    void testRelease_GrowsLimitWhenSaturatedAndLatencyStable() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100, TARGET, 0.2);
+
+        for (int i = 0; i < 50; i++) {
+            saturateAndRelease(limiter, FAST, false);
+        }
+
+        assertTrue(limiter.getLimit() > 10);
+        assertEquals(0, limiter.getInflight());
+    }
+
+    @Test
+    void testRelease_ShrinksLimitWhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 1, 100, TARGET, 0.2);
+        for (int i = 0; i < 20; i++) {
+            saturateAndRelease(limiter, FAST, false);
+        }
+        int stableLimit = limiter.getLimit();
+
+        for (int i = 0; i < 20; i++) {
+            saturateAndRelease(limiter, SLOW, false);
+        }
+
+        assertTrue(limiter.getLimit() < stableLimit);
+    }
+
+    @Test
+    void testRelease_DoesNotGrowWhenUnderutilized() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 1, 100, TARGET, 0.2);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(FAST, false);
+        }
+
+        assertEquals(20, limiter.getLimit());
+    }
+
+    @Test
+    void testRelease_DroppedRequestsBackOffToMinLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 5, 100, TARGET, 0.2);
+
+        for (int i = 0; i < 2000; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(SLOW, true);
+        }
+
+        assertEquals(5, limiter.getLimit());
+        assertEquals(2000, limiter.getDroppedCount());
+    }
+
+    @Test
+    void testFrom_UsesMaxConcurrentRequestsAsUpperBound() {
+        AdsConfiguration configuration = new AdsConfiguration();
+        configuration.getServer().setMaxConcurrentRequests(30);
+        configuration.getServer().getConcurrencyLimit().setInitialLimit(100);
+
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.from(configuration);
+
+        assertEquals(30, limiter.getLimit());
+    }
+
+    private void saturateAndRelease(AdaptiveConcurrencyLimiter limiter, long latencyNanos, boolean dropped) {
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+        for (int i = 0; i < acquired; i++) {
+            limiter.release(latencyNanos, dropped);
+        }
+    }
+}